@@ -0,0 +1,109 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+/**
+ * Cost of a 'poll' mode discovery cycle against an EtcdStandInServer
+ * pre-seeded with N members (flat or sharded), and of parsing those
+ * members alone
+ * 
+ * @author bitsofinfo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value=1, jvmArgsAppend="-Dhazelcast.logging.type=none")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class DiscoverNodesBenchmark {
+	
+	private static final String SERVICE_NAME = "benchmark-discover";
+
+	@Param({"10", "1000", "10000"})
+	public int members;
+	
+	// 0 is the flat layout
+	@Param({"0", "16"})
+	public int shardBuckets;
+	
+	private EtcdStandInServer etcdStandIn;
+	private EtcdDiscoveryStrategy strategy;
+	private Map<String,String> registered;
+	private ILogger logger;
+	
+	@Setup
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		if (shardBuckets > 0) {
+			// all members spread over the buckets, the first (members % shardBuckets) get one more
+			int seeded = 0;
+			for (int i=0; i<shardBuckets; i++) {
+				int count = members / shardBuckets + (i < members % shardBuckets ? 1 : 0);
+				etcdStandIn.seed(EtcdDiscoveryStrategy.bucketDir(SERVICE_NAME, i), seeded, count, 0);
+				seeded += count;
+			}
+		} else {
+			etcdStandIn.seed(SERVICE_NAME, members, 0);
+		}
+		
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-uris", etcdStandIn.getUri().toString());
+		properties.put("etcd-service-name", SERVICE_NAME);
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-shard-buckets", shardBuckets);
+		
+		logger = Logger.getLogger(getClass());
+		strategy = new EtcdDiscoveryStrategy(null, logger, properties);
+		
+		registered = etcdStandIn.list(SERVICE_NAME);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		strategy.destroy();
+		etcdStandIn.stop();
+	}
+	
+	/**
+	 * Full discovery cycle: fetch the directory and parse every member
+	 */
+	@Benchmark
+	public void discoverNodes(Blackhole blackhole) {
+		for (DiscoveryNode node : strategy.discoverNodes()) {
+			blackhole.consume(node);
+		}
+	}
+	
+	/**
+	 * Parsing only, the members values are already in memory
+	 */
+	@Benchmark
+	public void parseNodes(Blackhole blackhole) {
+		for (Map.Entry<String,String> entry : registered.entrySet()) {
+			blackhole.consume(EtcdDiscoveryStrategy.toDiscoveryNode(entry.getKey(), entry.getValue(), logger));
+		}
+	}
+
+}
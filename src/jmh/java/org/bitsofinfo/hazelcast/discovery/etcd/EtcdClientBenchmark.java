@@ -0,0 +1,100 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+import mousio.etcd4j.EtcdClient;
+
+/**
+ * Cost of building (and closing) a brand new EtcdClient:
+ * 
+ * - http: plain
+ * - https: with the default SslContext
+ * - https-keystore: with an SslContext built from PEM cert/key files
+ *   (a self-signed EtcdTestCertificate generated at setup)
+ * 
+ * each either w/ its own Netty event loop group (buildAndClose) or on the
+ * shared EtcdNettyResources one (buildAndCloseShared).
+ * 
+ * No connection is made, EtcdClients connect lazily.
+ * 
+ * @author bitsofinfo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value=1, jvmArgsAppend="-Dhazelcast.logging.type=none")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class EtcdClientBenchmark {
+
+	@Param({"http", "https", "https-keystore"})
+	public String mode;
+	
+	private List<URI> etcdUris;
+	private File clientCert;
+	private File clientKey;
+	private ILogger logger;
+	private EtcdNettyResources nettyResources;
+	
+	@Setup
+	public void setUp() throws Exception {
+		logger = Logger.getLogger(getClass());
+		etcdUris = Arrays.asList(URI.create((mode.startsWith("https") ? "https" : "http") + "://localhost:4001"));
+		clientCert = File.createTempFile("etcd-benchmark-client-cert-", ".pem");
+		clientKey = File.createTempFile("etcd-benchmark-client-key-", ".pem");
+		EtcdTestCertificate.generate("etcd-benchmark-client").writeTo(clientCert, clientKey);
+		nettyResources = EtcdNettyResources.acquire(EtcdNettyResources.DEFAULT_IO_THREADS, logger);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		clientCert.delete();
+		clientKey.delete();
+		nettyResources.release();
+	}
+	
+	@Benchmark
+	public void buildAndClose() throws Exception {
+		buildAndClose(null);
+	}
+	
+	@Benchmark
+	public void buildAndCloseShared() throws Exception {
+		buildAndClose(nettyResources);
+	}
+	
+	private void buildAndClose(EtcdNettyResources resources) throws Exception {
+		EtcdClient etcdClient;
+		if (mode.equals("https-keystore")) {
+			EtcdSslContextCache sslContextCache = new EtcdSslContextCache(clientCert.getAbsolutePath(), 
+																		  clientKey.getAbsolutePath(), 
+																		  clientCert.getAbsolutePath(), 0, logger);
+			etcdClient = EtcdDiscoveryStrategy.getEtcdClient(etcdUris, null, null, sslContextCache.getSslContext(), resources);
+		} else {
+			etcdClient = EtcdDiscoveryStrategy.getEtcdClient(etcdUris, null, null, null, resources);
+		}
+		etcdClient.close();
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.hazelcast.nio.Address;
+
+/**
+ * Parsing a single EtcdHazelcastNode value with a Gson built
+ * per call versus a reused one, versus the streaming
+ * EtcdHazelcastNodeTypeAdapter and the compact value format
+ * 
+ * @author bitsofinfo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value=1, jvmArgsAppend="-Dhazelcast.logging.type=none")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class GsonBenchmark {
+	
+	private Gson sharedGson;
+	private String value;
+	private String compactValue;
+	
+	@Setup
+	public void setUp() {
+		sharedGson = new GsonBuilder().setDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN).create();
+		EtcdHazelcastNode node = new EtcdHazelcastNode("10.0.0.1", 5701, "10.0.0.1");
+		value = sharedGson.toJson(node);
+		compactValue = EtcdNodeValueCodec.encode(node, EtcdNodeValueCodec.FORMAT_COMPACT);
+	}
+	
+	@Benchmark
+	public EtcdHazelcastNode constructPerCall() {
+		Gson gson = new GsonBuilder().setDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN).create();
+		return gson.fromJson(value, EtcdHazelcastNode.class);
+	}
+	
+	@Benchmark
+	public EtcdHazelcastNode reuse() {
+		return sharedGson.fromJson(value, EtcdHazelcastNode.class);
+	}
+	
+	@Benchmark
+	public EtcdHazelcastNode typeAdapter() throws Exception {
+		return EtcdHazelcastNodeTypeAdapter.INSTANCE.fromJson(value);
+	}
+	
+	@Benchmark
+	public Address typeAdapterAddressOnly() throws Exception {
+		return EtcdHazelcastNodeTypeAdapter.decodeAddress(value);
+	}
+	
+	@Benchmark
+	public Address compactAddressOnly() throws Exception {
+		return EtcdNodeValueCodec.decodeAddress(compactValue);
+	}
+
+}
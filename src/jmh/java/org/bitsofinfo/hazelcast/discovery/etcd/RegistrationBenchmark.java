@@ -0,0 +1,79 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+
+/**
+ * A register()/deregister() round trip against an EtcdStandInServer,
+ * sharing one EtcdTransport across registrators as the strategy does
+ * 
+ * @author bitsofinfo
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value=1, jvmArgsAppend="-Dhazelcast.logging.type=none")
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+public class RegistrationBenchmark {
+	
+	private static final String SERVICE_NAME = "benchmark-registration";
+
+	private EtcdStandInServer etcdStandIn;
+	private EtcdTransport etcdTransport;
+	private List<URI> etcdUris;
+	private Map<String,Object> registratorConfig;
+	private ILogger logger;
+	
+	@Setup
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		
+		logger = Logger.getLogger(getClass());
+		etcdUris = Arrays.asList(etcdStandIn.getUri());
+		etcdTransport = new EtcdV2Transport(
+				EtcdClientPool.acquire(new EtcdConnectionConfig(etcdUris, null, null), 1, 0, 0, logger), logger);
+		
+		// as parsed from etcd-registrator-config JSON
+		registratorConfig = new HashMap<String,Object>();
+		registratorConfig.put(ExplicitIpPortRegistrator.CONFIG_PROP_REGISTER_WITH_IP_ADDRESS, "127.0.0.1");
+		registratorConfig.put(ExplicitIpPortRegistrator.CONFIG_PROP_REGISTER_WITH_PORT, 5701.0);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		etcdTransport.release();
+		etcdStandIn.stop();
+	}
+	
+	@Benchmark
+	public void registerDeregister() throws Exception {
+		ExplicitIpPortRegistrator registrator = new ExplicitIpPortRegistrator();
+		registrator.setEtcdTransport(etcdTransport);
+		registrator.init(etcdUris, null, null, SERVICE_NAME, null, registratorConfig, logger);
+		registrator.register();
+		registrator.deregister();
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import com.hazelcast.logging.ILogger;
+
+import mousio.etcd4j.responses.EtcdException;
+
+/**
+ * Reference counting (and error classification) common to
+ * all EtcdTransports, subclasses implement close()
+ *
+ * @author bitsofinfo
+ *
+ */
+public abstract class AbstractEtcdTransport implements EtcdTransport {
+
+	protected final ILogger logger;
+
+	private int refCount = 1;
+	private volatile boolean closed = false;
+
+	// optionally notified of every failed request to an endpoint
+	private volatile EtcdMetricsListener metrics = null;
+
+	/**
+	 * The new transport starts with a single reference
+	 * owned by the caller
+	 *
+	 * @param logger
+	 */
+	protected AbstractEtcdTransport(ILogger logger) {
+		this.logger = logger;
+	}
+
+	@Override
+	public synchronized void retain() {
+		if (closed) {
+			throw new IllegalStateException("EtcdTransport already closed");
+		}
+		refCount++;
+	}
+
+	@Override
+	public void release() {
+		synchronized(this) {
+			if (closed) {
+				return;
+			}
+			refCount--;
+			if (refCount > 0) {
+				return;
+			}
+			closed = true;
+		}
+		close();
+	}
+
+	protected boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Notify the listener of every request that failed at one of our
+	 * endpoints (etcd's answers aside), watches excluded
+	 *
+	 * @param metrics
+	 */
+	public void setMetricsListener(EtcdMetricsListener metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * A request to the given endpoint failed with the given error
+	 *
+	 * @param endpoint
+	 * @param e
+	 */
+	protected void onEndpointError(String endpoint, Exception e) {
+		EtcdMetricsListener metrics = this.metrics;
+		if (metrics != null && !isEtcdAnswer(e)) {
+			metrics.onEndpointError(endpoint);
+		}
+	}
+
+	/**
+	 * True if the error is etcd answering the request rather than the endpoint failing
+	 *
+	 * @param e
+	 * @return
+	 */
+	protected static boolean isEtcdAnswer(Exception e) {
+		if (e instanceof EtcdHistoryCompactedException) {
+			return true;
+		}
+		if (e instanceof EtcdGatewayException) {
+			return ((EtcdGatewayException)e).isAnswer();
+		}
+		// 3xx raft and 4xx+ etcd internal errors are the endpoint's problem
+		return e instanceof EtcdException && ((EtcdException)e).errorCode > 0 && ((EtcdException)e).errorCode < 300;
+	}
+
+	/**
+	 * Free all resources, invoked once on the last release()
+	 */
+	protected abstract void close();
+
+}
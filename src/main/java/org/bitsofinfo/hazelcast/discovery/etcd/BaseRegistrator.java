@@ -2,18 +2,22 @@ package org.bitsofinfo.hazelcast.discovery.etcd;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.hazelcast.instance.BuildInfoProvider;
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.nio.Address;
 import com.hazelcast.spi.discovery.DiscoveryNode;
 
-import mousio.etcd4j.EtcdClient;
-import mousio.etcd4j.responses.EtcdKeysResponse;
-
 /**
  * Use derivatives of this EtcdRegistrator if you want auto-registration
  * of this hazelcast instance in etcd under the key-path
@@ -30,7 +34,41 @@ import mousio.etcd4j.responses.EtcdKeysResponse;
  * Common custom options (specified as JSON value for the 'etcd-registrator-config')
  * which are available to all derivative classes
  *
- *	 - None at this time
+ *	 - ttlSeconds: if > 0 register with this TTL and keep the key alive via a background
+ *	               heartbeat that refreshes the TTL (etcd refresh=true, the value is not
+ *	               rewritten and watchers are not notified). If the key disappears or the initial
+ *	               register() failed, the heartbeat re-creates it. Default 0 (permanent key,
+ *	               no heartbeat, legacy behavior)
+ *
+ *	 - refreshIntervalMS: how often the heartbeat runs, must be less than ttlSeconds.
+ *	                      Default 1/3 of ttlSeconds
+ *
+ *	 - refreshJitterMS: +/- random jitter applied to each refresh interval so large
+ *	                    fleets do not refresh in lockstep. Default 1/10 of refreshIntervalMS
+ *
+ *	 - valueFormat: 'json' (default) or 'compact', the encoding of our registered value.
+ *	                Readers auto-detect either, @see EtcdNodeValueCodec
+ *
+ *	 - addresses: additional labelled addresses registered (in the same write) along w/
+ *	              our primary one, as {"label":"ip:port",...}. The values 'private' and
+ *	              'public' stand for Hazelcast's private/public address of this member.
+ *	              Members pick among them via 'etcd-address-labels'/'etcd-address-subnets',
+ *	              @see EtcdAddressSelector
+ *
+ *	 - tags: string tags registered along w/ our address, as {"role":"data","uuid":"...",...},
+ *	         which members can filter discovery by via 'etcd-discovery-filter',
+ *	         @see EtcdDiscoveryFilter. Keys may not contain '=', ',' or '|', values ',' or '|'.
+ *
+ *	 - versionTag: if true add a 'version' tag w/ this member's Hazelcast version (unless
+ *	               configured in 'tags'). Default false: tags make compact values carry
+ *	               trailing fields, which discovery then has to decode.
+ *
+ * drain() re-registers our value tagged 'draining' ahead of deregister(), see
+ * 'etcd-drain-grace-ms'.
+ *
+ * registerAsync() determines our key/value before returning, only the write
+ * to etcd happens in the background. deregisterAsync() likewise stops the
+ * heartbeat before returning.
  *   			           		 
  * @author bitsofinfo
  *
@@ -45,12 +83,124 @@ public abstract class BaseRegistrator implements EtcdRegistrator {
 	protected String etcdUriStrings = null;
 	protected List<URI> etcdUris = new ArrayList<URI>();
 	
+	// properties that are supported in the JSON value for the 'etcd-registrator-config' config property
+	public static final String CONFIG_PROP_TTL_SECONDS = "ttlSeconds";
+	public static final String CONFIG_PROP_REFRESH_INTERVAL_MS = "refreshIntervalMS";
+	public static final String CONFIG_PROP_REFRESH_JITTER_MS = "refreshJitterMS";
+	public static final String CONFIG_PROP_VALUE_FORMAT = "valueFormat";
+	public static final String CONFIG_PROP_ADDRESSES = "addresses";
+	public static final String CONFIG_PROP_TAGS = "tags";
+	public static final String CONFIG_PROP_VERSION_TAG = "versionTag";
+	
+	// tag added w/ 'versionTag' unless configured
+	public static final String TAG_VERSION = "version";
+	
+	// tag added by drain(), members w/ it are never discovered
+	public static final String TAG_DRAINING = "draining";
+	
+	// placeholder 'addresses' values
+	public static final String ADDRESS_PRIVATE = "private";
+	public static final String ADDRESS_PUBLIC = "public";
+	
 	private String myServiceId = null;
 	private String myEtcdKey = null;
+	private volatile String myEtcdValue = null;
+	private String valueFormat = EtcdNodeValueCodec.FORMAT_JSON;
+	private List<EtcdNodeAddress> myAddresses = null;
+	private Map<String,String> myTags = null;
+	
+	// optional locality published for partition grouping
+	private String zone = null;
+	private String rack = null;
+	private String host = null;
+	
+	// TLS client identity/trust for the transport we create ourselves in init()
+	private String clientCertLocation = null;
+	private String clientKeyLocation = null;
+	private String trustedCertsLocation = null;
+	
+	// sharded layout /[etcdServiceName]/bucket-N/[serviceId], disabled when <= 0
+	private int shardBuckets = 0;
+	
+	// TTL/heartbeat, disabled when ttlSeconds <= 0
+	private int ttlSeconds = 0;
+	private long refreshIntervalMS = 0;
+	private long refreshJitterMS = 0;
+	private ScheduledExecutorService heartbeat = null;
+	private final Random random = new Random();
+	
+	// how we talk to etcd, if not provided we create our own in init()
+	private EtcdTransport etcdTransport = null;
+	
+	// bounds our put/refresh/delete, unless our transport enforces its own
+	private long writeTimeoutMS = EtcdTransport.DEFAULT_TIMEOUT_MS;
 	
 	protected abstract Address determineMyLocalAddress(DiscoveryNode localDiscoveryNode,  
 													   Map<String, Object> registratorConfig) throws Exception;
 
+	/**
+	 * Provide the (shared) EtcdTransport this registrator should use,
+	 * invoked by the EtcdDiscoveryStrategy prior to init(). The transport is
+	 * retained until deregister() completes.
+	 * 
+	 * @param etcdTransport
+	 */
+	public void setEtcdTransport(EtcdTransport etcdTransport) {
+		etcdTransport.retain();
+		this.etcdTransport = etcdTransport;
+	}
+
+	/**
+	 * Register under /[etcdServiceName]/bucket-N/[serviceId] rather than
+	 * directly under /[etcdServiceName], invoked by the EtcdDiscoveryStrategy
+	 * prior to init() when 'etcd-shard-buckets' is configured
+	 * 
+	 * @param shardBuckets <= 0 for the flat layout
+	 */
+	public void setShardBuckets(int shardBuckets) {
+		this.shardBuckets = shardBuckets;
+	}
+
+	/**
+	 * The 'etcd-write-timeout-ms' for our put/refresh/delete, invoked by the
+	 * EtcdDiscoveryStrategy prior to init(). A ResilientEtcdTransport enforces
+	 * its own write timeout regardless.
+	 * 
+	 * @param writeTimeoutMS
+	 */
+	public void setWriteTimeoutMS(long writeTimeoutMS) {
+		this.writeTimeoutMS = writeTimeoutMS;
+	}
+
+	/**
+	 * TLS client cert/key and trusted certs for https 'etcd-uris', used if no
+	 * EtcdTransport is provided, invoked by the EtcdDiscoveryStrategy prior to init()
+	 * 
+	 * @param clientCertLocation may be null
+	 * @param clientKeyLocation may be null
+	 * @param trustedCertsLocation may be null
+	 */
+	public void setTlsLocations(String clientCertLocation, String clientKeyLocation, String trustedCertsLocation) {
+		this.clientCertLocation = clientCertLocation;
+		this.clientKeyLocation = clientKeyLocation;
+		this.trustedCertsLocation = trustedCertsLocation;
+	}
+
+	/**
+	 * Publish this member's zone/rack/host along w/ its address, invoked by
+	 * the EtcdDiscoveryStrategy prior to init() when 'etcd-zone', 'etcd-rack'
+	 * or 'etcd-host' (or their environment variables) are set
+	 * 
+	 * @param zone may be null
+	 * @param rack may be null
+	 * @param host may be null
+	 */
+	public void setLocality(String zone, String rack, String host) {
+		this.zone = zone;
+		this.rack = rack;
+		this.host = host;
+	}
+
 	@Override
 	public void init(List<URI> etcdUris,
 	                 String etcdUsername,
@@ -65,6 +215,40 @@ public abstract class BaseRegistrator implements EtcdRegistrator {
 		this.etcdPassword = etcdPassword;
 		this.etcdServiceName = etcdServiceName;
 		this.etcdUris = etcdUris;
+		
+		if (registratorConfig != null) {
+			this.ttlSeconds = getInt(registratorConfig, CONFIG_PROP_TTL_SECONDS, 0);
+			this.refreshIntervalMS = getInt(registratorConfig, CONFIG_PROP_REFRESH_INTERVAL_MS, (ttlSeconds * 1000) / 3);
+			this.refreshJitterMS = getInt(registratorConfig, CONFIG_PROP_REFRESH_JITTER_MS, (int)(refreshIntervalMS / 10));
+			
+			Object format = registratorConfig.get(CONFIG_PROP_VALUE_FORMAT);
+			if (format != null) {
+				this.valueFormat = EtcdNodeValueCodec.toFormat(format.toString());
+				logger.info("Registrator config properties: " + CONFIG_PROP_VALUE_FORMAT + ":" + this.valueFormat);
+			}
+			
+			// a heartbeat slower than the ttl lets our key expire between refreshes
+			if (ttlSeconds > 0 && refreshIntervalMS >= ttlSeconds * 1000L) {
+				String msg = "Registrator config " + CONFIG_PROP_REFRESH_INTERVAL_MS + ":" + refreshIntervalMS + 
+							 " must be less than " + CONFIG_PROP_TTL_SECONDS + ":" + ttlSeconds + " (in ms)";
+				logger.severe(msg);
+				throw new Exception(msg);
+			}
+			
+			if (ttlSeconds > 0) {
+				logger.info("Registrator config properties: " + CONFIG_PROP_TTL_SECONDS + ":" + ttlSeconds + 
+						" " + CONFIG_PROP_REFRESH_INTERVAL_MS + ":" + refreshIntervalMS + 
+						" " + CONFIG_PROP_REFRESH_JITTER_MS + ":" + refreshJitterMS);
+			}
+		}
+
+		// once the config is known good
+		if (this.etcdTransport == null) {
+			this.etcdTransport = new EtcdV2Transport(
+					EtcdClientPool.acquire(new EtcdConnectionConfig(etcdUris, etcdUsername, etcdPassword, 
+																	clientCertLocation, clientKeyLocation, trustedCertsLocation), 
+										   1, 0, 0, logger), logger);
+		}
 
 		try {
 			/**
@@ -73,6 +257,15 @@ public abstract class BaseRegistrator implements EtcdRegistrator {
 			this.myLocalAddress = determineMyLocalAddress(localDiscoveryNode, registratorConfig);
 			logger.info("Determined local DiscoveryNode address to use: " + myLocalAddress);
 			
+			if (registratorConfig != null && registratorConfig.get(CONFIG_PROP_ADDRESSES) != null) {
+				this.myAddresses = determineMyAddresses(localDiscoveryNode, registratorConfig.get(CONFIG_PROP_ADDRESSES));
+				logger.info("Registrator config properties: " + CONFIG_PROP_ADDRESSES + ":" + this.myAddresses);
+			}
+			
+			this.myTags = determineMyTags(registratorConfig != null ? registratorConfig.get(CONFIG_PROP_TAGS) : null,
+										  registratorConfig != null && Boolean.TRUE.equals(registratorConfig.get(CONFIG_PROP_VERSION_TAG)));
+			logger.info("Registrator config properties: " + CONFIG_PROP_TAGS + ":" + this.myTags);
+			
 		} catch(Exception e) {
 			String msg = "Unexpected error in configuring LocalDiscoveryNodeRegistration: " + e.getMessage();
 			logger.severe(msg,e);
@@ -81,20 +274,145 @@ public abstract class BaseRegistrator implements EtcdRegistrator {
 		
 	}
 	
+	/**
+	 * Parse the labelled 'addresses' to register in addition to our primary address
+	 * 
+	 * @param localDiscoveryNode
+	 * @param addressesConfig {"label":"ip:port"|"private"|"public",...}
+	 * @return
+	 * @throws Exception if malformed
+	 */
+	protected List<EtcdNodeAddress> determineMyAddresses(DiscoveryNode localDiscoveryNode, Object addressesConfig) throws Exception {
+		if (!(addressesConfig instanceof Map)) {
+			throw new Exception(CONFIG_PROP_ADDRESSES + " must be a JSON object of label:address, not: " + addressesConfig);
+		}
+		
+		List<EtcdNodeAddress> addresses = new ArrayList<EtcdNodeAddress>();
+		for (Map.Entry<?,?> entry : ((Map<?,?>)addressesConfig).entrySet()) {
+			String label = entry.getKey().toString();
+			String value = String.valueOf(entry.getValue()).trim();
+			
+			Address address = null;
+			if (ADDRESS_PRIVATE.equalsIgnoreCase(value)) {
+				address = localDiscoveryNode != null ? localDiscoveryNode.getPrivateAddress() : null;
+			} else if (ADDRESS_PUBLIC.equalsIgnoreCase(value)) {
+				address = localDiscoveryNode != null ? localDiscoveryNode.getPublicAddress() : null;
+			} else {
+				int colon = value.lastIndexOf(':');
+				if (colon <= 0) {
+					throw new Exception(CONFIG_PROP_ADDRESSES + " '" + label + "' must be ip:port, not: " + value);
+				}
+				address = new Address(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+			}
+			
+			if (address == null) {
+				logger.warning("Not registering address '" + label + "', Hazelcast has no " + value + " address for this member");
+				continue;
+			}
+			addresses.add(new EtcdNodeAddress(label, address.getInetAddress().getHostAddress(), address.getPort()));
+		}
+		return addresses;
+	}
+	
+	/**
+	 * Parse the 'tags' to register, optionally adding our Hazelcast 'version' if not configured
+	 * 
+	 * @param tagsConfig {"key":"value",...}, may be null
+	 * @param versionTag add the 'version' tag
+	 * @return
+	 * @throws Exception if malformed
+	 */
+	protected Map<String,String> determineMyTags(Object tagsConfig, boolean versionTag) throws Exception {
+		if (tagsConfig != null && !(tagsConfig instanceof Map)) {
+			throw new Exception(CONFIG_PROP_TAGS + " must be a JSON object of key:value, not: " + tagsConfig);
+		}
+		
+		Map<String,String> tags = new LinkedHashMap<String,String>();
+		if (tagsConfig != null) {
+			for (Map.Entry<?,?> entry : ((Map<?,?>)tagsConfig).entrySet()) {
+				String key = entry.getKey().toString().trim();
+				String value = String.valueOf(entry.getValue()).trim();
+				if (!EtcdNodeValueCodec.isValidTag(key, value)) {
+					throw new Exception(CONFIG_PROP_TAGS + " '" + key + "' has an invalid key or value: " + value);
+				}
+				tags.put(key, value);
+			}
+		}
+		
+		if (versionTag && !tags.containsKey(TAG_VERSION)) {
+			try {
+				tags.put(TAG_VERSION, BuildInfoProvider.getBuildInfo().getVersion());
+			} catch(Throwable e) {
+				// internal API, not fatal
+				logger.warning("Could not determine Hazelcast version for the '" + TAG_VERSION + "' tag: " + e.getMessage());
+			}
+		}
+		return tags;
+	}
+	
+	private static int getInt(Map<String, Object> registratorConfig, String prop, int defaultValue) {
+		Object value = registratorConfig.get(prop);
+		if (value instanceof Number) {
+			return ((Number)value).intValue();
+		}
+		return defaultValue;
+	}
+	
 	@Override
 	public String getMyServiceId() {
 		return this.myServiceId;
 	}
+	
+	/**
+	 * The full etcd key we registered under, null if not yet registered
+	 * 
+	 * @return
+	 */
+	public String getMyEtcdKey() {
+		return this.myEtcdKey;
+	}
 
 	@Override
 	public void register() throws Exception {
+		prepareRegistration();
 		
-		EtcdClient etcdClient = null;
+		// the heartbeat will keep retrying should the put below fail
+		if (this.ttlSeconds > 0) {
+			startHeartbeat();
+		}
 		
+		put();
+	}
+	
+	@Override
+	public CompletableFuture<Void> registerAsync() {
+		try {
+			prepareRegistration();
+		} catch(Exception e) {
+			CompletableFuture<Void> failed = new CompletableFuture<Void>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		
+		if (this.ttlSeconds > 0) {
+			startHeartbeat();
+		}
+		
+		return EtcdRegistratorExecutor.runAsync(new Callable<Void>() {
+			public Void call() throws Exception {
+				put();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Determine our service id, key and value
+	 * 
+	 * @throws Exception
+	 */
+	private void prepareRegistration() throws Exception {
 		try {
-			
-			// create our client
-			etcdClient = EtcdDiscoveryStrategy.getEtcdClient(etcdUris, etcdUsername, etcdPassword);
 			
 			// generate service id
 			this.myServiceId = this.etcdServiceName + "-" + 
@@ -103,47 +421,234 @@ public abstract class BaseRegistrator implements EtcdRegistrator {
 							   this.myLocalAddress.getPort();
 			
 			// etcd key
-			this.myEtcdKey = "/"+ this.etcdServiceName + "/" + this.myServiceId;
+			if (this.shardBuckets > 0) {
+				this.myEtcdKey = "/" + EtcdDiscoveryStrategy.bucketDir(this.etcdServiceName, 
+						EtcdDiscoveryStrategy.bucketOf(this.myServiceId, this.shardBuckets)) + "/" + this.myServiceId;
+			} else {
+				this.myEtcdKey = "/"+ this.etcdServiceName + "/" + this.myServiceId;
+			}
 			
-			// our value object
-			EtcdHazelcastNode node = new EtcdHazelcastNode(this.myLocalAddress.getInetAddress().getHostAddress(),
-								  						   this.myLocalAddress.getPort(),
-								  						   this.myLocalAddress.getHost());
+			this.myEtcdValue = encodeValue(this.myTags);
 			
-			// put it
-			EtcdKeysResponse response = etcdClient.put(this.myEtcdKey, 
-					new GsonBuilder().setDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN).create().toJson(node)).send().get();
+		} catch(Exception e) {
+			String msg = "Unexpected error in register(serviceId:"+myServiceId+"): " + e.getMessage();
+			logger.severe(msg,e);
+			throw new Exception(msg,e);
+		}
+	}
+	
+	/**
+	 * Our value w/ the given tags
+	 * 
+	 * @param tags
+	 * @return
+	 * @throws Exception
+	 */
+	private String encodeValue(Map<String,String> tags) throws Exception {
+		EtcdHazelcastNode node = new EtcdHazelcastNode(this.myLocalAddress.getInetAddress().getHostAddress(),
+							  						   this.myLocalAddress.getPort(),
+							  						   this.myLocalAddress.getHost());
+		
+		node.addresses = this.myAddresses;
+		node.zone = this.zone;
+		node.rack = this.rack;
+		node.host = this.host;
+		node.tags = tags;
+		
+		return EtcdNodeValueCodec.encode(node, this.valueFormat);
+	}
+	
+	/**
+	 * First phase of a graceful exit: rewrite our value w/ the 'draining' tag,
+	 * which discovery skips, while we are still reachable. The heartbeat (if any)
+	 * keeps the draining value until deregister().
+	 * 
+	 * @throws Exception
+	 */
+	public void drain() throws Exception {
+		if (this.myEtcdKey == null) {
+			// never registered
+			return;
+		}
+		
+		Map<String,String> tags = new LinkedHashMap<String,String>();
+		if (this.myTags != null) {
+			tags.putAll(this.myTags);
+		}
+		tags.put(TAG_DRAINING, "true");
+		this.myEtcdValue = encodeValue(tags);
+		
+		put();
+		logger.info("Draining, marked key: " + this.myEtcdKey + " as " + TAG_DRAINING);
+	}
+	
+	/**
+	 * (Re)write our full key/value
+	 * 
+	 * @throws Exception
+	 */
+	private void put() throws Exception {
+		Object jfrEvent = EtcdFlightRecorder.beginRegister();
+		try {
+			this.etcdTransport.put(this.myEtcdKey, this.myEtcdValue, this.ttlSeconds, getWriteTimeoutMS());
+			EtcdFlightRecorder.end(jfrEvent, String.valueOf(this.etcdUris), this.myEtcdKey, 1, 
+					this.myEtcdValue.length(), EtcdFlightRecorder.OUTCOME_SUCCESS);
 			
-			this.logger.info("Registered with Etcd["+etcdUriStrings+"] response=" + response.toString() + ", key: " + this.myEtcdKey);
+			this.logger.info("Registered with Etcd["+etcdUris+"] key: " + this.myEtcdKey + 
+					(this.ttlSeconds > 0 ? " ttl: " + this.ttlSeconds + "s" : ""));
 			
 		} catch(Exception e) {
+			EtcdFlightRecorder.end(jfrEvent, String.valueOf(this.etcdUris), this.myEtcdKey, 0, 
+					this.myEtcdValue.length(), outcomeOf(e));
+			
 			String msg = "Unexpected error in register(serviceId:"+myServiceId+"): " + e.getMessage();
 			logger.severe(msg,e);
 			throw new Exception(msg,e);
+		}
+	}
+	
+	private static String outcomeOf(Exception e) {
+		return (e instanceof EtcdCircuitOpenException) ? EtcdFlightRecorder.OUTCOME_CIRCUIT_OPEN : EtcdFlightRecorder.OUTCOME_FAILURE;
+	}
+	
+	/**
+	 * Refresh our key's TTL, re-creating the key if it no longer exists
+	 */
+	private void refreshOrReconcile() {
+		try {
+			// value untouched and no watch event fires
+			if (!this.etcdTransport.refresh(this.myEtcdKey, this.ttlSeconds, getWriteTimeoutMS())) {
+				logger.warning("Etcd key: " + this.myEtcdKey + " is gone (expired or deleted), re-registering");
+				put();
+			}
 			
-		} finally {
-			try { etcdClient.close(); } catch(Exception ignore){}
+		} catch(Exception e) {
+			// logged in put() or retried next heartbeat
+			logger.warning("Unexpected error refreshing TTL of key: " + this.myEtcdKey + " " + e.getMessage());
 		}
 	}
 	
+	private synchronized void startHeartbeat() {
+		if (this.heartbeat != null) {
+			return;
+		}
+		
+		this.heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-registration-heartbeat-" + myServiceId);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduleNextHeartbeat();
+	}
+	
+	private synchronized void scheduleNextHeartbeat() {
+		if (this.heartbeat == null) {
+			return;
+		}
+		
+		long delay = this.refreshIntervalMS;
+		if (this.refreshJitterMS > 0) {
+			delay += (long)((random.nextDouble() * 2 - 1) * this.refreshJitterMS);
+		}
+		
+		this.heartbeat.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refreshOrReconcile();
+				} finally {
+					scheduleNextHeartbeat();
+				}
+			}
+		}, Math.max(100, delay), TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stop the heartbeat and wait (bounded by the write timeout) for an
+	 * in-flight refresh or re-put to finish, so it cannot land after our delete
+	 */
+	private void stopHeartbeat() {
+		ScheduledExecutorService stopping = null;
+		synchronized(this) {
+			stopping = this.heartbeat;
+			this.heartbeat = null;
+		}
+		if (stopping == null) {
+			return;
+		}
+		
+		// not while holding our lock, the heartbeat needs it to finish
+		stopping.shutdownNow();
+		try {
+			if (!stopping.awaitTermination(getWriteTimeoutMS(), TimeUnit.MILLISECONDS)) {
+				logger.warning("Etcd registration heartbeat for key: " + this.myEtcdKey + " did not stop w/in " + 
+						getWriteTimeoutMS() + "ms, deleting anyway");
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private long getWriteTimeoutMS() {
+		if (this.etcdTransport instanceof ResilientEtcdTransport) {
+			return ((ResilientEtcdTransport)this.etcdTransport).getWriteTimeoutMS();
+		}
+		return this.writeTimeoutMS;
+	}
+	
 	@Override
 	public void deregister() throws Exception {
-		EtcdClient etcdClient = null;
 		
+		// don't let the heartbeat re-create us
+		stopHeartbeat();
+		
+		delete();
+	}
+	
+	@Override
+	public CompletableFuture<Void> deregisterAsync() {
+		
+		// don't let the heartbeat re-create us
+		stopHeartbeat();
+		
+		return EtcdRegistratorExecutor.runAsync(new Callable<Void>() {
+			public Void call() throws Exception {
+				delete();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Delete our key and let go of the transport
+	 * 
+	 * @throws Exception
+	 */
+	private void delete() throws Exception {
+		// never registered, we are done w/ etcd all the same
+		if (this.myEtcdKey == null) {
+			this.etcdTransport.release();
+			return;
+		}
+		
+		Object jfrEvent = EtcdFlightRecorder.beginDeregister();
 		try {
-			// create our client
-			etcdClient = EtcdDiscoveryStrategy.getEtcdClient(etcdUris, etcdUsername, etcdPassword);
-			
-			// delete
-			etcdClient.delete(this.myEtcdKey).send().get();
+			this.etcdTransport.delete(this.myEtcdKey, getWriteTimeoutMS());
+			EtcdFlightRecorder.end(jfrEvent, String.valueOf(this.etcdUris), this.myEtcdKey, 1, 0, EtcdFlightRecorder.OUTCOME_SUCCESS);
 			
 		} catch(Exception e) {
+			EtcdFlightRecorder.end(jfrEvent, String.valueOf(this.etcdUris), this.myEtcdKey, 0, 0, outcomeOf(e));
+			
 			String msg = "Unexpected error in etcdClient.delete(key:"+this.myEtcdKey+"): " + e.getMessage();
 			logger.severe(msg,e);
 			throw new Exception(msg,e);
 			
 		} finally {
-			try { etcdClient.close(); } catch(Exception ignore){}
+			// we are done w/ etcd
+			this.etcdTransport.release();
 		}
 	}
 
@@ -3,6 +3,7 @@ package org.bitsofinfo.hazelcast.discovery.etcd;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.spi.discovery.DiscoveryNode;
@@ -37,4 +38,14 @@ public class DoNothingRegistrator implements EtcdRegistrator {
 	public void deregister() throws Exception {
 	}
 
+	@Override
+	public CompletableFuture<Void> registerAsync() {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public CompletableFuture<Void> deregisterAsync() {
+		return CompletableFuture.completedFuture(null);
+	}
+
 }
@@ -0,0 +1,144 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hazelcast.nio.Address;
+
+/**
+ * Picks which of a member's registered addresses this member should
+ * connect to, i.e. a peer's in-VPC address rather than its NAT'd public one.
+ *
+ *  - 'etcd-address-labels': comma separated labels in order of preference,
+ *                           the first label a member registered an address under wins
+ *
+ *  - 'etcd-address-subnets': comma separated CIDRs (i.e. 10.0.0.0/16), otherwise the
+ *                            first of the member's addresses (primary first) within one wins
+ *
+ * Failing both the member's primary ip/port is used, as is the case for
+ * members that register a single address.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdAddressSelector {
+
+	/**
+	 * A parsed CIDR
+	 */
+	private static class Subnet {
+		final byte[] network;
+		final int prefixLength;
+
+		Subnet(byte[] network, int prefixLength) {
+			this.network = network;
+			this.prefixLength = prefixLength;
+		}
+
+		boolean contains(byte[] address) {
+			if (address.length != network.length) {
+				return false;
+			}
+			for (int bit=0; bit<prefixLength; bit++) {
+				int mask = 0x80 >> (bit % 8);
+				if ((address[bit / 8] & mask) != (network[bit / 8] & mask)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private final List<String> labels = new ArrayList<String>();
+	private final List<Subnet> subnets = new ArrayList<Subnet>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param labels comma separated, in order of preference, may be null
+	 * @param subnets comma separated CIDRs, may be null
+	 * @throws IllegalArgumentException if a subnet is not a valid CIDR
+	 */
+	public EtcdAddressSelector(String labels, String subnets) {
+		if (labels != null) {
+			for (String label : labels.split(",")) {
+				if (!label.trim().isEmpty()) {
+					this.labels.add(label.trim());
+				}
+			}
+		}
+		if (subnets != null) {
+			for (String cidr : subnets.split(",")) {
+				if (!cidr.trim().isEmpty()) {
+					this.subnets.add(toSubnet(cidr.trim()));
+				}
+			}
+		}
+	}
+
+	private static Subnet toSubnet(String cidr) {
+		try {
+			int slash = cidr.indexOf('/');
+			byte[] network = InetAddress.getByName(slash == -1 ? cidr : cidr.substring(0, slash)).getAddress();
+			int prefixLength = slash == -1 ? network.length * 8 : Integer.parseInt(cidr.substring(slash + 1));
+			if (prefixLength < 0 || prefixLength > network.length * 8) {
+				throw new IllegalArgumentException("Invalid subnet prefix length: " + cidr);
+			}
+			return new Subnet(network, prefixLength);
+
+		} catch(UnknownHostException | NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid subnet: " + cidr, e);
+		}
+	}
+
+	/**
+	 * @return true if neither labels nor subnets are configured
+	 */
+	public boolean isEmpty() {
+		return labels.isEmpty() && subnets.isEmpty();
+	}
+
+	/**
+	 * Pick the address to use for a member
+	 *
+	 * @param ip the member's primary ip
+	 * @param port the member's primary port
+	 * @param addresses the member's labelled addresses, may be null
+	 * @return
+	 * @throws UnknownHostException
+	 */
+	public Address select(String ip, int port, List<EtcdNodeAddress> addresses) throws UnknownHostException {
+		if (addresses != null) {
+			for (String label : labels) {
+				for (EtcdNodeAddress address : addresses) {
+					if (label.equals(address.label) && address.ip != null && address.port != null) {
+						return new Address(address.ip, address.port);
+					}
+				}
+			}
+		}
+
+		if (!subnets.isEmpty() && !inSubnet(ip) && addresses != null) {
+			for (EtcdNodeAddress address : addresses) {
+				if (address.ip != null && address.port != null && inSubnet(address.ip)) {
+					return new Address(address.ip, address.port);
+				}
+			}
+		}
+
+		return new Address(ip, port);
+	}
+
+	private boolean inSubnet(String ip) throws UnknownHostException {
+		byte[] address = InetAddress.getByName(ip).getAddress();
+		for (Subnet subnet : subnets) {
+			if (subnet.contains(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,19 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * Thrown by a ResilientEtcdTransport, without contacting Etcd, while
+ * its circuit breaker is open after repeated failures. Callers should
+ * fall back to whatever they last successfully read.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdCircuitOpenException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public EtcdCircuitOpenException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,400 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hazelcast.logging.ILogger;
+
+import io.netty.handler.ssl.SslContext;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdException;
+
+/**
+ * Long-lived, reference-counted holder of EtcdClients that are
+ * shared by all strategies/registrators in this JVM that connect
+ * to Etcd with an equal EtcdConnectionConfig (endpoints, credentials
+ * and TLS identity)
+ *
+ * Building an EtcdClient is expensive (netty bootstrap and for https
+ * a full SslContext) so clients are kept alive across calls and only
+ * rebuilt when they fail (see invalidate()) or have sat idle for
+ * longer than the configured idle timeout.
+ *
+ * Clients do their I/O on the JVM-wide EtcdNettyResources event loop group
+ * (unless ioThreads <= 0, then each client creates its own).
+ *
+ * Usage: acquire() a pool, borrow() a client for each call (do NOT close it),
+ * invalidate() it if the call failed at the transport level, giveBack() it
+ * once the call is over and release() the pool when you are done with it
+ * entirely. The last release() closes all underlying clients.
+ *
+ * A client is never closed under a call still using it: when invalidated,
+ * idle, superseded by rotated TLS material or its pool released while
+ * borrowed, it is retired (no longer handed out) and closed on its last
+ * giveBack().
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdClientPool {
+
+	// all live pools in this JVM
+	private static final Map<EtcdConnectionConfig, EtcdClientPool> POOLS =
+			new HashMap<EtcdConnectionConfig, EtcdClientPool>();
+
+	// shared, lazily created reaper that closes idle clients
+	private static ScheduledExecutorService idleReaper = null;
+
+	private final EtcdConnectionConfig connectionConfig;
+	private final ILogger logger;
+	private final Slot[] slots;
+	private final long idleTimeoutMS;
+	private final EtcdSslContextCache sslContextCache;
+	private final EtcdNettyResources nettyResources;
+	private final AtomicInteger nextSlot = new AtomicInteger(0);
+
+	// every open client, to find it again on giveBack()/invalidate()
+	private final Map<EtcdClient, PooledClient> pooled = new IdentityHashMap<EtcdClient, PooledClient>();
+
+	// guarded by POOLS
+	private int refCount = 0;
+	private volatile boolean closed = false;
+	private ScheduledFuture<?> idleReaping = null;
+
+	// guarded by itself
+	private static class Slot {
+		PooledClient current = null;
+		long lastUsedAt = 0;
+	}
+
+	// guarded by its slot
+	private static class PooledClient {
+		final Slot slot;
+		final EtcdClient client;
+		final long sslGeneration;
+		int borrowed = 0;
+		boolean retired = false;
+
+		PooledClient(Slot slot, EtcdClient client, long sslGeneration) {
+			this.slot = slot;
+			this.client = client;
+			this.sslGeneration = sslGeneration;
+		}
+	}
+
+	private EtcdClientPool(EtcdConnectionConfig connectionConfig, int poolSize, long idleTimeoutMS, long tlsReloadCheckMS, 
+						   int ioThreads, ILogger logger) {
+		this.connectionConfig = connectionConfig;
+		this.idleTimeoutMS = idleTimeoutMS;
+		this.logger = logger;
+
+		if (connectionConfig.isHttps()) {
+			this.sslContextCache = new EtcdSslContextCache(connectionConfig.getClientCertLocation(),
+														   connectionConfig.getClientKeyLocation(),
+														   connectionConfig.getTrustedCertsLocation(),
+														   tlsReloadCheckMS, logger);
+		} else {
+			this.sslContextCache = null;
+		}
+
+		this.nettyResources = ioThreads > 0 ? EtcdNettyResources.acquire(ioThreads, logger) : null;
+
+		this.slots = new Slot[Math.max(1, poolSize)];
+		for (int i=0; i<slots.length; i++) {
+			slots[i] = new Slot();
+		}
+	}
+
+	/**
+	 * Acquire (and retain) the pool for the given connection config, creating
+	 * it if this is the first reference. The poolSize/idleTimeoutMS only apply
+	 * when the pool is created, subsequent acquirers share the existing one.
+	 *
+	 * @param connectionConfig
+	 * @param poolSize number of clients to round-robin calls across
+	 * @param idleTimeoutMS clients unused for longer than this are closed (<= 0 never)
+	 * @param tlsReloadCheckMS how often to check the TLS files for changes (<= 0 never)
+	 * @param logger
+	 * @return
+	 */
+	public static EtcdClientPool acquire(EtcdConnectionConfig connectionConfig, int poolSize, long idleTimeoutMS, long tlsReloadCheckMS, ILogger logger) {
+		return acquire(connectionConfig, poolSize, idleTimeoutMS, tlsReloadCheckMS, EtcdNettyResources.DEFAULT_IO_THREADS, logger);
+	}
+
+	/**
+	 * Acquire (and retain) the pool for the given connection config, creating
+	 * it if this is the first reference. The poolSize/idleTimeoutMS/ioThreads only
+	 * apply when the pool is created, subsequent acquirers share the existing one.
+	 *
+	 * @param connectionConfig
+	 * @param poolSize number of clients to round-robin calls across
+	 * @param idleTimeoutMS clients unused for longer than this are closed (<= 0 never)
+	 * @param tlsReloadCheckMS how often to check the TLS files for changes (<= 0 never)
+	 * @param ioThreads size of the shared EtcdNettyResources event loop group (<= 0 one per client)
+	 * @param logger
+	 * @return
+	 */
+	public static EtcdClientPool acquire(EtcdConnectionConfig connectionConfig, int poolSize, long idleTimeoutMS, long tlsReloadCheckMS, 
+										 int ioThreads, ILogger logger) {
+		synchronized(POOLS) {
+			EtcdClientPool pool = POOLS.get(connectionConfig);
+			if (pool == null) {
+				pool = new EtcdClientPool(connectionConfig, poolSize, idleTimeoutMS, tlsReloadCheckMS, ioThreads, logger);
+				POOLS.put(connectionConfig, pool);
+				pool.scheduleIdleReaping();
+				logger.info("Created EtcdClientPool size=" + pool.slots.length +
+						" idleTimeoutMS=" + idleTimeoutMS + " for " + connectionConfig);
+			}
+			pool.refCount++;
+			return pool;
+		}
+	}
+
+	/**
+	 * Add another reference to this pool, each retain() must be
+	 * paired with a release()
+	 */
+	public void retain() {
+		synchronized(POOLS) {
+			if (closed) {
+				throw new IllegalStateException("EtcdClientPool already closed for " + connectionConfig);
+			}
+			refCount++;
+		}
+	}
+
+	/**
+	 * Release a reference to this pool, when the last reference
+	 * is released all clients are closed.
+	 */
+	public void release() {
+		synchronized(POOLS) {
+			if (closed) {
+				return;
+			}
+			refCount--;
+			if (refCount > 0) {
+				return;
+			}
+			closed = true;
+			POOLS.remove(connectionConfig);
+
+			if (idleReaping != null) {
+				idleReaping.cancel(false);
+			}
+
+			if (POOLS.isEmpty() && idleReaper != null) {
+				idleReaper.shutdownNow();
+				idleReaper = null;
+			}
+		}
+
+		for (Slot slot : slots) {
+			synchronized(slot) {
+				retire(slot.current);
+			}
+		}
+		if (nettyResources != null) {
+			nettyResources.release();
+		}
+		logger.info("Closed EtcdClientPool for " + connectionConfig);
+	}
+
+	public EtcdConnectionConfig getConnectionConfig() {
+		return connectionConfig;
+	}
+
+	/**
+	 * Borrow a live EtcdClient, building one if needed. Callers
+	 * must NOT close() the returned client but giveBack() it.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	public EtcdClient borrow() throws Exception {
+		// cached, only rebuilt if the TLS files changed
+		SslContext sslContext = null;
+		long sslGeneration = 0;
+		if (sslContextCache != null) {
+			sslContext = sslContextCache.getSslContext();
+			sslGeneration = sslContextCache.getGeneration();
+		}
+
+		Slot slot = slots[(nextSlot.getAndIncrement() & Integer.MAX_VALUE) % slots.length];
+		synchronized(slot) {
+			// checked under the slot, release() retires each slot after closing,
+			// so a client we build here is always retired by it
+			if (closed) {
+				throw new IllegalStateException("EtcdClientPool already closed for " + connectionConfig);
+			}
+
+			// TLS material rotated? rebuild w/ the new context
+			if (slot.current != null && slot.current.sslGeneration != sslGeneration) {
+				retire(slot.current);
+			}
+
+			if (slot.current == null) {
+				EtcdClient client = EtcdDiscoveryStrategy.getEtcdClient(connectionConfig.getEtcdUris(),
+																		connectionConfig.getUsername(),
+																		connectionConfig.getPassword(),
+																		sslContext,
+																		nettyResources,
+																		connectionConfig.getMaxFrameSize());
+				slot.current = new PooledClient(slot, client, sslGeneration);
+				synchronized(pooled) {
+					pooled.put(client, slot.current);
+				}
+			}
+			slot.current.borrowed++;
+			slot.lastUsedAt = System.currentTimeMillis();
+			return slot.current.client;
+		}
+	}
+
+	/**
+	 * Return a client obtained from borrow(), once per borrow()
+	 *
+	 * @param client null is ignored
+	 */
+	public void giveBack(EtcdClient client) {
+		PooledClient pooledClient = pooledClient(client);
+		if (pooledClient == null) {
+			return;
+		}
+		synchronized(pooledClient.slot) {
+			pooledClient.borrowed--;
+			if (pooledClient.retired && pooledClient.borrowed <= 0) {
+				close(pooledClient);
+			}
+		}
+	}
+
+	/**
+	 * Report that a call made with the given client failed. If the failure was
+	 * at the transport level (i.e. not an error response from etcd itself, nor
+	 * the caller giving up via interruption) the client is retired, closed once
+	 * given back, and a new one built on the next borrow()
+	 *
+	 * @param client
+	 * @param cause
+	 */
+	public void invalidate(EtcdClient client, Throwable cause) {
+		if (client == null || cause instanceof EtcdException || cause instanceof InterruptedException) {
+			return;
+		}
+
+		PooledClient pooledClient = pooledClient(client);
+		if (pooledClient == null) {
+			return;
+		}
+		synchronized(pooledClient.slot) {
+			if (!pooledClient.retired) {
+				logger.warning("Invalidating EtcdClient for " + connectionConfig +
+						" due to: " + (cause != null ? cause.getMessage() : null));
+				retire(pooledClient);
+			}
+		}
+	}
+
+	/**
+	 * Number of clients retired but not yet closed, as still borrowed
+	 *
+	 * @return
+	 */
+	int getRetiredInUse() {
+		int retiredInUse = 0;
+		synchronized(pooled) {
+			for (PooledClient pooledClient : pooled.values()) {
+				if (pooledClient.retired) {
+					retiredInUse++;
+				}
+			}
+		}
+		return retiredInUse;
+	}
+
+	private PooledClient pooledClient(EtcdClient client) {
+		if (client == null) {
+			return null;
+		}
+		synchronized(pooled) {
+			return pooled.get(client);
+		}
+	}
+
+	// caller holds the client's slot
+	private void retire(PooledClient pooledClient) {
+		if (pooledClient == null || pooledClient.retired) {
+			return;
+		}
+		pooledClient.retired = true;
+		if (pooledClient.slot.current == pooledClient) {
+			pooledClient.slot.current = null;
+		}
+		if (pooledClient.borrowed <= 0) {
+			close(pooledClient);
+		}
+	}
+
+	// caller holds the client's slot
+	private void close(PooledClient pooledClient) {
+		synchronized(pooled) {
+			pooled.remove(pooledClient.client);
+		}
+		closeQuietly(pooledClient.client);
+	}
+
+	private void closeIdleClients() {
+		long now = System.currentTimeMillis();
+		for (Slot slot : slots) {
+			synchronized(slot) {
+				// in use is not idle
+				if (slot.current != null && slot.current.borrowed <= 0 && (now - slot.lastUsedAt) > idleTimeoutMS) {
+					retire(slot.current);
+				}
+			}
+		}
+	}
+
+	// caller holds POOLS
+	private void scheduleIdleReaping() {
+		if (idleTimeoutMS <= 0) {
+			return;
+		}
+
+		if (idleReaper == null) {
+			idleReaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "etcd-client-pool-reaper");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		long period = Math.max(1000, idleTimeoutMS / 2);
+		idleReaping = idleReaper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				closeIdleClients();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	private static void closeQuietly(EtcdClient client) {
+		try {
+			if (client != null) {
+				client.close();
+			}
+		} catch(Exception ignore){}
+	}
+
+}
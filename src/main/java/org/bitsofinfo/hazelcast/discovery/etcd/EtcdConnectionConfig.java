@@ -0,0 +1,165 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of how to connect to Etcd: the endpoint
+ * list, credentials, TLS identity (cert/key/trusted cert locations) and
+ * the largest response the (v2) clients accept.
+ *
+ * Used as the key for sharing EtcdClients via the EtcdClientPool, two
+ * configs that are equal can safely share the same underlying clients.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdConnectionConfig {
+
+	private final List<URI> etcdUris;
+	private final String username;
+	private final String password;
+	private final String clientCertLocation;
+	private final String clientKeyLocation;
+	private final String trustedCertsLocation;
+	private final int maxFrameSize;
+
+	public EtcdConnectionConfig(List<URI> etcdUris,
+								String username,
+								String password) {
+		this(etcdUris, username, password, null, null, null);
+	}
+
+	public EtcdConnectionConfig(List<URI> etcdUris,
+								String username,
+								String password,
+								String clientCertLocation,
+								String clientKeyLocation,
+								String trustedCertsLocation) {
+		this(etcdUris, username, password, clientCertLocation, clientKeyLocation, trustedCertsLocation,
+			 EtcdNettyResources.DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	public EtcdConnectionConfig(List<URI> etcdUris,
+								String username,
+								String password,
+								String clientCertLocation,
+								String clientKeyLocation,
+								String trustedCertsLocation,
+								int maxFrameSize) {
+
+		this.etcdUris = Collections.unmodifiableList(new ArrayList<URI>(etcdUris));
+		this.username = emptyToNull(username);
+		this.password = emptyToNull(password);
+		this.clientCertLocation = emptyToNull(clientCertLocation);
+		this.clientKeyLocation = emptyToNull(clientKeyLocation);
+		this.trustedCertsLocation = emptyToNull(trustedCertsLocation);
+		this.maxFrameSize = maxFrameSize > 0 ? maxFrameSize : EtcdNettyResources.DEFAULT_MAX_FRAME_SIZE;
+	}
+
+	private static String emptyToNull(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		return value.trim();
+	}
+
+	public List<URI> getEtcdUris() {
+		return etcdUris;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public String getClientCertLocation() {
+		return clientCertLocation;
+	}
+
+	public String getClientKeyLocation() {
+		return clientKeyLocation;
+	}
+
+	public String getTrustedCertsLocation() {
+		return trustedCertsLocation;
+	}
+
+	/**
+	 * @return the largest response (bytes) the v2 clients accept
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * The same credentials/TLS identity for a single one of our endpoints
+	 *
+	 * @param etcdUri
+	 * @return
+	 */
+	public EtcdConnectionConfig forUri(URI etcdUri) {
+		return new EtcdConnectionConfig(Collections.singletonList(etcdUri), username, password,
+										clientCertLocation, clientKeyLocation, trustedCertsLocation, maxFrameSize);
+	}
+
+	/**
+	 * All uris must be HTTPS or HTTP (not intermixed) so we
+	 * only need to look at the first one
+	 *
+	 * @return
+	 */
+	public boolean isHttps() {
+		return !etcdUris.isEmpty() &&
+				"https".equalsIgnoreCase(etcdUris.get(0).getScheme());
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + etcdUris.hashCode();
+		result = prime * result + ((username == null) ? 0 : username.hashCode());
+		result = prime * result + ((password == null) ? 0 : password.hashCode());
+		result = prime * result + ((clientCertLocation == null) ? 0 : clientCertLocation.hashCode());
+		result = prime * result + ((clientKeyLocation == null) ? 0 : clientKeyLocation.hashCode());
+		result = prime * result + ((trustedCertsLocation == null) ? 0 : trustedCertsLocation.hashCode());
+		result = prime * result + maxFrameSize;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EtcdConnectionConfig)) {
+			return false;
+		}
+		EtcdConnectionConfig other = (EtcdConnectionConfig) obj;
+		return etcdUris.equals(other.etcdUris) &&
+				equal(username, other.username) &&
+				equal(password, other.password) &&
+				equal(clientCertLocation, other.clientCertLocation) &&
+				equal(clientKeyLocation, other.clientKeyLocation) &&
+				equal(trustedCertsLocation, other.trustedCertsLocation) &&
+				maxFrameSize == other.maxFrameSize;
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	@Override
+	public String toString() {
+		// never log the password
+		return "EtcdConnectionConfig[uris=" + etcdUris + ", username=" + username +
+				", clientCert=" + clientCertLocation + ", trustedCerts=" + trustedCertsLocation + "]";
+	}
+
+}
@@ -33,6 +33,21 @@ public class EtcdDiscoveryConfiguration {
 	public static final PropertyDefinition ETCD_DISCOVERY_DELAY_MS = 
 			new SimplePropertyDefinition("etcd-discovery-delay-ms", PropertyTypeConverter.INTEGER);
 
+	public static final PropertyDefinition ETCD_DISCOVERY_READY_CONDITION = 
+			new SimplePropertyDefinition("etcd-discovery-ready-condition", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_EXPECTED_MEMBERS = 
+			new SimplePropertyDefinition("etcd-expected-members", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_STABLE_MS = 
+			new SimplePropertyDefinition("etcd-stable-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_DISCOVERY_MODE = 
+			new SimplePropertyDefinition("etcd-discovery-mode", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_WATCH_MAX_STALENESS_MS = 
+			new SimplePropertyDefinition("etcd-watch-max-staleness-ms", true, PropertyTypeConverter.INTEGER);
+
 	public static final PropertyDefinition ETCD_CLIENT_CERT_LOCATION = 
 			new SimplePropertyDefinition("etcd-client-cert-location", true, PropertyTypeConverter.STRING);
 
@@ -42,5 +57,113 @@ public class EtcdDiscoveryConfiguration {
 	public static final PropertyDefinition ETCD_TRUSTED_CERT_LOCATION = 
 			new SimplePropertyDefinition("etcd-trusted-cert-location", true, PropertyTypeConverter.STRING);
 	
+	public static final PropertyDefinition ETCD_TLS_RELOAD_CHECK_MS = 
+			new SimplePropertyDefinition("etcd-tls-reload-check-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_CLIENT_POOL_SIZE = 
+			new SimplePropertyDefinition("etcd-client-pool-size", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_CLIENT_IDLE_TIMEOUT_MS = 
+			new SimplePropertyDefinition("etcd-client-idle-timeout-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_API_VERSION = 
+			new SimplePropertyDefinition("etcd-api-version", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_SHARD_BUCKETS = 
+			new SimplePropertyDefinition("etcd-shard-buckets", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_SHARD_READ_BUCKETS = 
+			new SimplePropertyDefinition("etcd-shard-read-buckets", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_HEDGE_PERCENTILE = 
+			new SimplePropertyDefinition("etcd-hedge-percentile", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_HEDGE_MIN_DELAY_MS = 
+			new SimplePropertyDefinition("etcd-hedge-min-delay-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_HEDGE_MAX_IN_FLIGHT = 
+			new SimplePropertyDefinition("etcd-hedge-max-in-flight", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_ENDPOINT_PROBE_MS = 
+			new SimplePropertyDefinition("etcd-endpoint-probe-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_READ_TIMEOUT_MS = 
+			new SimplePropertyDefinition("etcd-read-timeout-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_WRITE_TIMEOUT_MS = 
+			new SimplePropertyDefinition("etcd-write-timeout-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_RETRY_MAX_ATTEMPTS = 
+			new SimplePropertyDefinition("etcd-retry-max-attempts", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_RETRY_BASE_DELAY_MS = 
+			new SimplePropertyDefinition("etcd-retry-base-delay-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_RETRY_MAX_DELAY_MS = 
+			new SimplePropertyDefinition("etcd-retry-max-delay-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_CIRCUIT_FAILURE_THRESHOLD = 
+			new SimplePropertyDefinition("etcd-circuit-failure-threshold", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_CIRCUIT_OPEN_MS = 
+			new SimplePropertyDefinition("etcd-circuit-open-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_SNAPSHOT_FILE = 
+			new SimplePropertyDefinition("etcd-snapshot-file", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_SNAPSHOT_MAX_AGE_MS = 
+			new SimplePropertyDefinition("etcd-snapshot-max-age-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_SNAPSHOT_CHECKSUM = 
+			new SimplePropertyDefinition("etcd-snapshot-checksum", true, PropertyTypeConverter.BOOLEAN);
+	
+	public static final PropertyDefinition ETCD_JMX_ENABLED = 
+			new SimplePropertyDefinition("etcd-jmx-enabled", true, PropertyTypeConverter.BOOLEAN);
+	
+	public static final PropertyDefinition ETCD_METRICS_LISTENER = 
+			new SimplePropertyDefinition("etcd-metrics-listener", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_ADDRESS_LABELS = 
+			new SimplePropertyDefinition("etcd-address-labels", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_ADDRESS_SUBNETS = 
+			new SimplePropertyDefinition("etcd-address-subnets", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_ZONE = 
+			new SimplePropertyDefinition("etcd-zone", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_RACK = 
+			new SimplePropertyDefinition("etcd-rack", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_HOST = 
+			new SimplePropertyDefinition("etcd-host", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_PARTITION_GROUP_BY = 
+			new SimplePropertyDefinition("etcd-partition-group-by", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_DISCOVERY_FILTER = 
+			new SimplePropertyDefinition("etcd-discovery-filter", true, PropertyTypeConverter.STRING);
+	
+	public static final PropertyDefinition ETCD_SHARED_REFRESH_MS = 
+			new SimplePropertyDefinition("etcd-shared-refresh-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_IO_THREADS = 
+			new SimplePropertyDefinition("etcd-io-threads", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_MAX_FRAME_SIZE = 
+			new SimplePropertyDefinition("etcd-max-frame-size", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_DRAIN_GRACE_MS = 
+			new SimplePropertyDefinition("etcd-drain-grace-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_PROBE_TIMEOUT_MS = 
+			new SimplePropertyDefinition("etcd-probe-timeout-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_PROBE_CACHE_MS = 
+			new SimplePropertyDefinition("etcd-probe-cache-ms", true, PropertyTypeConverter.INTEGER);
+	
+	public static final PropertyDefinition ETCD_PROBE_DROP_UNREACHABLE = 
+			new SimplePropertyDefinition("etcd-probe-drop-unreachable", true, PropertyTypeConverter.BOOLEAN);
+	
 
 }
@@ -0,0 +1,133 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filters discovered members by the tags they registered with, the
+ * 'etcd-discovery-filter' expression. Comma separated clauses, ALL must match:
+ *
+ *  - key=v1|v2  : the tag is one of the values
+ *  - key!=v1|v2 : the tag is absent or none of the values
+ *  - key        : the tag is present
+ *  - !key       : the tag is absent
+ *
+ * A value ending in '*' matches any tag value starting w/ what precedes it.
+ *
+ *   i.e. role!=lite,version=3.12*,!draining
+ *
+ * Evaluated while a member's value is parsed, members not matching are
+ * skipped before their address is resolved.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdDiscoveryFilter {
+
+	/**
+	 * A single clause
+	 */
+	private static class Clause {
+		final String key;
+		final boolean negated;
+		final List<String> values;	// empty for presence checks
+
+		Clause(String key, boolean negated, List<String> values) {
+			this.key = key;
+			this.negated = negated;
+			this.values = values;
+		}
+
+		boolean matches(Map<String,String> tags) {
+			String tag = tags != null ? tags.get(key) : null;
+			if (values.isEmpty()) {
+				return (tag != null) != negated;
+			}
+			boolean any = false;
+			if (tag != null) {
+				for (String value : values) {
+					if (value.endsWith("*") ? tag.startsWith(value.substring(0, value.length() - 1)) : tag.equals(value)) {
+						any = true;
+						break;
+					}
+				}
+			}
+			return any != negated;
+		}
+	}
+
+	private final String expression;
+	private final List<Clause> clauses = new ArrayList<Clause>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param expression
+	 * @throws IllegalArgumentException if the expression is malformed
+	 */
+	public EtcdDiscoveryFilter(String expression) {
+		this.expression = expression;
+		if (expression == null) {
+			return;
+		}
+
+		for (String clause : expression.split(",")) {
+			clause = clause.trim();
+			if (clause.isEmpty()) {
+				continue;
+			}
+
+			int equals = clause.indexOf('=');
+			if (equals == -1) {
+				boolean negated = clause.startsWith("!");
+				String key = (negated ? clause.substring(1) : clause).trim();
+				if (key.isEmpty()) {
+					throw new IllegalArgumentException("Malformed discovery filter clause: " + clause);
+				}
+				clauses.add(new Clause(key, negated, Collections.<String>emptyList()));
+				continue;
+			}
+
+			boolean negated = equals > 0 && clause.charAt(equals - 1) == '!';
+			String key = clause.substring(0, negated ? equals - 1 : equals).trim();
+			List<String> values = new ArrayList<String>();
+			for (String value : clause.substring(equals + 1).split("\\|")) {
+				if (!value.trim().isEmpty()) {
+					values.add(value.trim());
+				}
+			}
+			if (key.isEmpty() || values.isEmpty()) {
+				throw new IllegalArgumentException("Malformed discovery filter clause: " + clause);
+			}
+			clauses.add(new Clause(key, negated, values));
+		}
+	}
+
+	/**
+	 * @return true if there are no clauses, everything matches
+	 */
+	public boolean isEmpty() {
+		return clauses.isEmpty();
+	}
+
+	/**
+	 * @param tags a member's tags, may be null
+	 * @return true if the member should be discovered
+	 */
+	public boolean matches(Map<String,String> tags) {
+		for (Clause clause : clauses) {
+			if (!clause.matches(tags)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+}
@@ -0,0 +1,285 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * Metrics of a single EtcdDiscoveryStrategy: kept here for JMX (see
+ * EtcdDiscoveryMetricsMBean) and forwarded to an optional, user supplied
+ * EtcdMetricsListener.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdDiscoveryMetrics implements EtcdDiscoveryMetricsMBean, EtcdMetricsListener {
+
+	public static final String JMX_DOMAIN = "org.bitsofinfo.hazelcast.discovery.etcd";
+
+	// distinguishes multiple strategies (i.e. HazelcastInstances) per JVM
+	private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+	private final EtcdDiscoveryStrategy strategy;
+	private final EtcdMetricsListener listener;
+	private final ILogger logger;
+	private String etcdServiceName;
+
+	private final EtcdLatencyHistogram discover = new EtcdLatencyHistogram();
+	private final EtcdLatencyHistogram register = new EtcdLatencyHistogram();
+	private final EtcdLatencyHistogram deregister = new EtcdLatencyHistogram();
+
+	private volatile int lastDiscoveredMemberCount = 0;
+	private final AtomicLong parseFailures = new AtomicLong();
+
+	// guarded by itself
+	private final Map<String,Long> endpointErrors = new TreeMap<String,Long>();
+
+	private ObjectName objectName = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param strategy source of the gauges
+	 * @param listener optional
+	 * @param logger
+	 */
+	public EtcdDiscoveryMetrics(EtcdDiscoveryStrategy strategy, EtcdMetricsListener listener, ILogger logger) {
+		this.strategy = strategy;
+		this.listener = listener;
+		this.logger = logger;
+	}
+
+	/**
+	 * Register our MBean w/ the platform MBeanServer
+	 */
+	public synchronized void registerMBean() {
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			this.objectName = new ObjectName(JMX_DOMAIN + ":type=EtcdDiscoveryStrategy,service=" +
+											 ObjectName.quote(etcdServiceName) + ",id=" + NEXT_ID.incrementAndGet());
+			mbeanServer.registerMBean(this, objectName);
+
+		} catch(Exception e) {
+			this.objectName = null;
+			logger.warning("Unable to register EtcdDiscoveryMetrics MBean: " + e.getMessage());
+		}
+	}
+
+	public synchronized void unregisterMBean() {
+		if (this.objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+		} catch(Exception e) {
+			logger.warning("Unable to unregister EtcdDiscoveryMetrics MBean: " + e.getMessage());
+		}
+		this.objectName = null;
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public void init(String etcdServiceName) {
+		this.etcdServiceName = etcdServiceName;
+		if (listener != null) {
+			listener.init(etcdServiceName);
+		}
+	}
+
+	@Override
+	public void onOperation(String operation, long latencyMS, boolean success) {
+		if (OPERATION_DISCOVER.equals(operation)) {
+			discover.record(latencyMS, success);
+		} else if (OPERATION_REGISTER.equals(operation)) {
+			register.record(latencyMS, success);
+		} else if (OPERATION_DEREGISTER.equals(operation)) {
+			deregister.record(latencyMS, success);
+		}
+		if (listener != null) {
+			listener.onOperation(operation, latencyMS, success);
+		}
+	}
+
+	@Override
+	public void onDiscovered(int memberCount) {
+		this.lastDiscoveredMemberCount = memberCount;
+		if (listener != null) {
+			listener.onDiscovered(memberCount);
+		}
+	}
+
+	@Override
+	public void onParseFailure(String key) {
+		parseFailures.incrementAndGet();
+		if (listener != null) {
+			listener.onParseFailure(key);
+		}
+	}
+
+	@Override
+	public void onEndpointError(String endpoint) {
+		synchronized(endpointErrors) {
+			Long errors = endpointErrors.get(endpoint);
+			endpointErrors.put(endpoint, errors == null ? 1 : errors + 1);
+		}
+		if (listener != null) {
+			listener.onEndpointError(endpoint);
+		}
+	}
+
+	public String getEtcdServiceName() {
+		return etcdServiceName;
+	}
+
+	public long getDiscoverCount() {
+		return discover.getCount();
+	}
+
+	public long getDiscoverFailures() {
+		return discover.getFailures();
+	}
+
+	public double getDiscoverLatencyMeanMS() {
+		return discover.getMeanMS();
+	}
+
+	public long getDiscoverLatencyP50MS() {
+		return discover.getPercentileMS(50);
+	}
+
+	public long getDiscoverLatencyP99MS() {
+		return discover.getPercentileMS(99);
+	}
+
+	public long getDiscoverLatencyMaxMS() {
+		return discover.getMaxMS();
+	}
+
+	public long getRegisterCount() {
+		return register.getCount();
+	}
+
+	public long getRegisterFailures() {
+		return register.getFailures();
+	}
+
+	public double getRegisterLatencyMeanMS() {
+		return register.getMeanMS();
+	}
+
+	public long getRegisterLatencyP50MS() {
+		return register.getPercentileMS(50);
+	}
+
+	public long getRegisterLatencyP99MS() {
+		return register.getPercentileMS(99);
+	}
+
+	public long getRegisterLatencyMaxMS() {
+		return register.getMaxMS();
+	}
+
+	public long getDeregisterCount() {
+		return deregister.getCount();
+	}
+
+	public long getDeregisterFailures() {
+		return deregister.getFailures();
+	}
+
+	public double getDeregisterLatencyMeanMS() {
+		return deregister.getMeanMS();
+	}
+
+	public long getDeregisterLatencyP50MS() {
+		return deregister.getPercentileMS(50);
+	}
+
+	public long getDeregisterLatencyP99MS() {
+		return deregister.getPercentileMS(99);
+	}
+
+	public long getDeregisterLatencyMaxMS() {
+		return deregister.getMaxMS();
+	}
+
+	public int getLastDiscoveredMemberCount() {
+		return lastDiscoveredMemberCount;
+	}
+
+	public long getParseFailures() {
+		return parseFailures.get();
+	}
+
+	public String getEndpointErrors() {
+		synchronized(endpointErrors) {
+			return endpointErrors.toString();
+		}
+	}
+
+	/**
+	 * Errors per endpoint
+	 *
+	 * @return a copy
+	 */
+	public Map<String,Long> getEndpointErrorCounts() {
+		synchronized(endpointErrors) {
+			return new TreeMap<String,Long>(endpointErrors);
+		}
+	}
+
+	public long getStartupDelayMS() {
+		return strategy.getStartupDelayMS();
+	}
+
+	public long getSnapshotAgeMS() {
+		return strategy.getSnapshotAgeMS();
+	}
+
+	public long getSharedDiscoveryAgeMS() {
+		return strategy.getSharedDiscoveryAgeMS();
+	}
+
+	public int getIoThreads() {
+		return EtcdNettyResources.getSharedIoThreads();
+	}
+
+	public long getPooledDirectMemory() {
+		return EtcdNettyResources.getPooledDirectMemory();
+	}
+
+	public int getUnreachableMembers() {
+		return strategy.getUnreachableMembers();
+	}
+
+	public long getLastGoodAgeMS() {
+		return strategy.getLastGoodAgeMS();
+	}
+
+	public String getCircuitState() {
+		return strategy.getCircuitState();
+	}
+
+	public long getHedgesSent() {
+		return strategy.getHedgesSent();
+	}
+
+	public long getHedgeWins() {
+		return strategy.getHedgeWins();
+	}
+
+	public long getHedgeLosses() {
+		return strategy.getHedgeLosses();
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * JMX view of an EtcdDiscoveryStrategy, registered as
+ * org.bitsofinfo.hazelcast.discovery.etcd:type=EtcdDiscoveryStrategy,service=[etcd-service-name],id=[n]
+ *
+ * Latencies are in ms, percentiles are histogram bucket upper bounds.
+ *
+ * @author bitsofinfo
+ *
+ */
+public interface EtcdDiscoveryMetricsMBean {
+
+	public String getEtcdServiceName();
+
+	public long getDiscoverCount();
+	public long getDiscoverFailures();
+	public double getDiscoverLatencyMeanMS();
+	public long getDiscoverLatencyP50MS();
+	public long getDiscoverLatencyP99MS();
+	public long getDiscoverLatencyMaxMS();
+
+	public long getRegisterCount();
+	public long getRegisterFailures();
+	public double getRegisterLatencyMeanMS();
+	public long getRegisterLatencyP50MS();
+	public long getRegisterLatencyP99MS();
+	public long getRegisterLatencyMaxMS();
+
+	public long getDeregisterCount();
+	public long getDeregisterFailures();
+	public double getDeregisterLatencyMeanMS();
+	public long getDeregisterLatencyP50MS();
+	public long getDeregisterLatencyP99MS();
+	public long getDeregisterLatencyMaxMS();
+
+	public int getLastDiscoveredMemberCount();
+
+	public long getParseFailures();
+
+	/**
+	 * @return [endpoint]=[errors], ...
+	 */
+	public String getEndpointErrors();
+
+	public long getStartupDelayMS();
+
+	/**
+	 * @return age of the 'watch' mode membership snapshot, -1 if not in watch mode
+	 */
+	public long getSnapshotAgeMS();
+
+	/**
+	 * @return age of the JVM-wide shared discovery listing, -1 if not sharing
+	 */
+	public long getSharedDiscoveryAgeMS();
+
+	/**
+	 * @return threads of the JVM-wide Etcd Netty event loop group, 0 if none
+	 */
+	public int getIoThreads();
+
+	/**
+	 * @return direct memory (bytes) held by Netty's pooled allocator
+	 */
+	public long getPooledDirectMemory();
+
+	/**
+	 * @return members the last discovery found unreachable, -1 if probing is disabled
+	 */
+	public int getUnreachableMembers();
+
+	/**
+	 * @return age of the last good discovery result served during Etcd outages, -1 if none
+	 */
+	public long getLastGoodAgeMS();
+
+	public String getCircuitState();
+
+	/**
+	 * @return -1 if hedging is disabled
+	 */
+	public long getHedgesSent();
+
+	/**
+	 * @return -1 if hedging is disabled
+	 */
+	public long getHedgeWins();
+
+	/**
+	 * @return -1 if hedging is disabled
+	 */
+	public long getHedgeLosses();
+
+}
@@ -0,0 +1,291 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+/**
+ * A small local file holding the members of the last successful discovery,
+ * so a (re)starting member can find its peers before (or without) Etcd.
+ *
+ *   {"version":2,"service":"my-cluster","savedAt":1451606400000,
+ *    "members":[{"ip":"10.0.0.1","port":5701,"properties":{"hazelcast.partition.group.zone":"us-east-1a"}},...],
+ *    "crc32":123456789}
+ *
+ * Each member's DiscoveryNode properties (i.e. its zone/rack/host) are kept as
+ * strings, so partition grouping works the same off a snapshot. Members are saved
+ * as discovered, i.e. already filtered by their tags. v1 snapshots (w/o properties)
+ * are still loaded.
+ *
+ * The file is written to a uniquely named temp file alongside it, synced and
+ * then renamed over the previous one so readers never see a partial write, nor
+ * do strategies sharing the file (several members in one JVM) clash. saveAsync()
+ * does so on a background thread, so discovery is not held up by the disk. Unless checksums are
+ * disabled a crc32 over the contents is written and verified on load.
+ * Snapshots of another service, failing their checksum or older than
+ * maxAgeMS are ignored.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdDiscoverySnapshotFile {
+
+	private static final int VERSION = 2;
+	private static final int MIN_VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// writes every snapshot file in the JVM, in the background
+	private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "etcd-snapshot-writer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * The members read from a snapshot file
+	 */
+	public static class Snapshot {
+		public final List<DiscoveryNode> members;
+		public final long savedAt;
+
+		public Snapshot(List<DiscoveryNode> members, long savedAt) {
+			this.members = members;
+			this.savedAt = savedAt;
+		}
+	}
+
+	private final File file;
+	private final String etcdServiceName;
+	private final long maxAgeMS;
+	private final boolean checksum;
+	private final ILogger logger;
+
+	// what we last wrote, to avoid rewriting an unchanged membership
+	private long lastSavedCrc = -1;
+	private long lastSavedAt = 0;
+
+	// the latest members awaiting the WRITER, newer ones replace older
+	private final AtomicReference<List<DiscoveryNode>> pendingSave = new AtomicReference<List<DiscoveryNode>>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param file
+	 * @param etcdServiceName snapshots of other services are ignored
+	 * @param maxAgeMS snapshots older than this are ignored, <= 0 never
+	 * @param checksum write and verify a crc32
+	 * @param logger
+	 */
+	public EtcdDiscoverySnapshotFile(File file, String etcdServiceName, long maxAgeMS, boolean checksum, ILogger logger) {
+		this.file = file;
+		this.etcdServiceName = etcdServiceName;
+		this.maxAgeMS = maxAgeMS;
+		this.checksum = checksum;
+		this.logger = logger;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Load the snapshot
+	 *
+	 * @return null if there is no usable snapshot
+	 */
+	public Snapshot load() {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			JsonObject json;
+			Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+			try {
+				json = new JsonParser().parse(reader).getAsJsonObject();
+			} finally {
+				reader.close();
+			}
+
+			int version = json.get("version").getAsInt();
+			if (version < MIN_VERSION || version > VERSION || !etcdServiceName.equals(json.get("service").getAsString())) {
+				logger.warning("Ignoring discovery snapshot " + file + ", not a v" + MIN_VERSION + "-v" + VERSION + 
+							   " snapshot of service: " + etcdServiceName);
+				return null;
+			}
+
+			long savedAt = json.get("savedAt").getAsLong();
+			JsonArray members = json.getAsJsonArray("members");
+
+			JsonElement crc = json.get("crc32");
+			if (checksum && (crc == null || crc.getAsLong() != crc32(savedAt, members))) {
+				logger.warning("Ignoring discovery snapshot " + file + ", checksum mismatch");
+				return null;
+			}
+
+			long ageMS = System.currentTimeMillis() - savedAt;
+			if (maxAgeMS > 0 && ageMS > maxAgeMS) {
+				logger.info("Ignoring discovery snapshot " + file + ", ageMS: " + ageMS + " > max: " + maxAgeMS);
+				return null;
+			}
+
+			List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>(members.size());
+			for (JsonElement member : members) {
+				JsonObject m = member.getAsJsonObject();
+				Address address = new Address(m.get("ip").getAsString(), m.get("port").getAsInt());
+
+				JsonObject saved = m.getAsJsonObject("properties");
+				if (saved == null || saved.entrySet().isEmpty()) {
+					nodes.add(new SimpleDiscoveryNode(address));
+					continue;
+				}
+				Map<String,Object> properties = new HashMap<String,Object>(saved.entrySet().size());
+				for (Map.Entry<String,JsonElement> property : saved.entrySet()) {
+					properties.put(property.getKey(), property.getValue().getAsString());
+				}
+				nodes.add(new SimpleDiscoveryNode(address, properties));
+			}
+			return new Snapshot(nodes, savedAt);
+
+		} catch(Exception e) {
+			logger.warning("Ignoring unreadable discovery snapshot " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * save() the members in the background, if several are queued only the latest is saved
+	 *
+	 * @param nodes not modified afterwards
+	 */
+	public void saveAsync(List<DiscoveryNode> nodes) {
+		if (pendingSave.getAndSet(nodes) != null) {
+			// a save is already queued, it will pick these up
+			return;
+		}
+		WRITER.execute(new Runnable() {
+			public void run() {
+				List<DiscoveryNode> latest = pendingSave.getAndSet(null);
+				if (latest != null) {
+					save(latest);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Save the members, unless identical to what we last saved less than maxAgeMS/2 ago
+	 *
+	 * @param nodes
+	 */
+	public synchronized void save(Iterable<DiscoveryNode> nodes) {
+
+		JsonArray members = new JsonArray();
+		for (DiscoveryNode node : nodes) {
+			JsonObject member = new JsonObject();
+			member.addProperty("ip", node.getPrivateAddress().getHost());
+			member.addProperty("port", node.getPrivateAddress().getPort());
+
+			Map<String,Object> properties = node.getProperties();
+			if (properties != null && !properties.isEmpty()) {
+				// sorted, so the same properties always give the same crc
+				JsonObject saved = new JsonObject();
+				for (Map.Entry<String,Object> property : new TreeMap<String,Object>(properties).entrySet()) {
+					if (property.getValue() != null) {
+						saved.addProperty(property.getKey(), String.valueOf(property.getValue()));
+					}
+				}
+				member.add("properties", saved);
+			}
+			members.add(member);
+		}
+
+		// unchanged? only rewrite to keep its age well within maxAgeMS
+		long now = System.currentTimeMillis();
+		long membersCrc = crc32(0, members);
+		if (membersCrc == lastSavedCrc && (maxAgeMS <= 0 || (now - lastSavedAt) < (maxAgeMS / 2))) {
+			return;
+		}
+
+		JsonObject json = new JsonObject();
+		json.addProperty("version", VERSION);
+		json.addProperty("service", etcdServiceName);
+		json.addProperty("savedAt", now);
+		json.add("members", members);
+		if (checksum) {
+			json.addProperty("crc32", crc32(now, members));
+		}
+
+		File tmp = null;
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Cannot create directory " + dir);
+			}
+
+			// unique, others may be saving the same file
+			tmp = File.createTempFile(file.getName() + ".", ".tmp", dir);
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				Writer writer = new OutputStreamWriter(out, UTF8);
+				writer.write(json.toString());
+				writer.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			lastSavedCrc = membersCrc;
+			lastSavedAt = now;
+
+		} catch(Exception e) {
+			logger.warning("Error saving discovery snapshot " + file + ": " + e.getMessage());
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	private long crc32(long savedAt, JsonArray members) {
+		CRC32 crc = new CRC32();
+		crc.update((etcdServiceName + "|" + savedAt + "|" + members.toString()).getBytes(UTF8));
+		return crc.getValue();
+	}
+
+}
@@ -21,9 +21,50 @@ public class EtcdDiscoveryStrategyFactory implements DiscoveryStrategyFactory {
 						EtcdDiscoveryConfiguration.ETCD_REGISTRATOR,
 						EtcdDiscoveryConfiguration.ETCD_REGISTRATOR_CONFIG,
 						EtcdDiscoveryConfiguration.ETCD_DISCOVERY_DELAY_MS,
+						EtcdDiscoveryConfiguration.ETCD_DISCOVERY_READY_CONDITION,
+						EtcdDiscoveryConfiguration.ETCD_EXPECTED_MEMBERS,
+						EtcdDiscoveryConfiguration.ETCD_STABLE_MS,
+						EtcdDiscoveryConfiguration.ETCD_DISCOVERY_MODE,
+						EtcdDiscoveryConfiguration.ETCD_WATCH_MAX_STALENESS_MS,
 						EtcdDiscoveryConfiguration.ETCD_CLIENT_CERT_LOCATION,
 						EtcdDiscoveryConfiguration.ETCD_CLIENT_KEY_LOCATION,
-						EtcdDiscoveryConfiguration.ETCD_TRUSTED_CERT_LOCATION
+						EtcdDiscoveryConfiguration.ETCD_TRUSTED_CERT_LOCATION,
+						EtcdDiscoveryConfiguration.ETCD_TLS_RELOAD_CHECK_MS,
+						EtcdDiscoveryConfiguration.ETCD_CLIENT_POOL_SIZE,
+						EtcdDiscoveryConfiguration.ETCD_CLIENT_IDLE_TIMEOUT_MS,
+						EtcdDiscoveryConfiguration.ETCD_API_VERSION,
+						EtcdDiscoveryConfiguration.ETCD_SHARD_BUCKETS,
+						EtcdDiscoveryConfiguration.ETCD_SHARD_READ_BUCKETS,
+						EtcdDiscoveryConfiguration.ETCD_HEDGE_PERCENTILE,
+						EtcdDiscoveryConfiguration.ETCD_HEDGE_MIN_DELAY_MS,
+						EtcdDiscoveryConfiguration.ETCD_HEDGE_MAX_IN_FLIGHT,
+						EtcdDiscoveryConfiguration.ETCD_ENDPOINT_PROBE_MS,
+						EtcdDiscoveryConfiguration.ETCD_READ_TIMEOUT_MS,
+						EtcdDiscoveryConfiguration.ETCD_WRITE_TIMEOUT_MS,
+						EtcdDiscoveryConfiguration.ETCD_RETRY_MAX_ATTEMPTS,
+						EtcdDiscoveryConfiguration.ETCD_RETRY_BASE_DELAY_MS,
+						EtcdDiscoveryConfiguration.ETCD_RETRY_MAX_DELAY_MS,
+						EtcdDiscoveryConfiguration.ETCD_CIRCUIT_FAILURE_THRESHOLD,
+						EtcdDiscoveryConfiguration.ETCD_CIRCUIT_OPEN_MS,
+						EtcdDiscoveryConfiguration.ETCD_SNAPSHOT_FILE,
+						EtcdDiscoveryConfiguration.ETCD_SNAPSHOT_MAX_AGE_MS,
+						EtcdDiscoveryConfiguration.ETCD_SNAPSHOT_CHECKSUM,
+						EtcdDiscoveryConfiguration.ETCD_JMX_ENABLED,
+						EtcdDiscoveryConfiguration.ETCD_METRICS_LISTENER,
+						EtcdDiscoveryConfiguration.ETCD_ADDRESS_LABELS,
+						EtcdDiscoveryConfiguration.ETCD_ADDRESS_SUBNETS,
+						EtcdDiscoveryConfiguration.ETCD_ZONE,
+						EtcdDiscoveryConfiguration.ETCD_RACK,
+						EtcdDiscoveryConfiguration.ETCD_HOST,
+						EtcdDiscoveryConfiguration.ETCD_PARTITION_GROUP_BY,
+						EtcdDiscoveryConfiguration.ETCD_DISCOVERY_FILTER,
+						EtcdDiscoveryConfiguration.ETCD_SHARED_REFRESH_MS,
+						EtcdDiscoveryConfiguration.ETCD_IO_THREADS,
+						EtcdDiscoveryConfiguration.ETCD_MAX_FRAME_SIZE,
+						EtcdDiscoveryConfiguration.ETCD_DRAIN_GRACE_MS,
+						EtcdDiscoveryConfiguration.ETCD_PROBE_TIMEOUT_MS,
+						EtcdDiscoveryConfiguration.ETCD_PROBE_CACHE_MS,
+						EtcdDiscoveryConfiguration.ETCD_PROBE_DROP_UNREACHABLE
 					});
 
 	public Class<? extends DiscoveryStrategy> getDiscoveryStrategyType() {
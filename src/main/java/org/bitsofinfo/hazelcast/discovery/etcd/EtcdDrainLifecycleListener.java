@@ -0,0 +1,58 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.LifecycleEvent;
+import com.hazelcast.core.LifecycleEvent.LifecycleState;
+import com.hazelcast.core.LifecycleListener;
+
+/**
+ * Ties the graceful exit of the EtcdDiscoveryStrategy (w/ 'etcd-drain-grace-ms')
+ * to the HazelcastInstance's lifecycle rather than the JVM's shutdown hook:
+ *
+ *  - SHUTTING_DOWN: our registration is marked draining, so peers and new joiners
+ *                   stop discovering us, and Hazelcast's shutdown is held for the grace period
+ *
+ *  - SHUTDOWN: our key is deleted right away, rather than on JVM exit
+ *
+ * Configure it as a listener of the member:
+ *
+ *   <listeners>
+ *     <listener>org.bitsofinfo.hazelcast.discovery.etcd.EtcdDrainLifecycleListener</listener>
+ *   </listeners>
+ *
+ * The strategy is found by this member's address among those in the JVM.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdDrainLifecycleListener implements LifecycleListener, HazelcastInstanceAware {
+
+	private HazelcastInstance hazelcastInstance = null;
+
+	// found on the first event our member's address is available on
+	private EtcdDiscoveryStrategy strategy = null;
+
+	@Override
+	public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+		this.hazelcastInstance = hazelcastInstance;
+	}
+
+	@Override
+	public void stateChanged(LifecycleEvent event) {
+		if (this.strategy == null && event.getState() != LifecycleState.SHUTDOWN) {
+			this.strategy = EtcdDiscoveryStrategy.forHazelcastInstance(this.hazelcastInstance);
+		}
+		if (this.strategy == null) {
+			return;
+		}
+
+		if (event.getState() == LifecycleState.SHUTTING_DOWN) {
+			this.strategy.drain();
+
+		} else if (event.getState() == LifecycleState.SHUTDOWN) {
+			this.strategy.run();
+		}
+	}
+
+}
@@ -0,0 +1,357 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.hazelcast.logging.ILogger;
+
+/**
+ * Scores each etcd endpoint so the fastest healthy one can be tried first.
+ *
+ * A background thread probes every endpoint's /health (or /version for
+ * etcds without it) each probeIntervalMS, the probe round trip feeds an
+ * EWMA of the endpoint's latency. Probes and real requests both feed an
+ * EWMA of its error rate.
+ *
+ * An endpoint failing EJECT_AFTER_FAILURES times in a row, or whose error
+ * rate exceeds EJECT_ERROR_RATE, is ejected: it is ordered after every
+ * admitted endpoint until READMIT_AFTER_SUCCESSES consecutive successes
+ * re-admit it. Admitted endpoints are ordered by latency / (1 - error rate).
+ *
+ * Only probe latencies are used for ordering so that the endpoint serving
+ * the (larger) real requests is not penalized against idle ones.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdEndpointScorer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// weight of the newest sample in the EWMAs
+	private static final double EWMA_ALPHA = 0.2;
+
+	private static final int EJECT_AFTER_FAILURES = 3;
+	private static final double EJECT_ERROR_RATE = 0.5;
+	private static final int READMIT_AFTER_SUCCESSES = 2;
+
+	// a probe slower than this counts as a failure
+	private static final int PROBE_TIMEOUT_MS = 2000;
+
+	/**
+	 * Stats for a single endpoint, guarded by itself
+	 */
+	private static class Endpoint {
+		final URI uri;
+		String probePath = "/health";
+		double latencyEwmaMS = 0;
+		boolean latencyObserved = false;
+		double errorRate = 0;
+		int consecutiveFailures = 0;
+		int consecutiveSuccesses = 0;
+		boolean ejected = false;
+
+		Endpoint(URI uri) {
+			this.uri = uri;
+		}
+
+		double score() {
+			return latencyEwmaMS / Math.max(0.01, 1 - errorRate);
+		}
+	}
+
+	private final Map<URI,Endpoint> endpoints = new LinkedHashMap<URI,Endpoint>();
+	private final EtcdSslContextCache sslContextCache;
+	private final long probeIntervalMS;
+	private final ILogger logger;
+
+	// admitted endpoints by score, then ejected ones
+	private volatile List<URI> ordered;
+
+	private ScheduledExecutorService prober = null;
+
+	// optionally notified of every failure
+	private volatile EtcdMetricsListener metrics = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param connectionConfig endpoints to score, and TLS settings for probing them
+	 * @param tlsReloadCheckMS
+	 * @param probeIntervalMS how often to probe each endpoint
+	 * @param logger
+	 */
+	public EtcdEndpointScorer(EtcdConnectionConfig connectionConfig, long tlsReloadCheckMS, long probeIntervalMS, ILogger logger) {
+		this.probeIntervalMS = probeIntervalMS;
+		this.logger = logger;
+
+		for (URI uri : connectionConfig.getEtcdUris()) {
+			endpoints.put(uri, new Endpoint(uri));
+		}
+		this.ordered = Collections.unmodifiableList(new ArrayList<URI>(endpoints.keySet()));
+
+		if (connectionConfig.isHttps()) {
+			this.sslContextCache = new EtcdSslContextCache(connectionConfig.getClientCertLocation(),
+														   connectionConfig.getClientKeyLocation(),
+														   connectionConfig.getTrustedCertsLocation(),
+														   tlsReloadCheckMS, logger);
+		} else {
+			this.sslContextCache = null;
+		}
+	}
+
+	public void setMetricsListener(EtcdMetricsListener metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Start probing, the first round runs immediately
+	 */
+	public synchronized void start() {
+		if (prober != null) {
+			return;
+		}
+		prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-endpoint-scorer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		prober.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				probeAll();
+			}
+		}, 0, probeIntervalMS, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (prober != null) {
+			prober.shutdownNow();
+			prober = null;
+		}
+	}
+
+	/**
+	 * The endpoints, the one to try first ... last
+	 *
+	 * @return
+	 */
+	public List<URI> getOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Record the outcome of a real request against an endpoint
+	 *
+	 * @param uri
+	 * @param success false only if the endpoint itself failed (not for error responses from etcd)
+	 */
+	public void record(URI uri, boolean success) {
+		record(uri, -1, success);
+	}
+
+	public boolean isEjected(URI uri) {
+		Endpoint endpoint = endpoints.get(uri);
+		synchronized(endpoint) {
+			return endpoint.ejected;
+		}
+	}
+
+	/**
+	 * The EWMA of the endpoint's probe latency
+	 *
+	 * @param uri
+	 * @return
+	 */
+	public double getLatencyEwmaMS(URI uri) {
+		Endpoint endpoint = endpoints.get(uri);
+		synchronized(endpoint) {
+			return endpoint.latencyEwmaMS;
+		}
+	}
+
+	/**
+	 * The EWMA of the endpoint's error rate (0-1)
+	 *
+	 * @param uri
+	 * @return
+	 */
+	public double getErrorRate(URI uri) {
+		Endpoint endpoint = endpoints.get(uri);
+		synchronized(endpoint) {
+			return endpoint.errorRate;
+		}
+	}
+
+	/**
+	 * Probe every endpoint once and re-order them
+	 */
+	protected void probeAll() {
+		for (Endpoint endpoint : endpoints.values()) {
+			long start = System.currentTimeMillis();
+			boolean healthy = false;
+			try {
+				healthy = probe(endpoint);
+			} catch(Exception e) {
+				logger.finest("Etcd endpoint " + endpoint.uri + " probe failed: " + e.getMessage());
+			}
+			record(endpoint.uri, healthy ? System.currentTimeMillis() - start : -1, healthy);
+		}
+		reorder();
+	}
+
+	private void record(URI uri, long latencyMS, boolean success) {
+		Endpoint endpoint = endpoints.get(uri);
+		if (endpoint == null) {
+			return;
+		}
+
+		EtcdMetricsListener metrics = this.metrics;
+		if (!success && metrics != null) {
+			metrics.onEndpointError(uri.toString());
+		}
+
+		boolean changed = false;
+		synchronized(endpoint) {
+			if (latencyMS >= 0) {
+				endpoint.latencyEwmaMS = endpoint.latencyObserved ?
+						(EWMA_ALPHA * latencyMS) + ((1 - EWMA_ALPHA) * endpoint.latencyEwmaMS) : latencyMS;
+				endpoint.latencyObserved = true;
+			}
+			endpoint.errorRate = (EWMA_ALPHA * (success ? 0 : 1)) + ((1 - EWMA_ALPHA) * endpoint.errorRate);
+
+			if (success) {
+				endpoint.consecutiveFailures = 0;
+				endpoint.consecutiveSuccesses++;
+			} else {
+				endpoint.consecutiveSuccesses = 0;
+				endpoint.consecutiveFailures++;
+			}
+
+			if (!endpoint.ejected &&
+				(endpoint.consecutiveFailures >= EJECT_AFTER_FAILURES || endpoint.errorRate > EJECT_ERROR_RATE)) {
+				endpoint.ejected = true;
+				changed = true;
+				logger.warning("Ejecting etcd endpoint " + uri + " (error rate: " +
+						String.format("%.2f", endpoint.errorRate) + ", consecutive failures: " + endpoint.consecutiveFailures + ")");
+
+			} else if (endpoint.ejected && endpoint.consecutiveSuccesses >= READMIT_AFTER_SUCCESSES) {
+				// a clean slate, otherwise the error rate would eject it again on the next failure
+				endpoint.ejected = false;
+				endpoint.errorRate = 0;
+				changed = true;
+				logger.info("Re-admitting recovered etcd endpoint " + uri);
+			}
+		}
+
+		if (changed) {
+			reorder();
+		}
+	}
+
+	private synchronized void reorder() {
+		final Map<URI,Double> scores = new LinkedHashMap<URI,Double>();
+		final Map<URI,Boolean> ejected = new LinkedHashMap<URI,Boolean>();
+		for (Endpoint endpoint : endpoints.values()) {
+			synchronized(endpoint) {
+				scores.put(endpoint.uri, endpoint.score());
+				ejected.put(endpoint.uri, endpoint.ejected);
+			}
+		}
+
+		// stable, ties keep the configured order
+		List<URI> uris = new ArrayList<URI>(endpoints.keySet());
+		Collections.sort(uris, new Comparator<URI>() {
+			public int compare(URI a, URI b) {
+				int byEjected = Boolean.compare(ejected.get(a), ejected.get(b));
+				return byEjected != 0 ? byEjected : Double.compare(scores.get(a), scores.get(b));
+			}
+		});
+		this.ordered = Collections.unmodifiableList(uris);
+	}
+
+	/**
+	 * GET the endpoint's /health, falling back to /version
+	 * for etcds that do not have /health
+	 *
+	 * The response is read to the end and closed rather than disconnect()ed,
+	 * so probes reuse a kept-alive connection like the real requests do
+	 *
+	 * @return true if healthy
+	 */
+	private boolean probe(Endpoint endpoint) throws Exception {
+		String path;
+		synchronized(endpoint) {
+			path = endpoint.probePath;
+		}
+
+		HttpURLConnection conn = (HttpURLConnection)endpoint.uri.resolve(path).toURL().openConnection();
+
+		int code;
+		byte[] body;
+		try {
+			if (conn instanceof HttpsURLConnection && sslContextCache != null) {
+				((HttpsURLConnection)conn).setSSLSocketFactory(sslContextCache.getJdkSocketFactory());
+			}
+			conn.setConnectTimeout(PROBE_TIMEOUT_MS);
+			conn.setReadTimeout(PROBE_TIMEOUT_MS);
+
+			code = conn.getResponseCode();
+			body = readFully(code == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream());
+
+		} catch(IOException e) {
+			// a broken connection is not worth keeping alive
+			conn.disconnect();
+			throw e;
+		}
+
+		if (code == HttpURLConnection.HTTP_NOT_FOUND && path.equals("/health")) {
+			synchronized(endpoint) {
+				endpoint.probePath = "/version";
+			}
+			return probe(endpoint);
+		}
+		if (code != HttpURLConnection.HTTP_OK) {
+			return false;
+		}
+
+		// /health is {"health":"true"}, /version only has to respond
+		if (!path.equals("/health")) {
+			return true;
+		}
+		JsonElement health = new JsonParser().parse(new String(body, UTF8)).getAsJsonObject().get("health");
+		return health != null && "true".equals(health.getAsString());
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		if (in == null) {
+			return new byte[0];
+		}
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * Emits JDK Flight Recorder events around Etcd discovery, registration,
+ * deregistration and TLS context builds:
+ *
+ *   Object event = EtcdFlightRecorder.beginDiscover();
+ *   ...
+ *   EtcdFlightRecorder.end(event, endpoint, key, resultCount, payloadBytes, outcome);
+ *
+ * This is the no-op version for java < 11, begin*() always returns null.
+ * The jar is multi-release: on java 11+ the version of this class under
+ * src/main/java11 (META-INF/versions/11) is loaded instead, its begin*()
+ * return a jdk.jfr.Event only while recording of that event is enabled.
+ *
+ * Callers should only compute expensive event values (i.e. payloadBytes)
+ * when the event is not null.
+ *
+ * @author bitsofinfo
+ *
+ */
+public final class EtcdFlightRecorder {
+
+	public static final String OUTCOME_SUCCESS = "success";
+	public static final String OUTCOME_FAILURE = "failure";
+	public static final String OUTCOME_CIRCUIT_OPEN = "circuit-open";
+
+	private EtcdFlightRecorder() {}
+
+	/**
+	 * @return true if events can be recorded in this JVM
+	 */
+	public static boolean isAvailable() {
+		return false;
+	}
+
+	public static Object beginDiscover() {
+		return null;
+	}
+
+	public static Object beginRegister() {
+		return null;
+	}
+
+	public static Object beginDeregister() {
+		return null;
+	}
+
+	public static Object beginTlsContextBuild() {
+		return null;
+	}
+
+	/**
+	 * End and commit an event
+	 *
+	 * @param event what begin*() returned, may be null
+	 * @param endpoint the etcd endpoint(s) involved
+	 * @param key the etcd key or directory involved
+	 * @param resultCount i.e. the number of members discovered
+	 * @param payloadBytes the size of the values read or written
+	 * @param outcome OUTCOME_SUCCESS, OUTCOME_FAILURE or OUTCOME_CIRCUIT_OPEN
+	 */
+	public static void end(Object event, String endpoint, String key, int resultCount, long payloadBytes, String outcome) {
+	}
+
+}
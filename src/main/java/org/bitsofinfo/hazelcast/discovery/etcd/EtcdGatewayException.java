@@ -0,0 +1,36 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the EtcdV3Transport when etcd's gRPC JSON gateway answers a
+ * request w/ an HTTP error. 4xx are answers (a bad request, rejected
+ * credentials) which another endpoint would give just the same, 5xx
+ * are the endpoint's problem.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdGatewayException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int httpStatus;
+
+	public EtcdGatewayException(String message, int httpStatus) {
+		super(message);
+		this.httpStatus = httpStatus;
+	}
+
+	public int getHttpStatus() {
+		return httpStatus;
+	}
+
+	/**
+	 * @return true if etcd answered the request, rather than the endpoint failing
+	 */
+	public boolean isAnswer() {
+		return httpStatus >= 400 && httpStatus < 500;
+	}
+
+}
@@ -1,6 +1,8 @@
 package org.bitsofinfo.hazelcast.discovery.etcd;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 public class EtcdHazelcastNode {
 
@@ -9,6 +11,18 @@ public class EtcdHazelcastNode {
 	public String hostname;
 	public Date registeredAt;
 	
+	// optional additional labelled addresses, @see EtcdAddressSelector
+	public List<EtcdNodeAddress> addresses;
+	
+	// optional locality for partition grouping, host being the physical
+	// host (i.e. hypervisor) rather than this member's hostname
+	public String zone;
+	public String rack;
+	public String host;
+	
+	// optional tags (i.e. role, version, uuid) @see EtcdDiscoveryFilter
+	public Map<String,String> tags;
+	
 	public EtcdHazelcastNode(String ip, Integer port, String hostname) {
 		super();
 		this.ip = ip;
@@ -0,0 +1,328 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+/**
+ * Hand written, stateless (thread-safe) streaming (de)serializer for the
+ * EtcdHazelcastNode JSON values we register under, without reflection.
+ * Compatible both ways w/ a Gson using setDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN):
+ * same field names, order and date format, nulls omitted alike. Only empty
+ * addresses/tags differ, we leave them out where Gson writes [] / {}.
+ *
+ * Discovery only needs the ip and port (and the labelled addresses if an
+ * EtcdAddressSelector is configured, zone/rack/host if asked for and the tags
+ * if an EtcdDiscoveryFilter is configured), decodeAddress() reads just those
+ * and skips everything else (i.e. no Date parsing)
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdHazelcastNodeTypeAdapter extends TypeAdapter<EtcdHazelcastNode> {
+
+	public static final EtcdHazelcastNodeTypeAdapter INSTANCE = new EtcdHazelcastNodeTypeAdapter();
+
+	private static final String FIELD_IP = "ip";
+	private static final String FIELD_PORT = "port";
+	private static final String FIELD_HOSTNAME = "hostname";
+	private static final String FIELD_REGISTERED_AT = "registeredAt";
+	private static final String FIELD_ADDRESSES = "addresses";
+	private static final String FIELD_LABEL = "label";
+	private static final String FIELD_ZONE = "zone";
+	private static final String FIELD_RACK = "rack";
+	private static final String FIELD_HOST = "host";
+	private static final String FIELD_TAGS = "tags";
+
+	// SimpleDateFormat is not thread-safe
+	private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN, Locale.US);
+		}
+	};
+
+	private EtcdHazelcastNodeTypeAdapter() {}
+
+	/**
+	 * Serialize a node to its JSON value
+	 *
+	 * @param node
+	 * @return
+	 */
+	public static String encode(EtcdHazelcastNode node) {
+		StringWriter sw = new StringWriter(128);
+		try {
+			INSTANCE.write(new JsonWriter(sw), node);
+		} catch(IOException e) {
+			// StringWriter does not throw
+			throw new IllegalStateException(e);
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Read only the ip/port from a node's JSON value
+	 *
+	 * @param value
+	 * @return null if the value is blank
+	 * @throws IOException if the value is not valid JSON or has no ip or port
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value) throws IOException {
+		return decodeAddress(value, null);
+	}
+
+	/**
+	 * Read only the address to use from a node's JSON value
+	 *
+	 * @param value
+	 * @param selector picks among the node's labelled addresses, if null the primary ip/port is used
+	 * @return null if the value is blank
+	 * @throws IOException if the value is not valid JSON or has no ip or port
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value, EtcdAddressSelector selector) throws IOException {
+		return decodeAddress(value, selector, null, null);
+	}
+
+	/**
+	 * Read only the address to use, and optionally the zone/rack/host, from a node's JSON value
+	 *
+	 * @param value
+	 * @param selector picks among the node's labelled addresses, if null the primary ip/port is used
+	 * @param filter if not null, nodes whose tags do not match are skipped
+	 * @param attributes if not null, receives the zone/rack/host (if any) keyed by their PartitionGroupMetaData name
+	 * @return null if the value is blank or does not match the filter
+	 * @throws IOException if the value is not valid JSON or has no ip or port
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value, EtcdAddressSelector selector, EtcdDiscoveryFilter filter,
+										Map<String,Object> attributes) throws IOException {
+		if (isBlank(value)) {
+			return null;
+		}
+
+		JsonReader reader = new JsonReader(new StringReader(value));
+		reader.setLenient(true);
+
+		String ip = null;
+		int port = -1;
+		List<EtcdNodeAddress> addresses = null;
+		Map<String,String> tags = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+			} else if (FIELD_IP.equals(name)) {
+				ip = reader.nextString();
+			} else if (FIELD_PORT.equals(name)) {
+				port = reader.nextInt();
+			} else if (FIELD_ADDRESSES.equals(name) && selector != null) {
+				addresses = readAddresses(reader);
+			} else if (FIELD_ZONE.equals(name) && attributes != null) {
+				attributes.put(PartitionGroupMetaData.PARTITION_GROUP_ZONE, reader.nextString());
+			} else if (FIELD_RACK.equals(name) && attributes != null) {
+				attributes.put(PartitionGroupMetaData.PARTITION_GROUP_RACK, reader.nextString());
+			} else if (FIELD_HOST.equals(name) && attributes != null) {
+				attributes.put(PartitionGroupMetaData.PARTITION_GROUP_HOST, reader.nextString());
+			} else if (FIELD_TAGS.equals(name) && filter != null) {
+				tags = readTags(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (ip == null || port < 0) {
+			throw new IOException("Node value has no ip or port: " + value);
+		}
+		if (filter != null && !filter.matches(tags)) {
+			return null;
+		}
+		if (selector != null) {
+			return selector.select(ip, port, addresses);
+		}
+		return new Address(ip, port);
+	}
+
+	/**
+	 * True if null, empty or only whitespace, without trim() copying
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static boolean isBlank(String value) {
+		if (value == null) {
+			return true;
+		}
+		for (int i=0; i<value.length(); i++) {
+			if (value.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void write(JsonWriter out, EtcdHazelcastNode node) throws IOException {
+		if (node == null) {
+			out.nullValue();
+			return;
+		}
+
+		// same field order, and nulls omitted, as Gson's reflective output
+		out.beginObject();
+		if (node.ip != null) {
+			out.name(FIELD_IP).value(node.ip);
+		}
+		if (node.port != null) {
+			out.name(FIELD_PORT).value(node.port);
+		}
+		if (node.hostname != null) {
+			out.name(FIELD_HOSTNAME).value(node.hostname);
+		}
+		if (node.registeredAt != null) {
+			out.name(FIELD_REGISTERED_AT).value(DATE_FORMAT.get().format(node.registeredAt));
+		}
+		if (node.addresses != null && !node.addresses.isEmpty()) {
+			out.name(FIELD_ADDRESSES).beginArray();
+			for (EtcdNodeAddress address : node.addresses) {
+				out.beginObject();
+				out.name(FIELD_LABEL).value(address.label);
+				out.name(FIELD_IP).value(address.ip);
+				out.name(FIELD_PORT).value(address.port);
+				out.endObject();
+			}
+			out.endArray();
+		}
+		if (node.zone != null) {
+			out.name(FIELD_ZONE).value(node.zone);
+		}
+		if (node.rack != null) {
+			out.name(FIELD_RACK).value(node.rack);
+		}
+		if (node.host != null) {
+			out.name(FIELD_HOST).value(node.host);
+		}
+		if (node.tags != null && !node.tags.isEmpty()) {
+			out.name(FIELD_TAGS).beginObject();
+			for (Map.Entry<String,String> tag : node.tags.entrySet()) {
+				out.name(tag.getKey()).value(tag.getValue());
+			}
+			out.endObject();
+		}
+		out.endObject();
+	}
+
+	@Override
+	public EtcdHazelcastNode read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		EtcdHazelcastNode node = new EtcdHazelcastNode(null, null, null);
+		node.registeredAt = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+			} else if (FIELD_IP.equals(name)) {
+				node.ip = in.nextString();
+			} else if (FIELD_PORT.equals(name)) {
+				node.port = in.nextInt();
+			} else if (FIELD_HOSTNAME.equals(name)) {
+				node.hostname = in.nextString();
+			} else if (FIELD_REGISTERED_AT.equals(name)) {
+				node.registeredAt = parseDate(in.nextString());
+			} else if (FIELD_ADDRESSES.equals(name)) {
+				node.addresses = readAddresses(in);
+			} else if (FIELD_ZONE.equals(name)) {
+				node.zone = in.nextString();
+			} else if (FIELD_RACK.equals(name)) {
+				node.rack = in.nextString();
+			} else if (FIELD_HOST.equals(name)) {
+				node.host = in.nextString();
+			} else if (FIELD_TAGS.equals(name)) {
+				node.tags = readTags(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+
+		return node;
+	}
+
+	private static List<EtcdNodeAddress> readAddresses(JsonReader in) throws IOException {
+		List<EtcdNodeAddress> addresses = new ArrayList<EtcdNodeAddress>();
+		in.beginArray();
+		while (in.hasNext()) {
+			EtcdNodeAddress address = new EtcdNodeAddress(null, null, null);
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+				} else if (FIELD_LABEL.equals(name)) {
+					address.label = in.nextString();
+				} else if (FIELD_IP.equals(name)) {
+					address.ip = in.nextString();
+				} else if (FIELD_PORT.equals(name)) {
+					address.port = in.nextInt();
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			addresses.add(address);
+		}
+		in.endArray();
+		return addresses;
+	}
+
+	private static Map<String,String> readTags(JsonReader in) throws IOException {
+		Map<String,String> tags = new LinkedHashMap<String,String>();
+		in.beginObject();
+		while (in.hasNext()) {
+			String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+			} else {
+				tags.put(name, in.nextString());
+			}
+		}
+		in.endObject();
+		return tags;
+	}
+
+	private static Date parseDate(String date) {
+		try {
+			return DATE_FORMAT.get().parse(date);
+		} catch(ParseException e) {
+			throw new JsonSyntaxException("Unparseable registeredAt: " + date, e);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * Thrown by EtcdTransport.watch() when the requested index/revision has
+ * fallen out of Etcd's event history (v2 error 401 EventIndexCleared,
+ * v3 compacted revision). Callers must re-list.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdHistoryCompactedException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public EtcdHistoryCompactedException(String message) {
+		super(message);
+	}
+
+}
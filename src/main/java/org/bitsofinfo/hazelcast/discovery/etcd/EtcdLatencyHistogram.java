@@ -0,0 +1,81 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram w/ fixed, roughly exponential (1-2-5)
+ * millisecond buckets. Percentiles are reported as the upper bound of
+ * the bucket they fall in.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdLatencyHistogram {
+
+	// bucket upper bounds (inclusive), the last bucket is unbounded
+	private static final long[] BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000};
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong totalMS = new AtomicLong();
+	private final AtomicLong maxMS = new AtomicLong();
+
+	public void record(long latencyMS, boolean success) {
+		int bucket = 0;
+		while (bucket < BOUNDS_MS.length && latencyMS > BOUNDS_MS[bucket]) {
+			bucket++;
+		}
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalMS.addAndGet(latencyMS);
+		if (!success) {
+			failures.incrementAndGet();
+		}
+
+		long max = maxMS.get();
+		while (latencyMS > max && !maxMS.compareAndSet(max, latencyMS)) {
+			max = maxMS.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getMaxMS() {
+		return maxMS.get();
+	}
+
+	public double getMeanMS() {
+		long n = count.get();
+		return n == 0 ? 0 : (double)totalMS.get() / n;
+	}
+
+	/**
+	 * @param percentile 0-100
+	 * @return the upper bound of the bucket the percentile falls in (the max for the unbounded bucket), 0 if empty
+	 */
+	public long getPercentileMS(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil((percentile / 100) * n);
+		long seen = 0;
+		for (int i=0; i<buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return i < BOUNDS_MS.length ? Math.min(BOUNDS_MS[i], getMaxMS()) : getMaxMS();
+			}
+		}
+		return getMaxMS();
+	}
+
+}
@@ -0,0 +1,269 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+import org.bitsofinfo.hazelcast.discovery.etcd.EtcdTransport.Entry;
+import org.bitsofinfo.hazelcast.discovery.etcd.EtcdTransport.Listing;
+import org.bitsofinfo.hazelcast.discovery.etcd.EtcdTransport.WatchEvent;
+import org.bitsofinfo.hazelcast.discovery.etcd.EtcdTransport.WatchResult;
+
+/**
+ * Keeps an in-memory snapshot of the DiscoveryNodes registered under
+ * /[etcd-service-name] up to date via a background etcd watch, so that
+ * discoverNodes() can be answered without any network round trip.
+ *
+ * - On start (and whenever the watch can no longer be resumed) the whole
+ *   directory is listed and the snapshot rebuilt, the index of that
+ *   listing is where the watch resumes from.
+ *
+ * - Each change event (set vs delete/expire) is applied incrementally to a
+ *   copy of the member map which is then published as the new immutable
+ *   snapshot (copy-on-write, readers never lock)
+ *
+ * - If our watch index has fallen out of etcd's event history window
+ *   (v2 error 401 EventIndexCleared, v3 compaction) we re-list.
+ *
+ * - Staleness: getSnapshotAgeMS() is the time since the snapshot was last
+ *   confirmed current by etcd, i.e. a listing, an event, or a watch response
+ *   advancing the index. A watch that times out w/ nothing confirms nothing,
+ *   when quiet for a whole watch timeout we re-list instead.
+ *
+ *   The cost: a quiet directory is re-listed in full every WATCH_TIMEOUT_MS,
+ *   one listing per member per 30s, even when nothing changed. A timed out
+ *   watch carries no etcd index to confirm freshness from (v2 never answers
+ *   it, the v3 gateway sends nothing), confirming it would take a read anyway.
+ *   Still far fewer reads than 'poll' mode's one listing per discoverNodes().
+ *   Keep 'etcd-watch-max-staleness-ms' above WATCH_TIMEOUT_MS plus a listing,
+ *   or quiet periods fall back to reading etcd directly.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdMembershipWatcher implements Runnable {
+
+	// how long a single watch long-poll waits before we re-issue it,
+	// also how often a quiet directory is re-listed
+	private static final long WATCH_TIMEOUT_MS = 30000;
+
+	// delay before retrying after an unexpected error
+	private static final long ERROR_BACKOFF_MS = 2000;
+
+	private final EtcdTransport etcdTransport;
+	private final String etcdServiceName;
+	private final ILogger logger;
+	private final EtcdMetricsListener metrics;
+	private final long readTimeoutMS;
+	private volatile EtcdAddressSelector addressSelector = null;
+	private volatile EtcdDiscoveryFilter discoveryFilter = null;
+
+	// the current members keyed by etcd key, only touched by the watch thread
+	private Map<String,DiscoveryNode> members = new HashMap<String,DiscoveryNode>();
+
+	// published, immutable view of members
+	private volatile List<DiscoveryNode> snapshot = null;
+	private volatile long lastConfirmedAt = 0;
+
+	private volatile boolean running = false;
+	private Thread watchThread = null;
+
+	public EtcdMembershipWatcher(EtcdTransport etcdTransport, String etcdServiceName, ILogger logger) {
+		this(etcdTransport, etcdServiceName, null, EtcdTransport.DEFAULT_TIMEOUT_MS, logger);
+	}
+
+	/**
+	 * @param etcdTransport
+	 * @param etcdServiceName
+	 * @param metrics optional, notified of values that cannot be parsed
+	 * @param readTimeoutMS bounds each (re-)listing, i.e. etcd-read-timeout-ms
+	 * @param logger
+	 */
+	public EtcdMembershipWatcher(EtcdTransport etcdTransport, String etcdServiceName, EtcdMetricsListener metrics, 
+								 long readTimeoutMS, ILogger logger) {
+		this.etcdTransport = etcdTransport;
+		this.etcdServiceName = etcdServiceName;
+		this.metrics = metrics;
+		this.readTimeoutMS = readTimeoutMS;
+		this.logger = logger;
+	}
+
+	/**
+	 * Pick among members' labelled addresses, set prior to start()
+	 *
+	 * @param addressSelector null to always use their primary address
+	 */
+	public void setAddressSelector(EtcdAddressSelector addressSelector) {
+		this.addressSelector = addressSelector;
+	}
+
+	/**
+	 * Only track members whose tags match, set prior to start()
+	 *
+	 * @param discoveryFilter null to track all members
+	 */
+	public void setDiscoveryFilter(EtcdDiscoveryFilter discoveryFilter) {
+		this.discoveryFilter = discoveryFilter;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		watchThread = new Thread(this, "etcd-watch-" + etcdServiceName);
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		if (watchThread != null) {
+			watchThread.interrupt();
+			watchThread = null;
+		}
+	}
+
+	/**
+	 * The current snapshot of members, null if the initial
+	 * listing has not yet completed
+	 *
+	 * @return
+	 */
+	public List<DiscoveryNode> getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * How long (ms) since the snapshot was last confirmed as current
+	 * Long.MAX_VALUE if never.
+	 *
+	 * @return
+	 */
+	public long getSnapshotAgeMS() {
+		if (lastConfirmedAt == 0) {
+			return Long.MAX_VALUE;
+		}
+		return System.currentTimeMillis() - lastConfirmedAt;
+	}
+
+	@Override
+	public void run() {
+
+		long watchIndex = -1;
+
+		while (running) {
+			try {
+				// (re)list
+				if (watchIndex < 0) {
+					watchIndex = relist();
+					continue;
+				}
+
+				WatchResult result = etcdTransport.watch(this.etcdServiceName, watchIndex, WATCH_TIMEOUT_MS);
+				if (!result.events.isEmpty()) {
+					apply(result.events);
+
+				} else if (result.nextIndex > watchIndex) {
+					// etcd answered, w/ nothing of ours changed
+					lastConfirmedAt = System.currentTimeMillis();
+
+				} else if (getSnapshotAgeMS() >= WATCH_TIMEOUT_MS) {
+					// a quiet watch confirms nothing (it may have been
+					// answered by no one), re-list to confirm our snapshot
+					watchIndex = relist();
+					continue;
+				}
+				watchIndex = result.nextIndex;
+
+			} catch(EtcdHistoryCompactedException e) {
+				logger.info("Etcd watch index " + watchIndex + " for /" + etcdServiceName +
+						" fell out of the event history window, re-listing");
+				watchIndex = -1;
+
+			} catch(Exception e) {
+				if (!running) {
+					break;
+				}
+				logger.warning("Etcd watch of /" + etcdServiceName + " unexpected error: " + e.getMessage() + ", re-listing");
+				watchIndex = -1;
+				backoff();
+			}
+		}
+	}
+
+	private void backoff() {
+		try {
+			Thread.sleep(ERROR_BACKOFF_MS);
+		} catch(InterruptedException ignore) {}
+	}
+
+	/**
+	 * List the entire service directory and rebuild our snapshot
+	 *
+	 * @return the index to resume watching at
+	 */
+	private long relist() throws Exception {
+
+		Listing listing = etcdTransport.list(this.etcdServiceName, this.readTimeoutMS);
+
+		Map<String,DiscoveryNode> listed = new HashMap<String,DiscoveryNode>();
+		for (Entry entry : listing.entries) {
+			DiscoveryNode discoveryNode = EtcdDiscoveryStrategy.toDiscoveryNode(entry.key, entry.value, logger, metrics, addressSelector, discoveryFilter);
+			if (discoveryNode != null) {
+				listed.put(entry.key, discoveryNode);
+			}
+		}
+
+		this.members = listed;
+		publish();
+		return listing.nextIndex;
+	}
+
+	/**
+	 * Apply watch events to our members
+	 */
+	private void apply(List<WatchEvent> events) {
+
+		Map<String,DiscoveryNode> updated = new HashMap<String,DiscoveryNode>(this.members);
+
+		for (WatchEvent event : events) {
+			if (event.deleted) {
+				if (event.dir) {
+					// everything at or below the deleted directory is gone
+					String dirPrefix = event.key.endsWith("/") ? event.key : event.key + "/";
+					for (Iterator<String> itr = updated.keySet().iterator(); itr.hasNext(); ) {
+						if (itr.next().startsWith(dirPrefix)) {
+							itr.remove();
+						}
+					}
+				} else {
+					updated.remove(event.key);
+				}
+
+			} else {
+				DiscoveryNode discoveryNode = EtcdDiscoveryStrategy.toDiscoveryNode(event.key, event.value, logger, metrics, addressSelector, discoveryFilter);
+				if (discoveryNode != null) {
+					updated.put(event.key, discoveryNode);
+				} else {
+					updated.remove(event.key);
+				}
+			}
+		}
+
+		this.members = updated;
+		publish();
+	}
+
+	private void publish() {
+		this.snapshot = Collections.unmodifiableList(new ArrayList<DiscoveryNode>(members.values()));
+		this.lastConfirmedAt = System.currentTimeMillis();
+	}
+
+}
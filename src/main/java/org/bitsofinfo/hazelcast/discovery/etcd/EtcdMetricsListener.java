@@ -0,0 +1,60 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * Hook for publishing discovery/registration metrics to a metrics
+ * registry (Micrometer, Dropwizard, Prometheus...). Configure the
+ * implementing class (w/ a no-arg constructor) via 'etcd-metrics-listener'.
+ *
+ * Implementations must be thread-safe and fast, they are invoked
+ * inline on the discovery/registration paths.
+ *
+ * @author bitsofinfo
+ *
+ */
+public interface EtcdMetricsListener {
+
+	public static final String OPERATION_DISCOVER = "discover";
+	public static final String OPERATION_REGISTER = "register";
+	public static final String OPERATION_DEREGISTER = "deregister";
+
+	/**
+	 * Invoked once before any other method
+	 *
+	 * @param etcdServiceName
+	 */
+	public void init(String etcdServiceName);
+
+	/**
+	 * A discover (read from Etcd), register or deregister completed. A discover
+	 * refused by the open circuit breaker counts as an unsuccessful one.
+	 *
+	 * @param operation one of the OPERATION_ constants
+	 * @param latencyMS
+	 * @param success
+	 */
+	public void onOperation(String operation, long latencyMS, boolean success);
+
+	/**
+	 * Number of members returned by the last discovery, after skipping
+	 * values that cannot be parsed and members filtered out (i.e. draining)
+	 *
+	 * @param memberCount
+	 */
+	public void onDiscovered(int memberCount);
+
+	/**
+	 * A member's value could not be parsed and was skipped
+	 *
+	 * @param key
+	 */
+	public void onParseFailure(String key);
+
+	/**
+	 * A request to an Etcd endpoint failed
+	 *
+	 * @param endpoint the endpoint's uri. With the v2 API and several etcd-uris, unless
+	 *                 scored (etcd-endpoint-probe-ms), all of them: etcd4j fails over internally
+	 */
+	public void onEndpointError(String endpoint);
+
+}
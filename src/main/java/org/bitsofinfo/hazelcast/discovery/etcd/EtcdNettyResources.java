@@ -0,0 +1,133 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import com.hazelcast.logging.ILogger;
+
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import mousio.etcd4j.transport.EtcdNettyConfig;
+
+/**
+ * Process-wide, reference-counted Netty event loop group that every
+ * EtcdClient in this JVM does its I/O on, rather than each client
+ * creating (and on close() tearing down) an event loop group of its own.
+ * Sized by 'etcd-io-threads', the first acquirer's size is used.
+ *
+ * Buffers: etcd4j's clients already allocate from Netty's pooled
+ * PooledByteBufAllocator.DEFAULT, which is shared JVM-wide, the
+ * direct memory it holds is exposed here.
+ *
+ * Usage: acquire() the resources, build clients w/ newNettyConfig() and
+ * release() when done. The last release() shuts the event loop group down.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdNettyResources {
+
+	public static final int DEFAULT_IO_THREADS = 2;
+
+	// the largest response etcd4j aggregates, its own default (100KB) holds only a few hundred members
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	// guards all of the below
+	private static final Object LOCK = new Object();
+
+	// the single live instance in this JVM, null if none
+	private static EtcdNettyResources shared = null;
+
+	private final EventLoopGroup eventLoopGroup;
+	private final int ioThreads;
+	private final ILogger logger;
+	private int refCount = 0;
+
+	private EtcdNettyResources(int ioThreads, ILogger logger) {
+		this.ioThreads = ioThreads;
+		this.logger = logger;
+		this.eventLoopGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("etcd-io", true));
+	}
+
+	/**
+	 * Acquire (and retain) the shared resources, creating them if this is
+	 * the first reference. ioThreads only applies when they are created,
+	 * subsequent acquirers share the existing event loop group.
+	 *
+	 * @param ioThreads
+	 * @param logger
+	 * @return
+	 */
+	public static EtcdNettyResources acquire(int ioThreads, ILogger logger) {
+		synchronized(LOCK) {
+			if (shared == null) {
+				shared = new EtcdNettyResources(Math.max(1, ioThreads), logger);
+				logger.info("Created shared Etcd Netty event loop group w/ " + shared.ioThreads + " threads");
+			}
+			shared.refCount++;
+			return shared;
+		}
+	}
+
+	/**
+	 * Release a reference, the last release shuts down the event loop group
+	 */
+	public void release() {
+		synchronized(LOCK) {
+			refCount--;
+			if (refCount > 0) {
+				return;
+			}
+			if (shared == this) {
+				shared = null;
+			}
+		}
+
+		// clients are closed prior, nothing left to drain
+		eventLoopGroup.shutdownGracefully();
+		logger.info("Shut down shared Etcd Netty event loop group");
+	}
+
+	/**
+	 * A config for building an EtcdNettyClient on our event loop group,
+	 * which closing the client leaves running
+	 *
+	 * @param maxFrameSize the largest response (bytes) the client accepts
+	 * @return
+	 */
+	public EtcdNettyConfig newNettyConfig(int maxFrameSize) {
+		return new EtcdNettyConfig().setEventLoopGroup(eventLoopGroup, false).setMaxFrameSize(maxFrameSize);
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	/**
+	 * @return the number of I/O threads of the shared event loop group, 0 if none
+	 */
+	public static int getSharedIoThreads() {
+		synchronized(LOCK) {
+			return shared != null ? shared.ioThreads : 0;
+		}
+	}
+
+	/**
+	 * @return direct memory held by Netty's default pooled allocator, the size of
+	 *         all chunks of its direct arenas
+	 */
+	public static long getPooledDirectMemory() {
+		long used = 0;
+		for (PoolArenaMetric arena : PooledByteBufAllocator.DEFAULT.directArenas()) {
+			for (PoolChunkListMetric chunkList : arena.chunkLists()) {
+				for (PoolChunkMetric chunk : chunkList) {
+					used += chunk.chunkSize();
+				}
+			}
+		}
+		return used;
+	}
+
+}
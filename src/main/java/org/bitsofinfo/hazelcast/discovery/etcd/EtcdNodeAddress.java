@@ -0,0 +1,29 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * One of possibly several labelled addresses a member registers in
+ * addition to its primary ip/port, i.e. 'vpc' and 'public'
+ *
+ * @see EtcdAddressSelector
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdNodeAddress {
+
+	public String label;
+	public String ip;
+	public Integer port;
+
+	public EtcdNodeAddress(String label, String ip, Integer port) {
+		this.label = label;
+		this.ip = ip;
+		this.port = port;
+	}
+
+	@Override
+	public String toString() {
+		return label + "=" + ip + ":" + port;
+	}
+
+}
@@ -0,0 +1,339 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+/**
+ * Encodes/decodes the values registered under /[etcd-service-name]/[id]
+ * in one of two formats:
+ *
+ * - 'json' (default): the legacy EtcdHazelcastNode JSON
+ *     {"ip":"10.0.0.1","port":5701,"hostname":"host","registeredAt":"2016.01.01 00:00:00.000 +0000"}
+ *
+ * - 'compact': a versioned, fixed-order '|' delimited record w/ an epoch millis timestamp
+ *     hz1|10.0.0.1|5701|host|1451606400000
+ *   followed, for members registering labelled addresses, a zone/rack/host and/or tags,
+ *   by trailing fields (ignored by readers predating them)
+ *     hz1|10.0.0.1|5701|host|1451606400000|vpc=10.0.0.1:5701,public=203.0.113.7:5701|zone-a|rack-1|hv-7|role=data,version=3.12
+ *
+ * Decoding auto-detects the format so clusters w/ members writing
+ * either format (i.e. mid upgrade) interoperate.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdNodeValueCodec {
+
+	public static final String FORMAT_JSON = "json";
+	public static final String FORMAT_COMPACT = "compact";
+
+	// version 1 of the compact format, future versions are hz2|, hz3|...
+	private static final String COMPACT_V1_PREFIX = "hz1|";
+	private static final String COMPACT_PREFIX = "hz";
+	private static final char DELIMITER = '|';
+	private static final char ADDRESS_DELIMITER = ',';
+	
+	// the tags field follows this many delimiters (including the prefix's)
+	private static final int TAGS_FIELD_DELIMITERS = 8;
+
+	private EtcdNodeValueCodec() {}
+
+	/**
+	 * Normalize a configured format name
+	 *
+	 * @param format
+	 * @return FORMAT_COMPACT or FORMAT_JSON (for anything else)
+	 */
+	public static String toFormat(String format) {
+		if (format != null && FORMAT_COMPACT.equalsIgnoreCase(format.trim())) {
+			return FORMAT_COMPACT;
+		}
+		return FORMAT_JSON;
+	}
+
+	/**
+	 * Encode a node in the given format
+	 *
+	 * @param node
+	 * @param format FORMAT_JSON or FORMAT_COMPACT
+	 * @return
+	 */
+	public static String encode(EtcdHazelcastNode node, String format) {
+		if (!FORMAT_COMPACT.equals(format)) {
+			return EtcdHazelcastNodeTypeAdapter.encode(node);
+		}
+
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(COMPACT_V1_PREFIX)
+		  .append(node.ip).append(DELIMITER)
+		  .append(node.port).append(DELIMITER)
+		  .append(node.hostname != null ? node.hostname : "").append(DELIMITER)
+		  .append(node.registeredAt != null ? node.registeredAt.getTime() : 0);
+		boolean hasAddresses = node.addresses != null && !node.addresses.isEmpty();
+		boolean hasTags = node.tags != null && !node.tags.isEmpty();
+		boolean hasLocality = node.zone != null || node.rack != null || node.host != null;
+		// trailing fields are positional, earlier ones are written (empty) for later ones
+		if (hasAddresses || hasLocality || hasTags) {
+			sb.append(DELIMITER);
+			for (int i=0; hasAddresses && i<node.addresses.size(); i++) {
+				if (i > 0) {
+					sb.append(ADDRESS_DELIMITER);
+				}
+				sb.append(node.addresses.get(i));
+			}
+		}
+		if (hasLocality || hasTags) {
+			sb.append(DELIMITER).append(node.zone != null ? node.zone : "")
+			  .append(DELIMITER).append(node.rack != null ? node.rack : "")
+			  .append(DELIMITER).append(node.host != null ? node.host : "");
+		}
+		if (hasTags) {
+			sb.append(DELIMITER);
+			boolean first = true;
+			for (Map.Entry<String,String> tag : node.tags.entrySet()) {
+				if (!first) {
+					sb.append(ADDRESS_DELIMITER);
+				}
+				sb.append(tag.getKey()).append('=').append(tag.getValue());
+				first = false;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Read only the ip/port from a value of either format
+	 *
+	 * @param value
+	 * @return null if the value is blank
+	 * @throws IOException if the value is malformed or of an unsupported version
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value) throws IOException {
+		return decodeAddress(value, null);
+	}
+
+	/**
+	 * Read only the address to use from a value of either format
+	 *
+	 * @param value
+	 * @param selector picks among the node's labelled addresses, if null the primary ip/port is used
+	 * @return null if the value is blank
+	 * @throws IOException if the value is malformed or of an unsupported version
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value, EtcdAddressSelector selector) throws IOException {
+		return decodeAddress(value, selector, null, null);
+	}
+
+	/**
+	 * Read only the address to use, and optionally the zone/rack/host, from a value of either format
+	 *
+	 * @param value
+	 * @param selector picks among the node's labelled addresses, if null the primary ip/port is used
+	 * @param filter if not null, nodes whose tags do not match are skipped
+	 * @param attributes if not null, receives the zone/rack/host (if any) keyed by their PartitionGroupMetaData name
+	 * @return null if the value is blank or does not match the filter
+	 * @throws IOException if the value is malformed or of an unsupported version
+	 * @throws java.net.UnknownHostException if the ip cannot be resolved
+	 */
+	public static Address decodeAddress(String value, EtcdAddressSelector selector, EtcdDiscoveryFilter filter,
+										Map<String,Object> attributes) throws IOException {
+		int start = firstNonBlank(value);
+		if (start == -1) {
+			return null;
+		}
+
+		if (value.charAt(start) == '{') {
+			return EtcdHazelcastNodeTypeAdapter.decodeAddress(value, selector, filter, attributes);
+		}
+
+		// w/o trailing fields there is nothing to select from, no attributes and no tags
+		int delimiters = (attributes != null || filter != null) ? countDelimiters(value, start) : 0;
+		if (selector != null || (attributes != null && delimiters > 4)) {
+			EtcdHazelcastNode node = decode(value);
+			if (filter != null && !filter.matches(node.tags)) {
+				return null;
+			}
+			if (attributes != null) {
+				putIfNotNull(attributes, PartitionGroupMetaData.PARTITION_GROUP_ZONE, node.zone);
+				putIfNotNull(attributes, PartitionGroupMetaData.PARTITION_GROUP_RACK, node.rack);
+				putIfNotNull(attributes, PartitionGroupMetaData.PARTITION_GROUP_HOST, node.host);
+			}
+			if (selector != null) {
+				return selector.select(node.ip, node.port, node.addresses);
+			}
+			return new Address(node.ip, node.port);
+		}
+		// only the tags are needed, w/o decoding the rest
+		if (filter != null && !filter.matches(delimiters > TAGS_FIELD_DELIMITERS ? decodeTags(value, tagsField(value, start)) : null)) {
+			return null;
+		}
+
+		int ipStart = compactFieldsStart(value, start);
+		int ipEnd = value.indexOf(DELIMITER, ipStart);
+		if (ipEnd == -1) {
+			throw new IOException("Malformed compact node value: " + value);
+		}
+		int portEnd = value.indexOf(DELIMITER, ipEnd + 1);
+		return new Address(value.substring(ipStart, ipEnd), parsePort(value, ipEnd + 1, portEnd == -1 ? value.length() : portEnd));
+	}
+
+	/**
+	 * Fully decode a value of either format
+	 *
+	 * @param value
+	 * @return null if the value is blank
+	 * @throws IOException if the value is malformed or of an unsupported version
+	 */
+	public static EtcdHazelcastNode decode(String value) throws IOException {
+		int start = firstNonBlank(value);
+		if (start == -1) {
+			return null;
+		}
+
+		if (value.charAt(start) == '{') {
+			return EtcdHazelcastNodeTypeAdapter.INSTANCE.fromJson(value);
+		}
+
+		String[] fields = value.substring(compactFieldsStart(value, start)).split("\\|", -1);
+		if (fields.length < 4) {
+			throw new IOException("Malformed compact node value: " + value);
+		}
+
+		try {
+			EtcdHazelcastNode node = new EtcdHazelcastNode(fields[0], Integer.valueOf(fields[1]),
+														   fields[2].isEmpty() ? null : fields[2]);
+			node.registeredAt = new Date(Long.parseLong(fields[3].trim()));
+			if (fields.length > 4 && !fields[4].trim().isEmpty()) {
+				node.addresses = decodeAddresses(value, fields[4]);
+			}
+			if (fields.length > 7) {
+				node.zone = fields[5].isEmpty() ? null : fields[5];
+				node.rack = fields[6].isEmpty() ? null : fields[6];
+				node.host = fields[7].isEmpty() ? null : fields[7];
+			}
+			if (fields.length > 8 && !fields[8].trim().isEmpty()) {
+				node.tags = decodeTags(value, fields[8]);
+			}
+			return node;
+
+		} catch(NumberFormatException e) {
+			throw new IOException("Malformed compact node value: " + value, e);
+		}
+	}
+
+	private static int countDelimiters(String value, int from) {
+		int count = 0;
+		for (int i=from; i<value.length(); i++) {
+			if (value.charAt(i) == DELIMITER) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void putIfNotNull(Map<String,Object> attributes, String key, String value) {
+		if (value != null) {
+			attributes.put(key, value);
+		}
+	}
+
+	// label=ip:port,label=ip:port (ip may be IPv6)
+	private static List<EtcdNodeAddress> decodeAddresses(String value, String field) throws IOException {
+		List<EtcdNodeAddress> addresses = new ArrayList<EtcdNodeAddress>();
+		for (String address : field.split(String.valueOf(ADDRESS_DELIMITER))) {
+			int equals = address.indexOf('=');
+			int colon = address.lastIndexOf(':');
+			if (equals <= 0 || colon <= equals + 1) {
+				throw new IOException("Malformed compact node value address: " + value);
+			}
+			addresses.add(new EtcdNodeAddress(address.substring(0, equals), address.substring(equals + 1, colon),
+											  parsePort(address, colon + 1, address.length())));
+		}
+		return addresses;
+	}
+
+	// the tags field of a compact value w/ one
+	private static String tagsField(String value, int start) {
+		int from = start;
+		for (int i=0; i<=TAGS_FIELD_DELIMITERS; i++) {
+			from = value.indexOf(DELIMITER, from) + 1;
+		}
+		int to = value.indexOf(DELIMITER, from);
+		return value.substring(from, to == -1 ? value.length() : to);
+	}
+
+	// key=value,key=value
+	private static Map<String,String> decodeTags(String value, String field) throws IOException {
+		if (field.trim().isEmpty()) {
+			return null;
+		}
+		Map<String,String> tags = new LinkedHashMap<String,String>();
+		for (String tag : field.split(String.valueOf(ADDRESS_DELIMITER))) {
+			int equals = tag.indexOf('=');
+			if (equals <= 0) {
+				throw new IOException("Malformed compact node value tag: " + value);
+			}
+			tags.put(tag.substring(0, equals), tag.substring(equals + 1));
+		}
+		return tags;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return true if the tag can be encoded in the compact format
+	 */
+	public static boolean isValidTag(String key, String value) {
+		return key != null && !key.isEmpty() && value != null
+				&& key.indexOf('=') == -1 && key.indexOf(DELIMITER) == -1 && key.indexOf(ADDRESS_DELIMITER) == -1
+				&& value.indexOf(DELIMITER) == -1 && value.indexOf(ADDRESS_DELIMITER) == -1;
+	}
+
+	// index of the first field after the hz1| prefix
+	private static int compactFieldsStart(String value, int start) throws IOException {
+		if (value.startsWith(COMPACT_V1_PREFIX, start)) {
+			return start + COMPACT_V1_PREFIX.length();
+		}
+		if (value.startsWith(COMPACT_PREFIX, start)) {
+			throw new IOException("Unsupported compact node value version: " + value);
+		}
+		throw new IOException("Unrecognized node value format: " + value);
+	}
+
+	private static int parsePort(String value, int from, int to) throws IOException {
+		if (from >= to) {
+			throw new IOException("Malformed compact node value: " + value);
+		}
+		int port = 0;
+		for (int i=from; i<to; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IOException("Malformed compact node value port: " + value);
+			}
+			port = (port * 10) + (c - '0');
+		}
+		return port;
+	}
+
+	private static int firstNonBlank(String value) {
+		if (value == null) {
+			return -1;
+		}
+		for (int i=0; i<value.length(); i++) {
+			if (value.charAt(i) > ' ') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.LifecycleEvent;
+import com.hazelcast.core.LifecycleEvent.LifecycleState;
+import com.hazelcast.core.LifecycleListener;
+
+/**
+ * Binds the HazelcastInstance to the EtcdDiscoveryStrategy of its member, whose
+ * members partition-group group-type SPI groups (@see EtcdPartitionGroupStrategy).
+ * Hazelcast hands neither the discovery strategy nor its factory the instance.
+ *
+ * Bound on STARTING, which Hazelcast fires before the member joins and first
+ * groups its partitions. Configure it as a listener of the member:
+ *
+ *   <listeners>
+ *     <listener>org.bitsofinfo.hazelcast.discovery.etcd.EtcdPartitionGroupLifecycleListener</listener>
+ *   </listeners>
+ *
+ * The strategy is found by this member's address among those in the JVM.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdPartitionGroupLifecycleListener implements LifecycleListener, HazelcastInstanceAware {
+
+	private HazelcastInstance hazelcastInstance = null;
+	private boolean bound = false;
+
+	@Override
+	public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+		this.hazelcastInstance = hazelcastInstance;
+	}
+
+	@Override
+	public void stateChanged(LifecycleEvent event) {
+		if (this.bound || event.getState() == LifecycleState.SHUTDOWN) {
+			return;
+		}
+
+		EtcdDiscoveryStrategy strategy = EtcdDiscoveryStrategy.forHazelcastInstance(this.hazelcastInstance);
+		if (strategy != null) {
+			strategy.setHazelcastInstance(this.hazelcastInstance);
+			this.bound = true;
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.partition.membergroup.DefaultMemberGroup;
+import com.hazelcast.partition.membergroup.MemberGroup;
+import com.hazelcast.spi.partitiongroup.PartitionGroupStrategy;
+
+/**
+ * Groups the cluster's members by their zone (or rack, or host) so Hazelcast
+ * places a partition's backups in a different zone than its owner. Used w/:
+ *
+ *   <partition-group enabled="true" group-type="SPI"/>
+ *
+ * A member's zone is its member attribute, which every member publishes
+ * itself (@see EtcdDiscoveryStrategy.discoverLocalMetadata()), Etcd is
+ * not read. Members w/o one form a group of their own.
+ *
+ * Hazelcast does not hand the SPI the members to group, these are taken from
+ * the local HazelcastInstance, which the EtcdPartitionGroupLifecycleListener
+ * binds to the strategy. W/o it configured use group-type ZONE_AWARE (Hazelcast 3.7+)
+ * instead, which groups by the very same attributes.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdPartitionGroupStrategy implements PartitionGroupStrategy {
+
+	private final HazelcastInstance hazelcastInstance;
+	private final String groupBy;
+	private final ILogger logger;
+
+	/**
+	 * Constructor
+	 *
+	 * @param hazelcastInstance the local instance whose members are grouped, may be null
+	 * @param groupBy the PartitionGroupMetaData attribute to group by
+	 * @param logger
+	 */
+	public EtcdPartitionGroupStrategy(HazelcastInstance hazelcastInstance, String groupBy, ILogger logger) {
+		this.hazelcastInstance = hazelcastInstance;
+		this.groupBy = groupBy;
+		this.logger = logger;
+	}
+
+	/**
+	 * @throws IllegalStateException if no HazelcastInstance is bound
+	 */
+	@Override
+	public Iterable<MemberGroup> getMemberGroups() {
+		if (hazelcastInstance == null) {
+			throw new IllegalStateException("Cannot group members by " + groupBy + " w/ partition-group group-type SPI, " +
+					"the EtcdPartitionGroupLifecycleListener is not configured. Configure it, " +
+					"or use group-type ZONE_AWARE");
+		}
+		return getMemberGroups(hazelcastInstance.getCluster().getMembers());
+	}
+
+	/**
+	 * Group the given members by their groupBy attribute
+	 *
+	 * @param members
+	 * @return a group per distinct value, plus one per member w/o the attribute
+	 */
+	public List<MemberGroup> getMemberGroups(Collection<? extends Member> members) {
+		Map<Object,List<Member>> groups = new LinkedHashMap<Object,List<Member>>();
+		for (Member member : members) {
+			Map<String,Object> attributes = member.getAttributes();
+			Object value = attributes != null ? attributes.get(groupBy) : null;
+
+			// ungrouped members each on their own
+			Object key = value != null ? value : member.getAddress();
+
+			List<Member> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Member>();
+				groups.put(key, group);
+			}
+			group.add(member);
+		}
+
+		List<MemberGroup> memberGroups = new ArrayList<MemberGroup>(groups.size());
+		for (List<Member> group : groups.values()) {
+			memberGroups.add(new DefaultMemberGroup(group));
+		}
+		logger.fine("Grouped members by " + groupBy + " into: " + groups.keySet());
+		return memberGroups;
+	}
+
+}
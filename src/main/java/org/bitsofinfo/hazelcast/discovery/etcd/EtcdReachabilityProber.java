@@ -0,0 +1,242 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+/**
+ * Orders discovered members so those accepting TCP connections come first,
+ * so Hazelcast's joiner does not spend its connection timeout on each stale
+ * or dead address in turn before reaching a live one.
+ *
+ * Every candidate not probed within cacheMS is probed at once: a non-blocking
+ * connect() is started to each and a single Selector waits for all of them,
+ * up to probeTimeoutMS overall. Connected or not by then, the channels are
+ * closed and the outcome cached for cacheMS.
+ *
+ * Unreachable members are ordered last or, w/ dropUnreachable, left out
+ * (unless none are reachable, i.e. the probes themselves are being blocked).
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdReachabilityProber {
+
+	/**
+	 * A cached probe outcome
+	 */
+	private static class Probe {
+		final boolean reachable;
+		final long probedAt;
+
+		Probe(boolean reachable, long probedAt) {
+			this.reachable = reachable;
+			this.probedAt = probedAt;
+		}
+	}
+
+	private final long probeTimeoutMS;
+	private final long cacheMS;
+	private final boolean dropUnreachable;
+	private final ILogger logger;
+
+	private final Map<Address,Probe> probes = new ConcurrentHashMap<Address,Probe>();
+
+	private volatile int lastUnreachable = 0;
+	private volatile long probesSent = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param probeTimeoutMS how long to wait for all probes of a discovery
+	 * @param cacheMS how long a probe's outcome is reused
+	 * @param dropUnreachable leave unreachable members out rather than ordering them last
+	 * @param logger
+	 */
+	public EtcdReachabilityProber(long probeTimeoutMS, long cacheMS, boolean dropUnreachable, ILogger logger) {
+		this.probeTimeoutMS = probeTimeoutMS;
+		this.cacheMS = cacheMS;
+		this.dropUnreachable = dropUnreachable;
+		this.logger = logger;
+	}
+
+	/**
+	 * Probe (as needed) and order the given members, reachable ones first
+	 *
+	 * @param nodes may be null
+	 * @return
+	 */
+	public synchronized List<DiscoveryNode> order(Iterable<DiscoveryNode> nodes) {
+		List<DiscoveryNode> reachable = new ArrayList<DiscoveryNode>();
+		List<DiscoveryNode> unreachable = new ArrayList<DiscoveryNode>();
+		if (nodes == null) {
+			return reachable;
+		}
+
+		long now = System.currentTimeMillis();
+		evictExpired(now);
+
+		List<DiscoveryNode> candidates = new ArrayList<DiscoveryNode>();
+		Set<Address> toProbe = new LinkedHashSet<Address>();
+		for (DiscoveryNode node : nodes) {
+			candidates.add(node);
+			if (!probes.containsKey(node.getPrivateAddress())) {
+				toProbe.add(node.getPrivateAddress());
+			}
+		}
+
+		if (!toProbe.isEmpty()) {
+			long probeStart = System.currentTimeMillis();
+			Map<Address,Boolean> results = probe(toProbe);
+			for (Map.Entry<Address,Boolean> result : results.entrySet()) {
+				probes.put(result.getKey(), new Probe(result.getValue(), now));
+			}
+			logger.fine("Probed " + toProbe.size() + " members in " + (System.currentTimeMillis() - probeStart) + "ms");
+		}
+
+		for (DiscoveryNode node : candidates) {
+			Probe probe = probes.get(node.getPrivateAddress());
+			if (probe == null || probe.reachable) {
+				reachable.add(node);
+			} else {
+				unreachable.add(node);
+			}
+		}
+
+		this.lastUnreachable = unreachable.size();
+		if (unreachable.isEmpty()) {
+			return reachable;
+		}
+
+		if (dropUnreachable && !reachable.isEmpty()) {
+			logger.fine("Leaving out " + unreachable.size() + " unreachable members");
+			return reachable;
+		}
+		reachable.addAll(unreachable);
+		return reachable;
+	}
+
+	/**
+	 * Concurrently probe the given addresses w/ non-blocking connects
+	 *
+	 * @param addresses
+	 * @return reachability of each
+	 */
+	private Map<Address,Boolean> probe(Set<Address> addresses) {
+		Map<Address,Boolean> results = new HashMap<Address,Boolean>();
+		for (Address address : addresses) {
+			results.put(address, false);
+		}
+
+		Selector selector = null;
+		try {
+			selector = Selector.open();
+
+			int pending = 0;
+			for (Address address : addresses) {
+				SocketChannel channel = null;
+				try {
+					channel = SocketChannel.open();
+					channel.configureBlocking(false);
+					probesSent++;
+					if (channel.connect(address.getInetSocketAddress())) {
+						// i.e. loopback
+						results.put(address, true);
+						closeQuietly(channel);
+					} else {
+						channel.register(selector, SelectionKey.OP_CONNECT, address);
+						pending++;
+					}
+				} catch(Exception e) {
+					// unresolvable, no route etc.
+					logger.finest("Probe of " + address + " failed: " + e.getMessage());
+					closeQuietly(channel);
+				}
+			}
+
+			long deadline = System.currentTimeMillis() + probeTimeoutMS;
+			while (pending > 0) {
+				long remainingMS = deadline - System.currentTimeMillis();
+				if (remainingMS <= 0) {
+					break;
+				}
+				if (selector.select(remainingMS) == 0) {
+					continue;
+				}
+
+				Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+				while (selected.hasNext()) {
+					SelectionKey key = selected.next();
+					selected.remove();
+					try {
+						results.put((Address)key.attachment(), ((SocketChannel)key.channel()).finishConnect());
+					} catch(IOException e) {
+						// refused, reset etc.
+					}
+					key.cancel();
+					closeQuietly(key.channel());
+					pending--;
+				}
+			}
+
+			// whatever has not connected by now counts as unreachable
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key.channel());
+			}
+
+		} catch(IOException e) {
+			logger.warning("Error probing member reachability: " + e.getMessage());
+
+		} finally {
+			closeQuietly(selector);
+		}
+
+		return results;
+	}
+
+	private void evictExpired(long now) {
+		Iterator<Probe> itr = probes.values().iterator();
+		while (itr.hasNext()) {
+			if (now - itr.next().probedAt >= cacheMS) {
+				itr.remove();
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			if (closeable != null) {
+				closeable.close();
+			}
+		} catch(IOException ignore) {}
+	}
+
+	/**
+	 * @return how many members the last order() found unreachable
+	 */
+	public int getLastUnreachable() {
+		return lastUnreachable;
+	}
+
+	/**
+	 * @return total connect() probes started
+	 */
+	public long getProbesSent() {
+		return probesSent;
+	}
+
+}
@@ -0,0 +1,218 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bitsofinfo.hazelcast.discovery.etcd.EtcdTransport.Entry;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * Blocks the EtcdDiscoveryStrategy's startup until the configured readiness
+ * condition(s) are met, or 'etcd-discovery-delay-ms' elapses, whichever is first.
+ *
+ * Supported conditions ('etcd-discovery-ready-condition', comma separated, ALL must be met)
+ *
+ *  - none: (default) no condition, sleep the full 'etcd-discovery-delay-ms' (legacy behavior)
+ *  - self-visible: our own registered key is visible when listing /[etcd-service-name]
+ *                  (always met if the registrator does not register anything)
+ *  - expected-members: at least 'etcd-expected-members' members are listed, not
+ *                      counting those draining (@see BaseRegistrator#drain)
+ *  - stable: the set of listed keys has not changed for 'etcd-stable-ms'
+ *
+ * The service directory is re-listed every POLL_INTERVAL_MS until satisfied,
+ * each time w/ a consistent read (@see EtcdTransport#listKeys) so a lagging
+ * etcd member cannot hide our own or others' registrations. Each read is
+ * bounded by the read timeout, or the time left if shorter. 'expected-members'
+ * also needs the values, to skip draining members: those keys are listed
+ * again w/ their values, and only ever subtracted from the consistent read.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdReadinessGate {
+
+	public static final String CONDITION_NONE = "none";
+	public static final String CONDITION_SELF_VISIBLE = "self-visible";
+	public static final String CONDITION_EXPECTED_MEMBERS = "expected-members";
+	public static final String CONDITION_STABLE = "stable";
+
+	private static final long POLL_INTERVAL_MS = 500;
+
+	// matches all but draining members
+	private static final EtcdDiscoveryFilter NOT_DRAINING = new EtcdDiscoveryFilter("!" + BaseRegistrator.TAG_DRAINING);
+
+	private final EtcdTransport etcdTransport;
+	private final String etcdServiceName;
+	private final ILogger logger;
+
+	private boolean requireSelfVisible = false;
+	private boolean requireExpectedMembers = false;
+	private boolean requireStable = false;
+
+	private final int expectedMembers;
+	private final long stableMS;
+	private final long readTimeoutMS;
+
+	// state while awaiting
+	private Set<String> lastKeys = null;
+	private long lastChangeAt = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param etcdTransport
+	 * @param etcdServiceName
+	 * @param conditions comma separated list of conditions
+	 * @param expectedMembers for 'expected-members'
+	 * @param stableMS for 'stable'
+	 * @param readTimeoutMS upper bound for each listing
+	 * @param logger
+	 */
+	public EtcdReadinessGate(EtcdTransport etcdTransport,
+							 String etcdServiceName,
+							 String conditions,
+							 int expectedMembers,
+							 long stableMS,
+							 long readTimeoutMS,
+							 ILogger logger) {
+
+		this.etcdTransport = etcdTransport;
+		this.etcdServiceName = etcdServiceName;
+		this.expectedMembers = expectedMembers;
+		this.stableMS = stableMS;
+		this.readTimeoutMS = readTimeoutMS;
+		this.logger = logger;
+
+		if (conditions != null) {
+			for (String condition : conditions.split(",")) {
+				condition = condition.trim().toLowerCase();
+
+				if (condition.isEmpty() || condition.equals(CONDITION_NONE)) {
+					continue;
+				} else if (condition.equals(CONDITION_SELF_VISIBLE)) {
+					requireSelfVisible = true;
+				} else if (condition.equals(CONDITION_EXPECTED_MEMBERS)) {
+					requireExpectedMembers = true;
+				} else if (condition.equals(CONDITION_STABLE)) {
+					requireStable = true;
+				} else {
+					logger.warning("Ignoring unknown 'etcd-discovery-ready-condition': " + condition);
+				}
+			}
+		}
+	}
+
+	public boolean hasConditions() {
+		return requireSelfVisible || requireExpectedMembers || requireStable;
+	}
+
+	/**
+	 * Wait until all conditions are met or maxWaitMS elapses
+	 *
+	 * @param myEtcdKey our registered key, null if we did not register
+	 * @param maxWaitMS upper bound
+	 * @return how long (ms) we actually waited
+	 * @throws InterruptedException
+	 */
+	public long await(String myEtcdKey, long maxWaitMS) throws InterruptedException {
+
+		long startedAt = System.currentTimeMillis();
+		long deadline = startedAt + maxWaitMS;
+
+		if (!hasConditions()) {
+			Thread.sleep(maxWaitMS);
+			return maxWaitMS;
+		}
+
+		while (true) {
+
+			Set<String> keys = listKeys(Math.max(1, Math.min(deadline - System.currentTimeMillis(), readTimeoutMS)));
+			boolean ready = keys != null && isReady(keys, myEtcdKey, deadline);
+
+			long now = System.currentTimeMillis();
+			if (ready) {
+				logger.info("Etcd discovery readiness condition(s) met after " + (now - startedAt) +
+						"ms, members listed: " + keys.size());
+				return now - startedAt;
+			}
+
+			if (now >= deadline) {
+				logger.info("Etcd discovery readiness condition(s) NOT met within " + maxWaitMS +
+						"ms, proceeding anyway");
+				return now - startedAt;
+			}
+
+			Thread.sleep(Math.min(POLL_INTERVAL_MS, Math.max(1, deadline - now)));
+		}
+	}
+
+	private boolean isReady(Set<String> keys, String myEtcdKey, long deadline) {
+
+		long now = System.currentTimeMillis();
+
+		// track when the membership last changed
+		if (lastKeys == null || !lastKeys.equals(keys)) {
+			lastKeys = keys;
+			lastChangeAt = now;
+		}
+
+		if (requireSelfVisible && myEtcdKey != null && !keys.contains(myEtcdKey)) {
+			return false;
+		}
+
+		if (requireExpectedMembers && countNotDraining(keys, deadline) < expectedMembers) {
+			return false;
+		}
+
+		if (requireStable && (now - lastChangeAt) < stableMS) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param keys from the consistent read
+	 * @param deadline
+	 * @return how many of the keys are not draining, on error all of them
+	 */
+	private int countNotDraining(Set<String> keys, long deadline) {
+		long timeoutMS = Math.max(1, Math.min(deadline - System.currentTimeMillis(), readTimeoutMS));
+		int draining = 0;
+		try {
+			for (Entry entry : etcdTransport.list(this.etcdServiceName, timeoutMS).entries) {
+				if (keys.contains(entry.key) && isDraining(entry.value)) {
+					draining++;
+				}
+			}
+		} catch(Exception e) {
+			logger.warning("Error listing /" + etcdServiceName + " values while awaiting readiness: " + e.getMessage());
+		}
+		return keys.size() - draining;
+	}
+
+	private static boolean isDraining(String value) {
+		try {
+			return !EtcdHazelcastNodeTypeAdapter.isBlank(value) &&
+					EtcdHazelcastNodeTypeAdapter.decodeAddress(value, null, NOT_DRAINING, null) == null;
+		} catch(Exception e) {
+			return false; // unreadable, counted as before
+		}
+	}
+
+	/**
+	 * @param timeoutMS
+	 * @return the keys under the service directory, null on error
+	 */
+	private Set<String> listKeys(long timeoutMS) {
+		try {
+			return new HashSet<String>(etcdTransport.listKeys(this.etcdServiceName, timeoutMS));
+
+		} catch(Exception e) {
+			logger.warning("Error listing /" + etcdServiceName + " while awaiting readiness: " + e.getMessage());
+			return null;
+		}
+	}
+
+}
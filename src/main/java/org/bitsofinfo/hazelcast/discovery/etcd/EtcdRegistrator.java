@@ -3,6 +3,8 @@ package org.bitsofinfo.hazelcast.discovery.etcd;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import com.hazelcast.logging.ILogger;
 import com.hazelcast.spi.discovery.DiscoveryNode;
@@ -59,4 +61,36 @@ public interface EtcdRegistrator {
 	 */
 	public void deregister() throws Exception;
 	
+	/**
+	 * Start registering this hazelcast instance as a service node
+	 * with Etcd, w/o blocking the caller. By default register()
+	 * is run on a shared pool of daemon threads
+	 * 
+	 * @return completes when registered, exceptionally if registration failed
+	 */
+	public default CompletableFuture<Void> registerAsync() {
+		return EtcdRegistratorExecutor.runAsync(new Callable<Void>() {
+			public Void call() throws Exception {
+				register();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Start deregistering this hazelcast instance as a service node
+	 * with Etcd, w/o blocking the caller. By default deregister()
+	 * is run on a shared pool of daemon threads
+	 * 
+	 * @return completes when deregistered, exceptionally if deregistration failed
+	 */
+	public default CompletableFuture<Void> deregisterAsync() {
+		return EtcdRegistratorExecutor.runAsync(new Callable<Void>() {
+			public Void call() throws Exception {
+				deregister();
+				return null;
+			}
+		});
+	}
+	
 }
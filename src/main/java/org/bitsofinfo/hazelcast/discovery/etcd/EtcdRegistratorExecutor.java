@@ -0,0 +1,52 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every asynchronous registration/deregistration in the JVM
+ * (@see EtcdRegistrator#registerAsync()) on a shared pool of daemon
+ * threads, idle ones are let go after a minute.
+ *
+ * @author bitsofinfo
+ *
+ */
+final class EtcdRegistratorExecutor {
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "etcd-registrator-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private EtcdRegistratorExecutor() {}
+
+	/**
+	 * Run the task on the shared daemon executor
+	 *
+	 * @param task
+	 * @return completes w/ the task
+	 */
+	static CompletableFuture<Void> runAsync(final Callable<Void> task) {
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		EXECUTOR.execute(new Runnable() {
+			public void run() {
+				try {
+					task.call();
+					future.complete(null);
+				} catch(Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+}
@@ -0,0 +1,229 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * Process-wide, reference-counted refresh loop that lists /[etcd-service-name]
+ * on behalf of every EtcdDiscoveryStrategy in this JVM bound to the same
+ * service (equal EtcdConnectionConfig, EtcdTransportConfig and service name),
+ * i.e. several HazelcastInstances and clients in one JVM.
+ *
+ * A single background thread lists the service directory (recursively, so
+ * this covers the sharded layout too) every refreshMS, each strategy's
+ * discoverNodes() reads the latest listing rather than going to Etcd itself.
+ * W/ 'etcd-shard-read-buckets' each strategy keeps only a random run of
+ * buckets from that listing, as it would have read on its own.
+ *
+ * The loop reads through a transport stack of its own, rather than one of
+ * the acquiring strategies' (whose endpoint scoring and metrics end w/ that
+ * strategy), built like theirs (@see EtcdTransportStack): scored, hedged and
+ * behind the same timeouts, retries and circuit breaker. During an outage the
+ * circuit spares Etcd the loop's listings, and the failure is logged once
+ * rather than on every refresh.
+ *
+ * Usage: acquire() the shared discovery, read getEntries() and release() it
+ * (once) when done. The first acquirer's settings are used, the last
+ * release() stops the loop and releases its transport.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdSharedDiscovery implements Runnable {
+
+	/**
+	 * What strategies share a loop by
+	 */
+	private static class Key {
+		final EtcdConnectionConfig connectionConfig;
+		final EtcdTransportConfig transportConfig;
+		final String etcdServiceName;
+
+		Key(EtcdConnectionConfig connectionConfig, EtcdTransportConfig transportConfig, String etcdServiceName) {
+			this.connectionConfig = connectionConfig;
+			this.transportConfig = transportConfig;
+			this.etcdServiceName = etcdServiceName;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * ((31 * connectionConfig.hashCode()) + transportConfig.hashCode())) + etcdServiceName.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return connectionConfig.equals(other.connectionConfig) &&
+				   transportConfig.equals(other.transportConfig) &&
+				   etcdServiceName.equals(other.etcdServiceName);
+		}
+	}
+
+	// all live shared discoveries in this JVM
+	private static final Map<Key, EtcdSharedDiscovery> SHARED = new HashMap<Key, EtcdSharedDiscovery>();
+
+	private final Key key;
+	private final EtcdTransportStack transportStack;
+	private final long refreshMS;
+	private final ILogger logger;
+	private final ScheduledExecutorService refresher;
+
+	// guarded by SHARED
+	private int refCount = 0;
+
+	// the latest listing, published by the refresh thread
+	private volatile List<EtcdTransport.Entry> entries = null;
+	private volatile long refreshedAt = 0;
+	private volatile long refreshes = 0;
+
+	// true while listings fail, so an outage is logged once
+	private volatile boolean failing = false;
+
+	private EtcdSharedDiscovery(Key key, EtcdTransportStack transportStack, long refreshMS, ILogger logger) {
+		this.key = key;
+		this.transportStack = transportStack;
+		this.refreshMS = refreshMS;
+		this.logger = logger;
+		this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-shared-discovery-" + EtcdSharedDiscovery.this.key.etcdServiceName);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Acquire (and retain) the shared discovery for the given service, starting
+	 * its refresh loop (and building its transport stack) if this is the first reference.
+	 * The refreshMS only applies when it is created, subsequent acquirers share the existing one.
+	 *
+	 * @param connectionConfig
+	 * @param transportConfig how the loop's transport stack is built
+	 * @param etcdServiceName
+	 * @param refreshMS how often to list the service directory
+	 * @param logger
+	 * @return
+	 */
+	public static EtcdSharedDiscovery acquire(EtcdConnectionConfig connectionConfig, EtcdTransportConfig transportConfig, 
+											  String etcdServiceName, long refreshMS, ILogger logger) {
+		Key key = new Key(connectionConfig, transportConfig, etcdServiceName);
+		synchronized(SHARED) {
+			EtcdSharedDiscovery shared = SHARED.get(key);
+			if (shared == null) {
+				EtcdTransportStack transportStack = EtcdTransportStack.build(connectionConfig, transportConfig, null, logger);
+				shared = new EtcdSharedDiscovery(key, transportStack, refreshMS, logger);
+				SHARED.put(key, shared);
+				shared.refresher.scheduleWithFixedDelay(shared, 0, refreshMS, TimeUnit.MILLISECONDS);
+				logger.info("Started shared discovery of /" + etcdServiceName + " every " + refreshMS + "ms for " + connectionConfig);
+			}
+			shared.refCount++;
+			return shared;
+		}
+	}
+
+	/**
+	 * Release a reference, the last release stops the refresh loop. Each
+	 * acquirer must release once, an extra release() would drop another's.
+	 */
+	public void release() {
+		synchronized(SHARED) {
+			if (refCount <= 0) {
+				return; // already stopped
+			}
+			refCount--;
+			if (refCount > 0) {
+				return;
+			}
+			SHARED.remove(key);
+		}
+
+		refresher.shutdownNow();
+		transportStack.release();
+		logger.info("Stopped shared discovery of /" + key.etcdServiceName);
+	}
+
+	@Override
+	public void run() {
+		try {
+			this.entries = transportStack.getTransport().list(key.etcdServiceName, key.transportConfig.getReadTimeoutMS()).entries;
+			this.refreshedAt = System.currentTimeMillis();
+			this.refreshes++;
+
+			if (failing) {
+				failing = false;
+				logger.info("Shared discovery of /" + key.etcdServiceName + " recovered");
+			}
+
+		} catch(Exception e) {
+			// readers fall back to reading Etcd themselves once we are stale
+			if (!failing) {
+				failing = true;
+				logger.warning("Shared discovery of /" + key.etcdServiceName + " failed, retrying every " + refreshMS + 
+						"ms: " + e.getMessage());
+			} else {
+				logger.finest("Shared discovery of /" + key.etcdServiceName + " still failing: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * The latest listing of the service directory
+	 *
+	 * @param maxAgeMS
+	 * @return null if there is none yet or it is older than maxAgeMS
+	 */
+	public List<EtcdTransport.Entry> getEntries(long maxAgeMS) {
+		List<EtcdTransport.Entry> latest = this.entries;
+		if (latest == null || getAgeMS() > maxAgeMS) {
+			return null;
+		}
+		return latest;
+	}
+
+	/**
+	 * How long (ms) since the last successful listing, Long.MAX_VALUE if never
+	 *
+	 * @return
+	 */
+	public long getAgeMS() {
+		if (refreshedAt == 0) {
+			return Long.MAX_VALUE;
+		}
+		return System.currentTimeMillis() - refreshedAt;
+	}
+
+	/**
+	 * @return how often the service directory is listed
+	 */
+	public long getRefreshMS() {
+		return refreshMS;
+	}
+
+	/**
+	 * @return number of successful listings so far
+	 */
+	public long getRefreshes() {
+		return refreshes;
+	}
+
+	/**
+	 * @return number of strategies sharing this discovery
+	 */
+	public int getRefCount() {
+		synchronized(SHARED) {
+			return refCount;
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The operations the EtcdDiscoveryStrategy and registrators need from Etcd,
+ * independent of the Etcd API version used to perform them.
+ *
+ * Keys are always of the form /[etcd-service-name]/[hz-instance-id], each
+ * implementation maps these onto its own keyspace.
+ *
+ * Implementations are thread-safe and reference counted: each retain()
+ * must be paired with a release(), the last release() closes the transport.
+ *
+ * @see EtcdV2Transport
+ * @see EtcdV3Transport
+ *
+ * @author bitsofinfo
+ *
+ */
+public interface EtcdTransport {
+
+	public static final String API_VERSION_V2 = "v2";
+	public static final String API_VERSION_V3 = "v3";
+
+	public static final long DEFAULT_TIMEOUT_MS = 10000;
+
+	/**
+	 * A single key/value
+	 */
+	public static class Entry {
+		public final String key;
+		public final String value;
+
+		public Entry(String key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * All entries under a directory as of a given index/revision
+	 */
+	public static class Listing {
+		public final List<Entry> entries;
+
+		// watching from this index will see all changes after this listing
+		public final long nextIndex;
+
+		public Listing(List<Entry> entries, long nextIndex) {
+			this.entries = entries;
+			this.nextIndex = nextIndex;
+		}
+	}
+
+	/**
+	 * A change to a key, value is null on deletion/expiry
+	 */
+	public static class WatchEvent {
+		public final String key;
+		public final String value;
+		public final boolean deleted;
+
+		// true if the key deleted was a directory (v2), all entries below are gone
+		public final boolean dir;
+
+		public WatchEvent(String key, String value, boolean deleted, boolean dir) {
+			this.key = key;
+			this.value = value;
+			this.deleted = deleted;
+			this.dir = dir;
+		}
+	}
+
+	/**
+	 * The events that occurred since a watch's fromIndex, possibly none
+	 */
+	public static class WatchResult {
+		public final List<WatchEvent> events;
+		public final long nextIndex;
+
+		public WatchResult(List<WatchEvent> events, long nextIndex) {
+			this.events = events;
+			this.nextIndex = nextIndex;
+		}
+
+		public static WatchResult none(long nextIndex) {
+			return new WatchResult(Collections.<WatchEvent>emptyList(), nextIndex);
+		}
+	}
+
+	/**
+	 * List all entries (recursively) under the given directory
+	 *
+	 * @param dir i.e. the etcd-service-name
+	 * @param timeoutMS
+	 * @return empty listing if the directory does not exist
+	 * @throws Exception
+	 */
+	public Listing list(String dir, long timeoutMS) throws Exception;
+
+	/**
+	 * List only the keys (recursively) under the given directory,
+	 * implementations avoid transferring values where possible. Unlike
+	 * list() this is a consistent read (v2 quorum, v3 linearizable): it
+	 * sees every write acknowledged before it, whichever member answers.
+	 *
+	 * @param dir
+	 * @param timeoutMS
+	 * @return
+	 * @throws Exception
+	 */
+	public List<String> listKeys(String dir, long timeoutMS) throws Exception;
+
+	/**
+	 * Put a value
+	 *
+	 * @param key
+	 * @param value
+	 * @param ttlSeconds if > 0 the key expires unless refresh()ed
+	 * @param timeoutMS
+	 * @throws Exception
+	 */
+	public void put(String key, String value, int ttlSeconds, long timeoutMS) throws Exception;
+
+	/**
+	 * Extend the TTL of a key previously put() with a ttl without rewriting its value
+	 *
+	 * @param key
+	 * @param ttlSeconds
+	 * @param timeoutMS
+	 * @return false if the key no longer exists (expired/deleted), it must be put() again
+	 * @throws Exception
+	 */
+	public boolean refresh(String key, int ttlSeconds, long timeoutMS) throws Exception;
+
+	/**
+	 * Delete a key, no-op if it does not exist
+	 *
+	 * @param key
+	 * @param timeoutMS
+	 * @throws Exception
+	 */
+	public void delete(String key, long timeoutMS) throws Exception;
+
+	/**
+	 * Wait up to timeoutMS for changes (recursively) under dir occurring at or after fromIndex
+	 *
+	 * @param dir
+	 * @param fromIndex
+	 * @param timeoutMS
+	 * @return the events (possibly none if the timeout elapsed)
+	 * @throws EtcdHistoryCompactedException if fromIndex is no longer available, re-list
+	 * @throws Exception
+	 */
+	public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception;
+
+	/**
+	 * Add a reference to this transport
+	 */
+	public void retain();
+
+	/**
+	 * Release a reference to this transport, the last release closes it
+	 */
+	public void release();
+
+}
@@ -0,0 +1,213 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * Immutable description of how the EtcdTransport stack above an
+ * EtcdConnectionConfig is built (@see EtcdTransportStack): the API version,
+ * the v2 client pool, endpoint scoring, read hedging and the timeouts,
+ * retries and circuit breaker of the outermost ResilientEtcdTransport.
+ *
+ * Used, along w/ the EtcdConnectionConfig, as the key for sharing a discovery
+ * loop via EtcdSharedDiscovery: only strategies whose transports would be
+ * built alike share one.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdTransportConfig {
+
+	private final String apiVersion;
+	private final int clientPoolSize;
+	private final long clientIdleTimeoutMS;
+	private final long tlsReloadCheckMS;
+	private final int ioThreads;
+
+	private final long endpointProbeMS;
+	private final int hedgePercentile;
+	private final long hedgeMinDelayMS;
+	private final int hedgeMaxInFlight;
+
+	private final long readTimeoutMS;
+	private final long writeTimeoutMS;
+	private final int retryMaxAttempts;
+	private final long retryBaseDelayMS;
+	private final long retryMaxDelayMS;
+	private final int circuitFailureThreshold;
+	private final long circuitOpenMS;
+
+	/**
+	 * Constructor
+	 *
+	 * @param apiVersion v2 or v3
+	 * @param clientPoolSize @see EtcdClientPool
+	 * @param clientIdleTimeoutMS
+	 * @param tlsReloadCheckMS
+	 * @param ioThreads
+	 * @param endpointProbeMS when > 0 (and more than one endpoint) endpoints are scored, @see EtcdEndpointScorer
+	 * @param hedgePercentile when > 0 (and more than one endpoint) reads are hedged, @see HedgingEtcdTransport
+	 * @param hedgeMinDelayMS
+	 * @param hedgeMaxInFlight
+	 * @param readTimeoutMS @see ResilientEtcdTransport
+	 * @param writeTimeoutMS
+	 * @param retryMaxAttempts
+	 * @param retryBaseDelayMS
+	 * @param retryMaxDelayMS
+	 * @param circuitFailureThreshold
+	 * @param circuitOpenMS
+	 */
+	public EtcdTransportConfig(String apiVersion,
+							   int clientPoolSize,
+							   long clientIdleTimeoutMS,
+							   long tlsReloadCheckMS,
+							   int ioThreads,
+							   long endpointProbeMS,
+							   int hedgePercentile,
+							   long hedgeMinDelayMS,
+							   int hedgeMaxInFlight,
+							   long readTimeoutMS,
+							   long writeTimeoutMS,
+							   int retryMaxAttempts,
+							   long retryBaseDelayMS,
+							   long retryMaxDelayMS,
+							   int circuitFailureThreshold,
+							   long circuitOpenMS) {
+
+		this.apiVersion = apiVersion.trim().toLowerCase();
+		this.clientPoolSize = clientPoolSize;
+		this.clientIdleTimeoutMS = clientIdleTimeoutMS;
+		this.tlsReloadCheckMS = tlsReloadCheckMS;
+		this.ioThreads = ioThreads;
+		this.endpointProbeMS = endpointProbeMS;
+		this.hedgePercentile = hedgePercentile;
+		this.hedgeMinDelayMS = hedgeMinDelayMS;
+		this.hedgeMaxInFlight = hedgeMaxInFlight;
+		this.readTimeoutMS = readTimeoutMS;
+		this.writeTimeoutMS = writeTimeoutMS;
+		this.retryMaxAttempts = retryMaxAttempts;
+		this.retryBaseDelayMS = retryBaseDelayMS;
+		this.retryMaxDelayMS = retryMaxDelayMS;
+		this.circuitFailureThreshold = circuitFailureThreshold;
+		this.circuitOpenMS = circuitOpenMS;
+	}
+
+	public String getApiVersion() {
+		return apiVersion;
+	}
+
+	public int getClientPoolSize() {
+		return clientPoolSize;
+	}
+
+	public long getClientIdleTimeoutMS() {
+		return clientIdleTimeoutMS;
+	}
+
+	public long getTlsReloadCheckMS() {
+		return tlsReloadCheckMS;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	public long getEndpointProbeMS() {
+		return endpointProbeMS;
+	}
+
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public long getHedgeMinDelayMS() {
+		return hedgeMinDelayMS;
+	}
+
+	public int getHedgeMaxInFlight() {
+		return hedgeMaxInFlight;
+	}
+
+	public long getReadTimeoutMS() {
+		return readTimeoutMS;
+	}
+
+	public long getWriteTimeoutMS() {
+		return writeTimeoutMS;
+	}
+
+	public int getRetryMaxAttempts() {
+		return retryMaxAttempts;
+	}
+
+	public long getRetryBaseDelayMS() {
+		return retryBaseDelayMS;
+	}
+
+	public long getRetryMaxDelayMS() {
+		return retryMaxDelayMS;
+	}
+
+	public int getCircuitFailureThreshold() {
+		return circuitFailureThreshold;
+	}
+
+	public long getCircuitOpenMS() {
+		return circuitOpenMS;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + apiVersion.hashCode();
+		result = prime * result + clientPoolSize;
+		result = prime * result + (int)(clientIdleTimeoutMS ^ (clientIdleTimeoutMS >>> 32));
+		result = prime * result + (int)(tlsReloadCheckMS ^ (tlsReloadCheckMS >>> 32));
+		result = prime * result + ioThreads;
+		result = prime * result + (int)(endpointProbeMS ^ (endpointProbeMS >>> 32));
+		result = prime * result + hedgePercentile;
+		result = prime * result + (int)(hedgeMinDelayMS ^ (hedgeMinDelayMS >>> 32));
+		result = prime * result + hedgeMaxInFlight;
+		result = prime * result + (int)(readTimeoutMS ^ (readTimeoutMS >>> 32));
+		result = prime * result + (int)(writeTimeoutMS ^ (writeTimeoutMS >>> 32));
+		result = prime * result + retryMaxAttempts;
+		result = prime * result + (int)(retryBaseDelayMS ^ (retryBaseDelayMS >>> 32));
+		result = prime * result + (int)(retryMaxDelayMS ^ (retryMaxDelayMS >>> 32));
+		result = prime * result + circuitFailureThreshold;
+		result = prime * result + (int)(circuitOpenMS ^ (circuitOpenMS >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EtcdTransportConfig)) {
+			return false;
+		}
+		EtcdTransportConfig other = (EtcdTransportConfig) obj;
+		return apiVersion.equals(other.apiVersion) &&
+				clientPoolSize == other.clientPoolSize &&
+				clientIdleTimeoutMS == other.clientIdleTimeoutMS &&
+				tlsReloadCheckMS == other.tlsReloadCheckMS &&
+				ioThreads == other.ioThreads &&
+				endpointProbeMS == other.endpointProbeMS &&
+				hedgePercentile == other.hedgePercentile &&
+				hedgeMinDelayMS == other.hedgeMinDelayMS &&
+				hedgeMaxInFlight == other.hedgeMaxInFlight &&
+				readTimeoutMS == other.readTimeoutMS &&
+				writeTimeoutMS == other.writeTimeoutMS &&
+				retryMaxAttempts == other.retryMaxAttempts &&
+				retryBaseDelayMS == other.retryBaseDelayMS &&
+				retryMaxDelayMS == other.retryMaxDelayMS &&
+				circuitFailureThreshold == other.circuitFailureThreshold &&
+				circuitOpenMS == other.circuitOpenMS;
+	}
+
+	@Override
+	public String toString() {
+		return "EtcdTransportConfig[apiVersion=" + apiVersion + ", endpointProbeMS=" + endpointProbeMS +
+				", hedgePercentile=" + hedgePercentile + ", readTimeoutMS=" + readTimeoutMS +
+				", retryMaxAttempts=" + retryMaxAttempts + ", circuitFailureThreshold=" + circuitFailureThreshold + "]";
+	}
+
+}
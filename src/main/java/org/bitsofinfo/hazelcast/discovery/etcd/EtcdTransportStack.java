@@ -0,0 +1,152 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * Builds the EtcdTransport decorators for an EtcdConnectionConfig as described
+ * by an EtcdTransportConfig, innermost first:
+ *
+ *  - the v2 or v3 transport (@see EtcdDiscoveryStrategy#newEtcdTransport)
+ *  - optionally a ScoredEtcdTransport trying the best scored endpoint first
+ *  - optionally a HedgingEtcdTransport hedging reads across the endpoints
+ *  - outermost: a ResilientEtcdTransport (timeouts, retries, circuit breaker)
+ *
+ * Used by each EtcdDiscoveryStrategy and by the EtcdSharedDiscovery's loop,
+ * so both read Etcd alike.
+ *
+ * The caller owns the returned stack: release() it once done, which also
+ * stops the endpoint scorer (if any).
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdTransportStack {
+
+	private final ResilientEtcdTransport transport;
+	private final HedgingEtcdTransport hedgingTransport;
+	private final EtcdEndpointScorer endpointScorer;
+
+	private EtcdTransportStack(ResilientEtcdTransport transport, HedgingEtcdTransport hedgingTransport,
+							   EtcdEndpointScorer endpointScorer) {
+		this.transport = transport;
+		this.hedgingTransport = hedgingTransport;
+		this.endpointScorer = endpointScorer;
+	}
+
+	/**
+	 * Build the stack
+	 *
+	 * @param connectionConfig
+	 * @param transportConfig
+	 * @param metrics optional, notified of endpoint errors
+	 * @param logger
+	 * @return
+	 */
+	public static EtcdTransportStack build(EtcdConnectionConfig connectionConfig, EtcdTransportConfig transportConfig,
+										   EtcdMetricsListener metrics, ILogger logger) {
+
+		List<URI> etcdUris = connectionConfig.getEtcdUris();
+		String apiVersion = transportConfig.getApiVersion();
+		EtcdTransport etcdTransport = null;
+		EtcdEndpointScorer endpointScorer = null;
+		HedgingEtcdTransport hedgingTransport = null;
+
+		// scoring and hedging need a transport per endpoint
+		List<EtcdTransport> endpointTransports = null;
+		if (etcdUris.size() > 1 && (transportConfig.getEndpointProbeMS() > 0 || transportConfig.getHedgePercentile() > 0)) {
+			endpointTransports = new ArrayList<EtcdTransport>(etcdUris.size());
+			for (URI etcdUri : etcdUris) {
+				endpointTransports.add(newEtcdTransport(connectionConfig.forUri(etcdUri), transportConfig, logger));
+			}
+		}
+
+		// optionally try the fastest healthy endpoint first
+		if (endpointTransports != null && transportConfig.getEndpointProbeMS() > 0) {
+			endpointScorer = new EtcdEndpointScorer(connectionConfig, transportConfig.getTlsReloadCheckMS(),
+													transportConfig.getEndpointProbeMS(), logger);
+			endpointScorer.setMetricsListener(metrics);
+			endpointScorer.start();
+
+			// the hedging transport below shares these
+			if (transportConfig.getHedgePercentile() > 0) {
+				for (EtcdTransport endpointTransport : endpointTransports) {
+					endpointTransport.retain();
+				}
+			}
+			etcdTransport = new ScoredEtcdTransport(endpointScorer, etcdUris, endpointTransports, logger);
+			logger.info("Scoring " + etcdUris.size() + " Etcd endpoints, probing every " + transportConfig.getEndpointProbeMS() + "ms");
+
+		} else {
+			etcdTransport = newEtcdTransport(connectionConfig, transportConfig, logger);
+
+			// without the scorer each transport attributes errors to the endpoint(s) it used
+			((AbstractEtcdTransport)etcdTransport).setMetricsListener(metrics);
+			if (endpointTransports != null) {
+				for (EtcdTransport endpointTransport : endpointTransports) {
+					((AbstractEtcdTransport)endpointTransport).setMetricsListener(metrics);
+				}
+			}
+		}
+		logger.info("Using Etcd " + apiVersion + " API: " + connectionConfig);
+
+		// optionally hedge discovery reads across the endpoints, writes/watches still use the above
+		if (endpointTransports != null && transportConfig.getHedgePercentile() > 0) {
+			hedgingTransport = new HedgingEtcdTransport(etcdTransport, etcdUris, endpointTransports, endpointScorer,
+														transportConfig.getHedgePercentile(), transportConfig.getHedgeMinDelayMS(),
+														transportConfig.getHedgeMaxInFlight(), logger);
+			etcdTransport = hedgingTransport;
+			logger.info("Hedging discovery reads across " + etcdUris.size() + " endpoints after p" + transportConfig.getHedgePercentile() +
+					" latency (min " + transportConfig.getHedgeMinDelayMS() + "ms), max in flight: " + transportConfig.getHedgeMaxInFlight());
+		}
+
+		// outermost: timeouts, retries w/ backoff and a circuit breaker
+		ResilientEtcdTransport resilientTransport = new ResilientEtcdTransport(etcdTransport,
+				transportConfig.getReadTimeoutMS(), transportConfig.getWriteTimeoutMS(),
+				transportConfig.getRetryMaxAttempts(), transportConfig.getRetryBaseDelayMS(), transportConfig.getRetryMaxDelayMS(),
+				transportConfig.getCircuitFailureThreshold(), transportConfig.getCircuitOpenMS(), logger);
+
+		return new EtcdTransportStack(resilientTransport, hedgingTransport, endpointScorer);
+	}
+
+	private static EtcdTransport newEtcdTransport(EtcdConnectionConfig connectionConfig, EtcdTransportConfig transportConfig, ILogger logger) {
+		return EtcdDiscoveryStrategy.newEtcdTransport(transportConfig.getApiVersion(), connectionConfig,
+				transportConfig.getClientPoolSize(), transportConfig.getClientIdleTimeoutMS(),
+				transportConfig.getTlsReloadCheckMS(), transportConfig.getIoThreads(), logger);
+	}
+
+	/**
+	 * @return the outermost transport
+	 */
+	public ResilientEtcdTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @return null if reads are not hedged
+	 */
+	public HedgingEtcdTransport getHedgingTransport() {
+		return hedgingTransport;
+	}
+
+	/**
+	 * @return null if endpoints are not scored
+	 */
+	public EtcdEndpointScorer getEndpointScorer() {
+		return endpointScorer;
+	}
+
+	/**
+	 * Stop scoring (if any) and release the outermost transport
+	 */
+	public void release() {
+		if (endpointScorer != null) {
+			endpointScorer.stop();
+		}
+		transport.release();
+	}
+
+}
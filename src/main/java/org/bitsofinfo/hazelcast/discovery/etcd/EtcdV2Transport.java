@@ -0,0 +1,251 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.hazelcast.logging.ILogger;
+
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeyAction;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+import mousio.etcd4j.responses.EtcdKeysResponse.EtcdNode;
+
+/**
+ * EtcdTransport over the Etcd v2 keys API via etcd4j, using
+ * long-lived EtcdClients borrowed from an EtcdClientPool
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdV2Transport extends AbstractEtcdTransport {
+
+	private final EtcdClientPool etcdClientPool;
+
+	// what errors are attributed to: etcd4j fails over across multiple uris internally
+	private final String endpoint;
+
+	/**
+	 * Constructor, takes over the caller's reference to the pool
+	 *
+	 * @param etcdClientPool
+	 * @param logger
+	 */
+	public EtcdV2Transport(EtcdClientPool etcdClientPool, ILogger logger) {
+		super(logger);
+		this.etcdClientPool = etcdClientPool;
+
+		StringBuilder uris = new StringBuilder();
+		for (URI uri : etcdClientPool.getConnectionConfig().getEtcdUris()) {
+			uris.append(uris.length() > 0 ? "," : "").append(uri);
+		}
+		this.endpoint = uris.toString();
+	}
+
+	@Override
+	public Listing list(String dir, long timeoutMS) throws Exception {
+		return list(dir, timeoutMS, false);
+	}
+
+	/**
+	 * @param dir
+	 * @param timeoutMS
+	 * @param quorum true for a quorum read, not answered from a possibly lagging member's state
+	 * @return
+	 * @throws Exception
+	 */
+	private Listing list(String dir, long timeoutMS, boolean quorum) throws Exception {
+		EtcdClient etcdClient = null;
+		try {
+			etcdClient = etcdClientPool.borrow();
+
+			EtcdKeyGetRequest request = etcdClient.getDir(dir).timeout(timeoutMS, TimeUnit.MILLISECONDS).recursive();
+			if (quorum) {
+				request.consistent();
+			}
+			EtcdKeysResponse dirResp = request.send().get();
+
+			List<Entry> entries = new ArrayList<Entry>();
+			if (dirResp.node != null) {
+				collect(dirResp.node.nodes, entries);
+			}
+
+			return new Listing(entries, dirResp.etcdIndex != null ? dirResp.etcdIndex + 1 : 0);
+
+		} catch(EtcdException e) {
+			// directory does not exist (yet), that is an empty listing
+			if (e.errorCode == EtcdErrorCode.KeyNotFound) {
+				return new Listing(Collections.<Entry>emptyList(), e.index != null ? e.index + 1 : 0);
+			}
+			onEndpointError(endpoint, e);
+			throw e;
+
+		} catch(Exception e) {
+			onEndpointError(endpoint, e);
+			etcdClientPool.invalidate(etcdClient, e);
+			throw e;
+
+		} finally {
+			etcdClientPool.giveBack(etcdClient);
+		}
+	}
+
+	// flatten (nested) nodes into leaf entries
+	private static void collect(List<EtcdNode> nodes, List<Entry> entries) {
+		if (nodes == null) {
+			return;
+		}
+		for (EtcdNode node : nodes) {
+			if (node.dir) {
+				collect(node.nodes, entries);
+			} else {
+				entries.add(new Entry(node.key, node.value));
+			}
+		}
+	}
+
+	@Override
+	public List<String> listKeys(String dir, long timeoutMS) throws Exception {
+		// v2 has no keys only listing
+		List<Entry> entries = list(dir, timeoutMS, true).entries;
+		List<String> keys = new ArrayList<String>(entries.size());
+		for (Entry entry : entries) {
+			keys.add(entry.key);
+		}
+		return keys;
+	}
+
+	@Override
+	public void put(String key, String value, int ttlSeconds, long timeoutMS) throws Exception {
+		EtcdClient etcdClient = null;
+		try {
+			etcdClient = etcdClientPool.borrow();
+
+			if (ttlSeconds > 0) {
+				etcdClient.put(key, value).ttl(ttlSeconds).timeout(timeoutMS, TimeUnit.MILLISECONDS).send().get();
+			} else {
+				etcdClient.put(key, value).timeout(timeoutMS, TimeUnit.MILLISECONDS).send().get();
+			}
+
+		} catch(Exception e) {
+			onEndpointError(endpoint, e);
+			etcdClientPool.invalidate(etcdClient, e);
+			throw e;
+
+		} finally {
+			etcdClientPool.giveBack(etcdClient);
+		}
+	}
+
+	@Override
+	public boolean refresh(String key, int ttlSeconds, long timeoutMS) throws Exception {
+		EtcdClient etcdClient = null;
+		try {
+			etcdClient = etcdClientPool.borrow();
+
+			// refresh=true&prevExist=true, value untouched and no watch event fires
+			etcdClient.refresh(key, ttlSeconds).timeout(timeoutMS, TimeUnit.MILLISECONDS).send().get();
+			return true;
+
+		} catch(EtcdException e) {
+			if (e.errorCode == EtcdErrorCode.KeyNotFound) {
+				return false;
+			}
+			onEndpointError(endpoint, e);
+			throw e;
+
+		} catch(Exception e) {
+			onEndpointError(endpoint, e);
+			etcdClientPool.invalidate(etcdClient, e);
+			throw e;
+
+		} finally {
+			etcdClientPool.giveBack(etcdClient);
+		}
+	}
+
+	@Override
+	public void delete(String key, long timeoutMS) throws Exception {
+		EtcdClient etcdClient = null;
+		try {
+			etcdClient = etcdClientPool.borrow();
+			etcdClient.delete(key).timeout(timeoutMS, TimeUnit.MILLISECONDS).send().get();
+
+		} catch(EtcdException e) {
+			if (e.errorCode != EtcdErrorCode.KeyNotFound) {
+				onEndpointError(endpoint, e);
+				throw e;
+			}
+
+		} catch(Exception e) {
+			onEndpointError(endpoint, e);
+			etcdClientPool.invalidate(etcdClient, e);
+			throw e;
+
+		} finally {
+			etcdClientPool.giveBack(etcdClient);
+		}
+	}
+
+	@Override
+	public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception {
+		EtcdClient etcdClient = null;
+		try {
+			etcdClient = etcdClientPool.borrow();
+
+			EtcdKeysResponse event = etcdClient.getDir(dir)
+											.recursive()
+											.waitForChange(fromIndex)
+											.timeout(timeoutMS, TimeUnit.MILLISECONDS)
+											.send().get();
+
+			if (event == null || event.node == null) {
+				return WatchResult.none(fromIndex);
+			}
+
+			EtcdNode node = event.node;
+			boolean deleted = event.action == EtcdKeyAction.delete ||
+							  event.action == EtcdKeyAction.expire ||
+							  event.action == EtcdKeyAction.compareAndDelete;
+
+			long nextIndex = (node.modifiedIndex != null ? node.modifiedIndex : fromIndex) + 1;
+
+			// creation of (bucket) directories is not a membership change
+			if (node.dir && !deleted) {
+				return WatchResult.none(nextIndex);
+			}
+
+			WatchEvent watchEvent = new WatchEvent(node.key, deleted ? null : node.value, deleted, node.dir);
+			return new WatchResult(Collections.singletonList(watchEvent), nextIndex);
+
+		} catch(TimeoutException e) {
+			// nothing changed
+			return WatchResult.none(fromIndex);
+
+		} catch(EtcdException e) {
+			if (e.errorCode == EtcdErrorCode.EventIndexCleared) {
+				throw new EtcdHistoryCompactedException("Etcd v2 index " + fromIndex + " for /" + dir + " was cleared: " + e.getMessage());
+			}
+			throw e;
+
+		} catch(Exception e) {
+			etcdClientPool.invalidate(etcdClient, e);
+			throw e;
+
+		} finally {
+			etcdClientPool.giveBack(etcdClient);
+		}
+	}
+
+	@Override
+	protected void close() {
+		etcdClientPool.release();
+	}
+
+}
@@ -0,0 +1,578 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.hazelcast.logging.ILogger;
+
+/**
+ * EtcdTransport over the Etcd v3 API, via etcd's gRPC JSON gateway
+ * (etcd 3.4+, http[s]://host:port/v3/...) so no gRPC/protobuf dependencies
+ * are needed.
+ *
+ * - list(): a single prefix range read of /[dir]/, listKeys() uses keys_only
+ *           and is explicitly linearizable
+ * - put() w/ a ttl: one lease per key, granted on put and kept alive by refresh(),
+ *                   a single keepalive (a key deleted by others while its lease
+ *                   lives goes unnoticed, our own delete() revokes the lease)
+ * - delete(): deletes the key and revokes its lease
+ * - watch(): one watch stream (one HTTP request) per watched directory, events are
+ *            buffered as they arrive and handed out by each watch() call. Watches are
+ *            not multiplexed: the JSON gateway takes a single create_request per HTTP
+ *            request. A stream that stays quiet for WATCH_READ_TIMEOUT_MS is dropped and
+ *            reopened from where it left off, so an idle directory costs one new watch
+ *            request (and connection) every WATCH_READ_TIMEOUT_MS
+ *
+ * Requests fail over across all configured etcd-uris on I/O errors and HTTP 5xx,
+ * HTTP 4xx are etcd's answer and thrown as is (@see EtcdGatewayException). When
+ * a username is configured an auth token is obtained (and renewed when rejected).
+ *
+ * Responses are always read to the end and closed, never disconnect()ed, so the
+ * JDK keeps the connection alive for the next request to the same endpoint (over
+ * https w/ the one cached socket factory, @see EtcdSslContextCache#getJdkSocketFactory)
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdV3Transport extends AbstractEtcdTransport {
+
+	private static final String GATEWAY_PREFIX = "/v3";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// a quiet watch stream is reopened (from where it left off) this often,
+	// which also bounds how long a stopped one lingers
+	private static final int WATCH_READ_TIMEOUT_MS = (int)DEFAULT_TIMEOUT_MS;
+
+	private final EtcdConnectionConfig connectionConfig;
+	private final EtcdSslContextCache sslContextCache;
+	private final AtomicInteger nextEndpoint = new AtomicInteger(0);
+
+	private volatile String authToken = null;
+
+	// one lease per key we put() w/ a ttl
+	private final Map<String,Long> leases = new ConcurrentHashMap<String,Long>();
+
+	// one watch stream per watched dir
+	private final Map<String,WatchStream> watchStreams = new HashMap<String,WatchStream>();
+
+	public EtcdV3Transport(EtcdConnectionConfig connectionConfig, long tlsReloadCheckMS, ILogger logger) {
+		super(logger);
+		this.connectionConfig = connectionConfig;
+
+		if (connectionConfig.isHttps()) {
+			this.sslContextCache = new EtcdSslContextCache(connectionConfig.getClientCertLocation(),
+														   connectionConfig.getClientKeyLocation(),
+														   connectionConfig.getTrustedCertsLocation(),
+														   tlsReloadCheckMS, logger);
+		} else {
+			this.sslContextCache = null;
+		}
+	}
+
+	@Override
+	public Listing list(String dir, long timeoutMS) throws Exception {
+		byte[] prefix = prefixOf(dir);
+
+		JsonObject request = new JsonObject();
+		request.addProperty("key", encode(prefix));
+		request.addProperty("range_end", encode(prefixEnd(prefix)));
+
+		JsonObject response = call("/kv/range", request, timeoutMS);
+
+		List<Entry> entries = new ArrayList<Entry>();
+		JsonArray kvs = response.getAsJsonArray("kvs");
+		if (kvs != null) {
+			for (JsonElement kv : kvs) {
+				JsonObject kvObj = kv.getAsJsonObject();
+				entries.add(new Entry(decodeString(kvObj, "key"), decodeString(kvObj, "value")));
+			}
+		}
+
+		return new Listing(entries, revisionOf(response) + 1);
+	}
+
+	@Override
+	public List<String> listKeys(String dir, long timeoutMS) throws Exception {
+		byte[] prefix = prefixOf(dir);
+
+		JsonObject request = new JsonObject();
+		request.addProperty("key", encode(prefix));
+		request.addProperty("range_end", encode(prefixEnd(prefix)));
+		request.addProperty("keys_only", true);
+		request.addProperty("serializable", false);
+
+		JsonObject response = call("/kv/range", request, timeoutMS);
+
+		List<String> keys = new ArrayList<String>();
+		JsonArray kvs = response.getAsJsonArray("kvs");
+		if (kvs != null) {
+			for (JsonElement kv : kvs) {
+				keys.add(decodeString(kv.getAsJsonObject(), "key"));
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public void put(String key, String value, int ttlSeconds, long timeoutMS) throws Exception {
+
+		JsonObject request = new JsonObject();
+		request.addProperty("key", encode(key.getBytes(UTF8)));
+		request.addProperty("value", encode(value.getBytes(UTF8)));
+
+		Long leaseId = null;
+		if (ttlSeconds > 0) {
+			JsonObject grant = new JsonObject();
+			grant.addProperty("TTL", String.valueOf(ttlSeconds));
+			leaseId = call("/lease/grant", grant, timeoutMS).get("ID").getAsLong();
+			request.addProperty("lease", String.valueOf(leaseId));
+		}
+
+		call("/kv/put", request, timeoutMS);
+
+		// swap in the new lease, the old one (if any) is no longer needed
+		Long previousLeaseId = (leaseId != null) ? leases.put(key, leaseId) : leases.remove(key);
+		if (previousLeaseId != null && !previousLeaseId.equals(leaseId)) {
+			revokeQuietly(previousLeaseId, timeoutMS);
+		}
+	}
+
+	@Override
+	public boolean refresh(String key, int ttlSeconds, long timeoutMS) throws Exception {
+		Long leaseId = leases.get(key);
+		if (leaseId == null) {
+			return false;
+		}
+
+		JsonObject request = new JsonObject();
+		request.addProperty("ID", String.valueOf(leaseId));
+
+		JsonObject response = call("/lease/keepalive", request, timeoutMS);
+		JsonObject result = response.has("result") ? response.getAsJsonObject("result") : response;
+
+		// expired (or revoked) leases report no/zero TTL, and their keys are gone
+		if (!result.has("TTL") || result.get("TTL").getAsLong() <= 0) {
+			leases.remove(key, leaseId);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void delete(String key, long timeoutMS) throws Exception {
+		JsonObject request = new JsonObject();
+		request.addProperty("key", encode(key.getBytes(UTF8)));
+		call("/kv/deleterange", request, timeoutMS);
+
+		Long leaseId = leases.remove(key);
+		if (leaseId != null) {
+			revokeQuietly(leaseId, timeoutMS);
+		}
+	}
+
+	private void revokeQuietly(long leaseId, long timeoutMS) {
+		try {
+			JsonObject request = new JsonObject();
+			request.addProperty("ID", String.valueOf(leaseId));
+			call("/lease/revoke", request, timeoutMS);
+		} catch(Exception e) {
+			logger.fine("Error revoking etcd lease " + leaseId + ", it will expire on its own: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception {
+		WatchStream stream = null;
+
+		synchronized(watchStreams) {
+			stream = watchStreams.get(dir);
+
+			// (re)start the stream if we have none, it died, or the caller wants to resume elsewhere
+			if (stream == null || stream.failed || stream.nextIndex != fromIndex) {
+				if (stream != null) {
+					stream.stop();
+				}
+				stream = new WatchStream(dir, fromIndex);
+				watchStreams.put(dir, stream);
+				stream.start();
+			}
+		}
+
+		return stream.poll(timeoutMS);
+	}
+
+	@Override
+	protected void close() {
+		synchronized(watchStreams) {
+			for (WatchStream stream : watchStreams.values()) {
+				stream.stop();
+			}
+			watchStreams.clear();
+		}
+	}
+
+	/**
+	 * POST the request to the gateway, failing over across the endpoints
+	 * on I/O errors and 5xx, 4xx answers are thrown right away
+	 */
+	private JsonObject call(String path, JsonObject request, long timeoutMS) throws Exception {
+		List<URI> uris = connectionConfig.getEtcdUris();
+		int start = nextEndpoint.get();
+
+		IOException lastError = null;
+		for (int i=0; i<uris.size(); i++) {
+			int index = (start + i) % uris.size();
+			try {
+				JsonObject response = call(uris.get(index), path, request, timeoutMS, true);
+				nextEndpoint.set(index);
+				return response;
+			} catch(EtcdGatewayException e) {
+				if (e.isAnswer()) {
+					throw e;
+				}
+				onEndpointError(uris.get(index).toString(), e);
+				lastError = e;
+			} catch(IOException e) {
+				onEndpointError(uris.get(index).toString(), e);
+				lastError = e;
+			}
+		}
+		throw lastError != null ? lastError : new IOException("No etcd-uris configured");
+	}
+
+	private JsonObject call(URI base, String path, JsonObject request, long timeoutMS, boolean retryAuth) throws Exception {
+
+		HttpURLConnection conn = open(base, path, timeoutMS);
+
+		int code;
+		byte[] body;
+		try {
+			OutputStream out = conn.getOutputStream();
+			out.write(request.toString().getBytes(UTF8));
+			out.close();
+
+			code = conn.getResponseCode();
+			if (code == HttpURLConnection.HTTP_OK) {
+				body = readFully(conn.getInputStream());
+			} else {
+				body = null;
+			}
+
+		} catch(IOException e) {
+			// a broken connection is not worth keeping alive
+			conn.disconnect();
+			throw e;
+		}
+
+		if (body != null) {
+			return new JsonParser().parse(new String(body, UTF8)).getAsJsonObject();
+		}
+
+		String error = readQuietly(conn.getErrorStream());
+
+		// token expired? get a new one and try again once
+		if (retryAuth && connectionConfig.getUsername() != null &&
+			(code == HttpURLConnection.HTTP_UNAUTHORIZED || error.contains("invalid auth token"))) {
+			this.authToken = null;
+			return call(base, path, request, timeoutMS, false);
+		}
+
+		throw new EtcdGatewayException("Etcd v3 " + path + " @ " + base + " returned HTTP " + code + ": " + error, code);
+	}
+
+	private HttpURLConnection open(URI base, String path, long timeoutMS) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection)base.resolve(GATEWAY_PREFIX + path).toURL().openConnection();
+
+		if (conn instanceof HttpsURLConnection && sslContextCache != null) {
+			((HttpsURLConnection)conn).setSSLSocketFactory(sslContextCache.getJdkSocketFactory());
+		}
+
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setConnectTimeout((int)Math.min(Integer.MAX_VALUE, timeoutMS));
+		conn.setReadTimeout((int)Math.min(Integer.MAX_VALUE, timeoutMS));
+		conn.setRequestProperty("Content-Type", "application/json");
+
+		if (connectionConfig.getUsername() != null && !path.equals("/auth/authenticate")) {
+			conn.setRequestProperty("Authorization", getAuthToken(base, timeoutMS));
+		}
+		return conn;
+	}
+
+	private String getAuthToken(URI base, long timeoutMS) throws Exception {
+		String token = this.authToken;
+		if (token == null) {
+			JsonObject request = new JsonObject();
+			request.addProperty("name", connectionConfig.getUsername());
+			request.addProperty("password", connectionConfig.getPassword());
+			token = call(base, "/auth/authenticate", request, timeoutMS, false).get("token").getAsString();
+			this.authToken = token;
+		}
+		return token;
+	}
+
+	// to the end, so the connection can be kept alive
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String readQuietly(InputStream in) {
+		if (in == null) {
+			return "";
+		}
+		try {
+			return new String(IOUtils.toByteArray(in), UTF8);
+		} catch(Exception e) {
+			return "";
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static long revisionOf(JsonObject response) {
+		JsonObject header = response.getAsJsonObject("header");
+		if (header != null && header.has("revision")) {
+			return header.get("revision").getAsLong();
+		}
+		return 0;
+	}
+
+	private static byte[] prefixOf(String dir) {
+		String trimmed = dir;
+		while (trimmed.startsWith("/")) {
+			trimmed = trimmed.substring(1);
+		}
+		while (trimmed.endsWith("/")) {
+			trimmed = trimmed.substring(0, trimmed.length()-1);
+		}
+		return ("/" + trimmed + "/").getBytes(UTF8);
+	}
+
+	// the smallest key greater than all keys starting w/ prefix
+	private static byte[] prefixEnd(byte[] prefix) {
+		byte[] end = prefix.clone();
+		for (int i=end.length-1; i>=0; i--) {
+			if (end[i] != (byte)0xff) {
+				end[i]++;
+				byte[] truncated = new byte[i+1];
+				System.arraycopy(end, 0, truncated, 0, i+1);
+				return truncated;
+			}
+		}
+		return new byte[] { 0 }; // all keys
+	}
+
+	private static String encode(byte[] bytes) {
+		return Base64.getEncoder().encodeToString(bytes);
+	}
+
+	private static String decodeString(JsonObject obj, String field) {
+		JsonElement value = obj.get(field);
+		if (value == null || value.isJsonNull()) {
+			return null;
+		}
+		return new String(Base64.getDecoder().decode(value.getAsString()), UTF8);
+	}
+
+	/**
+	 * A single watch stream on a directory, events are read on a
+	 * background thread and queued for poll(). Ends on stop(), on an
+	 * error or after WATCH_READ_TIMEOUT_MS w/o a message, the next
+	 * watch() then opens a new one from nextIndex
+	 */
+	private class WatchStream implements Runnable {
+
+		private final String dir;
+		private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+
+		// the index the next poll() resumes from
+		private volatile long nextIndex;
+		private volatile boolean failed = false;
+		private volatile boolean stopped = false;
+		private boolean streaming = false;
+
+		WatchStream(String dir, long fromIndex) {
+			this.dir = dir;
+			this.nextIndex = fromIndex;
+		}
+
+		void start() {
+			Thread t = new Thread(this, "etcd-v3-watch-" + dir);
+			t.setDaemon(true);
+			t.start();
+		}
+
+		// closing the stream from here would block until the reader's
+		// next read returns, the reader closes it on its way out
+		void stop() {
+			stopped = true;
+		}
+
+		@Override
+		public void run() {
+			byte[] prefix = prefixOf(dir);
+
+			JsonObject create = new JsonObject();
+			create.addProperty("key", encode(prefix));
+			create.addProperty("range_end", encode(prefixEnd(prefix)));
+			if (nextIndex > 0) {
+				create.addProperty("start_revision", String.valueOf(nextIndex));
+			}
+			JsonObject request = new JsonObject();
+			request.add("create_request", create);
+
+			List<URI> uris = connectionConfig.getEtcdUris();
+			URI base = uris.get(nextEndpoint.get() % uris.size());
+
+			HttpURLConnection conn = null;
+			InputStream in = null;
+			boolean answered = false;
+			try {
+				// bounded, so is the auth token request open() may make first
+				conn = open(base, "/watch", DEFAULT_TIMEOUT_MS);
+				conn.setReadTimeout(WATCH_READ_TIMEOUT_MS);
+				OutputStream out = conn.getOutputStream();
+				out.write(request.toString().getBytes(UTF8));
+				out.close();
+
+				int code = conn.getResponseCode();
+				if (code != HttpURLConnection.HTTP_OK) {
+					String error = readQuietly(conn.getErrorStream());
+					answered = true;
+					throw new EtcdGatewayException("Etcd v3 watch @ " + base + " returned HTTP " + code + ": " + error, code);
+				}
+
+				streaming = true;
+
+				// the gateway streams one JSON object per watch response
+				in = conn.getInputStream();
+				JsonReader reader = new JsonReader(new InputStreamReader(in, UTF8));
+				reader.setLenient(true);
+				JsonParser parser = new JsonParser();
+
+				while (!stopped) {
+					JsonObject message = parser.parse(reader).getAsJsonObject();
+
+					if (message.has("error")) {
+						throw new IOException("Etcd v3 watch error: " + message.get("error"));
+					}
+
+					JsonObject result = message.getAsJsonObject("result");
+					if (result == null) {
+						continue;
+					}
+
+					if (result.has("compact_revision") && result.get("compact_revision").getAsLong() > 0) {
+						queue.add(new EtcdHistoryCompactedException("Etcd v3 revision " + nextIndex +
+								" for /" + dir + " was compacted (compact_revision: " + result.get("compact_revision") + ")"));
+						return;
+					}
+
+					JsonArray events = result.getAsJsonArray("events");
+					if (events != null) {
+						for (JsonElement event : events) {
+							queue.add(toQueuedEvent(event.getAsJsonObject()));
+						}
+					}
+				}
+
+			} catch(SocketTimeoutException e) {
+				// once streaming nothing happened, the next watch() reopens from nextIndex
+				if (!stopped && !streaming) {
+					queue.add(e);
+				}
+
+			} catch(Exception e) {
+				if (!stopped) {
+					queue.add(e);
+				}
+			} finally {
+				failed = true;
+				// a stream closed mid-response takes its connection w/ it, an
+				// error response read to the end leaves it to be kept alive
+				if (in != null) {
+					IOUtils.closeQuietly(in);
+				} else if (conn != null && !answered) {
+					conn.disconnect();
+				}
+			}
+		}
+
+		private QueuedEvent toQueuedEvent(JsonObject event) {
+			// PUT is the default (0) enum value, omitted by the gateway
+			boolean deleted = event.has("type") && "DELETE".equals(event.get("type").getAsString());
+
+			JsonObject kv = event.getAsJsonObject("kv");
+			String key = decodeString(kv, "key");
+			String value = deleted ? null : decodeString(kv, "value");
+			long revision = kv.has("mod_revision") ? kv.get("mod_revision").getAsLong() : 0;
+
+			return new QueuedEvent(new WatchEvent(key, value, deleted, false), revision);
+		}
+
+		WatchResult poll(long timeoutMS) throws Exception {
+			Object first = queue.poll(timeoutMS, TimeUnit.MILLISECONDS);
+			if (first == null) {
+				return WatchResult.none(nextIndex);
+			}
+
+			List<Object> items = new ArrayList<Object>();
+			items.add(first);
+			queue.drainTo(items);
+
+			List<WatchEvent> events = new ArrayList<WatchEvent>();
+			long next = nextIndex;
+			for (Object item : items) {
+				if (item instanceof Exception) {
+					failed = true;
+					throw (Exception)item;
+				}
+				QueuedEvent queued = (QueuedEvent)item;
+				events.add(queued.event);
+				next = Math.max(next, queued.revision + 1);
+			}
+
+			nextIndex = next;
+			return new WatchResult(events, next);
+		}
+	}
+
+	private static class QueuedEvent {
+		final WatchEvent event;
+		final long revision;
+
+		QueuedEvent(WatchEvent event, long revision) {
+			this.event = event;
+			this.revision = revision;
+		}
+	}
+
+}
@@ -0,0 +1,327 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * EtcdTransport that hedges discovery reads (list/listKeys) across endpoints:
+ * a read is sent to one endpoint and, if no response arrives within the hedge
+ * delay, the same read is sent to the next endpoint. The first successful
+ * response wins and the other is cancelled.
+ *
+ * The hedge delay is the configured percentile of recently observed read
+ * latencies (never less than minHedgeDelayMS) so only the slow tail is hedged.
+ * Attempts that fail, time out or are cancelled as the loser are sampled too,
+ * their elapsed time being a lower bound of their latency (censored), as
+ * leaving them out would hide exactly the slow tail.
+ * At most maxHedgesInFlight hedges are outstanding at any time, beyond that
+ * reads simply wait on their first endpoint.
+ *
+ * Writes and watches are not hedged, they go to the primary transport
+ * (which knows all endpoints).
+ *
+ * Without an EtcdEndpointScorer reads start on the endpoints round-robin,
+ * with one they start on the best scored endpoint and hedge to the next
+ * best, and their outcomes are fed back into the scorer.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class HedgingEtcdTransport extends AbstractEtcdTransport {
+
+	// number of recent read latencies the hedge delay is computed from
+	private static final int LATENCY_SAMPLES = 256;
+
+	// recompute the hedge delay every N samples
+	private static final int RECOMPUTE_EVERY = 16;
+
+	private final EtcdTransport primary;
+	private final List<URI> uris;
+	private final List<EtcdTransport> endpoints;
+	private final EtcdEndpointScorer scorer;
+	private final int hedgePercentile;
+	private final long minHedgeDelayMS;
+	private final Semaphore hedgesInFlight;
+	private final ExecutorService executor;
+
+	// round-robin over endpoints for the first attempt
+	private final AtomicInteger nextEndpoint = new AtomicInteger();
+
+	// recent read latencies, guarded by itself
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int latencyCount = 0;
+	private volatile long hedgeDelayMS;
+
+	private final AtomicLong hedgesSent = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong hedgeLosses = new AtomicLong();
+
+	/**
+	 * A read against a single endpoint
+	 */
+	private interface Read<T> {
+		T read(EtcdTransport endpoint) throws Exception;
+	}
+
+	/**
+	 * Constructor, takes over the caller's references to all the transports
+	 *
+	 * @param primary used for all writes and watches
+	 * @param uris the endpoints
+	 * @param endpoints one transport per uri (in the same order), reads are hedged across these
+	 * @param scorer optional, not owned
+	 * @param hedgePercentile 1-99, percentile of recent read latency after which we hedge
+	 * @param minHedgeDelayMS floor for the hedge delay (and the delay until enough latencies are observed)
+	 * @param maxHedgesInFlight max outstanding hedge requests
+	 * @param logger
+	 */
+	public HedgingEtcdTransport(EtcdTransport primary,
+								List<URI> uris,
+								List<EtcdTransport> endpoints,
+								EtcdEndpointScorer scorer,
+								int hedgePercentile,
+								long minHedgeDelayMS,
+								int maxHedgesInFlight,
+								ILogger logger) {
+		super(logger);
+		this.primary = primary;
+		this.uris = uris;
+		this.endpoints = endpoints;
+		this.scorer = scorer;
+		this.hedgePercentile = Math.max(1, Math.min(99, hedgePercentile));
+		this.minHedgeDelayMS = Math.max(0, minHedgeDelayMS);
+		this.hedgeDelayMS = this.minHedgeDelayMS;
+		this.hedgesInFlight = new Semaphore(Math.max(1, maxHedgesInFlight));
+
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-hedged-read-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Number of hedge requests sent
+	 *
+	 * @return
+	 */
+	public long getHedgesSent() {
+		return hedgesSent.get();
+	}
+
+	/**
+	 * Number of reads where the hedge responded first
+	 *
+	 * @return
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * Number of reads where a hedge was sent but the original responded first
+	 *
+	 * @return
+	 */
+	public long getHedgeLosses() {
+		return hedgeLosses.get();
+	}
+
+	/**
+	 * The current hedge delay
+	 *
+	 * @return
+	 */
+	public long getHedgeDelayMS() {
+		return hedgeDelayMS;
+	}
+
+	@Override
+	public Listing list(final String dir, final long timeoutMS) throws Exception {
+		return hedged(new Read<Listing>() {
+			public Listing read(EtcdTransport endpoint) throws Exception {
+				return endpoint.list(dir, timeoutMS);
+			}
+		}, timeoutMS);
+	}
+
+	@Override
+	public List<String> listKeys(final String dir, final long timeoutMS) throws Exception {
+		return hedged(new Read<List<String>>() {
+			public List<String> read(EtcdTransport endpoint) throws Exception {
+				return endpoint.listKeys(dir, timeoutMS);
+			}
+		}, timeoutMS);
+	}
+
+	@Override
+	public void put(String key, String value, int ttlSeconds, long timeoutMS) throws Exception {
+		primary.put(key, value, ttlSeconds, timeoutMS);
+	}
+
+	@Override
+	public boolean refresh(String key, int ttlSeconds, long timeoutMS) throws Exception {
+		return primary.refresh(key, ttlSeconds, timeoutMS);
+	}
+
+	@Override
+	public void delete(String key, long timeoutMS) throws Exception {
+		primary.delete(key, timeoutMS);
+	}
+
+	@Override
+	public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception {
+		return primary.watch(dir, fromIndex, timeoutMS);
+	}
+
+	private <T> T hedged(final Read<T> read, long timeoutMS) throws Exception {
+
+		long deadline = System.currentTimeMillis() + timeoutMS;
+		int first;
+		int second;
+		if (scorer != null) {
+			List<URI> ordered = scorer.getOrdered();
+			first = uris.indexOf(ordered.get(0));
+			second = uris.indexOf(ordered.get(1 % ordered.size()));
+		} else {
+			first = (nextEndpoint.getAndIncrement() & 0x7fffffff) % endpoints.size();
+			second = (first + 1) % endpoints.size();
+		}
+
+		CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+		Future<T> original = completion.submit(timed(read, first));
+		Future<T> hedge = null;
+		boolean mayHedge = endpoints.size() > 1;
+		int outstanding = 1;
+		Exception lastError = null;
+
+		try {
+			while (outstanding > 0) {
+
+				// until the hedge is sent we only wait the hedge delay, an early failure hedges immediately
+				long waitMS = deadline - System.currentTimeMillis();
+				if (mayHedge) {
+					waitMS = Math.min(waitMS, hedgeDelayMS);
+				}
+
+				Future<T> done = waitMS > 0 ? completion.poll(waitMS, TimeUnit.MILLISECONDS) : null;
+
+				if (done != null) {
+					outstanding--;
+					try {
+						T result = done.get();
+						if (hedge != null) {
+							(done == hedge ? hedgeWins : hedgeLosses).incrementAndGet();
+						}
+						return result;
+
+					} catch(ExecutionException e) {
+						lastError = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+					}
+				}
+
+				if (System.currentTimeMillis() >= deadline) {
+					break;
+				}
+
+				// time to hedge (or fail over) if we have a hedge to spare, otherwise just keep waiting
+				if (mayHedge) {
+					mayHedge = false;
+					if (hedgesInFlight.tryAcquire()) {
+						hedgesSent.incrementAndGet();
+						hedge = completion.submit(timed(read, second));
+						outstanding++;
+					}
+				}
+			}
+
+		} finally {
+			// cancel the loser (or everything on timeout)
+			original.cancel(true);
+			if (hedge != null) {
+				hedge.cancel(true);
+				hedgesInFlight.release();
+			}
+		}
+
+		if (lastError != null) {
+			throw lastError;
+		}
+		throw new TimeoutException("Hedged read timed out after " + timeoutMS + "ms");
+	}
+
+	// wrap a read so its latency, or lower bound thereof, (and outcome if scored) is recorded
+	private <T> Callable<T> timed(final Read<T> read, final int endpoint) {
+		return new Callable<T>() {
+			public T call() throws Exception {
+				long start = System.currentTimeMillis();
+				T result;
+				try {
+					result = read.read(endpoints.get(endpoint));
+
+				} catch(InterruptedException e) {
+					// cancelled loser
+					throw e;
+
+				} catch(Exception e) {
+					if (scorer != null) {
+						scorer.record(uris.get(endpoint), isEtcdAnswer(e));
+					}
+					throw e;
+
+				} finally {
+					recordLatency(System.currentTimeMillis() - start);
+				}
+
+				if (scorer != null) {
+					scorer.record(uris.get(endpoint), true);
+				}
+				return result;
+			}
+		};
+	}
+
+	private void recordLatency(long latencyMS) {
+		synchronized(latencies) {
+			latencies[latencyCount % LATENCY_SAMPLES] = latencyMS;
+			latencyCount++;
+
+			if (latencyCount % RECOMPUTE_EVERY == 0) {
+				int samples = Math.min(latencyCount, LATENCY_SAMPLES);
+				long[] sorted = Arrays.copyOf(latencies, samples);
+				Arrays.sort(sorted);
+				long percentile = sorted[Math.min(samples - 1, (samples * hedgePercentile) / 100)];
+				this.hedgeDelayMS = Math.max(minHedgeDelayMS, percentile);
+			}
+		}
+	}
+
+	@Override
+	protected void close() {
+		executor.shutdownNow();
+		primary.release();
+		for (EtcdTransport endpoint : endpoints) {
+			endpoint.release();
+		}
+	}
+
+}
@@ -0,0 +1,382 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * EtcdTransport that protects Etcd (and our callers) during a brownout:
+ *
+ * - per operation timeouts: writes (put/refresh/delete) are bounded by the
+ *   configured write timeout in place of the caller's, reads (list/listKeys) by
+ *   the read timeout or the caller's if shorter (i.e. the readiness gate's time
+ *   left), including any retries. Each attempt runs on a thread of our own and is
+ *   abandoned (cancelled) once the deadline passes, even if the delegate never
+ *   returns, i.e. an etcd4j response that never completes. Its thread stays
+ *   parked until then. At most MAX_ATTEMPT_THREADS attempts run at once, when
+ *   all are parked (i.e. heartbeats against a hung etcd) further attempts fail
+ *   immediately rather than park yet another thread
+ *
+ * - bounded retries: failed operations are retried up to maxAttempts in total,
+ *   sleeping a random 0..min(retryMaxDelayMS, retryBaseDelayMS * 2^retry) ms
+ *   (exponential backoff w/ full jitter) in between
+ *
+ * - circuit breaker: after circuitFailureThreshold consecutive failed operations
+ *   the circuit opens and reads fail immediately with an EtcdCircuitOpenException
+ *   for circuitOpenMS. Then a single trial read is let through (half-open), its
+ *   success closes the circuit, its failure re-opens it. Only reads are guarded:
+ *   writes (put/refresh/delete) bypass the circuit and don't count towards it. A read brownout must not refuse every
+ *   member's TTL heartbeat, expiring registrations across the whole cluster,
+ *   nor refuse (re)registering, draining or deregistering.
+ *
+ * Errors that are etcd's answer to a request are neither retried nor counted
+ * as failures. Watches are passed straight through, the watcher has its own
+ * retry loop and its timeout is the long-poll wait.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class ResilientEtcdTransport extends AbstractEtcdTransport {
+
+	public static final String CIRCUIT_CLOSED = "closed";
+	public static final String CIRCUIT_OPEN = "open";
+	public static final String CIRCUIT_HALF_OPEN = "half-open";
+
+	// what enter() allows
+	private static final int REJECTED = 0;
+	private static final int ALLOWED = 1;
+	private static final int TRIAL = 2;
+	private static final int BYPASS = 3;
+
+	// upper bound on attempts in flight, parked ones included
+	static final int MAX_ATTEMPT_THREADS = 32;
+
+	private final EtcdTransport delegate;
+	private final long readTimeoutMS;
+	private final long writeTimeoutMS;
+	private final int maxAttempts;
+	private final long retryBaseDelayMS;
+	private final long retryMaxDelayMS;
+	private final int circuitFailureThreshold;
+	private final long circuitOpenMS;
+	private final Random random = new Random();
+	private final ExecutorService executor;
+
+	// circuit state, guarded by this
+	private int consecutiveFailures = 0;
+	private long openUntil = 0;
+	private boolean trialInFlight = false;
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong circuitOpens = new AtomicLong();
+
+	/**
+	 * An operation against the delegate
+	 */
+	private interface Operation<T> {
+		T execute(long timeoutMS) throws Exception;
+	}
+
+	/**
+	 * Constructor, takes over the caller's reference to the delegate
+	 *
+	 * @param delegate
+	 * @param readTimeoutMS
+	 * @param writeTimeoutMS
+	 * @param maxAttempts total attempts per operation, 1 disables retries
+	 * @param retryBaseDelayMS
+	 * @param retryMaxDelayMS
+	 * @param circuitFailureThreshold consecutive failed operations that open the circuit, <= 0 disables it
+	 * @param circuitOpenMS how long the circuit stays open before a trial operation
+	 * @param logger
+	 */
+	public ResilientEtcdTransport(EtcdTransport delegate,
+								  long readTimeoutMS,
+								  long writeTimeoutMS,
+								  int maxAttempts,
+								  long retryBaseDelayMS,
+								  long retryMaxDelayMS,
+								  int circuitFailureThreshold,
+								  long circuitOpenMS,
+								  ILogger logger) {
+		super(logger);
+		this.delegate = delegate;
+		this.readTimeoutMS = readTimeoutMS;
+		this.writeTimeoutMS = writeTimeoutMS;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.retryBaseDelayMS = Math.max(1, retryBaseDelayMS);
+		this.retryMaxDelayMS = Math.max(this.retryBaseDelayMS, retryMaxDelayMS);
+		this.circuitFailureThreshold = circuitFailureThreshold;
+		this.circuitOpenMS = circuitOpenMS;
+
+		// no queue: once every thread is busy, submit() is rejected (AbortPolicy)
+		this.executor = new ThreadPoolExecutor(0, MAX_ATTEMPT_THREADS, 60, TimeUnit.SECONDS, 
+											   new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-resilient-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public long getReadTimeoutMS() {
+		return readTimeoutMS;
+	}
+
+	public long getWriteTimeoutMS() {
+		return writeTimeoutMS;
+	}
+
+	/**
+	 * CIRCUIT_CLOSED, CIRCUIT_OPEN or CIRCUIT_HALF_OPEN (open, but a trial is due or running)
+	 *
+	 * @return
+	 */
+	public synchronized String getCircuitState() {
+		if (openUntil == 0) {
+			return CIRCUIT_CLOSED;
+		}
+		return (trialInFlight || System.currentTimeMillis() >= openUntil) ? CIRCUIT_HALF_OPEN : CIRCUIT_OPEN;
+	}
+
+	/**
+	 * Number of times the circuit opened, re-opens after a failed trial included
+	 *
+	 * @return
+	 */
+	public long getCircuitOpens() {
+		return circuitOpens.get();
+	}
+
+	/**
+	 * Number of operations failed immediately because the circuit was open
+	 *
+	 * @return
+	 */
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * Number of retries (attempts after the first) made
+	 *
+	 * @return
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	@Override
+	public Listing list(final String dir, long timeoutMS) throws Exception {
+		return execute("list /" + dir, Math.min(timeoutMS, readTimeoutMS), true, new Operation<Listing>() {
+			public Listing execute(long timeoutMS) throws Exception {
+				return delegate.list(dir, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public List<String> listKeys(final String dir, long timeoutMS) throws Exception {
+		return execute("listKeys /" + dir, Math.min(timeoutMS, readTimeoutMS), true, new Operation<List<String>>() {
+			public List<String> execute(long timeoutMS) throws Exception {
+				return delegate.listKeys(dir, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public void put(final String key, final String value, final int ttlSeconds, long timeoutMS) throws Exception {
+		execute("put " + key, writeTimeoutMS, false, new Operation<Void>() {
+			public Void execute(long timeoutMS) throws Exception {
+				delegate.put(key, value, ttlSeconds, timeoutMS);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public boolean refresh(final String key, final int ttlSeconds, long timeoutMS) throws Exception {
+		return execute("refresh " + key, writeTimeoutMS, false, new Operation<Boolean>() {
+			public Boolean execute(long timeoutMS) throws Exception {
+				return delegate.refresh(key, ttlSeconds, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public void delete(final String key, long timeoutMS) throws Exception {
+		execute("delete " + key, writeTimeoutMS, false, new Operation<Void>() {
+			public Void execute(long timeoutMS) throws Exception {
+				delegate.delete(key, timeoutMS);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception {
+		return delegate.watch(dir, fromIndex, timeoutMS);
+	}
+
+	/**
+	 * @param description
+	 * @param timeoutMS
+	 * @param guarded false to bypass the circuit breaker
+	 * @param operation
+	 * @return
+	 * @throws Exception
+	 */
+	private <T> T execute(String description, long timeoutMS, boolean guarded, final Operation<T> operation) throws Exception {
+
+		int permit = guarded ? enter() : BYPASS;
+		if (permit == REJECTED) {
+			rejections.incrementAndGet();
+			throw new EtcdCircuitOpenException("Etcd circuit breaker open, not attempting: " + description);
+		}
+
+		long deadline = System.currentTimeMillis() + timeoutMS;
+		Boolean succeeded = null;
+		Exception lastError = null;
+
+		try {
+			for (int attempt=0; attempt<maxAttempts; attempt++) {
+
+				if (attempt > 0) {
+					long backoffMS = (long)(random.nextDouble() * Math.min(retryMaxDelayMS, retryBaseDelayMS << Math.min(attempt - 1, 30)));
+					if (System.currentTimeMillis() + backoffMS >= deadline) {
+						break;
+					}
+					Thread.sleep(backoffMS);
+					retries.incrementAndGet();
+				}
+
+				final long remainingMS = deadline - System.currentTimeMillis();
+				if (remainingMS <= 0) {
+					break;
+				}
+
+				// the delegate gets the remaining time, we enforce it
+				Future<T> pending = null;
+				try {
+					pending = executor.submit(new Callable<T>() {
+						public T call() throws Exception {
+							return operation.execute(remainingMS);
+						}
+					});
+				} catch(RejectedExecutionException e) {
+					// all threads parked on earlier attempts, a failed attempt w/o parking another
+					lastError = new RejectedExecutionException("Etcd " + description + " attempt " + (attempt + 1) + 
+															   " not started, " + MAX_ATTEMPT_THREADS + " attempts still in flight");
+					logger.finest(lastError.getMessage());
+					continue;
+				}
+
+				try {
+					T result = pending.get(remainingMS, TimeUnit.MILLISECONDS);
+					succeeded = true;
+					return result;
+
+				} catch(InterruptedException e) {
+					pending.cancel(true);
+					throw e;
+
+				} catch(TimeoutException e) {
+					pending.cancel(true);
+					lastError = new TimeoutException("Etcd " + description + " attempt " + (attempt + 1) + 
+													 " did not complete within " + remainingMS + "ms");
+					logger.finest(lastError.getMessage());
+
+				} catch(ExecutionException e) {
+					if (e.getCause() instanceof Error) {
+						throw (Error)e.getCause();
+					}
+					Exception cause = (Exception)e.getCause();
+					if (isEtcdAnswer(cause)) {
+						succeeded = true;
+						throw cause;
+					}
+					lastError = cause;
+					logger.finest("Etcd " + description + " attempt " + (attempt + 1) + " of " + maxAttempts + " failed: " + cause.getMessage());
+				}
+			}
+
+			succeeded = false;
+
+		} finally {
+			exit(permit, succeeded);
+		}
+
+		throw lastError != null ? lastError : new TimeoutException("Etcd " + description + " timed out after " + timeoutMS + "ms");
+	}
+
+	private synchronized int enter() {
+		if (openUntil == 0) {
+			return ALLOWED;
+		}
+		if (trialInFlight || System.currentTimeMillis() < openUntil) {
+			return REJECTED;
+		}
+		trialInFlight = true;
+		return TRIAL;
+	}
+
+	/**
+	 * @param permit what enter() returned
+	 * @param succeeded null if the operation was interrupted (no outcome)
+	 */
+	private synchronized void exit(int permit, Boolean succeeded) {
+		if (permit == BYPASS) {
+			return;
+		}
+		if (permit == TRIAL) {
+			trialInFlight = false;
+		}
+		if (succeeded == null) {
+			return;
+		}
+
+		if (succeeded) {
+			consecutiveFailures = 0;
+			if (permit == TRIAL) {
+				openUntil = 0;
+				logger.info("Etcd circuit breaker closed, trial operation succeeded");
+			}
+			return;
+		}
+
+		consecutiveFailures++;
+		if (permit == TRIAL) {
+			openUntil = System.currentTimeMillis() + circuitOpenMS;
+			circuitOpens.incrementAndGet();
+			logger.warning("Etcd circuit breaker re-opened for " + circuitOpenMS + "ms, trial operation failed");
+
+		} else if (openUntil == 0 && circuitFailureThreshold > 0 && consecutiveFailures >= circuitFailureThreshold) {
+			openUntil = System.currentTimeMillis() + circuitOpenMS;
+			circuitOpens.incrementAndGet();
+			logger.warning("Etcd circuit breaker opened for " + circuitOpenMS + "ms after " + consecutiveFailures + " consecutive failures");
+		}
+	}
+
+	@Override
+	protected void close() {
+		executor.shutdownNow();
+		delegate.release();
+	}
+
+}
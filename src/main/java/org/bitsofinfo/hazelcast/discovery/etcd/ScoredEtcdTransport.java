@@ -0,0 +1,140 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.List;
+
+import com.hazelcast.logging.ILogger;
+
+/**
+ * EtcdTransport that sends every operation to the endpoint currently
+ * ordered first by an EtcdEndpointScorer, failing over to the next
+ * endpoint(s) in order when an endpoint itself fails. The outcome of
+ * every operation is fed back into the scorer.
+ *
+ * Errors that are etcd's answer to the request (i.e. a v2 command error,
+ * or a watch index that was cleared) would be the same on any endpoint
+ * and are thrown as is.
+ *
+ * Note with v3 each endpoint transport holds its own leases, a TTL'd key
+ * put via an endpoint that then fails over is simply put again once its
+ * refresh() via the new endpoint reports it missing.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class ScoredEtcdTransport extends AbstractEtcdTransport {
+
+	private final EtcdEndpointScorer scorer;
+	private final List<URI> uris;
+	private final List<EtcdTransport> endpoints;
+
+	/**
+	 * An operation against a single endpoint
+	 */
+	private interface Operation<T> {
+		T execute(EtcdTransport endpoint) throws Exception;
+	}
+
+	/**
+	 * Constructor, takes over the caller's references to the endpoint transports
+	 *
+	 * @param scorer not owned, the caller starts/stops it
+	 * @param uris the endpoints
+	 * @param endpoints one transport per uri, in the same order
+	 * @param logger
+	 */
+	public ScoredEtcdTransport(EtcdEndpointScorer scorer, List<URI> uris, List<EtcdTransport> endpoints, ILogger logger) {
+		super(logger);
+		this.scorer = scorer;
+		this.uris = uris;
+		this.endpoints = endpoints;
+	}
+
+	@Override
+	public Listing list(final String dir, final long timeoutMS) throws Exception {
+		return execute(new Operation<Listing>() {
+			public Listing execute(EtcdTransport endpoint) throws Exception {
+				return endpoint.list(dir, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public List<String> listKeys(final String dir, final long timeoutMS) throws Exception {
+		return execute(new Operation<List<String>>() {
+			public List<String> execute(EtcdTransport endpoint) throws Exception {
+				return endpoint.listKeys(dir, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public void put(final String key, final String value, final int ttlSeconds, final long timeoutMS) throws Exception {
+		execute(new Operation<Void>() {
+			public Void execute(EtcdTransport endpoint) throws Exception {
+				endpoint.put(key, value, ttlSeconds, timeoutMS);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public boolean refresh(final String key, final int ttlSeconds, final long timeoutMS) throws Exception {
+		return execute(new Operation<Boolean>() {
+			public Boolean execute(EtcdTransport endpoint) throws Exception {
+				return endpoint.refresh(key, ttlSeconds, timeoutMS);
+			}
+		});
+	}
+
+	@Override
+	public void delete(final String key, final long timeoutMS) throws Exception {
+		execute(new Operation<Void>() {
+			public Void execute(EtcdTransport endpoint) throws Exception {
+				endpoint.delete(key, timeoutMS);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public WatchResult watch(final String dir, final long fromIndex, final long timeoutMS) throws Exception {
+		return execute(new Operation<WatchResult>() {
+			public WatchResult execute(EtcdTransport endpoint) throws Exception {
+				return endpoint.watch(dir, fromIndex, timeoutMS);
+			}
+		});
+	}
+
+	private <T> T execute(Operation<T> operation) throws Exception {
+		Exception lastError = null;
+		for (URI uri : scorer.getOrdered()) {
+			try {
+				T result = operation.execute(endpoints.get(uris.indexOf(uri)));
+				scorer.record(uri, true);
+				return result;
+
+			} catch(InterruptedException e) {
+				throw e;
+
+			} catch(Exception e) {
+				if (isEtcdAnswer(e)) {
+					scorer.record(uri, true);
+					throw e;
+				}
+				scorer.record(uri, false);
+				lastError = e;
+				logger.finest("Etcd endpoint " + uri + " failed, trying next: " + e.getMessage());
+			}
+		}
+		throw lastError != null ? lastError : new IllegalStateException("No etcd-uris configured");
+	}
+
+	@Override
+	protected void close() {
+		for (EtcdTransport endpoint : endpoints) {
+			endpoint.release();
+		}
+	}
+
+}
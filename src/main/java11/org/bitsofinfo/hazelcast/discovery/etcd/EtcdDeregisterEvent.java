@@ -0,0 +1,17 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Deleting our member's key from Etcd
+ *
+ * @author bitsofinfo
+ *
+ */
+@Name("org.bitsofinfo.hazelcast.discovery.etcd.EtcdDeregister")
+@Label("Etcd Deregister")
+@Description("Our member's key deleted from Etcd")
+class EtcdDeregisterEvent extends EtcdEvent {
+}
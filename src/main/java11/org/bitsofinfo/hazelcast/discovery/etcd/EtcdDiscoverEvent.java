@@ -0,0 +1,17 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading the members of our service from Etcd
+ *
+ * @author bitsofinfo
+ *
+ */
+@Name("org.bitsofinfo.hazelcast.discovery.etcd.EtcdDiscover")
+@Label("Etcd Discover")
+@Description("Members read from Etcd by discoverNodes()")
+class EtcdDiscoverEvent extends EtcdEvent {
+}
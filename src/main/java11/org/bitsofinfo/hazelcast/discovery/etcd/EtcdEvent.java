@@ -0,0 +1,34 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields common to all our JFR events, @see EtcdFlightRecorder
+ *
+ * @author bitsofinfo
+ *
+ */
+@Category({"Hazelcast", "Etcd Discovery"})
+@StackTrace(false)
+abstract class EtcdEvent extends jdk.jfr.Event {
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("Key")
+	String key;
+
+	@Label("Result Count")
+	int resultCount;
+
+	@Label("Payload Bytes")
+	@DataAmount
+	long payloadBytes;
+
+	@Label("Outcome")
+	String outcome;
+
+}
@@ -0,0 +1,67 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+/**
+ * The java 11+ EtcdFlightRecorder, packaged under META-INF/versions/11
+ * and loaded in place of the no-op one under src/main/java. Must keep
+ * the same public API as that one.
+ *
+ * begin*() returns null unless recording of the event is enabled, so with
+ * recording off the cost is an isEnabled() check on a (scalar replaced)
+ * event.
+ *
+ * @author bitsofinfo
+ *
+ */
+public final class EtcdFlightRecorder {
+
+	public static final String OUTCOME_SUCCESS = "success";
+	public static final String OUTCOME_FAILURE = "failure";
+	public static final String OUTCOME_CIRCUIT_OPEN = "circuit-open";
+
+	private EtcdFlightRecorder() {}
+
+	public static boolean isAvailable() {
+		return true;
+	}
+
+	public static Object beginDiscover() {
+		return begin(new EtcdDiscoverEvent());
+	}
+
+	public static Object beginRegister() {
+		return begin(new EtcdRegisterEvent());
+	}
+
+	public static Object beginDeregister() {
+		return begin(new EtcdDeregisterEvent());
+	}
+
+	public static Object beginTlsContextBuild() {
+		return begin(new EtcdTlsContextBuildEvent());
+	}
+
+	private static Object begin(EtcdEvent event) {
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	public static void end(Object event, String endpoint, String key, int resultCount, long payloadBytes, String outcome) {
+		if (event == null) {
+			return;
+		}
+		EtcdEvent etcdEvent = (EtcdEvent)event;
+		etcdEvent.end();
+		if (etcdEvent.shouldCommit()) {
+			etcdEvent.endpoint = endpoint;
+			etcdEvent.key = key;
+			etcdEvent.resultCount = resultCount;
+			etcdEvent.payloadBytes = payloadBytes;
+			etcdEvent.outcome = outcome;
+			etcdEvent.commit();
+		}
+	}
+
+}
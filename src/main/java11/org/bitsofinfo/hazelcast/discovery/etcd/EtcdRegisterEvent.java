@@ -0,0 +1,17 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Writing our member's key to Etcd
+ *
+ * @author bitsofinfo
+ *
+ */
+@Name("org.bitsofinfo.hazelcast.discovery.etcd.EtcdRegister")
+@Label("Etcd Register")
+@Description("Our member's key written to Etcd")
+class EtcdRegisterEvent extends EtcdEvent {
+}
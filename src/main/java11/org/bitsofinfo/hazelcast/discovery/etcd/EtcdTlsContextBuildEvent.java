@@ -0,0 +1,17 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * (Re)building the TLS context from the etcd cert/key files
+ *
+ * @author bitsofinfo
+ *
+ */
+@Name("org.bitsofinfo.hazelcast.discovery.etcd.EtcdTlsContextBuild")
+@Label("Etcd TLS Context Build")
+@Description("TLS context (re)built from the etcd cert/key files")
+class EtcdTlsContextBuildEvent extends EtcdEvent {
+}
@@ -0,0 +1,802 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an Etcd server implementing the subset of the
+ * v2 keys API used by this project, so tests run hermetically and fast
+ * without a real Etcd on localhost:4001
+ *
+ * - GET    /v2/keys/[key]?recursive=true           (get/dir listing)
+ * - GET    /v2/keys/[dir]?wait=true&waitIndex=N    (watch, optionally recursive)
+ * - PUT    /v2/keys/[key] value=..&ttl=..          (also prevExist=, refresh=true)
+ * - DELETE /v2/keys/[key]                         (also dir=true, recursive=true)
+ * - GET    /version, /health
+ *
+ * Keys with a ttl expire (emitting 'expire' events), the last 1000 events
+ * are retained for watches, older waitIndexes get error 401 EventIndexCleared
+ * just like Etcd.
+ *
+ * For testing failure handling and for benchmarking it also supports
+ * per request latency, error injection, required credentials and
+ * pre-seeding (large) directories of members.
+ *
+ * Set the system property -Detcd.standin=false to have the tests
+ * use a real Etcd instead.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdStandInServer implements HttpHandler {
+
+	public static final String STAND_IN_PROPERTY = "etcd.standin";
+
+	private static final String KEYS_PATH = "/v2/keys";
+	private static final int HISTORY_SIZE = 1000;
+	private static final long EXPIRY_CHECK_MS = 100;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int requestedPort;
+	private HttpServer httpServer = null;
+	private ExecutorService executor = null;
+	private ScheduledExecutorService expirer = null;
+	private volatile boolean running = false;
+
+	// the keyspace, guarded by lock
+	private final Object lock = new Object();
+	private final TreeMap<String,Leaf> leaves = new TreeMap<String,Leaf>();
+	private final TreeMap<String,Long> dirs = new TreeMap<String,Long>();
+	private final LinkedList<Event> history = new LinkedList<Event>();
+	private long index = 0;
+	private long clearedThroughIndex = 0;
+
+	// latency, errors and credentials
+	private volatile long minLatencyMS = 0;
+	private volatile long maxLatencyMS = 0;
+	private volatile double errorRate = 0;
+	private int failNextCount = 0;
+	private int failNextStatus = 500;
+	private volatile String requiredAuthorization = null;
+	private final Random random = new Random();
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/**
+	 * A value stored at a key
+	 */
+	private static class Leaf {
+		String value;
+		long createdIndex;
+		long modifiedIndex;
+		int ttl = 0;
+		long expiresAt = 0;
+	}
+
+	/**
+	 * A change, retained for watches
+	 */
+	private static class Event {
+		long index;
+		String key;
+		JsonObject json;
+	}
+
+	/**
+	 * True unless -Detcd.standin=false
+	 *
+	 * @return
+	 */
+	public static boolean isEnabled() {
+		return !"false".equalsIgnoreCase(System.getProperty(STAND_IN_PROPERTY));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param port to listen on, 0 for any free port
+	 */
+	public EtcdStandInServer(int port) {
+		this.requestedPort = port;
+	}
+
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+
+		ThreadFactory daemons = new ThreadFactory() {
+			private final AtomicLong count = new AtomicLong();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "etcd-stand-in-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+
+		this.executor = Executors.newCachedThreadPool(daemons);
+		this.httpServer = HttpServer.create(new InetSocketAddress("localhost", requestedPort), 0);
+		this.httpServer.createContext("/", this);
+		this.httpServer.setExecutor(executor);
+		this.httpServer.start();
+
+		this.expirer = Executors.newSingleThreadScheduledExecutor(daemons);
+		this.expirer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				synchronized(lock) {
+					expire();
+				}
+			}
+		}, EXPIRY_CHECK_MS, EXPIRY_CHECK_MS, TimeUnit.MILLISECONDS);
+
+		this.running = true;
+	}
+
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+
+		// release any blocked watches
+		synchronized(lock) {
+			lock.notifyAll();
+		}
+
+		expirer.shutdownNow();
+		httpServer.stop(0);
+		executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	public URI getUri() {
+		return URI.create("http://localhost:" + getPort());
+	}
+
+	/**
+	 * Total HTTP requests received
+	 *
+	 * @return
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * The current etcd index
+	 *
+	 * @return
+	 */
+	public long getIndex() {
+		synchronized(lock) {
+			return index;
+		}
+	}
+
+	/**
+	 * Delay each response by a random amount between minMS and maxMS
+	 *
+	 * @param minMS
+	 * @param maxMS
+	 */
+	public void setLatency(long minMS, long maxMS) {
+		this.minLatencyMS = minMS;
+		this.maxLatencyMS = Math.max(minMS, maxMS);
+	}
+
+	/**
+	 * Fail this fraction (0-1) of all requests with a 500 Raft Internal Error
+	 *
+	 * @param errorRate
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Fail the next count requests with the given HTTP status
+	 *
+	 * @param count
+	 * @param httpStatus
+	 */
+	public synchronized void failNext(int count, int httpStatus) {
+		this.failNextCount = count;
+		this.failNextStatus = httpStatus;
+	}
+
+	/**
+	 * Require HTTP basic auth with these credentials, null to disable
+	 *
+	 * @param username
+	 * @param password
+	 */
+	public void requireCredentials(String username, String password) {
+		if (username == null) {
+			this.requiredAuthorization = null;
+		} else {
+			this.requiredAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+					(username + ":" + password).getBytes(UTF8));
+		}
+	}
+
+	/**
+	 * Put a key directly
+	 *
+	 * @param key
+	 * @param value
+	 * @param ttlSeconds <= 0 for none
+	 */
+	public void put(String key, String value, int ttlSeconds) {
+		synchronized(lock) {
+			set(normalize(key), value, ttlSeconds);
+		}
+	}
+
+	/**
+	 * Delete a key directly
+	 *
+	 * @param key
+	 */
+	public void delete(String key) {
+		synchronized(lock) {
+			key = normalize(key);
+			Leaf leaf = leaves.get(key);
+			if (leaf != null) {
+				remove(key, leaf, "delete");
+			}
+		}
+	}
+
+	/**
+	 * All keys/values (recursively) under the given dir
+	 *
+	 * @param dir
+	 * @return
+	 */
+	public Map<String,String> list(String dir) {
+		Map<String,String> toReturn = new TreeMap<String,String>();
+		synchronized(lock) {
+			expire();
+			String prefix = prefixOf(normalize(dir));
+			for (Map.Entry<String,Leaf> entry : leaves.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+				toReturn.put(entry.getKey(), entry.getValue().value);
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Register count members under dir, each with a unique 10.x.x.x ip
+	 *
+	 * @param dir
+	 * @param count
+	 * @param ttlSeconds <= 0 for none
+	 */
+	public void seed(String dir, int count, int ttlSeconds) {
+		seed(dir, 0, count, ttlSeconds);
+	}
+
+	/**
+	 * Register count members under dir, the from-th through (from + count - 1)-th
+	 * of the 10.x.x.x ips, so members seeded across dirs stay unique
+	 *
+	 * @param dir
+	 * @param from
+	 * @param count
+	 * @param ttlSeconds <= 0 for none
+	 */
+	public void seed(String dir, int from, int count, int ttlSeconds) {
+		synchronized(lock) {
+			String prefix = prefixOf(normalize(dir));
+			for (int i=from; i<from + count; i++) {
+				String ip = "10." + ((i >> 16) & 255) + "." + ((i >> 8) & 255) + "." + (i & 255);
+				EtcdHazelcastNode node = new EtcdHazelcastNode(ip, 5701, ip);
+				set(prefix + "seed-" + ip + "-5701", EtcdHazelcastNodeTypeAdapter.encode(node), ttlSeconds);
+			}
+		}
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		try {
+			delay();
+
+			if (requiredAuthorization != null &&
+					!requiredAuthorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+				JsonObject error = new JsonObject();
+				error.addProperty("message", "Insufficient credentials");
+				respond(exchange, 401, error);
+				return;
+			}
+
+			int injectedStatus = nextInjectedError();
+			if (injectedStatus > 0) {
+				error(exchange, injectedStatus, 300, "Raft Internal Error", "injected");
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath();
+			if (path.equals("/version")) {
+				JsonObject version = new JsonObject();
+				version.addProperty("etcdserver", "2.3.8");
+				version.addProperty("etcdcluster", "2.3.0");
+				respond(exchange, 200, version);
+				return;
+			}
+			if (path.equals("/health")) {
+				JsonObject health = new JsonObject();
+				health.addProperty("health", "true");
+				respond(exchange, 200, health);
+				return;
+			}
+
+			if (!path.startsWith(KEYS_PATH)) {
+				error(exchange, 404, 100, "Key not found", path);
+				return;
+			}
+
+			String key = normalize(path.substring(KEYS_PATH.length()));
+			Map<String,String> params = parseForm(exchange.getRequestURI().getRawQuery());
+			String method = exchange.getRequestMethod().toUpperCase();
+
+			if (method.equals("GET")) {
+				if ("true".equals(params.get("wait"))) {
+					doWatch(exchange, key, params);
+				} else {
+					doGet(exchange, key, params);
+				}
+
+			} else if (method.equals("PUT") || method.equals("POST")) {
+				params.putAll(parseForm(readBody(exchange.getRequestBody())));
+				doPut(exchange, key, params);
+
+			} else if (method.equals("DELETE")) {
+				doDelete(exchange, key, params);
+
+			} else {
+				exchange.sendResponseHeaders(405, -1);
+			}
+
+		} catch(IOException e) {
+			// client went away (i.e. a watch timed out), nothing to do
+
+		} catch(Exception e) {
+			error(exchange, 500, 300, "Raft Internal Error", String.valueOf(e.getMessage()));
+
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void doGet(HttpExchange exchange, String key, Map<String,String> params) throws IOException {
+		JsonObject response = new JsonObject();
+		synchronized(lock) {
+			expire();
+
+			Leaf leaf = leaves.get(key);
+			if (leaf != null) {
+				response.addProperty("action", "get");
+				response.add("node", leafJson(key, leaf));
+
+			} else if (dirs.containsKey(key) || key.equals("/")) {
+				response.addProperty("action", "get");
+				response.add("node", dirJson(key, "true".equals(params.get("recursive")), true));
+
+			} else {
+				error(exchange, 404, 100, "Key not found", key);
+				return;
+			}
+		}
+		respond(exchange, 200, response);
+	}
+
+	private void doPut(HttpExchange exchange, String key, Map<String,String> params) throws IOException {
+		JsonObject response = new JsonObject();
+		int status;
+		synchronized(lock) {
+			expire();
+
+			Leaf existing = leaves.get(key);
+			String prevExist = params.get("prevExist");
+			int ttl = parseTtl(params.get("ttl"));
+
+			if (dirs.containsKey(key) || key.equals("/")) {
+				error(exchange, 403, 102, "Not a file", key);
+				return;
+			}
+			if (existing == null && "true".equals(prevExist)) {
+				error(exchange, 404, 100, "Key not found", key);
+				return;
+			}
+			if (existing != null && "false".equals(prevExist)) {
+				error(exchange, 412, 105, "Key already exists", key);
+				return;
+			}
+			String notADir = firstLeafAncestor(key);
+			if (notADir != null) {
+				error(exchange, 403, 104, "Not a directory", notADir);
+				return;
+			}
+
+			// refresh: extend the ttl only, watchers are not notified
+			if ("true".equals(params.get("refresh"))) {
+				JsonObject prevNode = leafJson(key, existing);
+				existing.modifiedIndex = ++index;
+				existing.ttl = ttl;
+				existing.expiresAt = ttl > 0 ? System.currentTimeMillis() + (ttl * 1000L) : 0;
+				response.addProperty("action", "update");
+				response.add("node", leafJson(key, existing));
+				response.add("prevNode", prevNode);
+				status = 200;
+
+			} else {
+				String value = params.get("value");
+				Event event = set(key, value != null ? value : "", ttl);
+				response = event.json;
+				status = existing == null ? 201 : 200;
+			}
+		}
+		respond(exchange, status, response);
+	}
+
+	private void doDelete(HttpExchange exchange, String key, Map<String,String> params) throws IOException {
+		JsonObject response;
+		synchronized(lock) {
+			expire();
+
+			Leaf leaf = leaves.get(key);
+			if (leaf != null) {
+				response = remove(key, leaf, "delete").json;
+
+			} else if (dirs.containsKey(key)) {
+				boolean recursive = "true".equals(params.get("recursive"));
+				if (!recursive && !"true".equals(params.get("dir"))) {
+					error(exchange, 403, 102, "Not a file", key);
+					return;
+				}
+				String prefix = prefixOf(key);
+				boolean empty = leaves.subMap(prefix, prefix + Character.MAX_VALUE).isEmpty() &&
+								dirs.subMap(prefix, prefix + Character.MAX_VALUE).isEmpty();
+				if (!empty && !recursive) {
+					error(exchange, 403, 108, "Directory not empty", key);
+					return;
+				}
+				response = removeDir(key).json;
+
+			} else {
+				error(exchange, 404, 100, "Key not found", key);
+				return;
+			}
+		}
+		respond(exchange, 200, response);
+	}
+
+	private void doWatch(HttpExchange exchange, String key, Map<String,String> params) throws Exception {
+		boolean recursive = "true".equals(params.get("recursive"));
+		Event found = null;
+
+		synchronized(lock) {
+			long waitIndex = params.containsKey("waitIndex") ? Long.parseLong(params.get("waitIndex")) : 0;
+			long fromIndex = waitIndex > 0 ? waitIndex : index + 1;
+
+			if (fromIndex <= clearedThroughIndex) {
+				error(exchange, 400, 401, "The event in requested index is outdated and cleared",
+						"the requested history has been cleared [" + (clearedThroughIndex+1) + "/" + fromIndex + "]");
+				return;
+			}
+
+			while (running && found == null) {
+				for (Event event : history) {
+					if (event.index >= fromIndex && matches(event.key, key, recursive)) {
+						found = event;
+						break;
+					}
+				}
+				if (found == null) {
+					lock.wait();
+				}
+			}
+		}
+
+		if (found != null) {
+			respond(exchange, 200, found.json);
+		}
+	}
+
+	// a watch on key sees changes to key and (recursive) anything below it, or its direct children
+	private static boolean matches(String eventKey, String watchKey, boolean recursive) {
+		if (eventKey.equals(watchKey)) {
+			return true;
+		}
+		String prefix = prefixOf(watchKey);
+		if (!eventKey.startsWith(prefix)) {
+			return false;
+		}
+		return recursive || eventKey.indexOf('/', prefix.length()) == -1;
+	}
+
+	/**
+	 * Set a value, creating parent directories as needed. Caller holds lock
+	 */
+	private Event set(String key, String value, int ttl) {
+		Leaf existing = leaves.get(key);
+
+		index++;
+		mkdirs(parentOf(key));
+
+		Leaf leaf = new Leaf();
+		leaf.value = value;
+		leaf.modifiedIndex = index;
+		leaf.createdIndex = existing != null ? existing.createdIndex : index;
+		leaf.ttl = ttl;
+		leaf.expiresAt = ttl > 0 ? System.currentTimeMillis() + (ttl * 1000L) : 0;
+		leaves.put(key, leaf);
+
+		JsonObject json = new JsonObject();
+		json.addProperty("action", "set");
+		json.add("node", leafJson(key, leaf));
+		if (existing != null) {
+			json.add("prevNode", leafJson(key, existing));
+		}
+		return record(key, json);
+	}
+
+	/**
+	 * Remove a value as deleted or expired. Caller holds lock
+	 */
+	private Event remove(String key, Leaf leaf, String action) {
+		leaves.remove(key);
+		index++;
+
+		JsonObject node = new JsonObject();
+		node.addProperty("key", key);
+		node.addProperty("modifiedIndex", index);
+		node.addProperty("createdIndex", leaf.createdIndex);
+
+		JsonObject json = new JsonObject();
+		json.addProperty("action", action);
+		json.add("node", node);
+		json.add("prevNode", leafJson(key, leaf));
+		return record(key, json);
+	}
+
+	/**
+	 * Remove a directory and everything below it. Caller holds lock
+	 */
+	private Event removeDir(String key) {
+		String prefix = prefixOf(key);
+		long createdIndex = dirs.remove(key);
+		leaves.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		dirs.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		index++;
+
+		JsonObject node = new JsonObject();
+		node.addProperty("key", key);
+		node.addProperty("dir", true);
+		node.addProperty("modifiedIndex", index);
+		node.addProperty("createdIndex", createdIndex);
+
+		JsonObject json = new JsonObject();
+		json.addProperty("action", "delete");
+		json.add("node", node);
+		return record(key, json);
+	}
+
+	private Event record(String key, JsonObject json) {
+		Event event = new Event();
+		event.index = index;
+		event.key = key;
+		event.json = json;
+
+		history.addLast(event);
+		while (history.size() > HISTORY_SIZE) {
+			clearedThroughIndex = history.removeFirst().index;
+		}
+
+		lock.notifyAll();
+		return event;
+	}
+
+	/**
+	 * Expire leaves whose ttl has elapsed. Caller holds lock
+	 */
+	private void expire() {
+		long now = System.currentTimeMillis();
+		List<String> expired = new ArrayList<String>();
+		for (Map.Entry<String,Leaf> entry : leaves.entrySet()) {
+			if (entry.getValue().expiresAt > 0 && entry.getValue().expiresAt <= now) {
+				expired.add(entry.getKey());
+			}
+		}
+		for (String key : expired) {
+			remove(key, leaves.get(key), "expire");
+		}
+	}
+
+	private void mkdirs(String dir) {
+		while (dir != null && !dir.equals("/") && !dirs.containsKey(dir)) {
+			dirs.put(dir, index);
+			dir = parentOf(dir);
+		}
+	}
+
+	private String firstLeafAncestor(String key) {
+		for (String dir = parentOf(key); dir != null && !dir.equals("/"); dir = parentOf(dir)) {
+			if (leaves.containsKey(dir)) {
+				return dir;
+			}
+		}
+		return null;
+	}
+
+	private JsonObject leafJson(String key, Leaf leaf) {
+		JsonObject node = new JsonObject();
+		node.addProperty("key", key);
+		node.addProperty("value", leaf.value);
+		node.addProperty("modifiedIndex", leaf.modifiedIndex);
+		node.addProperty("createdIndex", leaf.createdIndex);
+		if (leaf.ttl > 0) {
+			long remaining = (leaf.expiresAt - System.currentTimeMillis() + 999) / 1000;
+			node.addProperty("ttl", Math.max(1, remaining));
+		}
+		return node;
+	}
+
+	private JsonObject dirJson(String key, boolean recursive, boolean includeChildren) {
+		JsonObject node = new JsonObject();
+		if (!key.equals("/")) {
+			node.addProperty("key", key);
+			node.addProperty("modifiedIndex", dirs.get(key));
+			node.addProperty("createdIndex", dirs.get(key));
+		}
+		node.addProperty("dir", true);
+
+		if (includeChildren) {
+			String prefix = prefixOf(key);
+			JsonArray nodes = new JsonArray();
+
+			for (String dir : dirs.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+				if (dir.indexOf('/', prefix.length()) == -1) {
+					nodes.add(dirJson(dir, recursive, recursive));
+				}
+			}
+			for (Map.Entry<String,Leaf> entry : leaves.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+				if (entry.getKey().indexOf('/', prefix.length()) == -1) {
+					nodes.add(leafJson(entry.getKey(), entry.getValue()));
+				}
+			}
+			node.add("nodes", nodes);
+		}
+		return node;
+	}
+
+	private void error(HttpExchange exchange, int httpStatus, int errorCode, String message, String cause) throws IOException {
+		JsonObject error = new JsonObject();
+		error.addProperty("errorCode", errorCode);
+		error.addProperty("message", message);
+		error.addProperty("cause", cause);
+		error.addProperty("index", getIndex());
+		respond(exchange, httpStatus, error);
+	}
+
+	private void respond(HttpExchange exchange, int httpStatus, JsonObject json) throws IOException {
+		byte[] body = json.toString().getBytes(UTF8);
+
+		long etcdIndex = getIndex();
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.getResponseHeaders().set("X-Etcd-Cluster-Id", "7e27652122e8b2ae");
+		exchange.getResponseHeaders().set("X-Etcd-Index", String.valueOf(etcdIndex));
+		exchange.getResponseHeaders().set("X-Raft-Index", String.valueOf(etcdIndex));
+		exchange.getResponseHeaders().set("X-Raft-Term", "1");
+		exchange.sendResponseHeaders(httpStatus, body.length);
+
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.flush();
+	}
+
+	private void delay() throws InterruptedException {
+		long min = minLatencyMS;
+		long max = maxLatencyMS;
+		if (max > 0) {
+			long delayMS = min + (max > min ? (long)(random.nextDouble() * (max - min)) : 0);
+			Thread.sleep(delayMS);
+		}
+	}
+
+	private synchronized int nextInjectedError() {
+		if (failNextCount > 0) {
+			failNextCount--;
+			return failNextStatus;
+		}
+		if (errorRate > 0 && random.nextDouble() < errorRate) {
+			return 500;
+		}
+		return 0;
+	}
+
+	private static int parseTtl(String ttl) {
+		if (ttl == null || ttl.trim().isEmpty()) {
+			return 0;
+		}
+		return Integer.parseInt(ttl.trim());
+	}
+
+	private static String readBody(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			bos.write(buffer, 0, read);
+		}
+		return new String(bos.toByteArray(), UTF8);
+	}
+
+	private static Map<String,String> parseForm(String form) throws IOException {
+		Map<String,String> params = new HashMap<String,String>();
+		if (form == null || form.isEmpty()) {
+			return params;
+		}
+		for (String pair : form.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq == -1 ? pair : pair.substring(0, eq), "UTF-8");
+			String value = eq == -1 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+			params.put(name, value);
+		}
+		return params;
+	}
+
+	// "/a/b/" and "a//b" are both "/a/b", the root is "/"
+	private static String normalize(String key) {
+		StringBuilder sb = new StringBuilder();
+		for (String part : key.split("/")) {
+			if (!part.isEmpty()) {
+				sb.append('/').append(part);
+			}
+		}
+		return sb.length() == 0 ? "/" : sb.toString();
+	}
+
+	private static String prefixOf(String dir) {
+		return dir.equals("/") ? "/" : dir + "/";
+	}
+
+	private static String parentOf(String key) {
+		if (key.equals("/")) {
+			return null;
+		}
+		int idx = key.lastIndexOf('/');
+		return idx <= 0 ? "/" : key.substring(0, idx);
+	}
+
+}
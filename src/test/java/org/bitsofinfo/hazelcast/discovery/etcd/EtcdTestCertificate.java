@@ -0,0 +1,94 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Base64;
+
+/**
+ * A freshly generated self-signed RSA certificate and its private key as PEM,
+ * for tests and benchmarks only. Generated w/ the JDK's keytool so nothing
+ * beyond the JDK is needed and no key material is ever committed.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdTestCertificate {
+
+	private static final String STORE_PASSWORD = "changeit";
+
+	public final String certPem;
+	public final String keyPem;
+
+	private EtcdTestCertificate(String certPem, String keyPem) {
+		this.certPem = certPem;
+		this.keyPem = keyPem;
+	}
+
+	/**
+	 * Generate a new certificate/key pair
+	 *
+	 * @param commonName the certificate's CN
+	 * @return
+	 * @throws Exception
+	 */
+	public static EtcdTestCertificate generate(String commonName) throws Exception {
+		File dir = Files.createTempDirectory("etcd-test-certificate").toFile();
+		File keyStoreFile = new File(dir, "keystore.p12");
+		try {
+			String keytool = new File(new File(System.getProperty("java.home"), "bin"), "keytool").getPath();
+			Process process = new ProcessBuilder(keytool, "-genkeypair",
+					"-alias", "test", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+					"-dname", "CN=" + commonName,
+					"-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+					"-storepass", STORE_PASSWORD, "-keypass", STORE_PASSWORD)
+				.redirectErrorStream(true).start();
+			process.getInputStream().close();
+			if (process.waitFor() != 0) {
+				throw new IllegalStateException("keytool -genkeypair exited with " + process.exitValue());
+			}
+
+			KeyStore keyStore = KeyStore.getInstance("PKCS12");
+			try (FileInputStream fis = new FileInputStream(keyStoreFile)) {
+				keyStore.load(fis, STORE_PASSWORD.toCharArray());
+			}
+			Certificate cert = keyStore.getCertificate("test");
+			PrivateKey key = (PrivateKey)keyStore.getKey("test", STORE_PASSWORD.toCharArray());
+
+			return new EtcdTestCertificate(pem("CERTIFICATE", cert.getEncoded()), pem("PRIVATE KEY", key.getEncoded()));
+
+		} finally {
+			keyStoreFile.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Write the cert and key PEMs to the given files
+	 *
+	 * @param certFile
+	 * @param keyFile null to skip the key
+	 * @throws Exception
+	 */
+	public void writeTo(File certFile, File keyFile) throws Exception {
+		Charset ascii = Charset.forName("US-ASCII");
+		Files.write(certFile.toPath(), certPem.getBytes(ascii));
+		if (keyFile != null) {
+			Files.write(keyFile.toPath(), keyPem.getBytes(ascii));
+		}
+	}
+
+	private static String pem(String type, byte[] der) {
+		String base64 = Base64.getEncoder().encodeToString(der);
+		StringBuilder pem = new StringBuilder("-----BEGIN " + type + "-----\n");
+		for (int i=0; i<base64.length(); i+=64) {
+			pem.append(base64, i, Math.min(base64.length(), i + 64)).append('\n');
+		}
+		return pem.append("-----END " + type + "-----\n").toString();
+	}
+
+}
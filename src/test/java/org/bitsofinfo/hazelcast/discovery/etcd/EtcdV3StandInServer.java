@@ -0,0 +1,614 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for etcd's v3 gRPC JSON gateway implementing the
+ * subset used by the EtcdV3Transport, the v3 counterpart of EtcdStandInServer
+ *
+ * - POST /v3/kv/range         key, range_end, keys_only, count_only
+ * - POST /v3/kv/put           key, value, lease
+ * - POST /v3/kv/deleterange   key, range_end
+ * - POST /v3/lease/grant      TTL
+ * - POST /v3/lease/keepalive  ID
+ * - POST /v3/lease/revoke     ID
+ * - POST /v3/watch            create_request (streamed, one JSON object per response)
+ *
+ * Leases expire along w/ their keys, compact() drops history so watches
+ * from before it get a compact_revision just like etcd. Requests are
+ * counted per path and errors can be injected.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class EtcdV3StandInServer implements HttpHandler {
+
+	private static final String GATEWAY_PREFIX = "/v3";
+	private static final long EXPIRY_CHECK_MS = 100;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int requestedPort;
+	private HttpServer httpServer = null;
+	private ExecutorService executor = null;
+	private ScheduledExecutorService expirer = null;
+	private volatile boolean running = false;
+
+	/**
+	 * A stored key
+	 */
+	private static class KeyValue {
+		final String value;
+		final long modRevision;
+		final long lease;
+
+		KeyValue(String value, long modRevision, long lease) {
+			this.value = value;
+			this.modRevision = modRevision;
+			this.lease = lease;
+		}
+	}
+
+	/**
+	 * A granted lease
+	 */
+	private static class Lease {
+		final long ttlSeconds;
+		long expiresAt;
+
+		Lease(long ttlSeconds) {
+			this.ttlSeconds = ttlSeconds;
+			this.expiresAt = System.currentTimeMillis() + (ttlSeconds * 1000);
+		}
+	}
+
+	/**
+	 * A put or delete at a revision
+	 */
+	private static class Event {
+		final String key;
+		final String value;
+		final long revision;
+		final boolean deleted;
+
+		Event(String key, String value, long revision, boolean deleted) {
+			this.key = key;
+			this.value = value;
+			this.revision = revision;
+			this.deleted = deleted;
+		}
+	}
+
+	/**
+	 * An open watch stream's range and pending events
+	 */
+	private static class Watcher {
+		final String key;
+		final String rangeEnd;
+		final BlockingQueue<Event> events = new LinkedBlockingQueue<Event>();
+
+		Watcher(String key, String rangeEnd) {
+			this.key = key;
+			this.rangeEnd = rangeEnd;
+		}
+	}
+
+	// the keyspace, guarded by lock
+	private final Object lock = new Object();
+	private final TreeMap<String,KeyValue> keys = new TreeMap<String,KeyValue>();
+	private final Map<Long,Lease> leases = new HashMap<Long,Lease>();
+	private final LinkedList<Event> history = new LinkedList<Event>();
+	private final List<Watcher> watchers = new ArrayList<Watcher>();
+	private long revision = 1;
+	private long compactedRevision = 0;
+	private long nextLeaseId = 1000;
+
+	// injected errors, guarded by this
+	private int failNextCount = 0;
+	private int failNextStatus = 500;
+
+	private final Map<String,AtomicLong> requestCounts = new ConcurrentHashMap<String,AtomicLong>();
+
+	/**
+	 * @param port 0 for any free port
+	 */
+	public EtcdV3StandInServer(int port) {
+		this.requestedPort = port;
+	}
+
+	public synchronized void start() throws IOException {
+		// watch streams each hold a thread for as long as they are open
+		this.executor = Executors.newCachedThreadPool();
+		this.httpServer = HttpServer.create(new InetSocketAddress("localhost", requestedPort), 0);
+		this.httpServer.createContext("/", this);
+		this.httpServer.setExecutor(executor);
+		this.httpServer.start();
+
+		this.expirer = Executors.newSingleThreadScheduledExecutor();
+		this.expirer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				expire();
+			}
+		}, EXPIRY_CHECK_MS, EXPIRY_CHECK_MS, TimeUnit.MILLISECONDS);
+		this.running = true;
+	}
+
+	public synchronized void stop() {
+		this.running = false;
+		if (this.expirer != null) {
+			this.expirer.shutdownNow();
+		}
+		if (this.httpServer != null) {
+			this.httpServer.stop(0);
+		}
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	public URI getUri() {
+		return URI.create("http://localhost:" + httpServer.getAddress().getPort());
+	}
+
+	/**
+	 * @param path i.e. /lease/keepalive
+	 * @return requests received for the path
+	 */
+	public long getRequestCount(String path) {
+		AtomicLong count = requestCounts.get(path);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * @return requests received for all paths
+	 */
+	public long getRequestCount() {
+		long total = 0;
+		for (AtomicLong count : requestCounts.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Answer the next count requests w/ the given HTTP status
+	 */
+	public synchronized void failNext(int count, int httpStatus) {
+		this.failNextCount = count;
+		this.failNextStatus = httpStatus;
+	}
+
+	private synchronized int nextInjectedError() {
+		if (failNextCount > 0) {
+			failNextCount--;
+			return failNextStatus;
+		}
+		return 0;
+	}
+
+	public void put(String key, String value) {
+		synchronized(lock) {
+			set(key, value, 0);
+		}
+	}
+
+	public void delete(String key) {
+		synchronized(lock) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * @param prefix i.e. /my-service/
+	 * @return the keys/values starting w/ the prefix
+	 */
+	public Map<String,String> list(String prefix) {
+		Map<String,String> found = new TreeMap<String,String>();
+		synchronized(lock) {
+			for (Map.Entry<String,KeyValue> entry : keys.tailMap(prefix, true).entrySet()) {
+				if (!entry.getKey().startsWith(prefix)) {
+					break;
+				}
+				found.put(entry.getKey(), entry.getValue().value);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return number of leases granted and not yet revoked/expired
+	 */
+	public int getLeaseCount() {
+		synchronized(lock) {
+			return leases.size();
+		}
+	}
+
+	/**
+	 * @return the current revision
+	 */
+	public long getRevision() {
+		synchronized(lock) {
+			return revision;
+		}
+	}
+
+	/**
+	 * Drop history up to and including the current revision
+	 */
+	public void compact() {
+		synchronized(lock) {
+			compactedRevision = revision;
+			history.clear();
+		}
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			if (!path.startsWith(GATEWAY_PREFIX) || !"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 404, error("not found"));
+				return;
+			}
+			path = path.substring(GATEWAY_PREFIX.length());
+
+			AtomicLong count = requestCounts.get(path);
+			if (count == null) {
+				requestCounts.put(path, new AtomicLong());
+				count = requestCounts.get(path);
+			}
+			count.incrementAndGet();
+
+			int injected = nextInjectedError();
+			if (injected > 0) {
+				respond(exchange, injected, error("injected error"));
+				return;
+			}
+
+			JsonObject request = new JsonParser().parse(new String(readAll(exchange.getRequestBody()), UTF8)).getAsJsonObject();
+
+			if (path.equals("/watch")) {
+				doWatch(exchange, request.getAsJsonObject("create_request"));
+				return;
+			}
+
+			JsonObject response;
+			synchronized(lock) {
+				if (path.equals("/kv/range")) {
+					response = doRange(request);
+				} else if (path.equals("/kv/put")) {
+					response = doPut(request);
+				} else if (path.equals("/kv/deleterange")) {
+					response = doDeleteRange(request);
+				} else if (path.equals("/lease/grant")) {
+					response = doGrant(request);
+				} else if (path.equals("/lease/keepalive")) {
+					response = doKeepAlive(request);
+				} else if (path.equals("/lease/revoke")) {
+					response = doRevoke(request);
+				} else {
+					respond(exchange, 404, error("unsupported: " + path));
+					return;
+				}
+			}
+			respond(exchange, 200, response);
+
+		} catch(Exception e) {
+			respond(exchange, 500, error(String.valueOf(e.getMessage())));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private JsonObject doRange(JsonObject request) {
+		String key = decode(request, "key");
+		String rangeEnd = decode(request, "range_end");
+		boolean keysOnly = request.has("keys_only") && request.get("keys_only").getAsBoolean();
+		boolean countOnly = request.has("count_only") && request.get("count_only").getAsBoolean();
+
+		JsonArray kvs = new JsonArray();
+		int count = 0;
+		for (Map.Entry<String,KeyValue> entry : keys.entrySet()) {
+			if (!inRange(entry.getKey(), key, rangeEnd)) {
+				continue;
+			}
+			count++;
+			if (countOnly) {
+				continue;
+			}
+			JsonObject kv = new JsonObject();
+			kv.addProperty("key", encode(entry.getKey()));
+			if (!keysOnly) {
+				kv.addProperty("value", encode(entry.getValue().value));
+			}
+			kv.addProperty("mod_revision", String.valueOf(entry.getValue().modRevision));
+			kvs.add(kv);
+		}
+
+		JsonObject response = withHeader();
+		if (!countOnly && count > 0) {
+			response.add("kvs", kvs);
+		}
+		response.addProperty("count", String.valueOf(count));
+		return response;
+	}
+
+	private JsonObject doPut(JsonObject request) {
+		long lease = request.has("lease") ? request.get("lease").getAsLong() : 0;
+		if (lease != 0 && !leases.containsKey(lease)) {
+			throw new IllegalArgumentException("etcdserver: requested lease not found");
+		}
+		set(decode(request, "key"), decode(request, "value"), lease);
+		return withHeader();
+	}
+
+	private JsonObject doDeleteRange(JsonObject request) {
+		String key = decode(request, "key");
+		String rangeEnd = decode(request, "range_end");
+
+		List<String> toDelete = new ArrayList<String>();
+		for (String existing : keys.keySet()) {
+			if (inRange(existing, key, rangeEnd)) {
+				toDelete.add(existing);
+			}
+		}
+		for (String existing : toDelete) {
+			remove(existing);
+		}
+
+		JsonObject response = withHeader();
+		response.addProperty("deleted", String.valueOf(toDelete.size()));
+		return response;
+	}
+
+	private JsonObject doGrant(JsonObject request) {
+		long ttl = request.get("TTL").getAsLong();
+		long id = nextLeaseId++;
+		leases.put(id, new Lease(ttl));
+
+		JsonObject response = withHeader();
+		response.addProperty("ID", String.valueOf(id));
+		response.addProperty("TTL", String.valueOf(ttl));
+		return response;
+	}
+
+	private JsonObject doKeepAlive(JsonObject request) {
+		long id = request.get("ID").getAsLong();
+
+		JsonObject result = withHeader();
+		result.addProperty("ID", String.valueOf(id));
+		Lease lease = leases.get(id);
+		if (lease != null) {
+			lease.expiresAt = System.currentTimeMillis() + (lease.ttlSeconds * 1000);
+			result.addProperty("TTL", String.valueOf(lease.ttlSeconds));
+		}
+
+		// streamed by the gateway, so wrapped
+		JsonObject response = new JsonObject();
+		response.add("result", result);
+		return response;
+	}
+
+	private JsonObject doRevoke(JsonObject request) {
+		long id = request.get("ID").getAsLong();
+		if (!leases.containsKey(id)) {
+			throw new IllegalArgumentException("etcdserver: requested lease not found");
+		}
+		revoke(id);
+		return withHeader();
+	}
+
+	private void doWatch(HttpExchange exchange, JsonObject create) throws Exception {
+		Watcher watcher = new Watcher(decode(create, "key"), decode(create, "range_end"));
+		long startRevision = create.has("start_revision") ? create.get("start_revision").getAsLong() : 0;
+
+		boolean compacted = false;
+		synchronized(lock) {
+			if (startRevision > 0 && startRevision <= compactedRevision) {
+				compacted = true;
+			} else {
+				for (Event event : history) {
+					if (event.revision >= startRevision && inRange(event.key, watcher.key, watcher.rangeEnd)) {
+						watcher.events.add(event);
+					}
+				}
+				watchers.add(watcher);
+			}
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			JsonObject created = withHeader();
+			created.addProperty("created", true);
+			if (compacted) {
+				created.addProperty("compact_revision", String.valueOf(compactedRevision));
+			}
+			write(out, created);
+			if (compacted) {
+				return;
+			}
+
+			while (running) {
+				Event event = watcher.events.poll(EXPIRY_CHECK_MS, TimeUnit.MILLISECONDS);
+				if (event == null) {
+					continue;
+				}
+				JsonObject kv = new JsonObject();
+				kv.addProperty("key", encode(event.key));
+				if (event.value != null) {
+					kv.addProperty("value", encode(event.value));
+				}
+				kv.addProperty("mod_revision", String.valueOf(event.revision));
+				JsonObject jsonEvent = new JsonObject();
+				if (event.deleted) {
+					jsonEvent.addProperty("type", "DELETE");
+				}
+				jsonEvent.add("kv", kv);
+
+				JsonArray events = new JsonArray();
+				events.add(jsonEvent);
+				JsonObject result = withHeader();
+				result.add("events", events);
+				write(out, result);
+			}
+
+		} catch(IOException e) {
+			// the client went away
+
+		} catch(InterruptedException e) {
+			// stopping
+
+		} finally {
+			synchronized(lock) {
+				watchers.remove(watcher);
+			}
+			out.close();
+		}
+	}
+
+	private static void write(OutputStream out, JsonObject result) throws IOException {
+		JsonObject message = new JsonObject();
+		message.add("result", result);
+		out.write((message.toString() + "\n").getBytes(UTF8));
+		out.flush();
+	}
+
+	private void set(String key, String value, long lease) {
+		revision++;
+		keys.put(key, new KeyValue(value, revision, lease));
+		record(new Event(key, value, revision, false));
+	}
+
+	private void remove(String key) {
+		if (keys.remove(key) == null) {
+			return;
+		}
+		revision++;
+		record(new Event(key, null, revision, true));
+	}
+
+	private void revoke(long id) {
+		leases.remove(id);
+		List<String> attached = new ArrayList<String>();
+		for (Map.Entry<String,KeyValue> entry : keys.entrySet()) {
+			if (entry.getValue().lease == id) {
+				attached.add(entry.getKey());
+			}
+		}
+		for (String key : attached) {
+			remove(key);
+		}
+	}
+
+	private void record(Event event) {
+		history.add(event);
+		for (Watcher watcher : watchers) {
+			if (inRange(event.key, watcher.key, watcher.rangeEnd)) {
+				watcher.events.add(event);
+			}
+		}
+	}
+
+	private void expire() {
+		synchronized(lock) {
+			long now = System.currentTimeMillis();
+			Iterator<Map.Entry<Long,Lease>> itr = new ArrayList<Map.Entry<Long,Lease>>(leases.entrySet()).iterator();
+			while (itr.hasNext()) {
+				Map.Entry<Long,Lease> entry = itr.next();
+				if (entry.getValue().expiresAt <= now) {
+					revoke(entry.getKey());
+				}
+			}
+		}
+	}
+
+	private JsonObject withHeader() {
+		JsonObject header = new JsonObject();
+		header.addProperty("revision", String.valueOf(revision));
+		JsonObject response = new JsonObject();
+		response.add("header", header);
+		return response;
+	}
+
+	// [key, rangeEnd), just key if no rangeEnd, "\0" is all keys >= key
+	private static boolean inRange(String candidate, String key, String rangeEnd) {
+		if (rangeEnd == null) {
+			return candidate.equals(key);
+		}
+		if (rangeEnd.equals("\0")) {
+			return candidate.compareTo(key) >= 0;
+		}
+		return candidate.compareTo(key) >= 0 && candidate.compareTo(rangeEnd) < 0;
+	}
+
+	private static JsonObject error(String message) {
+		JsonObject json = new JsonObject();
+		json.addProperty("error", message);
+		json.addProperty("message", message);
+		return json;
+	}
+
+	private static void respond(HttpExchange exchange, int httpStatus, JsonObject json) throws IOException {
+		byte[] body = json.toString().getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(httpStatus, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	private static String decode(JsonObject json, String field) {
+		JsonElement value = json.get(field);
+		if (value == null || value.isJsonNull()) {
+			return null;
+		}
+		return new String(Base64.getDecoder().decode(value.getAsString()), UTF8);
+	}
+
+	private static String encode(String value) {
+		return Base64.getEncoder().encodeToString(value.getBytes(UTF8));
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = is.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+}
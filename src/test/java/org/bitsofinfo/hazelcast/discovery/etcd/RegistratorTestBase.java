@@ -8,7 +8,9 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 
 import com.hazelcast.config.ClasspathXmlConfig;
 import com.hazelcast.config.Config;
@@ -24,6 +26,9 @@ import mousio.etcd4j.responses.EtcdKeysResponse;
  * Base test class for the Hazelcast Etcd Discovery SPI strategies
  * writing registrators
  * 
+ * By default runs against an in-process EtcdStandInServer on
+ * ETCD_PORT, run with -Detcd.standin=false to use a real Etcd
+ * 
  * @author bitsofinfo
  *
  */
@@ -32,8 +37,38 @@ public abstract class RegistratorTestBase {
 	public static final String ETCD_HOST = "localhost";
 	public static final int ETCD_PORT = 4001;
 	
+	// how long we wait for all instances to find one another
+	public static final long CLUSTER_FORMATION_TIMEOUT_MS = 20000;
+	
+	protected EtcdStandInServer etcdStandIn = null;
+	
 	protected abstract void preConstructHazelcast(int instanceNumber) throws Exception;
 	
+	/**
+	 * Customize the stand-in prior to the test (i.e. credentials, seeding)
+	 * 
+	 * @param etcdStandIn
+	 */
+	protected void configureEtcdStandIn(EtcdStandInServer etcdStandIn) {
+		// nothing by default
+	}
+	
+	@Before
+	public void startEtcdStandIn() throws Exception {
+		if (EtcdStandInServer.isEnabled()) {
+			etcdStandIn = new EtcdStandInServer(ETCD_PORT);
+			etcdStandIn.start();
+			configureEtcdStandIn(etcdStandIn);
+		}
+	}
+	
+	@After
+	public void stopEtcdStandIn() {
+		if (etcdStandIn != null) {
+			etcdStandIn.stop();
+		}
+	}
+	
 	protected void testRegistrator(String hazelcastConfigXmlFilename, String serviceName) {
 	    testRegistrator(hazelcastConfigXmlFilename, serviceName, null, null);
 	}
@@ -49,8 +84,10 @@ public abstract class RegistratorTestBase {
 			int totalInstancesToTest = 5;
 			List<HazelcastInstanceMgr> instances = new ArrayList<HazelcastInstanceMgr>();
 			
-			System.out.println("#################### IS ETCD RUNNING @ " +
-					ETCD_HOST+":"+ETCD_PORT+"? IF NOT THIS TEST WILL FAIL! ####################");
+			if (etcdStandIn == null) {
+				System.out.println("#################### IS ETCD RUNNING @ " +
+						ETCD_HOST+":"+ETCD_PORT+"? IF NOT THIS TEST WILL FAIL! ####################");
+			}
 			
 			etcdClient = new EtcdClient(username, password, new URI("http://"+ETCD_HOST+":"+ETCD_PORT));
 
@@ -72,7 +109,7 @@ public abstract class RegistratorTestBase {
 				
 			}
 			
-			Thread.currentThread().sleep(20000);
+			awaitClusterSize(instances, totalInstancesToTest);
 			
 			// validate we have 5 registered..
 			EtcdKeysResponse dirResp = etcdClient.getDir(serviceName)
@@ -162,6 +199,35 @@ public abstract class RegistratorTestBase {
 		
 	}
 	
+	/**
+	 * Wait at most CLUSTER_FORMATION_TIMEOUT_MS for every instance
+	 * to see the expected number of members, failing w/ the sizes
+	 * each instance last saw if they never do
+	 */
+	private void awaitClusterSize(List<HazelcastInstanceMgr> instances, int expectedSize) throws Exception {
+		long deadline = System.currentTimeMillis() + CLUSTER_FORMATION_TIMEOUT_MS;
+		List<Integer> observedSizes = new ArrayList<Integer>();
+		while (true) {
+			observedSizes.clear();
+			boolean formed = true;
+			for (HazelcastInstanceMgr mgr : instances) {
+				int size = mgr.getInstance().getCluster().getMembers().size();
+				observedSizes.add(size);
+				if (size != expectedSize) {
+					formed = false;
+				}
+			}
+			if (formed) {
+				return;
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				Assert.fail("Cluster did not form within " + CLUSTER_FORMATION_TIMEOUT_MS + "ms: expected "
+							+ expectedSize + " members on every instance, observed " + observedSizes);
+			}
+			Thread.sleep(250);
+		}
+	}
+	
 	protected String determineIpAddress() throws Exception {
 	
 		InetAddress addr = InetAddress.getLocalHost();
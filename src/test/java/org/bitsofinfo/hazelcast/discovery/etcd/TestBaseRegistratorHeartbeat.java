@@ -0,0 +1,163 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the BaseRegistrator's TTL heartbeat and self-healing
+ * re-registration against an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestBaseRegistratorHeartbeat {
+
+	private static final String SERVICE_NAME = "test-heartbeat";
+	private static final int TTL_SECONDS = 1;
+	private static final int REFRESH_INTERVAL_MS = 300;
+
+	private EtcdStandInServer etcdStandIn = null;
+	private BaseRegistrator registrator = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (registrator != null) {
+			registrator.deregister();
+		}
+		etcdStandIn.stop();
+	}
+
+	private static Map<String,Object> registratorConfig(int ttlSeconds, int refreshIntervalMS) {
+		Map<String,Object> config = new HashMap<String,Object>();
+		config.put(ExplicitIpPortRegistrator.CONFIG_PROP_REGISTER_WITH_IP_ADDRESS, "127.0.0.1");
+		config.put(ExplicitIpPortRegistrator.CONFIG_PROP_REGISTER_WITH_PORT, 5701.0);
+		config.put(BaseRegistrator.CONFIG_PROP_TTL_SECONDS, ttlSeconds);
+		config.put(BaseRegistrator.CONFIG_PROP_REFRESH_INTERVAL_MS, refreshIntervalMS);
+		return config;
+	}
+
+	private BaseRegistrator newRegistrator(Map<String,Object> registratorConfig) throws Exception {
+		BaseRegistrator registrator = new ExplicitIpPortRegistrator();
+		registrator.init(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null, SERVICE_NAME,
+						 null, registratorConfig, Logger.getLogger(getClass()));
+		return registrator;
+	}
+
+	private boolean isRegistered() {
+		return etcdStandIn.list("/" + SERVICE_NAME + "/").containsKey(registrator.getMyEtcdKey());
+	}
+
+	private void awaitRegistered(long timeoutMS) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMS;
+		while (!isRegistered()) {
+			if (System.currentTimeMillis() > deadline) {
+				Assert.fail("not re-registered within " + timeoutMS + "ms");
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testKeyOutlivesItsTtl() throws Exception {
+		registrator = newRegistrator(registratorConfig(TTL_SECONDS, REFRESH_INTERVAL_MS));
+		registrator.register();
+		Assert.assertTrue(isRegistered());
+
+		// several ttls, kept alive by the heartbeat alone
+		long until = System.currentTimeMillis() + (TTL_SECONDS * 3000);
+		while (System.currentTimeMillis() < until) {
+			Thread.sleep(200);
+			Assert.assertTrue(isRegistered());
+		}
+	}
+
+	@Test
+	public void testGoneKeyIsRecreated() throws Exception {
+		registrator = newRegistrator(registratorConfig(TTL_SECONDS, REFRESH_INTERVAL_MS));
+		registrator.register();
+
+		// deleted by someone else
+		etcdStandIn.delete(registrator.getMyEtcdKey());
+		awaitRegistered(REFRESH_INTERVAL_MS * 5);
+
+		// expired, as if our heartbeats had not reached etcd for a ttl
+		etcdStandIn.put(registrator.getMyEtcdKey(), "expiring", TTL_SECONDS);
+		etcdStandIn.failNext(Integer.MAX_VALUE, 500);
+		Thread.sleep((TTL_SECONDS * 1000) + 200);
+		Assert.assertFalse(isRegistered());
+
+		etcdStandIn.failNext(0, 500);
+		awaitRegistered(REFRESH_INTERVAL_MS * 5);
+		Assert.assertNotEquals("expiring", etcdStandIn.list("/" + SERVICE_NAME + "/").get(registrator.getMyEtcdKey()));
+	}
+
+	@Test
+	public void testFailedRegisterIsReconciled() throws Exception {
+		registrator = newRegistrator(registratorConfig(TTL_SECONDS, REFRESH_INTERVAL_MS));
+
+		etcdStandIn.failNext(Integer.MAX_VALUE, 500);
+		try {
+			registrator.register();
+			Assert.fail("expected the injected outage to fail register()");
+		} catch(Exception expected) {}
+		Assert.assertFalse(isRegistered());
+
+		// the heartbeat keeps trying, and registers us once etcd recovers
+		Thread.sleep(REFRESH_INTERVAL_MS * 2);
+		Assert.assertFalse(isRegistered());
+		etcdStandIn.failNext(0, 500);
+		awaitRegistered(REFRESH_INTERVAL_MS * 5);
+	}
+
+	@Test
+	public void testWriteTimeoutApplied() throws Exception {
+		registrator = new ExplicitIpPortRegistrator();
+		registrator.setWriteTimeoutMS(200);
+		registrator.init(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null, SERVICE_NAME,
+						 null, registratorConfig(0, 0), Logger.getLogger(getClass()));
+
+		etcdStandIn.setLatency(3000, 3000);
+		long start = System.currentTimeMillis();
+		try {
+			registrator.register();
+			Assert.fail("expected the write timeout");
+		} catch(Exception expected) {}
+		long elapsed = System.currentTimeMillis() - start;
+		Assert.assertTrue("took " + elapsed + "ms", elapsed < 2500);
+
+		// the slow put may still be in flight, its delete too
+		etcdStandIn.setLatency(0, 0);
+		try {
+			registrator.deregister();
+		} catch(Exception ignored) {
+		} finally {
+			registrator = null;
+		}
+	}
+
+	@Test
+	public void testRefreshIntervalMustBeShorterThanTtl() throws Exception {
+		try {
+			newRegistrator(registratorConfig(TTL_SECONDS, TTL_SECONDS * 1000));
+			Assert.fail("expected refreshIntervalMS >= ttl to be rejected");
+		} catch(Exception expected) {
+			Assert.assertTrue(expected.getMessage().contains(BaseRegistrator.CONFIG_PROP_REFRESH_INTERVAL_MS));
+		}
+	}
+
+}
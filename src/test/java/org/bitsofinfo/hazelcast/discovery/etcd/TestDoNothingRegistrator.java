@@ -5,7 +5,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
 
 import com.hazelcast.config.ClasspathXmlConfig;
@@ -27,14 +29,40 @@ import mousio.etcd4j.responses.EtcdKeysResponse;
 public class TestDoNothingRegistrator {
 	
 	public static final String ETCD_HOST = "localhost";
-	public static final int ETCD_PORT = 8500;
+	public static final int ETCD_PORT = 4001;
+	
+	private EtcdStandInServer etcdStandIn = null;
+	
+	/**
+	 * Unless -Detcd.standin=false, pre-register the 5 nodes
+	 * described below in an in-process EtcdStandInServer
+	 */
+	@Before
+	public void startEtcdStandIn() throws Exception {
+		if (EtcdStandInServer.isEnabled()) {
+			etcdStandIn = new EtcdStandInServer(ETCD_PORT);
+			etcdStandIn.start();
+			
+			for (int i=1; i<=5; i++) {
+				etcdStandIn.put("/test-DoNothingRegistrator/node"+i, 
+						"{\"ip\":\"127.0.0.1\",\"port\":570"+i+",\"hostname\":\"127.0.0.1\"}", 0);
+			}
+		}
+	}
+	
+	@After
+	public void stopEtcdStandIn() {
+		if (etcdStandIn != null) {
+			etcdStandIn.stop();
+		}
+	}
 
 	/**
 	 * Tests DoNothingRegistrator functionality
 	 * 
 	 * IMPORTANT:
 	 * 
-	 * Prior to this test you must register Etcd key paths with 
+	 * When run with -Detcd.standin=false, prior to this test you must register Etcd key paths with 
 	 * 	/test-DoNothingRegistrator/[anything-unique-per-node]
 	 * 
 	 * With values: {"ip":"IP","port":570[1-5],"hostname":"IP"}
@@ -64,8 +92,10 @@ public class TestDoNothingRegistrator {
 			int totalInstancesToTest = 5;
 			List<HazelcastInstanceMgr> instances = new ArrayList<HazelcastInstanceMgr>();
 			
-			System.out.println("#################### IS ETCD RUNNING @ " +
-					ETCD_HOST+":"+ETCD_PORT+"? IF NOT THIS TEST WILL FAIL! ####################");
+			if (etcdStandIn == null) {
+				System.out.println("#################### IS ETCD RUNNING @ " +
+						ETCD_HOST+":"+ETCD_PORT+"? IF NOT THIS TEST WILL FAIL! ####################");
+			}
 			
 			
 			etcdClient = new EtcdClient(new URI("http://"+ETCD_HOST+":"+ETCD_PORT));
@@ -86,7 +116,12 @@ public class TestDoNothingRegistrator {
 				
 			}
 			
-			Thread.currentThread().sleep(20000);
+			// wait at most 20s for the cluster to form
+			long deadline = System.currentTimeMillis() + 20000;
+			while (System.currentTimeMillis() < deadline && 
+					instances.get(0).getInstance().getCluster().getMembers().size() != totalInstancesToTest) {
+				Thread.sleep(250);
+			}
 			
 			// validate we have 5 registered...(regardless of health)
 			EtcdKeysResponse dirResp = etcdClient.getDir("test-DoNothingRegistrator")
@@ -0,0 +1,66 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.config.InvalidConfigurationException;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+
+/**
+ * Tests for picking among a member's labelled addresses
+ * 
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdAddressSelector {
+	
+	private static final List<EtcdNodeAddress> ADDRESSES = Arrays.asList(
+			new EtcdNodeAddress("public", "203.0.113.7", 15701),
+			new EtcdNodeAddress("vpc", "10.1.2.3", 5701));
+
+	@Test
+	public void testFirstMatchingLabelWins() throws Exception {
+		EtcdAddressSelector selector = new EtcdAddressSelector("missing, vpc, public", null);
+		Assert.assertEquals(new Address("10.1.2.3", 5701), selector.select("192.168.0.1", 5701, ADDRESSES));
+	}
+	
+	@Test
+	public void testSubnetMatch() throws Exception {
+		EtcdAddressSelector selector = new EtcdAddressSelector(null, "10.1.0.0/16");
+		Assert.assertEquals(new Address("10.1.2.3", 5701), selector.select("192.168.0.1", 5701, ADDRESSES));
+		
+		// the primary address wins if it is in a subnet itself
+		Assert.assertEquals(new Address("10.1.9.9", 5701), selector.select("10.1.9.9", 5701, ADDRESSES));
+		
+		selector = new EtcdAddressSelector(null, "10.2.0.0/16");
+		Assert.assertEquals(new Address("192.168.0.1", 5701), selector.select("192.168.0.1", 5701, ADDRESSES));
+	}
+	
+	@Test
+	public void testPrimaryWithoutAddresses() throws Exception {
+		EtcdAddressSelector selector = new EtcdAddressSelector("vpc", "10.0.0.0/8");
+		Assert.assertFalse(selector.isEmpty());
+		Assert.assertEquals(new Address("192.168.0.1", 5701), selector.select("192.168.0.1", 5701, null));
+		Assert.assertTrue(new EtcdAddressSelector(" ", "").isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidSubnet() {
+		new EtcdAddressSelector(null, "10.0.0.0/33");
+	}
+	
+	@Test(expected=InvalidConfigurationException.class)
+	public void testInvalidSubnetFailsTheStrategy() {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-address-subnets", "10.0.0.0/33");
+		new EtcdDiscoveryStrategy(null, Logger.getLogger(getClass()), properties);
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+import mousio.etcd4j.EtcdClient;
+
+/**
+ * Tests for the EtcdClientPool's borrow/giveBack accounting: clients
+ * are never closed under a call still using them. No connection is
+ * made, EtcdClients connect lazily.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdClientPool {
+
+	private static EtcdClientPool acquire(String etcdUri, long idleTimeoutMS) {
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(new URI[]{URI.create(etcdUri)}), null, null);
+		return EtcdClientPool.acquire(config, 1, idleTimeoutMS, 0, Logger.getLogger(TestEtcdClientPool.class));
+	}
+
+	@Test
+	public void testInvalidatedWhileBorrowed() throws Exception {
+		EtcdClientPool pool = acquire("http://localhost:14001", 0);
+		try {
+			EtcdClient client = pool.borrow();
+			EtcdClient sharing = pool.borrow();
+			Assert.assertSame(client, sharing);
+
+			// retired, but open until both calls are over
+			pool.invalidate(client, new IOException("test"));
+			Assert.assertEquals(1, pool.getRetiredInUse());
+			EtcdClient replacement = pool.borrow();
+			Assert.assertNotSame(client, replacement);
+
+			pool.giveBack(client);
+			Assert.assertEquals(1, pool.getRetiredInUse());
+			pool.giveBack(sharing);
+			Assert.assertEquals(0, pool.getRetiredInUse());
+			pool.giveBack(replacement);
+
+		} finally {
+			pool.release();
+		}
+	}
+
+	@Test
+	public void testInterruptionsDoNotInvalidate() throws Exception {
+		EtcdClientPool pool = acquire("http://localhost:14002", 0);
+		try {
+			EtcdClient client = pool.borrow();
+			pool.invalidate(client, new InterruptedException());
+			pool.giveBack(client);
+
+			Assert.assertSame(client, pool.borrow());
+			pool.giveBack(client);
+
+		} finally {
+			pool.release();
+		}
+	}
+
+	@Test
+	public void testBorrowedClientsAreNotIdle() throws Exception {
+		EtcdClientPool pool = acquire("http://localhost:14003", 100);
+		try {
+			// the reaper runs every second at the most
+			EtcdClient client = pool.borrow();
+			Thread.sleep(1500);
+			Assert.assertSame(client, pool.borrow());
+			pool.giveBack(client);
+			pool.giveBack(client);
+
+			Thread.sleep(1500);
+			EtcdClient rebuilt = pool.borrow();
+			Assert.assertNotSame(client, rebuilt);
+			pool.giveBack(rebuilt);
+
+		} finally {
+			pool.release();
+		}
+	}
+
+	@Test
+	public void testReleasedWhileBorrowed() throws Exception {
+		EtcdClientPool pool = acquire("http://localhost:14004", 0);
+		EtcdClient client = pool.borrow();
+		pool.release();
+
+		Assert.assertEquals(1, pool.getRetiredInUse());
+		pool.giveBack(client);
+		Assert.assertEquals(0, pool.getRetiredInUse());
+	}
+
+}
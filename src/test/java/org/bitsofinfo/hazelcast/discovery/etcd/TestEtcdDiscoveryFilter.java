@@ -0,0 +1,67 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.config.InvalidConfigurationException;
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for EtcdDiscoveryFilter expressions
+ * 
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdDiscoveryFilter {
+	
+	private static Map<String,String> tags(String... keyValues) {
+		Map<String,String> tags = new HashMap<String,String>();
+		for (int i=0; i<keyValues.length; i+=2) {
+			tags.put(keyValues[i], keyValues[i+1]);
+		}
+		return tags;
+	}
+
+	@Test
+	public void testEmptyMatchesAll() {
+		Assert.assertTrue(new EtcdDiscoveryFilter(null).isEmpty());
+		Assert.assertTrue(new EtcdDiscoveryFilter(" , ").isEmpty());
+		Assert.assertTrue(new EtcdDiscoveryFilter("").matches(null));
+	}
+	
+	@Test
+	public void testEqualsAndNotEquals() {
+		EtcdDiscoveryFilter filter = new EtcdDiscoveryFilter("role=data|compute, zone!=us-east-1c");
+		Assert.assertTrue(filter.matches(tags("role", "data")));
+		Assert.assertTrue(filter.matches(tags("role", "compute", "zone", "us-east-1a")));
+		Assert.assertFalse(filter.matches(tags("role", "lite")));
+		Assert.assertFalse(filter.matches(tags("role", "data", "zone", "us-east-1c")));
+		Assert.assertFalse(filter.matches(null));
+	}
+	
+	@Test
+	public void testPresenceAndPrefix() {
+		EtcdDiscoveryFilter filter = new EtcdDiscoveryFilter("uuid,!draining,version=3.12*");
+		Assert.assertTrue(filter.matches(tags("uuid", "a1", "version", "3.12.1")));
+		Assert.assertFalse(filter.matches(tags("uuid", "a1", "version", "3.11")));
+		Assert.assertFalse(filter.matches(tags("uuid", "a1", "version", "3.12", "draining", "true")));
+		Assert.assertFalse(filter.matches(tags("version", "3.12")));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testMalformed() {
+		new EtcdDiscoveryFilter("role=");
+	}
+	
+	@Test(expected=InvalidConfigurationException.class)
+	public void testMalformedFailsTheStrategy() {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-discovery-filter", "role=");
+		new EtcdDiscoveryStrategy(null, Logger.getLogger(getClass()), properties);
+	}
+
+}
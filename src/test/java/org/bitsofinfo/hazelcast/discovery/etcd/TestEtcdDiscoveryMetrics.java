@@ -0,0 +1,199 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+/**
+ * Tests for the EtcdDiscoveryMetrics, its histograms, listener and MBean
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdDiscoveryMetrics {
+
+	/**
+	 * Records what it is told
+	 */
+	public static class RecordingListener implements EtcdMetricsListener {
+		public final List<String> events = new ArrayList<String>();
+		public void init(String etcdServiceName) { events.add("init:" + etcdServiceName); }
+		public void onOperation(String operation, long latencyMS, boolean success) { events.add(operation + ":" + success); }
+		public void onDiscovered(int memberCount) { events.add("discovered:" + memberCount); }
+		public void onParseFailure(String key) { events.add("parseFailure:" + key); }
+		public void onEndpointError(String endpoint) { events.add("endpointError:" + endpoint); }
+	}
+
+	@Test
+	public void testHistogram() {
+		EtcdLatencyHistogram histogram = new EtcdLatencyHistogram();
+		Assert.assertEquals(0, histogram.getPercentileMS(99));
+
+		for (int i=0; i<98; i++) {
+			histogram.record(3, true);
+		}
+		histogram.record(150, false);
+		histogram.record(70000, false);
+
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(2, histogram.getFailures());
+		Assert.assertEquals(5, histogram.getPercentileMS(50));
+		Assert.assertEquals(200, histogram.getPercentileMS(99));
+		Assert.assertEquals(70000, histogram.getPercentileMS(100));
+		Assert.assertEquals(70000, histogram.getMaxMS());
+	}
+
+	@Test
+	public void testListenerAndCounters() {
+		RecordingListener listener = new RecordingListener();
+		EtcdDiscoveryMetrics metrics = new EtcdDiscoveryMetrics(null, listener, Logger.getLogger(getClass()));
+		metrics.init("test-metrics");
+
+		metrics.onOperation(EtcdMetricsListener.OPERATION_DISCOVER, 12, true);
+		metrics.onOperation(EtcdMetricsListener.OPERATION_REGISTER, 7, false);
+		metrics.onDiscovered(3);
+		metrics.onParseFailure("/test-metrics/bad");
+		metrics.onEndpointError("http://etcd1:2379");
+		metrics.onEndpointError("http://etcd1:2379");
+
+		Assert.assertEquals(1, metrics.getDiscoverCount());
+		Assert.assertEquals(0, metrics.getDiscoverFailures());
+		Assert.assertEquals(1, metrics.getRegisterFailures());
+		Assert.assertEquals(0, metrics.getDeregisterCount());
+		Assert.assertEquals(3, metrics.getLastDiscoveredMemberCount());
+		Assert.assertEquals(1, metrics.getParseFailures());
+		Assert.assertEquals("{http://etcd1:2379=2}", metrics.getEndpointErrors());
+
+		Assert.assertEquals(7, listener.events.size());
+		Assert.assertEquals("init:test-metrics", listener.events.get(0));
+		Assert.assertEquals("register:false", listener.events.get(2));
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		EtcdDiscoveryMetrics metrics = new EtcdDiscoveryMetrics(null, null, Logger.getLogger(getClass()));
+		metrics.init("test-metrics");
+		metrics.onDiscovered(5);
+		metrics.registerMBean();
+
+		ObjectName objectName = metrics.getObjectName();
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		Assert.assertEquals(5, mbeanServer.getAttribute(objectName, "LastDiscoveredMemberCount"));
+		Assert.assertEquals("test-metrics", mbeanServer.getAttribute(objectName, "EtcdServiceName"));
+
+		metrics.unregisterMBean();
+		Assert.assertFalse(mbeanServer.isRegistered(objectName));
+	}
+
+	@Test
+	public void testDiscoveredCountIsWhatIsHandedBack() throws Exception {
+		EtcdStandInServer etcd = new EtcdStandInServer(0);
+		etcd.start();
+		EtcdDiscoveryStrategy strategy = null;
+		try {
+			etcd.seed("test-metrics", 3, 0);
+			etcd.put("/test-metrics/unparsable", "not json", 0);
+			EtcdHazelcastNode draining = new EtcdHazelcastNode("10.0.1.1", 5701, "10.0.1.1");
+			draining.tags = new HashMap<String,String>();
+			draining.tags.put(BaseRegistrator.TAG_DRAINING, "true");
+			etcd.put("/test-metrics/draining", EtcdHazelcastNodeTypeAdapter.encode(draining), 0);
+
+			Map<String,Comparable> properties = new HashMap<String,Comparable>();
+			properties.put("etcd-uris", etcd.getUri().toString());
+			properties.put("etcd-service-name", "test-metrics");
+			properties.put("etcd-discovery-delay-ms", 0);
+			properties.put("etcd-jmx-enabled", false);
+			strategy = new EtcdDiscoveryStrategy(null, Logger.getLogger(getClass()), properties);
+
+			// 5 keys, 3 members
+			int handedBack = 0;
+			for (Object node : strategy.discoverNodes()) {
+				handedBack++;
+			}
+			Assert.assertEquals(3, handedBack);
+			Assert.assertEquals(3, strategy.getMetrics().getLastDiscoveredMemberCount());
+
+		} finally {
+			if (strategy != null) {
+				strategy.destroy();
+			}
+			etcd.stop();
+		}
+	}
+
+	private static EtcdDiscoveryStrategy newV3Strategy(String etcdUris, int circuitFailureThreshold) throws Exception {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-uris", etcdUris);
+		properties.put("etcd-api-version", EtcdTransport.API_VERSION_V3);
+		properties.put("etcd-service-name", "test-metrics");
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-retry-max-attempts", 1);
+		properties.put("etcd-circuit-failure-threshold", circuitFailureThreshold);
+		return new EtcdDiscoveryStrategy(new SimpleDiscoveryNode(new Address("127.0.0.1", 5701)),
+										 Logger.getLogger(TestEtcdDiscoveryMetrics.class), properties);
+	}
+
+	@Test
+	public void testErrorsAttributedToTheEndpointUsed() throws Exception {
+		EtcdV3StandInServer etcd1 = new EtcdV3StandInServer(0);
+		EtcdV3StandInServer etcd2 = new EtcdV3StandInServer(0);
+		etcd1.start();
+		etcd2.start();
+		EtcdDiscoveryStrategy strategy = null;
+		try {
+			strategy = newV3Strategy(etcd1.getUri() + "," + etcd2.getUri(), 0);
+
+			// failed over to the second
+			etcd1.failNext(1, 503);
+			strategy.discoverNodes();
+			Assert.assertEquals("{" + etcd1.getUri() + "=1}", strategy.getMetrics().getEndpointErrors());
+			Assert.assertEquals(0, strategy.getMetrics().getDiscoverFailures());
+
+		} finally {
+			if (strategy != null) {
+				strategy.destroy();
+			}
+			etcd1.stop();
+			etcd2.stop();
+		}
+	}
+
+	@Test
+	public void testShortCircuitedDiscoveriesAreCounted() throws Exception {
+		EtcdV3StandInServer etcd = new EtcdV3StandInServer(0);
+		etcd.start();
+		EtcdDiscoveryStrategy strategy = null;
+		try {
+			strategy = newV3Strategy(etcd.getUri().toString(), 1);
+
+			etcd.failNext(Integer.MAX_VALUE, 503);
+			strategy.discoverNodes();
+			long requests = etcd.getRequestCount();
+			strategy.discoverNodes();
+			Assert.assertEquals(requests, etcd.getRequestCount());
+
+			Assert.assertEquals(2, strategy.getMetrics().getDiscoverCount());
+			Assert.assertEquals(2, strategy.getMetrics().getDiscoverFailures());
+
+		} finally {
+			if (strategy != null) {
+				strategy.destroy();
+			}
+			etcd.stop();
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+/**
+ * Tests for the EtcdDiscoverySnapshotFile
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdDiscoverySnapshotFile {
+
+	private File dir = null;
+	private File file = null;
+	private List<DiscoveryNode> members = new ArrayList<DiscoveryNode>();
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("etcd-snapshot").toFile();
+		file = new File(dir, "snapshot.json");
+		for (int i=0; i<3; i++) {
+			members.add(new SimpleDiscoveryNode(new Address("127.0.0.1", 5701 + i)));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private EtcdDiscoverySnapshotFile snapshotFile(String etcdServiceName, long maxAgeMS) {
+		return new EtcdDiscoverySnapshotFile(file, etcdServiceName, maxAgeMS, true, Logger.getLogger(getClass()));
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		Assert.assertNull(snapshotFile("test-snapshot", 0).load());
+
+		snapshotFile("test-snapshot", 0).save(members);
+		Assert.assertEquals(1, dir.listFiles().length);
+
+		EtcdDiscoverySnapshotFile.Snapshot snapshot = snapshotFile("test-snapshot", 0).load();
+		Assert.assertEquals(3, snapshot.members.size());
+		Assert.assertEquals(5703, snapshot.members.get(2).getPrivateAddress().getPort());
+		Assert.assertTrue(System.currentTimeMillis() - snapshot.savedAt < 60000);
+
+		// another cluster's snapshot
+		Assert.assertNull(snapshotFile("other-service", 0).load());
+	}
+
+	@Test
+	public void testPropertiesSurvive() throws Exception {
+		Map<String,Object> properties = new HashMap<String,Object>();
+		properties.put(PartitionGroupMetaData.PARTITION_GROUP_ZONE, "us-east-1a");
+		properties.put(PartitionGroupMetaData.PARTITION_GROUP_RACK, "rack-7");
+		properties.put(PartitionGroupMetaData.PARTITION_GROUP_HOST, "host-3");
+		members.set(1, new SimpleDiscoveryNode(new Address("127.0.0.1", 5702), properties));
+
+		snapshotFile("test-snapshot", 0).save(members);
+		EtcdDiscoverySnapshotFile.Snapshot snapshot = snapshotFile("test-snapshot", 0).load();
+
+		Assert.assertEquals(properties, snapshot.members.get(1).getProperties());
+		Assert.assertTrue(snapshot.members.get(0).getProperties().isEmpty());
+	}
+
+	@Test
+	public void testVersion1Loaded() throws Exception {
+		EtcdDiscoverySnapshotFile unchecked = new EtcdDiscoverySnapshotFile(file, "test-snapshot", 0, false, Logger.getLogger(getClass()));
+		Files.write(file.toPath(), ("{\"version\":1,\"service\":\"test-snapshot\",\"savedAt\":" + System.currentTimeMillis() +
+									 ",\"members\":[{\"ip\":\"127.0.0.1\",\"port\":5701}]}").getBytes(Charset.forName("UTF-8")));
+		Assert.assertEquals(1, unchecked.load().members.size());
+	}
+
+	@Test
+	public void testCorruptSnapshotIgnored() throws Exception {
+		snapshotFile("test-snapshot", 0).save(members);
+
+		Charset utf8 = Charset.forName("UTF-8");
+		String json = new String(Files.readAllBytes(file.toPath()), utf8);
+		Files.write(file.toPath(), json.replace("5702", "5709").getBytes(utf8));
+		Assert.assertNull(snapshotFile("test-snapshot", 0).load());
+
+		Files.write(file.toPath(), json.substring(0, json.length() / 2).getBytes(utf8));
+		Assert.assertNull(snapshotFile("test-snapshot", 0).load());
+	}
+
+	@Test
+	public void testMaxAge() throws Exception {
+		snapshotFile("test-snapshot", 0).save(members);
+		Thread.sleep(100);
+		Assert.assertNull(snapshotFile("test-snapshot", 50).load());
+		Assert.assertNotNull(snapshotFile("test-snapshot", 60000).load());
+	}
+
+	@Test
+	public void testSaveAsync() throws Exception {
+		EtcdDiscoverySnapshotFile snapshotFile = snapshotFile("test-snapshot", 0);
+		snapshotFile.saveAsync(members);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (snapshotFile.load() == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(3, snapshotFile.load().members.size());
+	}
+
+	@Test
+	public void testConcurrentSaversOfOneFile() throws Exception {
+		// i.e. several members in one JVM sharing etcd-snapshot-file
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> savers = new ArrayList<Thread>();
+		for (int i=0; i<4; i++) {
+			final EtcdDiscoverySnapshotFile snapshotFile = snapshotFile("test-snapshot", 0);
+			Thread saver = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int j=0; j<25; j++) {
+							// alternate so every save is a change
+							snapshotFile.save(j % 2 == 0 ? members : members.subList(0, 2));
+						}
+					} catch(Throwable e) {
+						synchronized(errors) {
+							errors.add(e);
+						}
+					}
+				}
+			});
+			saver.start();
+			savers.add(saver);
+		}
+		for (Thread saver : savers) {
+			saver.join();
+		}
+
+		Assert.assertTrue(errors.isEmpty());
+		Assert.assertNotNull(snapshotFile("test-snapshot", 0).load());
+		Assert.assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testUnchangedNotRewritten() throws Exception {
+		EtcdDiscoverySnapshotFile snapshotFile = snapshotFile("test-snapshot", 60000);
+		snapshotFile.save(members);
+		long savedAt = snapshotFile.load().savedAt;
+
+		Thread.sleep(10);
+		snapshotFile.save(members);
+		Assert.assertEquals(savedAt, snapshotFile.load().savedAt);
+
+		members.remove(0);
+		snapshotFile.save(members);
+		Assert.assertEquals(2, snapshotFile.load().members.size());
+	}
+
+}
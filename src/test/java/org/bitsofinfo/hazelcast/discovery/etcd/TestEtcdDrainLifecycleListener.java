@@ -0,0 +1,220 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.LifecycleEvent;
+import com.hazelcast.core.LifecycleEvent.LifecycleState;
+import com.hazelcast.core.Member;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+/**
+ * Tests for the graceful exit (etcd-drain-grace-ms) driven by the
+ * EtcdDrainLifecycleListener, always run against an in-process EtcdV3StandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdDrainLifecycleListener {
+
+	private static final String SERVICE_NAME = "test-drain";
+	private static final int DRAIN_GRACE_MS = 500;
+
+	private EtcdV3StandInServer etcdStandIn = null;
+	private EtcdDiscoveryStrategy draining = null;
+	private EtcdDiscoveryStrategy peer = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdV3StandInServer(0);
+		etcdStandIn.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (draining != null) {
+			draining.destroy();
+		}
+		if (peer != null) {
+			peer.destroy();
+		}
+		etcdStandIn.stop();
+	}
+
+	private EtcdDiscoveryStrategy newStrategy(Address localAddress) {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-uris", etcdStandIn.getUri().toString());
+		properties.put("etcd-api-version", EtcdTransport.API_VERSION_V3);
+		properties.put("etcd-service-name", SERVICE_NAME);
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-registrator", LocalDiscoveryNodeRegistrator.class.getCanonicalName());
+		properties.put("etcd-registrator-config", "{\"preferPublicAddress\":false}");
+		properties.put("etcd-drain-grace-ms", DRAIN_GRACE_MS);
+		return new EtcdDiscoveryStrategy(new SimpleDiscoveryNode(localAddress), Logger.getLogger(getClass()), properties);
+	}
+
+	/**
+	 * A HazelcastInstance whose cluster's local member is at the given address
+	 */
+	private static HazelcastInstance instanceAt(final Address address) {
+		final Member member = proxy(Member.class, "getAddress", address);
+		final Cluster cluster = proxy(Cluster.class, "getLocalMember", member);
+		return proxy(HazelcastInstance.class, "getCluster", cluster);
+	}
+
+	private static <T> T proxy(Class<T> type, final String methodName, final Object result) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals(methodName)) {
+					return result;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		}));
+	}
+
+	private static Set<Address> discovered(EtcdDiscoveryStrategy strategy) {
+		Set<Address> addresses = new HashSet<Address>();
+		for (DiscoveryNode node : strategy.discoverNodes()) {
+			addresses.add(node.getPrivateAddress());
+		}
+		return addresses;
+	}
+
+	private void awaitRegistered(int expected) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (etcdStandIn.list("/" + SERVICE_NAME + "/").size() < expected) {
+			if (System.currentTimeMillis() > deadline) {
+				Assert.fail("expected " + expected + " registered, found: " + etcdStandIn.list("/" + SERVICE_NAME + "/"));
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testDrainThenDeregisterOnce() throws Exception {
+		Address drainingAddress = new Address("127.0.0.1", 5701);
+		Address peerAddress = new Address("127.0.0.1", 5702);
+		draining = newStrategy(drainingAddress);
+		peer = newStrategy(peerAddress);
+		awaitRegistered(2);
+
+		Set<Address> discovered = discovered(peer);
+		Assert.assertTrue(discovered.contains(drainingAddress));
+		Assert.assertTrue(discovered.contains(peerAddress));
+
+		EtcdDrainLifecycleListener listener = new EtcdDrainLifecycleListener();
+		listener.setHazelcastInstance(instanceAt(drainingAddress));
+		listener.stateChanged(new LifecycleEvent(LifecycleState.STARTED));
+
+		// draining: our value is rewritten, held for the grace period
+		long start = System.currentTimeMillis();
+		listener.stateChanged(new LifecycleEvent(LifecycleState.SHUTTING_DOWN));
+		Assert.assertTrue(System.currentTimeMillis() - start >= DRAIN_GRACE_MS);
+
+		Map<String,String> registered = etcdStandIn.list("/" + SERVICE_NAME + "/");
+		Assert.assertEquals(2, registered.size());
+		int drainingValues = 0;
+		for (String value : registered.values()) {
+			if (value.contains(BaseRegistrator.TAG_DRAINING)) {
+				drainingValues++;
+			}
+		}
+		Assert.assertEquals(1, drainingValues);
+
+		// while still registered, peers no longer discover us
+		discovered = discovered(peer);
+		Assert.assertFalse(discovered.contains(drainingAddress));
+		Assert.assertTrue(discovered.contains(peerAddress));
+
+		// deleted on SHUTDOWN, the JVM hook's run() and destroy() do nothing more
+		listener.stateChanged(new LifecycleEvent(LifecycleState.SHUTDOWN));
+		Assert.assertEquals(1, etcdStandIn.list("/" + SERVICE_NAME + "/").size());
+		long deletes = etcdStandIn.getRequestCount("/kv/deleterange");
+		Assert.assertEquals(1, deletes);
+
+		start = System.currentTimeMillis();
+		draining.run();
+		draining.destroy();
+		draining = null;
+		Assert.assertTrue(System.currentTimeMillis() - start < DRAIN_GRACE_MS);
+		Assert.assertEquals(deletes, etcdStandIn.getRequestCount("/kv/deleterange"));
+	}
+
+	@Test
+	public void testDestroyDeregistersWithoutDraining() throws Exception {
+		Address drainingAddress = new Address("127.0.0.1", 5701);
+		draining = newStrategy(drainingAddress);
+		awaitRegistered(1);
+
+		// as Hazelcast's shutdown destroys the strategy, our member has left already: deleted right away, once
+		long start = System.currentTimeMillis();
+		draining.destroy();
+		Assert.assertTrue(System.currentTimeMillis() - start < DRAIN_GRACE_MS);
+		Assert.assertEquals(0, etcdStandIn.list("/" + SERVICE_NAME + "/").size());
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/kv/deleterange"));
+
+		// the JVM hook does nothing more
+		draining.run();
+		draining = null;
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/kv/deleterange"));
+	}
+
+	@Test
+	public void testJvmHookDrainsWithoutListener() throws Exception {
+		Address drainingAddress = new Address("127.0.0.1", 5701);
+		draining = newStrategy(drainingAddress);
+		awaitRegistered(1);
+
+		// no listener drove the drain: the JVM hook drains, then deletes
+		long start = System.currentTimeMillis();
+		draining.run();
+		Assert.assertTrue(System.currentTimeMillis() - start >= DRAIN_GRACE_MS);
+		Assert.assertEquals(0, etcdStandIn.list("/" + SERVICE_NAME + "/").size());
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/kv/deleterange"));
+
+		draining.destroy();
+		draining = null;
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/kv/deleterange"));
+	}
+
+	@Test
+	public void testForLocalAddressDoesNotGuess() throws Exception {
+		Address localAddress = new Address("127.0.0.1", 5701);
+		draining = newStrategy(localAddress);
+
+		Assert.assertSame(draining, EtcdDiscoveryStrategy.forLocalAddress(localAddress));
+		Assert.assertNull(EtcdDiscoveryStrategy.forLocalAddress(new Address("127.0.0.1", 5799)));
+		Assert.assertNull(EtcdDiscoveryStrategy.forLocalAddress(null));
+
+		// the listener of another member leaves ours alone
+		EtcdDrainLifecycleListener listener = new EtcdDrainLifecycleListener();
+		listener.setHazelcastInstance(instanceAt(new Address("127.0.0.1", 5799)));
+		listener.stateChanged(new LifecycleEvent(LifecycleState.SHUTTING_DOWN));
+		listener.stateChanged(new LifecycleEvent(LifecycleState.SHUTDOWN));
+		awaitRegistered(1);
+		Assert.assertEquals(0, etcdStandIn.getRequestCount("/kv/deleterange"));
+
+		// gone once destroyed
+		draining.destroy();
+		Assert.assertNull(EtcdDiscoveryStrategy.forLocalAddress(localAddress));
+		draining = null;
+	}
+
+}
@@ -0,0 +1,89 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the EtcdEndpointScorer against two in-process
+ * EtcdStandInServers, one of them slow
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdEndpointScorer {
+
+	private EtcdStandInServer fastEtcd = null;
+	private EtcdStandInServer slowEtcd = null;
+	private EtcdEndpointScorer scorer = null;
+
+	@Before
+	public void setUp() throws Exception {
+		fastEtcd = new EtcdStandInServer(0);
+		fastEtcd.start();
+		slowEtcd = new EtcdStandInServer(0);
+		slowEtcd.start();
+		slowEtcd.setLatency(200, 200);
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(
+				Arrays.asList(new URI[]{slowEtcd.getUri(), fastEtcd.getUri()}), null, null);
+		scorer = new EtcdEndpointScorer(config, 0, 100, Logger.getLogger(getClass()));
+		scorer.start();
+	}
+
+	@After
+	public void tearDown() {
+		scorer.stop();
+		fastEtcd.stop();
+		slowEtcd.stop();
+	}
+
+	@Test
+	public void testFastestHealthyFirst() throws Exception {
+		awaitFirst(fastEtcd.getUri(), 5000);
+		Assert.assertTrue(scorer.getLatencyEwmaMS(slowEtcd.getUri()) >= 200);
+	}
+
+	@Test
+	public void testEjectAndReadmit() throws Exception {
+		awaitFirst(fastEtcd.getUri(), 5000);
+
+		int port = fastEtcd.getPort();
+		fastEtcd.stop();
+		awaitFirst(slowEtcd.getUri(), 5000);
+		Assert.assertTrue(scorer.isEjected(fastEtcd.getUri()));
+
+		// recovers on the same port
+		fastEtcd = new EtcdStandInServer(port);
+		fastEtcd.start();
+		awaitFirst(fastEtcd.getUri(), 5000);
+		Assert.assertFalse(scorer.isEjected(fastEtcd.getUri()));
+	}
+
+	@Test
+	public void testRequestFailuresEject() throws Exception {
+		awaitFirst(fastEtcd.getUri(), 5000);
+		scorer.stop();
+
+		for (int i=0; i<3; i++) {
+			scorer.record(fastEtcd.getUri(), false);
+		}
+		Assert.assertTrue(scorer.isEjected(fastEtcd.getUri()));
+		Assert.assertEquals(slowEtcd.getUri(), scorer.getOrdered().get(0));
+	}
+
+	private void awaitFirst(URI uri, long timeoutMS) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMS;
+		while (!uri.equals(scorer.getOrdered().get(0)) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals(uri, scorer.getOrdered().get(0));
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Smoke tests for whichever EtcdFlightRecorder is on the classpath, the
+ * recording one when the build runs on java 11+ (@see build.gradle).
+ *
+ * jdk.jfr is only reached via reflection, these sources build on any java.
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdFlightRecorder {
+
+	private static final String DISCOVER_EVENT = "org.bitsofinfo.hazelcast.discovery.etcd.EtcdDiscover";
+
+	@Test
+	public void testNothingBegunWhileNotRecording() {
+		Assert.assertNull(EtcdFlightRecorder.beginDiscover());
+		Assert.assertNull(EtcdFlightRecorder.beginRegister());
+		Assert.assertNull(EtcdFlightRecorder.beginDeregister());
+		Assert.assertNull(EtcdFlightRecorder.beginTlsContextBuild());
+
+		// callers always end() what they began
+		EtcdFlightRecorder.end(null, "http://localhost:4001", "/test", 0, 0, EtcdFlightRecorder.OUTCOME_SUCCESS);
+	}
+
+	@Test
+	public void testRecordsWhileRecording() throws Exception {
+		Assume.assumeTrue(EtcdFlightRecorder.isAvailable());
+
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.getConstructor().newInstance();
+		Path dump = Files.createTempFile("test-etcd-flight-recorder", ".jfr");
+		try {
+			recordingClass.getMethod("enable", String.class).invoke(recording, DISCOVER_EVENT);
+			recordingClass.getMethod("start").invoke(recording);
+
+			Object event = EtcdFlightRecorder.beginDiscover();
+			Assert.assertNotNull(event);
+			EtcdFlightRecorder.end(event, "http://localhost:4001", "/test", 3, 100, EtcdFlightRecorder.OUTCOME_CIRCUIT_OPEN);
+
+			recordingClass.getMethod("stop").invoke(recording);
+			recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+
+			List<String> outcomes = new ArrayList<String>();
+			Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+			Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+			List<?> recorded = (List<?>)Class.forName("jdk.jfr.consumer.RecordingFile")
+											.getMethod("readAllEvents", Path.class).invoke(null, dump);
+			for (Object recordedEvent : recorded) {
+				Object eventType = recordedEventClass.getMethod("getEventType").invoke(recordedEvent);
+				if (DISCOVER_EVENT.equals(eventTypeClass.getMethod("getName").invoke(eventType))) {
+					outcomes.add((String)recordedEventClass.getMethod("getString", String.class).invoke(recordedEvent, "outcome"));
+				}
+			}
+			Assert.assertEquals(1, outcomes.size());
+			Assert.assertEquals(EtcdFlightRecorder.OUTCOME_CIRCUIT_OPEN, outcomes.get(0));
+
+		} finally {
+			recordingClass.getMethod("close").invoke(recording);
+			Files.deleteIfExists(dump);
+		}
+	}
+
+}
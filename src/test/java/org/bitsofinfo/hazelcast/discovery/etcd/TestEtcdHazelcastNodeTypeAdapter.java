@@ -0,0 +1,92 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.hazelcast.nio.Address;
+
+/**
+ * Tests the EtcdHazelcastNodeTypeAdapter against the reflective Gson
+ * (de)serialization it replaced: each must read what the other writes
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdHazelcastNodeTypeAdapter {
+
+	private static final Gson GSON = new GsonBuilder().setDateFormat(EtcdDiscoveryStrategy.DATE_PATTERN).create();
+
+	private static EtcdHazelcastNode fullNode() {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("10.0.0.1", 5701, "member1");
+		node.addresses = Arrays.asList(new EtcdNodeAddress("vpc", "10.0.0.1", 5701), new EtcdNodeAddress("nat", "::1", 15701));
+		node.zone = "us-east-1a";
+		node.rack = "rack1";
+		node.host = "hypervisor1";
+		node.tags = new LinkedHashMap<String,String>();
+		node.tags.put("role", "data");
+		node.tags.put("version", "3.12");
+		return node;
+	}
+
+	private static void assertSameNode(EtcdHazelcastNode expected, EtcdHazelcastNode actual) {
+		Assert.assertEquals(expected.ip, actual.ip);
+		Assert.assertEquals(expected.port, actual.port);
+		Assert.assertEquals(expected.hostname, actual.hostname);
+		Assert.assertEquals(expected.registeredAt, actual.registeredAt);
+		Assert.assertEquals(String.valueOf(expected.addresses), String.valueOf(actual.addresses));
+		Assert.assertEquals(expected.zone, actual.zone);
+		Assert.assertEquals(expected.rack, actual.rack);
+		Assert.assertEquals(expected.host, actual.host);
+		Assert.assertEquals(expected.tags, actual.tags);
+	}
+
+	@Test
+	public void testGsonReadsWhatWeWrite() throws Exception {
+		for (EtcdHazelcastNode node : new EtcdHazelcastNode[]{ fullNode(), new EtcdHazelcastNode("10.0.0.2", 5702, null) }) {
+			assertSameNode(node, GSON.fromJson(EtcdHazelcastNodeTypeAdapter.encode(node), EtcdHazelcastNode.class));
+		}
+	}
+
+	@Test
+	public void testWeReadWhatGsonWrites() throws Exception {
+		for (EtcdHazelcastNode node : new EtcdHazelcastNode[]{ fullNode(), new EtcdHazelcastNode("10.0.0.2", 5702, null) }) {
+			String json = GSON.toJson(node);
+			assertSameNode(node, EtcdHazelcastNodeTypeAdapter.INSTANCE.fromJson(json));
+			Assert.assertEquals(new Address(node.ip, node.port), EtcdHazelcastNodeTypeAdapter.decodeAddress(json));
+		}
+	}
+
+	@Test
+	public void testSameOutputAsGson() {
+		EtcdHazelcastNode node = fullNode();
+		Assert.assertEquals(GSON.toJson(node), EtcdHazelcastNodeTypeAdapter.encode(node));
+
+		// nulls omitted alike
+		node = new EtcdHazelcastNode("10.0.0.2", 5702, null);
+		Assert.assertEquals(GSON.toJson(node), EtcdHazelcastNodeTypeAdapter.encode(node));
+
+		// where they differ: empty addresses/tags are left out rather than written as [] / {}
+		node.addresses = new ArrayList<EtcdNodeAddress>();
+		node.tags = new LinkedHashMap<String,String>();
+		Assert.assertEquals(GSON.toJson(node).replace(",\"addresses\":[]", "").replace(",\"tags\":{}", ""),
+							EtcdHazelcastNodeTypeAdapter.encode(node));
+	}
+
+	@Test
+	public void testMissingIpOrPortIsAnError() throws Exception {
+		for (String json : new String[]{ "{\"ip\":\"10.0.0.1\"}", "{\"port\":5701,\"hostname\":\"member1\"}" }) {
+			try {
+				EtcdHazelcastNodeTypeAdapter.decodeAddress(json);
+				Assert.fail("expected an error for: " + json);
+			} catch(IOException expected) {}
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+/**
+ * Tests for the 'watch' discovery mode's EtcdMembershipWatcher
+ * against an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdMembershipWatcher {
+
+	private static final String SERVICE_NAME = "test-watch";
+
+	/**
+	 * Counts listings, and can hold back watched events (as if
+	 * none arrived) or fail the next watch as compacted
+	 */
+	private static class ControlledTransport extends AbstractEtcdTransport {
+		final EtcdTransport delegate;
+		final AtomicInteger lists = new AtomicInteger();
+		final AtomicBoolean compactNext = new AtomicBoolean(false);
+		volatile boolean holdWatches = false;
+
+		ControlledTransport(EtcdTransport delegate) {
+			super(Logger.getLogger(ControlledTransport.class));
+			this.delegate = delegate;
+		}
+
+		public Listing list(String dir, long timeoutMS) throws Exception {
+			lists.incrementAndGet();
+			return delegate.list(dir, timeoutMS);
+		}
+
+		public List<String> listKeys(String dir, long timeoutMS) throws Exception {
+			return delegate.listKeys(dir, timeoutMS);
+		}
+
+		public void put(String key, String value, int ttlSeconds, long timeoutMS) throws Exception {
+			delegate.put(key, value, ttlSeconds, timeoutMS);
+		}
+
+		public boolean refresh(String key, int ttlSeconds, long timeoutMS) throws Exception {
+			return delegate.refresh(key, ttlSeconds, timeoutMS);
+		}
+
+		public void delete(String key, long timeoutMS) throws Exception {
+			delegate.delete(key, timeoutMS);
+		}
+
+		public WatchResult watch(String dir, long fromIndex, long timeoutMS) throws Exception {
+			if (compactNext.getAndSet(false)) {
+				throw new EtcdHistoryCompactedException("compacted at " + fromIndex);
+			}
+			WatchResult result = delegate.watch(dir, fromIndex, timeoutMS);
+			if (holdWatches) {
+				// as if it never arrived, the next watch gets it again
+				Thread.sleep(50);
+				return WatchResult.none(fromIndex);
+			}
+			return result;
+		}
+
+		protected void close() {
+			delegate.release();
+		}
+	}
+
+	private EtcdStandInServer etcdStandIn = null;
+	private ControlledTransport transport = null;
+	private EtcdMembershipWatcher watcher = null;
+	private EtcdDiscoveryStrategy strategy = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		etcdStandIn.seed(SERVICE_NAME, 3, 0);
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null);
+		transport = new ControlledTransport(new EtcdV2Transport(EtcdClientPool.acquire(config, 1, 0, 0, Logger.getLogger(getClass())),
+																Logger.getLogger(getClass())));
+		watcher = new EtcdMembershipWatcher(transport, SERVICE_NAME, Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		watcher.stop();
+		transport.release();
+		if (strategy != null) {
+			strategy.destroy();
+		}
+		etcdStandIn.stop();
+	}
+
+	private static Set<Integer> lastOctets(List<DiscoveryNode> nodes) {
+		Set<Integer> octets = new HashSet<Integer>();
+		for (DiscoveryNode node : nodes) {
+			String host = node.getPrivateAddress().getHost();
+			octets.add(Integer.parseInt(host.substring(host.lastIndexOf('.') + 1)));
+		}
+		return octets;
+	}
+
+	private void awaitMembers(Integer... expected) throws Exception {
+		Set<Integer> expectedOctets = new HashSet<Integer>(Arrays.asList(expected));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (true) {
+			List<DiscoveryNode> snapshot = watcher.getSnapshot();
+			if (snapshot != null && lastOctets(snapshot).equals(expectedOctets)) {
+				return;
+			}
+			if (System.currentTimeMillis() > deadline) {
+				Assert.fail("expected members " + expectedOctets + ", snapshot: " + (snapshot == null ? null : lastOctets(snapshot)));
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	private static String member(int lastOctet) {
+		return EtcdHazelcastNodeTypeAdapter.encode(new EtcdHazelcastNode("10.0.0." + lastOctet, 5701, "10.0.0." + lastOctet));
+	}
+
+	@Test
+	public void testEventsAppliedWithoutListing() throws Exception {
+		watcher.start();
+		awaitMembers(0, 1, 2);
+		Assert.assertEquals(1, transport.lists.get());
+
+		// set
+		etcdStandIn.put("/" + SERVICE_NAME + "/member-10", member(10), 0);
+		awaitMembers(0, 1, 2, 10);
+
+		// delete
+		etcdStandIn.delete("/" + SERVICE_NAME + "/seed-10.0.0.0-5701");
+		awaitMembers(1, 2, 10);
+
+		// expire
+		etcdStandIn.put("/" + SERVICE_NAME + "/member-11", member(11), 1);
+		awaitMembers(1, 2, 10, 11);
+		awaitMembers(1, 2, 10);
+
+		Assert.assertEquals(1, transport.lists.get());
+	}
+
+	@Test
+	public void testCompactionRelists() throws Exception {
+		watcher.start();
+		awaitMembers(0, 1, 2);
+
+		// missed by the watch
+		transport.holdWatches = true;
+		etcdStandIn.put("/" + SERVICE_NAME + "/member-10", member(10), 0);
+		Thread.sleep(300);
+		awaitMembers(0, 1, 2);
+		Assert.assertEquals(1, transport.lists.get());
+
+		// our index fell out of etcd's history, only a re-list catches up
+		transport.compactNext.set(true);
+		awaitMembers(0, 1, 2, 10);
+		Assert.assertEquals(2, transport.lists.get());
+
+		// and watching resumes from the listing
+		transport.holdWatches = false;
+		etcdStandIn.delete("/" + SERVICE_NAME + "/seed-10.0.0.0-5701");
+		awaitMembers(1, 2, 10);
+		Assert.assertEquals(2, transport.lists.get());
+	}
+
+	@Test
+	public void testSnapshotAge() throws Exception {
+		Assert.assertEquals(Long.MAX_VALUE, watcher.getSnapshotAgeMS());
+
+		watcher.start();
+		awaitMembers(0, 1, 2);
+		Assert.assertTrue(watcher.getSnapshotAgeMS() < 1000);
+
+		// a quiet watch confirms nothing
+		Thread.sleep(500);
+		Assert.assertTrue(watcher.getSnapshotAgeMS() >= 500);
+
+		// an event does
+		etcdStandIn.put("/" + SERVICE_NAME + "/member-10", member(10), 0);
+		awaitMembers(0, 1, 2, 10);
+		Assert.assertTrue(watcher.getSnapshotAgeMS() < 500);
+	}
+
+	@Test
+	public void testStaleSnapshotFallsBackToEtcd() throws Exception {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-uris", etcdStandIn.getUri().toString());
+		properties.put("etcd-service-name", SERVICE_NAME);
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-discovery-mode", EtcdDiscoveryStrategy.DISCOVERY_MODE_WATCH);
+		properties.put("etcd-watch-max-staleness-ms", 500);
+		strategy = new EtcdDiscoveryStrategy(new SimpleDiscoveryNode(new Address("127.0.0.1", 5701)),
+											 Logger.getLogger(getClass()), properties);
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (strategy.getSnapshotAgeMS() > 250) {
+			Assert.assertTrue("no watch snapshot", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+
+		// fresh: answered from the snapshot
+		long reads = strategy.getMetrics().getDiscoverCount();
+		Assert.assertEquals(3, count(strategy.discoverNodes()));
+		Assert.assertEquals(reads, strategy.getMetrics().getDiscoverCount());
+
+		// quiet for longer than etcd-watch-max-staleness-ms: read from etcd directly
+		Thread.sleep(600);
+		Assert.assertTrue(strategy.getSnapshotAgeMS() > 500);
+		Assert.assertEquals(3, count(strategy.discoverNodes()));
+		Assert.assertEquals(reads + 1, strategy.getMetrics().getDiscoverCount());
+	}
+
+	private static int count(Iterable<DiscoveryNode> nodes) {
+		int count = 0;
+		for (DiscoveryNode node : nodes) {
+			count++;
+		}
+		return count;
+	}
+
+}
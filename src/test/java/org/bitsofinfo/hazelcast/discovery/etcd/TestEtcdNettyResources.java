@@ -0,0 +1,42 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the JVM-wide EtcdNettyResources reference counting
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdNettyResources {
+
+	@Test
+	public void testSharedUntilLastRelease() {
+		EtcdNettyResources first = EtcdNettyResources.acquire(3, Logger.getLogger(getClass()));
+		EtcdNettyResources second = EtcdNettyResources.acquire(8, Logger.getLogger(getClass()));
+		try {
+			Assert.assertSame(first, second);
+			Assert.assertEquals(3, second.getIoThreads());
+			Assert.assertEquals(3, EtcdNettyResources.getSharedIoThreads());
+		} finally {
+			second.release();
+		}
+
+		// still referenced by first
+		Assert.assertEquals(3, EtcdNettyResources.getSharedIoThreads());
+		first.release();
+		Assert.assertEquals(0, EtcdNettyResources.getSharedIoThreads());
+
+		EtcdNettyResources recreated = EtcdNettyResources.acquire(1, Logger.getLogger(getClass()));
+		try {
+			Assert.assertNotSame(first, recreated);
+			Assert.assertEquals(1, recreated.getIoThreads());
+		} finally {
+			recreated.release();
+		}
+	}
+
+}
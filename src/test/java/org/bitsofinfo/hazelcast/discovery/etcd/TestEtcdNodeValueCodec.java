@@ -0,0 +1,164 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+/**
+ * Tests for EtcdNodeValueCodec format auto-detection
+ * 
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdNodeValueCodec {
+	
+	private static final EtcdHazelcastNode NODE = new EtcdHazelcastNode("127.0.0.1", 5701, "localhost");
+
+	@Test
+	public void testJsonAndCompactRoundTrip() throws Exception {
+		for (String format : new String[]{EtcdNodeValueCodec.FORMAT_JSON, EtcdNodeValueCodec.FORMAT_COMPACT}) {
+			String value = EtcdNodeValueCodec.encode(NODE, format);
+			
+			EtcdHazelcastNode decoded = EtcdNodeValueCodec.decode(value);
+			Assert.assertEquals(NODE.ip, decoded.ip);
+			Assert.assertEquals(NODE.port, decoded.port);
+			Assert.assertEquals(NODE.hostname, decoded.hostname);
+			Assert.assertEquals(NODE.registeredAt.getTime(), decoded.registeredAt.getTime());
+			
+			Assert.assertEquals(new Address("127.0.0.1", 5701), EtcdNodeValueCodec.decodeAddress(value));
+		}
+	}
+	
+	@Test
+	public void testCompactIsSmaller() {
+		Assert.assertEquals("hz1|127.0.0.1|5701|localhost|" + NODE.registeredAt.getTime(), 
+							EtcdNodeValueCodec.encode(NODE, EtcdNodeValueCodec.FORMAT_COMPACT));
+		Assert.assertTrue(EtcdNodeValueCodec.encode(NODE, EtcdNodeValueCodec.FORMAT_COMPACT).length() < 
+						  EtcdNodeValueCodec.encode(NODE, EtcdNodeValueCodec.FORMAT_JSON).length());
+	}
+	
+	@Test
+	public void testLegacyJsonWithoutRegisteredAt() throws Exception {
+		Assert.assertEquals(new Address("127.0.0.1", 5702), 
+							EtcdNodeValueCodec.decodeAddress(" {\"ip\":\"127.0.0.1\",\"port\":5702,\"hostname\":\"127.0.0.1\"}"));
+	}
+	
+	@Test
+	public void testLabelledAddressesRoundTrip() throws Exception {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("127.0.0.1", 5701, "localhost");
+		node.addresses = Arrays.asList(new EtcdNodeAddress("vpc", "10.0.0.1", 5701), new EtcdNodeAddress("nat", "::1", 15701));
+		EtcdAddressSelector selector = new EtcdAddressSelector("nat", null);
+		
+		for (String format : new String[]{EtcdNodeValueCodec.FORMAT_JSON, EtcdNodeValueCodec.FORMAT_COMPACT}) {
+			String value = EtcdNodeValueCodec.encode(node, format);
+			
+			EtcdHazelcastNode decoded = EtcdNodeValueCodec.decode(value);
+			Assert.assertEquals(2, decoded.addresses.size());
+			Assert.assertEquals("nat", decoded.addresses.get(1).label);
+			Assert.assertEquals("::1", decoded.addresses.get(1).ip);
+			Assert.assertEquals(Integer.valueOf(15701), decoded.addresses.get(1).port);
+			
+			// readers w/o a selector (or predating addresses) use the primary address
+			Assert.assertEquals(new Address("127.0.0.1", 5701), EtcdNodeValueCodec.decodeAddress(value));
+			Assert.assertEquals(new Address("::1", 15701), EtcdNodeValueCodec.decodeAddress(value, selector));
+		}
+	}
+	
+	@Test
+	public void testLocalityRoundTrip() throws Exception {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("127.0.0.1", 5701, "localhost");
+		node.zone = "zone-a";
+		node.host = "hv-7";
+		
+		for (String format : new String[]{EtcdNodeValueCodec.FORMAT_JSON, EtcdNodeValueCodec.FORMAT_COMPACT}) {
+			String value = EtcdNodeValueCodec.encode(node, format);
+			
+			EtcdHazelcastNode decoded = EtcdNodeValueCodec.decode(value);
+			Assert.assertEquals("zone-a", decoded.zone);
+			Assert.assertNull(decoded.rack);
+			Assert.assertEquals("hv-7", decoded.host);
+			Assert.assertNull(decoded.addresses);
+			
+			Map<String,Object> attributes = new HashMap<String,Object>();
+			Assert.assertEquals(new Address("127.0.0.1", 5701), EtcdNodeValueCodec.decodeAddress(value, null, null, attributes));
+			Assert.assertEquals(2, attributes.size());
+			Assert.assertEquals("zone-a", attributes.get(PartitionGroupMetaData.PARTITION_GROUP_ZONE));
+			Assert.assertEquals("hv-7", attributes.get(PartitionGroupMetaData.PARTITION_GROUP_HOST));
+		}
+		
+		// members w/o locality have no attributes
+		Map<String,Object> attributes = new HashMap<String,Object>();
+		EtcdNodeValueCodec.decodeAddress(EtcdNodeValueCodec.encode(NODE, EtcdNodeValueCodec.FORMAT_COMPACT), null, null, attributes);
+		Assert.assertTrue(attributes.isEmpty());
+	}
+	
+	@Test
+	public void testTagsRoundTripAndFilter() throws Exception {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("127.0.0.1", 5701, "localhost");
+		node.tags = new LinkedHashMap<String,String>();
+		node.tags.put("role", "lite");
+		node.tags.put("version", "3.12.1");
+		
+		EtcdDiscoveryFilter dataOnly = new EtcdDiscoveryFilter("role!=lite");
+		EtcdDiscoveryFilter v312 = new EtcdDiscoveryFilter("version=3.12*");
+		
+		for (String format : new String[]{EtcdNodeValueCodec.FORMAT_JSON, EtcdNodeValueCodec.FORMAT_COMPACT}) {
+			String value = EtcdNodeValueCodec.encode(node, format);
+			
+			EtcdHazelcastNode decoded = EtcdNodeValueCodec.decode(value);
+			Assert.assertEquals(node.tags, decoded.tags);
+			Assert.assertNull(decoded.zone);
+			
+			Assert.assertNull(EtcdNodeValueCodec.decodeAddress(value, null, dataOnly, null));
+			Assert.assertEquals(new Address("127.0.0.1", 5701), EtcdNodeValueCodec.decodeAddress(value, null, v312, null));
+			
+			// members w/o tags only match filters satisfied by absent tags
+			String untagged = EtcdNodeValueCodec.encode(NODE, format);
+			Assert.assertEquals(new Address("127.0.0.1", 5701), EtcdNodeValueCodec.decodeAddress(untagged, null, dataOnly, null));
+			Assert.assertNull(EtcdNodeValueCodec.decodeAddress(untagged, null, v312, null));
+		}
+	}
+	
+	@Test
+	public void testDrainingSkipped() throws Exception {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("127.0.0.1", 5701, "localhost");
+		node.zone = "zone-a";
+		node.tags = new LinkedHashMap<String,String>();
+		node.tags.put("version", "3.12.1");
+		
+		EtcdDiscoveryFilter notDraining = new EtcdDiscoveryFilter("!" + BaseRegistrator.TAG_DRAINING);
+		for (String format : new String[]{EtcdNodeValueCodec.FORMAT_JSON, EtcdNodeValueCodec.FORMAT_COMPACT}) {
+			Assert.assertEquals(new Address("127.0.0.1", 5701), 
+					EtcdNodeValueCodec.decodeAddress(EtcdNodeValueCodec.encode(node, format), null, notDraining, null));
+			
+			node.tags.put(BaseRegistrator.TAG_DRAINING, "true");
+			Assert.assertNull(EtcdNodeValueCodec.decodeAddress(EtcdNodeValueCodec.encode(node, format), null, notDraining, null));
+			node.tags.remove(BaseRegistrator.TAG_DRAINING);
+		}
+	}
+	
+	@Test
+	public void testBlank() throws Exception {
+		Assert.assertNull(EtcdNodeValueCodec.decodeAddress(null));
+		Assert.assertNull(EtcdNodeValueCodec.decodeAddress("  "));
+	}
+	
+	@Test(expected=IOException.class)
+	public void testUnsupportedVersion() throws Exception {
+		EtcdNodeValueCodec.decodeAddress("hz2|127.0.0.1|5701");
+	}
+	
+	@Test(expected=IOException.class)
+	public void testMalformedPort() throws Exception {
+		EtcdNodeValueCodec.decodeAddress("hz1|127.0.0.1|57x1|localhost|0");
+	}
+
+}
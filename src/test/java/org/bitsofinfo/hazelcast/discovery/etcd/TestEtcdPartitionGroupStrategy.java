@@ -0,0 +1,185 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.LifecycleEvent;
+import com.hazelcast.core.LifecycleEvent.LifecycleState;
+import com.hazelcast.core.Member;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.partition.membergroup.MemberGroup;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import com.hazelcast.spi.partitiongroup.PartitionGroupMetaData;
+
+/**
+ * Tests for EtcdPartitionGroupStrategy grouping members by their attributes
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdPartitionGroupStrategy {
+
+	/**
+	 * A Member w/ just an address and attributes, proxied as the
+	 * interface differs across the supported Hazelcast versions
+	 */
+	private static Member member(final int port, String zone, String rack) throws Exception {
+		final Address address = new Address("127.0.0.1", port);
+		final Map<String,Object> attributes = new HashMap<String,Object>();
+		if (zone != null) {
+			attributes.put(PartitionGroupMetaData.PARTITION_GROUP_ZONE, zone);
+		}
+		if (rack != null) {
+			attributes.put(PartitionGroupMetaData.PARTITION_GROUP_RACK, rack);
+		}
+
+		return (Member)Proxy.newProxyInstance(Member.class.getClassLoader(), new Class<?>[]{Member.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getAddress")) {
+					return address;
+				} else if (method.getName().equals("getAttributes")) {
+					return attributes;
+				} else if (method.getName().equals("getStringAttribute")) {
+					return (String)attributes.get(args[0]);
+				} else if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				} else if (method.getName().equals("hashCode")) {
+					return port;
+				} else if (method.getName().equals("toString")) {
+					return "Member " + address;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void testGroupsByZone() throws Exception {
+		Member a1 = member(5701, "zone-a", "rack-1");
+		Member a2 = member(5702, "zone-a", "rack-2");
+		Member b1 = member(5703, "zone-b", "rack-1");
+		Member none = member(5704, null, null);
+
+		List<Member> members = new ArrayList<Member>();
+		members.add(a1);
+		members.add(a2);
+		members.add(b1);
+		members.add(none);
+
+		List<MemberGroup> groups = new EtcdPartitionGroupStrategy(null, PartitionGroupMetaData.PARTITION_GROUP_ZONE, 
+																  Logger.getLogger(getClass())).getMemberGroups(members);
+		Assert.assertEquals(3, groups.size());
+		Assert.assertTrue(groups.get(0).hasMember(a1));
+		Assert.assertTrue(groups.get(0).hasMember(a2));
+		Assert.assertTrue(groups.get(1).hasMember(b1));
+
+		// ungrouped members are on their own
+		Assert.assertTrue(groups.get(2).hasMember(none));
+		Assert.assertEquals(1, groups.get(2).size());
+
+		// by rack instead
+		groups = new EtcdPartitionGroupStrategy(null, PartitionGroupMetaData.PARTITION_GROUP_RACK, 
+												Logger.getLogger(getClass())).getMemberGroups(members);
+		Assert.assertEquals(3, groups.size());
+		Assert.assertEquals(2, groups.get(0).size());
+		Assert.assertTrue(groups.get(0).hasMember(b1));
+	}
+
+	@Test
+	public void testEveryMemberUngrouped() throws Exception {
+		List<Member> members = new ArrayList<Member>();
+		for (int i=0; i<3; i++) {
+			members.add(member(5701 + i, null, null));
+		}
+		List<MemberGroup> groups = new EtcdPartitionGroupStrategy(null, PartitionGroupMetaData.PARTITION_GROUP_ZONE, 
+																  Logger.getLogger(getClass())).getMemberGroups(members);
+		Assert.assertEquals(3, groups.size());
+		for (MemberGroup group : groups) {
+			Assert.assertEquals(1, group.size());
+		}
+	}
+
+	/**
+	 * A HazelcastInstance whose cluster is the given members, the first one local
+	 */
+	private static HazelcastInstance instanceOf(final Set<Member> members) {
+		final Cluster cluster = (Cluster)Proxy.newProxyInstance(Cluster.class.getClassLoader(), new Class<?>[]{Cluster.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getLocalMember")) {
+					return members.iterator().next();
+				} else if (method.getName().equals("getMembers")) {
+					return members;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		return (HazelcastInstance)Proxy.newProxyInstance(HazelcastInstance.class.getClassLoader(), new Class<?>[]{HazelcastInstance.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getCluster")) {
+					return cluster;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	@Test
+	public void testBoundByItsOwnListener() throws Exception {
+		EtcdV3StandInServer etcdStandIn = new EtcdV3StandInServer(0);
+		etcdStandIn.start();
+		EtcdDiscoveryStrategy strategy = null;
+		try {
+			Member local = member(5701, "zone-a", null);
+			Set<Member> members = new LinkedHashSet<Member>();
+			members.add(local);
+			members.add(member(5702, "zone-a", null));
+			members.add(member(5703, "zone-b", null));
+
+			Map<String,Comparable> properties = new HashMap<String,Comparable>();
+			properties.put("etcd-uris", etcdStandIn.getUri().toString());
+			properties.put("etcd-api-version", EtcdTransport.API_VERSION_V3);
+			properties.put("etcd-service-name", "test-partition-group");
+			properties.put("etcd-discovery-delay-ms", 0);
+			properties.put("etcd-jmx-enabled", false);
+			properties.put("etcd-zone", "zone-a");
+			strategy = new EtcdDiscoveryStrategy(new SimpleDiscoveryNode(local.getAddress()), Logger.getLogger(getClass()), properties);
+
+			// w/o the drain listener, bound as the member starts
+			EtcdPartitionGroupLifecycleListener listener = new EtcdPartitionGroupLifecycleListener();
+			listener.setHazelcastInstance(instanceOf(members));
+			listener.stateChanged(new LifecycleEvent(LifecycleState.STARTING));
+
+			int groups = 0;
+			for (MemberGroup group : strategy.getPartitionGroupStrategy().getMemberGroups()) {
+				Assert.assertEquals(groups == 0 ? 2 : 1, group.size());
+				groups++;
+			}
+			Assert.assertEquals(2, groups);
+
+		} finally {
+			if (strategy != null) {
+				strategy.destroy();
+			}
+			etcdStandIn.stop();
+		}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testUnboundFailsLoudly() {
+		new EtcdPartitionGroupStrategy(null, PartitionGroupMetaData.PARTITION_GROUP_ZONE, Logger.getLogger(getClass())).getMemberGroups();
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+
+/**
+ * Tests for EtcdReachabilityProber against local listening/closed ports
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdReachabilityProber {
+
+	private ServerSocket listening = null;
+	private int closedPort = 0;
+
+	@Before
+	public void setUp() throws Exception {
+		listening = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+		ServerSocket closed = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		closedPort = closed.getLocalPort();
+		closed.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		listening.close();
+	}
+
+	private List<DiscoveryNode> candidates() throws Exception {
+		List<DiscoveryNode> nodes = new ArrayList<DiscoveryNode>();
+		nodes.add(new SimpleDiscoveryNode(new Address("127.0.0.1", closedPort)));
+		nodes.add(new SimpleDiscoveryNode(new Address("127.0.0.1", listening.getLocalPort())));
+		return nodes;
+	}
+
+	@Test
+	public void testUnreachableOrderedLast() throws Exception {
+		EtcdReachabilityProber prober = new EtcdReachabilityProber(2000, 60000, false, Logger.getLogger(getClass()));
+
+		List<DiscoveryNode> ordered = prober.order(candidates());
+		Assert.assertEquals(2, ordered.size());
+		Assert.assertEquals(listening.getLocalPort(), ordered.get(0).getPrivateAddress().getPort());
+		Assert.assertEquals(closedPort, ordered.get(1).getPrivateAddress().getPort());
+		Assert.assertEquals(1, prober.getLastUnreachable());
+		Assert.assertEquals(2, prober.getProbesSent());
+
+		// cached, not probed again
+		prober.order(candidates());
+		Assert.assertEquals(2, prober.getProbesSent());
+	}
+
+	@Test
+	public void testDropUnreachable() throws Exception {
+		EtcdReachabilityProber prober = new EtcdReachabilityProber(2000, 0, true, Logger.getLogger(getClass()));
+
+		List<DiscoveryNode> ordered = prober.order(candidates());
+		Assert.assertEquals(1, ordered.size());
+		Assert.assertEquals(listening.getLocalPort(), ordered.get(0).getPrivateAddress().getPort());
+
+		// w/o a cache every discovery probes
+		prober.order(candidates());
+		Assert.assertEquals(4, prober.getProbesSent());
+
+		// none reachable, all are kept
+		listening.close();
+		Assert.assertEquals(2, prober.order(candidates()).size());
+		Assert.assertEquals(2, prober.getLastUnreachable());
+	}
+
+}
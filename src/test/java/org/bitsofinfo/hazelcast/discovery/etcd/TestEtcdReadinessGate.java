@@ -0,0 +1,125 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the EtcdReadinessGate's conditions against
+ * an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdReadinessGate {
+
+	private static final String SERVICE_NAME = "test-gate";
+	private static final long READ_TIMEOUT_MS = 10000;
+
+	private EtcdStandInServer etcdStandIn = null;
+	private EtcdTransport transport = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		etcdStandIn.seed(SERVICE_NAME, 2, 0);
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null);
+		transport = new EtcdV2Transport(EtcdClientPool.acquire(config, 1, 0, 0, Logger.getLogger(getClass())),
+										Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		transport.release();
+		etcdStandIn.stop();
+	}
+
+	private EtcdReadinessGate gate(String conditions, int expectedMembers, long stableMS) {
+		return new EtcdReadinessGate(transport, SERVICE_NAME, conditions, expectedMembers, stableMS,
+									 READ_TIMEOUT_MS, Logger.getLogger(getClass()));
+	}
+
+	private static String member(int lastOctet, boolean draining) {
+		EtcdHazelcastNode node = new EtcdHazelcastNode("10.0.1." + lastOctet, 5701, "10.0.1." + lastOctet);
+		if (draining) {
+			node.tags = new HashMap<String,String>();
+			node.tags.put(BaseRegistrator.TAG_DRAINING, "true");
+		}
+		return EtcdHazelcastNodeTypeAdapter.encode(node);
+	}
+
+	// put the key after delayMS, from another thread
+	private void putLater(final String key, final String value, final long delayMS) {
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(delayMS);
+					etcdStandIn.put(key, value, 0);
+				} catch(InterruptedException ignored) {}
+			}
+		});
+		t.setDaemon(true);
+		t.start();
+	}
+
+	@Test
+	public void testSelfVisible() throws Exception {
+		String myEtcdKey = "/" + SERVICE_NAME + "/member-self";
+		putLater(myEtcdKey, member(1, false), 300);
+
+		long waitedMS = gate(EtcdReadinessGate.CONDITION_SELF_VISIBLE, 1, 0).await(myEtcdKey, 5000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 300 && waitedMS < 2000);
+		Assert.assertTrue(etcdStandIn.list(SERVICE_NAME).containsKey(myEtcdKey));
+	}
+
+	@Test
+	public void testExpectedMembers() throws Exception {
+		// already met
+		long waitedMS = gate(EtcdReadinessGate.CONDITION_EXPECTED_MEMBERS, 2, 0).await(null, 5000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS < 1000);
+
+		// a draining member does not count
+		etcdStandIn.put("/" + SERVICE_NAME + "/member-draining", member(1, true), 0);
+		waitedMS = gate(EtcdReadinessGate.CONDITION_EXPECTED_MEMBERS, 3, 0).await(null, 1000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 1000);
+
+		// a joining one does
+		putLater("/" + SERVICE_NAME + "/member-joining", member(2, false), 300);
+		waitedMS = gate(EtcdReadinessGate.CONDITION_EXPECTED_MEMBERS, 3, 0).await(null, 5000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 300 && waitedMS < 2000);
+	}
+
+	@Test
+	public void testStable() throws Exception {
+		long waitedMS = gate(EtcdReadinessGate.CONDITION_STABLE, 1, 600).await(null, 5000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 600 && waitedMS < 2000);
+
+		// a change restarts the clock
+		putLater("/" + SERVICE_NAME + "/member-joining", member(1, false), 300);
+		waitedMS = gate(EtcdReadinessGate.CONDITION_STABLE, 1, 600).await(null, 5000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 900 && waitedMS < 3000);
+	}
+
+	@Test
+	public void testTimeoutFallsThrough() throws Exception {
+		// never met
+		long waitedMS = gate(EtcdReadinessGate.CONDITION_SELF_VISIBLE, 1, 0).await("/" + SERVICE_NAME + "/member-self", 1000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 1000 && waitedMS < 2000);
+
+		// a hung etcd is only waited on for the time left, not the whole read timeout
+		etcdStandIn.setLatency(READ_TIMEOUT_MS, READ_TIMEOUT_MS);
+		waitedMS = gate(EtcdReadinessGate.CONDITION_SELF_VISIBLE + "," + EtcdReadinessGate.CONDITION_EXPECTED_MEMBERS, 1, 0)
+						.await("/" + SERVICE_NAME + "/member-self", 1000);
+		Assert.assertTrue("waited " + waitedMS + "ms", waitedMS >= 1000 && waitedMS < 3000);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+/**
+ * Tests for the default, asynchronous, EtcdRegistrator.registerAsync()/deregisterAsync()
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdRegistrator {
+
+	/**
+	 * A synchronous registrator whose register() blocks until released
+	 */
+	private static class BlockingRegistrator implements EtcdRegistrator {
+		final CountDownLatch release = new CountDownLatch(1);
+		volatile Thread registeredBy = null;
+		volatile boolean failDeregister = false;
+
+		public String getMyServiceId() {
+			return "blocking";
+		}
+
+		public void init(List<URI> etcUris, String etcdUsername, String etcdPassword, String etcdServiceName,
+				DiscoveryNode localDiscoveryNode, Map<String, Object> registratorConfig, ILogger logger) {
+		}
+
+		public void register() throws Exception {
+			release.await();
+			registeredBy = Thread.currentThread();
+		}
+
+		public void deregister() throws Exception {
+			if (failDeregister) {
+				throw new IllegalStateException("deregister failed");
+			}
+		}
+	}
+
+	@Test
+	public void testSyncRegistratorRunsInBackground() throws Exception {
+		BlockingRegistrator registrator = new BlockingRegistrator();
+
+		CompletableFuture<Void> registration = registrator.registerAsync();
+		Assert.assertFalse(registration.isDone());
+		try {
+			registration.get(50, TimeUnit.MILLISECONDS);
+			Assert.fail("registration should still be blocked");
+		} catch(TimeoutException expected) {}
+
+		registrator.release.countDown();
+		registration.get(5, TimeUnit.SECONDS);
+		Assert.assertNotSame(Thread.currentThread(), registrator.registeredBy);
+	}
+
+	@Test
+	public void testFailureCompletesExceptionally() throws Exception {
+		BlockingRegistrator registrator = new BlockingRegistrator();
+		registrator.failDeregister = true;
+
+		try {
+			registrator.deregisterAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail("deregistration should have failed");
+		} catch(ExecutionException expected) {
+			Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+			Assert.assertEquals("deregister failed", expected.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testOverriddenAsyncUsedAsIs() throws Exception {
+		CompletableFuture<Void> registration = new DoNothingRegistrator().registerAsync();
+		Assert.assertTrue(registration.isDone());
+	}
+
+	@Test
+	public void testDeregisterWhenNeverRegistered() throws Exception {
+		// no local address, so registration fails before any key is determined
+		BaseRegistrator registrator = new BaseRegistrator() {
+			protected Address determineMyLocalAddress(DiscoveryNode localDiscoveryNode, Map<String, Object> registratorConfig) {
+				return null;
+			}
+		};
+		registrator.init(Arrays.asList(URI.create("http://localhost:14010")), null, null, "test-never-registered", 
+						 null, null, Logger.getLogger(TestEtcdRegistrator.class));
+
+		try {
+			registrator.registerAsync().get(5, TimeUnit.SECONDS);
+			Assert.fail("registration should have failed");
+		} catch(ExecutionException expected) {}
+
+		// nothing to delete, nothing thrown
+		registrator.deregister();
+	}
+
+}
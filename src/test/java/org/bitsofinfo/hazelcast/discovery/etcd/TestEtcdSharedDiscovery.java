@@ -0,0 +1,232 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+/**
+ * Tests for several strategies in one JVM sharing a single
+ * discovery refresh (etcd-shared-refresh-ms), always run against
+ * an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdSharedDiscovery {
+
+	private static final String SERVICE_NAME = "test-shared";
+	private static final int MEMBERS = 5;
+
+	private EtcdStandInServer etcdStandIn = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		etcdStandIn.seed(SERVICE_NAME, MEMBERS, 0);
+	}
+
+	@After
+	public void tearDown() {
+		etcdStandIn.stop();
+	}
+
+	private EtcdDiscoveryStrategy newStrategy() {
+		return newStrategy(SERVICE_NAME, new HashMap<String,Comparable>());
+	}
+
+	private EtcdDiscoveryStrategy newStrategy(String serviceName, Map<String,Comparable> properties) {
+		properties.put("etcd-uris", etcdStandIn.getUri().toString());
+		properties.put("etcd-service-name", serviceName);
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-jmx-enabled", false);
+		properties.put("etcd-shared-refresh-ms", 60000);
+		return new EtcdDiscoveryStrategy(null, Logger.getLogger(getClass()), properties);
+	}
+
+	private static void awaitRefresh(EtcdDiscoveryStrategy strategy) throws Exception {
+		// the initial refresh is immediate
+		long deadline = System.currentTimeMillis() + 5000;
+		while (strategy.getSharedDiscoveryAgeMS() == Long.MAX_VALUE && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static int count(Iterable<DiscoveryNode> nodes) {
+		int count = 0;
+		for (DiscoveryNode node : nodes) {
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testStrategiesShareOneListing() throws Exception {
+		EtcdDiscoveryStrategy first = newStrategy();
+		EtcdDiscoveryStrategy second = newStrategy();
+		try {
+			awaitRefresh(first);
+
+			long requests = etcdStandIn.getRequestCount();
+			for (int i=0; i<10; i++) {
+				Assert.assertEquals(MEMBERS, count(first.discoverNodes()));
+				Assert.assertEquals(MEMBERS, count(second.discoverNodes()));
+			}
+			Assert.assertEquals(requests, etcdStandIn.getRequestCount());
+
+		} finally {
+			first.destroy();
+			second.destroy();
+		}
+	}
+
+	// as a strategy w/ the defaults builds it, but for the retries and circuit breaker
+	private static EtcdTransportConfig transportConfig(String apiVersion, int retryMaxAttempts, int circuitFailureThreshold) {
+		return new EtcdTransportConfig(apiVersion, 1, 300000, 10000, EtcdNettyResources.DEFAULT_IO_THREADS, 
+									   0, 0, 20, 1, 
+									   10000, 10000, retryMaxAttempts, 100, 2000, circuitFailureThreshold, 30000);
+	}
+
+	private static EtcdSharedDiscovery acquire(EtcdConnectionConfig config, String apiVersion, String serviceName, long refreshMS) {
+		return EtcdSharedDiscovery.acquire(config, transportConfig(apiVersion, 3, 5), serviceName, 
+										   refreshMS, Logger.getLogger(TestEtcdSharedDiscovery.class));
+	}
+
+	@Test
+	public void testReferenceCounted() {
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(etcdStandIn.getUri()), null, null);
+
+		EtcdSharedDiscovery first = acquire(config, EtcdTransport.API_VERSION_V2, SERVICE_NAME, 60000);
+		EtcdSharedDiscovery second = acquire(config, "V2 ", SERVICE_NAME, 60000);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(2, first.getRefCount());
+
+		// a different service gets its own
+		EtcdSharedDiscovery other = acquire(config, EtcdTransport.API_VERSION_V2, "other", 60000);
+		Assert.assertNotSame(first, other);
+		other.release();
+
+		// as do differently built transports
+		other = EtcdSharedDiscovery.acquire(config, transportConfig(EtcdTransport.API_VERSION_V2, 1, 5), SERVICE_NAME, 
+											60000, Logger.getLogger(getClass()));
+		Assert.assertNotSame(first, other);
+		other.release();
+
+		first.release();
+		second.release();
+		EtcdSharedDiscovery recreated = acquire(config, EtcdTransport.API_VERSION_V2, SERVICE_NAME, 60000);
+		Assert.assertNotSame(first, recreated);
+		recreated.release();
+	}
+
+	@Test
+	public void testLoopIsBehindTheCircuitBreaker() throws Exception {
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(etcdStandIn.getUri()), null, null);
+		// 1 attempt, open after 2 failed listings
+		EtcdSharedDiscovery shared = EtcdSharedDiscovery.acquire(config, transportConfig(EtcdTransport.API_VERSION_V2, 1, 2), 
+																 SERVICE_NAME, 60000, Logger.getLogger(getClass()));
+		try {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (shared.getRefreshes() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			etcdStandIn.failNext(Integer.MAX_VALUE, 500);
+			shared.run();
+			shared.run();
+
+			// open: the loop's listings no longer reach etcd
+			long requests = etcdStandIn.getRequestCount();
+			shared.run();
+			shared.run();
+			Assert.assertEquals(requests, etcdStandIn.getRequestCount());
+			Assert.assertEquals(1, shared.getRefreshes());
+
+		} finally {
+			etcdStandIn.failNext(0, 500);
+			shared.release();
+		}
+	}
+
+	@Test
+	public void testReleasedOnce() {
+		EtcdDiscoveryStrategy first = newStrategy();
+		EtcdDiscoveryStrategy second = newStrategy();
+
+		// destroying a strategy again must not drop the other's reference
+		first.destroy();
+		first.destroy();
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(etcdStandIn.getUri()), null, null);
+		EtcdSharedDiscovery shared = acquire(config, EtcdTransport.API_VERSION_V2, SERVICE_NAME, 60000);
+		try {
+			Assert.assertEquals(2, shared.getRefCount());
+		} finally {
+			shared.release();
+			second.destroy();
+		}
+
+		// nor does an extra release once stopped
+		shared.release();
+		Assert.assertEquals(0, shared.getRefCount());
+	}
+
+	@Test
+	public void testShardReadBucketsApplied() throws Exception {
+		String serviceName = "test-shared-sharded";
+		int buckets = 4;
+		for (int i=0; i<buckets; i++) {
+			etcdStandIn.seed(EtcdDiscoveryStrategy.bucketDir(serviceName, i), i * MEMBERS, MEMBERS, 0);
+		}
+
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-shard-buckets", buckets);
+		properties.put("etcd-shard-read-buckets", 1);
+		EtcdDiscoveryStrategy strategy = newStrategy(serviceName, properties);
+		try {
+			awaitRefresh(strategy);
+
+			// one bucket's worth, out of the one shared listing of all of them
+			long requests = etcdStandIn.getRequestCount();
+			for (int i=0; i<10; i++) {
+				Assert.assertEquals(MEMBERS, count(strategy.discoverNodes()));
+			}
+			Assert.assertEquals(requests, etcdStandIn.getRequestCount());
+
+		} finally {
+			strategy.destroy();
+		}
+	}
+
+	@Test
+	public void testSurvivesFirstAcquirer() throws Exception {
+		EtcdDiscoveryStrategy first = newStrategy();
+		EtcdDiscoveryStrategy second = newStrategy();
+		first.destroy();
+		try {
+			// the loop does not depend on the destroyed strategy's transport
+			EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(etcdStandIn.getUri()), null, null);
+			EtcdSharedDiscovery shared = acquire(config, EtcdTransport.API_VERSION_V2, SERVICE_NAME, 60000);
+			try {
+				long refreshes = shared.getRefreshes();
+				shared.run();
+				// the loop's own refresh may land alongside ours, both read through the shared transport
+				Assert.assertTrue(shared.getRefreshes() >= refreshes + 1);
+				Assert.assertEquals(MEMBERS, count(second.discoverNodes()));
+			} finally {
+				shared.release();
+			}
+		} finally {
+			second.destroy();
+		}
+	}
+
+}
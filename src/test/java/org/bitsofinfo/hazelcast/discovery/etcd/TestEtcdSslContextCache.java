@@ -0,0 +1,124 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * Tests for the EtcdSslContextCache's reloading of rotated PEM files
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdSslContextCache {
+
+	private File dir = null;
+	private File certFile = null;
+	private File keyFile = null;
+	private EtcdSslContextCache cache = null;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("etcd-ssl-context-cache").toFile();
+		certFile = new File(dir, "client-cert.pem");
+		keyFile = new File(dir, "client-key.pem");
+		EtcdTestCertificate.generate("etcd-client-1").writeTo(certFile, keyFile);
+
+		// checked on every call
+		cache = new EtcdSslContextCache(certFile.getPath(), keyFile.getPath(), null, 1, Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private SslContext afterCheckInterval() throws Exception {
+		Thread.sleep(5);
+		return cache.getSslContext();
+	}
+
+	/**
+	 * Overwrite the file, keeping its mtime and size as they were
+	 */
+	private static void overwriteUnnoticed(File file, String content, long lastModified) throws Exception {
+		Files.write(file.toPath(), content.getBytes(Charset.forName("US-ASCII")));
+		file.setLastModified(lastModified);
+	}
+
+	@Test
+	public void testRebuiltOnlyOnRotation() throws Exception {
+		SslContext first = cache.getSslContext();
+		Assert.assertNotNull(first);
+		Assert.assertEquals(1, cache.getGeneration());
+
+		// unchanged, even if touched
+		Assert.assertSame(first, afterCheckInterval());
+		certFile.setLastModified(certFile.lastModified() + 2000);
+		Assert.assertSame(first, afterCheckInterval());
+		Assert.assertEquals(1, cache.getGeneration());
+
+		// rotated
+		EtcdTestCertificate.generate("etcd-client-2").writeTo(certFile, keyFile);
+		certFile.setLastModified(certFile.lastModified() + 4000);
+		SslContext rotated = afterCheckInterval();
+		Assert.assertNotSame(first, rotated);
+		Assert.assertEquals(2, cache.getGeneration());
+		Assert.assertSame(rotated, afterCheckInterval());
+	}
+
+	@Test
+	public void testFailedRebuildIsRetried() throws Exception {
+		SslContext first = cache.getSslContext();
+		EtcdTestCertificate rotated = EtcdTestCertificate.generate("etcd-client-2");
+
+		// mid-rotation: the new key, but a cert that doesn't parse (yet)
+		char[] broken = rotated.certPem.toCharArray();
+		Arrays.fill(broken, 40, 100, '!');
+		long modified = certFile.lastModified() + 2000;
+		overwriteUnnoticed(certFile, new String(broken), modified);
+		Files.write(keyFile.toPath(), rotated.keyPem.getBytes(Charset.forName("US-ASCII")));
+
+		Assert.assertSame(first, afterCheckInterval());
+		Assert.assertEquals(1, cache.getGeneration());
+
+		// completing the write leaves mtime/size as they were, the failed rebuild must still be retried
+		overwriteUnnoticed(certFile, rotated.certPem, modified);
+		Assert.assertNotSame(first, afterCheckInterval());
+		Assert.assertEquals(2, cache.getGeneration());
+	}
+
+	@Test
+	public void testOneSocketFactoryPerGeneration() throws Exception {
+		SSLSocketFactory first = cache.getJdkSocketFactory();
+		Assert.assertNotNull(first);
+
+		// the same instance, so the JDK can reuse kept-alive connections
+		afterCheckInterval();
+		Assert.assertSame(first, cache.getJdkSocketFactory());
+
+		EtcdTestCertificate.generate("etcd-client-2").writeTo(certFile, keyFile);
+		certFile.setLastModified(certFile.lastModified() + 2000);
+		afterCheckInterval();
+		Assert.assertEquals(2, cache.getGeneration());
+		SSLSocketFactory rotated = cache.getJdkSocketFactory();
+		Assert.assertNotSame(first, rotated);
+		Assert.assertSame(rotated, cache.getJdkSocketFactory());
+	}
+
+}
@@ -0,0 +1,107 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the EtcdV2Transport, always run against
+ * an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdV2Transport {
+
+	private EtcdStandInServer etcdStandIn = null;
+	private EtcdTransport transport = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null);
+		transport = new EtcdV2Transport(EtcdClientPool.acquire(config, 1, 0, 0, Logger.getLogger(getClass())),
+										Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		transport.release();
+		etcdStandIn.stop();
+	}
+
+	@Test
+	public void testPutListDelete() throws Exception {
+		Assert.assertTrue(transport.list("test-transport", 5000).entries.isEmpty());
+
+		transport.put("/test-transport/node1", "value1", 0, 5000);
+		transport.put("/test-transport/node2", "value2", 0, 5000);
+		Assert.assertEquals(2, transport.list("test-transport", 5000).entries.size());
+		Assert.assertEquals(2, transport.listKeys("test-transport", 5000).size());
+
+		transport.delete("/test-transport/node1", 5000);
+		transport.delete("/test-transport/node1", 5000); // no-op
+		Assert.assertEquals(1, etcdStandIn.list("test-transport").size());
+	}
+
+	@Test
+	public void testTtlRefreshAndExpiry() throws Exception {
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 1, 5000));
+
+		transport.put("/test-transport/node1", "value1", 1, 5000);
+		Assert.assertTrue(transport.refresh("/test-transport/node1", 1, 5000));
+
+		Thread.sleep(1500);
+		Assert.assertTrue(etcdStandIn.list("test-transport").isEmpty());
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 1, 5000));
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		EtcdTransport.Listing listing = transport.list("test-transport", 5000);
+
+		etcdStandIn.put("/test-transport/node1", "value1", 0);
+		EtcdTransport.WatchResult result = transport.watch("test-transport", listing.nextIndex, 5000);
+		Assert.assertEquals(1, result.events.size());
+		Assert.assertEquals("value1", result.events.get(0).value);
+		Assert.assertFalse(result.events.get(0).deleted);
+
+		etcdStandIn.delete("/test-transport/node1");
+		result = transport.watch("test-transport", result.nextIndex, 5000);
+		Assert.assertTrue(result.events.get(0).deleted);
+
+		// nothing happens
+		result = transport.watch("test-transport", result.nextIndex, 500);
+		Assert.assertTrue(result.events.isEmpty());
+	}
+
+	@Test(expected=EtcdHistoryCompactedException.class)
+	public void testWatchHistoryCleared() throws Exception {
+		etcdStandIn.seed("test-transport", 1500, 0);
+		transport.watch("test-transport", 1, 5000);
+	}
+
+	@Test
+	public void testSeededAndInjectedErrors() throws Exception {
+		etcdStandIn.seed("test-transport", 10000, 0);
+		Assert.assertEquals(10000, transport.list("test-transport", 10000).entries.size());
+
+		etcdStandIn.failNext(1, 500);
+		try {
+			transport.list("test-transport", 5000);
+			Assert.fail("expected injected error");
+		} catch(Exception expected) {}
+
+		// recovers
+		Assert.assertEquals(10000, transport.list("test-transport", 10000).entries.size());
+	}
+
+}
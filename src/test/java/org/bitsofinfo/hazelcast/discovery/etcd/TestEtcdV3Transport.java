@@ -0,0 +1,156 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the EtcdV3Transport, always run against
+ * an in-process EtcdV3StandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestEtcdV3Transport {
+
+	private EtcdV3StandInServer etcdStandIn = null;
+	private EtcdV3StandInServer etcdStandIn2 = null;
+	private EtcdTransport transport = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdV3StandInServer(0);
+		etcdStandIn.start();
+		etcdStandIn2 = new EtcdV3StandInServer(0);
+		etcdStandIn2.start();
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(
+				Arrays.asList(new URI[]{etcdStandIn.getUri(), etcdStandIn2.getUri()}), null, null);
+		transport = new EtcdV3Transport(config, 0, Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		transport.release();
+		etcdStandIn.stop();
+		etcdStandIn2.stop();
+	}
+
+	@Test
+	public void testPutListDelete() throws Exception {
+		Assert.assertTrue(transport.list("test-transport", 5000).entries.isEmpty());
+
+		transport.put("/test-transport/node1", "value1", 0, 5000);
+		transport.put("/test-transport/node2", "value2", 0, 5000);
+		etcdStandIn.put("/test-transport-other/node3", "value3");
+		Assert.assertEquals(2, transport.list("test-transport", 5000).entries.size());
+		Assert.assertEquals(2, transport.listKeys("test-transport", 5000).size());
+		Assert.assertEquals("value1", transport.list("test-transport", 5000).entries.get(0).value);
+
+		transport.delete("/test-transport/node1", 5000);
+		transport.delete("/test-transport/node1", 5000); // no-op
+		Assert.assertEquals(1, etcdStandIn.list("/test-transport/").size());
+	}
+
+	@Test
+	public void testTtlRefreshAndExpiry() throws Exception {
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 1, 5000));
+
+		transport.put("/test-transport/node1", "value1", 1, 5000);
+		Assert.assertEquals(1, etcdStandIn.getLeaseCount());
+
+		// a single keepalive round trip
+		long requests = etcdStandIn.getRequestCount();
+		Assert.assertTrue(transport.refresh("/test-transport/node1", 1, 5000));
+		Assert.assertEquals(requests + 1, etcdStandIn.getRequestCount());
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/lease/keepalive"));
+
+		Thread.sleep(1500);
+		Assert.assertTrue(etcdStandIn.list("/test-transport/").isEmpty());
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 1, 5000));
+
+		// forgotten, no further round trips
+		requests = etcdStandIn.getRequestCount();
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 1, 5000));
+		Assert.assertEquals(requests, etcdStandIn.getRequestCount());
+	}
+
+	@Test
+	public void testPutAndDeleteReleaseLeases() throws Exception {
+		transport.put("/test-transport/node1", "value1", 30, 5000);
+		transport.put("/test-transport/node1", "value2", 30, 5000);
+		Assert.assertEquals(1, etcdStandIn.getLeaseCount());
+
+		transport.delete("/test-transport/node1", 5000);
+		Assert.assertEquals(0, etcdStandIn.getLeaseCount());
+		Assert.assertFalse(transport.refresh("/test-transport/node1", 30, 5000));
+	}
+
+	@Test
+	public void testWatch() throws Exception {
+		EtcdTransport.Listing listing = transport.list("test-transport", 5000);
+
+		etcdStandIn.put("/test-transport/node1", "value1");
+		EtcdTransport.WatchResult result = transport.watch("test-transport", listing.nextIndex, 5000);
+		Assert.assertEquals(1, result.events.size());
+		Assert.assertEquals("value1", result.events.get(0).value);
+		Assert.assertFalse(result.events.get(0).deleted);
+		Assert.assertEquals(etcdStandIn.getRevision() + 1, result.nextIndex);
+
+		etcdStandIn.delete("/test-transport/node1");
+		result = transport.watch("test-transport", result.nextIndex, 5000);
+		Assert.assertTrue(result.events.get(0).deleted);
+
+		// nothing happens
+		result = transport.watch("test-transport", result.nextIndex, 500);
+		Assert.assertTrue(result.events.isEmpty());
+
+		// only one stream was opened for all of it
+		Assert.assertEquals(1, etcdStandIn.getRequestCount("/watch"));
+	}
+
+	@Test(expected=EtcdHistoryCompactedException.class)
+	public void testWatchCompacted() throws Exception {
+		for (int i=0; i<10; i++) {
+			etcdStandIn.put("/test-transport/node" + i, "value" + i);
+		}
+		etcdStandIn.compact();
+		transport.watch("test-transport", 1, 5000);
+	}
+
+	@Test
+	public void testFailsOverOnServerErrors() throws Exception {
+		etcdStandIn.failNext(1, 503);
+		transport.put("/test-transport/node1", "value1", 0, 5000);
+
+		Assert.assertTrue(etcdStandIn.list("/test-transport/").isEmpty());
+		Assert.assertEquals(1, etcdStandIn2.list("/test-transport/").size());
+
+		// and stays there
+		transport.put("/test-transport/node2", "value2", 0, 5000);
+		Assert.assertEquals(2, etcdStandIn2.list("/test-transport/").size());
+	}
+
+	@Test
+	public void testAnswersAreNotFailedOver() throws Exception {
+		etcdStandIn.failNext(1, 400);
+		try {
+			transport.put("/test-transport/node1", "value1", 0, 5000);
+			Assert.fail("expected the 400");
+		} catch(EtcdGatewayException expected) {
+			Assert.assertEquals(400, expected.getHttpStatus());
+			Assert.assertTrue(AbstractEtcdTransport.isEtcdAnswer(expected));
+		}
+
+		// the other endpoint was never tried
+		Assert.assertEquals(0, etcdStandIn2.getRequestCount());
+		Assert.assertTrue(etcdStandIn2.list("/test-transport/").isEmpty());
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the HedgingEtcdTransport against two in-process
+ * EtcdStandInServers, one of them slow
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestHedgingEtcdTransport {
+
+	/**
+	 * An endpoint whose reads take readMS, then fail or answer empty
+	 */
+	private static class SlowTransport extends AbstractEtcdTransport {
+		final long readMS;
+		final boolean fail;
+
+		SlowTransport(long readMS, boolean fail) {
+			super(Logger.getLogger(SlowTransport.class));
+			this.readMS = readMS;
+			this.fail = fail;
+		}
+
+		public Listing list(String dir, long timeoutMS) throws Exception {
+			Thread.sleep(readMS);
+			if (fail) {
+				throw new IOException("failed after " + readMS + "ms");
+			}
+			return new Listing(new ArrayList<Entry>(), 1);
+		}
+
+		public List<String> listKeys(String dir, long timeoutMS) throws Exception {
+			return new ArrayList<String>();
+		}
+
+		public void put(String key, String value, int ttlSeconds, long timeoutMS) {}
+
+		public boolean refresh(String key, int ttlSeconds, long timeoutMS) {
+			return true;
+		}
+
+		public void delete(String key, long timeoutMS) {}
+
+		public WatchResult watch(String dir, long fromIndex, long timeoutMS) {
+			return WatchResult.none(fromIndex);
+		}
+
+		protected void close() {}
+	}
+
+	private EtcdStandInServer fastEtcd = null;
+	private EtcdStandInServer slowEtcd = null;
+	private HedgingEtcdTransport transport = null;
+
+	@Before
+	public void setUp() throws Exception {
+		fastEtcd = new EtcdStandInServer(0);
+		fastEtcd.start();
+		slowEtcd = new EtcdStandInServer(0);
+		slowEtcd.start();
+
+		for (EtcdStandInServer etcd : new EtcdStandInServer[]{fastEtcd, slowEtcd}) {
+			etcd.seed("test-hedging", 10, 0);
+		}
+		slowEtcd.setLatency(1000, 1000);
+
+		List<URI> uris = Arrays.asList(new URI[]{slowEtcd.getUri(), fastEtcd.getUri()});
+		List<EtcdTransport> endpoints = new ArrayList<EtcdTransport>();
+		for (URI uri : uris) {
+			endpoints.add(newTransport(Arrays.asList(new URI[]{uri})));
+		}
+
+		transport = new HedgingEtcdTransport(newTransport(uris), uris, endpoints, null, 95, 50, 1, Logger.getLogger(getClass()));
+	}
+
+	private EtcdTransport newTransport(List<URI> uris) {
+		EtcdConnectionConfig config = new EtcdConnectionConfig(uris, null, null);
+		return new EtcdV2Transport(EtcdClientPool.acquire(config, 1, 0, 0, Logger.getLogger(getClass())),
+								   Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		transport.release();
+		fastEtcd.stop();
+		slowEtcd.stop();
+	}
+
+	@Test
+	public void testSlowEndpointIsHedged() throws Exception {
+		for (int i=0; i<6; i++) {
+			long start = System.currentTimeMillis();
+			Assert.assertEquals(10, transport.list("test-hedging", 5000).entries.size());
+			Assert.assertTrue(System.currentTimeMillis() - start < 900);
+		}
+
+		// every other read starts on the slow endpoint and is won by its hedge
+		Assert.assertEquals(3, transport.getHedgesSent());
+		Assert.assertEquals(3, transport.getHedgeWins());
+		Assert.assertEquals(0, transport.getHedgeLosses());
+	}
+
+	@Test
+	public void testFailedReadFailsOver() throws Exception {
+		slowEtcd.setLatency(0, 0);
+		slowEtcd.failNext(10, 500);
+
+		for (int i=0; i<4; i++) {
+			Assert.assertEquals(10, transport.listKeys("test-hedging", 5000).size());
+		}
+		Assert.assertEquals(2, transport.getHedgeWins());
+	}
+
+	private static HedgingEtcdTransport newHedging(long minHedgeDelayMS, EtcdTransport... endpoints) throws Exception {
+		List<URI> uris = new ArrayList<URI>();
+		for (int i=0; i<endpoints.length; i++) {
+			uris.add(new URI("http://localhost:" + (4001 + i)));
+		}
+		return new HedgingEtcdTransport(new SlowTransport(0, false), uris, Arrays.asList(endpoints), null,
+										95, minHedgeDelayMS, 1, Logger.getLogger(TestHedgingEtcdTransport.class));
+	}
+
+	private static void awaitHedgeDelay(HedgingEtcdTransport hedging, long atLeastMS) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (hedging.getHedgeDelayMS() < atLeastMS && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertTrue("hedge delay: " + hedging.getHedgeDelayMS(), hedging.getHedgeDelayMS() >= atLeastMS);
+	}
+
+	@Test
+	public void testFailedReadsAreSampled() throws Exception {
+		HedgingEtcdTransport hedging = newHedging(1, new SlowTransport(100, true));
+		try {
+			for (int i=0; i<16; i++) {
+				try {
+					hedging.list("test-hedging", 5000);
+					Assert.fail("expected failure");
+				} catch(IOException expected) {}
+			}
+			awaitHedgeDelay(hedging, 100);
+		} finally {
+			hedging.release();
+		}
+	}
+
+	@Test
+	public void testCancelledReadsAreSampled() throws Exception {
+		// neither answers in time, both attempts are cancelled at the deadline
+		HedgingEtcdTransport hedging = newHedging(1, new SlowTransport(5000, false), new SlowTransport(5000, false));
+		try {
+			for (int i=0; i<8; i++) {
+				try {
+					hedging.list("test-hedging", 50);
+					Assert.fail("expected timeout");
+				} catch(TimeoutException expected) {}
+			}
+			awaitHedgeDelay(hedging, 40);
+		} finally {
+			hedging.release();
+		}
+	}
+
+}
@@ -25,4 +25,9 @@ public class TestLocalDiscoveryNodeRegistratorWithUsernameAndPassword extends Re
 		// we do nothing
 	}
 	
+	@Override
+	protected void configureEtcdStandIn(EtcdStandInServer etcdStandIn) {
+		etcdStandIn.requireCredentials("root", "password");
+	}
+	
 }
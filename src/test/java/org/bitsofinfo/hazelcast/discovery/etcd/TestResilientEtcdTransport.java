@@ -0,0 +1,272 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+
+/**
+ * Tests for the ResilientEtcdTransport's retries and circuit
+ * breaker against an in-process EtcdStandInServer
+ *
+ * @author bitsofinfo
+ *
+ */
+public class TestResilientEtcdTransport {
+
+	/**
+	 * Reads and refreshes never complete until released, deaf to
+	 * interrupts like etcd4j's wait for a response
+	 */
+	private static class HungTransport extends AbstractEtcdTransport {
+		final CountDownLatch released = new CountDownLatch(1);
+
+		HungTransport() {
+			super(Logger.getLogger(HungTransport.class));
+		}
+
+		private void hang() {
+			while (true) {
+				try {
+					released.await();
+					return;
+				} catch(InterruptedException ignored) {}
+			}
+		}
+
+		public Listing list(String dir, long timeoutMS) {
+			hang();
+			return new Listing(new ArrayList<Entry>(), 1);
+		}
+
+		public List<String> listKeys(String dir, long timeoutMS) {
+			return new ArrayList<String>();
+		}
+
+		public void put(String key, String value, int ttlSeconds, long timeoutMS) {}
+
+		public boolean refresh(String key, int ttlSeconds, long timeoutMS) {
+			hang();
+			return true;
+		}
+
+		public void delete(String key, long timeoutMS) {}
+
+		public WatchResult watch(String dir, long fromIndex, long timeoutMS) {
+			return WatchResult.none(fromIndex);
+		}
+
+		protected void close() {
+			released.countDown();
+		}
+	}
+
+	private EtcdStandInServer etcdStandIn = null;
+	private ResilientEtcdTransport transport = null;
+
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		etcdStandIn.seed("test-resilient", 5, 0);
+
+		EtcdConnectionConfig config = new EtcdConnectionConfig(Arrays.asList(new URI[]{etcdStandIn.getUri()}), null, null);
+		EtcdTransport delegate = new EtcdV2Transport(EtcdClientPool.acquire(config, 1, 0, 0, Logger.getLogger(getClass())),
+													 Logger.getLogger(getClass()));
+
+		// 3 attempts, 10-50ms backoff, open after 2 failed operations for 500ms
+		transport = new ResilientEtcdTransport(delegate, 5000, 5000, 3, 10, 50, 2, 500, Logger.getLogger(getClass()));
+	}
+
+	@After
+	public void tearDown() {
+		transport.release();
+		etcdStandIn.stop();
+	}
+
+	@Test
+	public void testRetriesRecover() throws Exception {
+		etcdStandIn.failNext(2, 500);
+		Assert.assertEquals(5, transport.list("test-resilient", 5000).entries.size());
+		Assert.assertEquals(2, transport.getRetries());
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_CLOSED, transport.getCircuitState());
+	}
+
+	@Test
+	public void testEtcdAnswersAreNotRetried() throws Exception {
+		Assert.assertFalse(transport.refresh("/test-resilient/missing", 10, 5000));
+		Assert.assertEquals(0, transport.getRetries());
+	}
+
+	@Test
+	public void testCircuitOpensAndCloses() throws Exception {
+		etcdStandIn.failNext(Integer.MAX_VALUE, 500);
+		for (int i=0; i<2; i++) {
+			try {
+				transport.list("test-resilient", 5000);
+				Assert.fail("expected injected error");
+			} catch(EtcdCircuitOpenException e) {
+				Assert.fail("circuit opened too early");
+			} catch(Exception expected) {}
+		}
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, transport.getCircuitState());
+		Assert.assertEquals(1, transport.getCircuitOpens());
+
+		// fails fast w/o touching etcd
+		long requests = etcdStandIn.getRequestCount();
+		try {
+			transport.list("test-resilient", 5000);
+			Assert.fail("expected open circuit");
+		} catch(EtcdCircuitOpenException expected) {}
+		Assert.assertEquals(requests, etcdStandIn.getRequestCount());
+		Assert.assertEquals(1, transport.getRejections());
+
+		// etcd recovers, the trial after circuitOpenMS closes it
+		etcdStandIn.failNext(0, 500);
+		Thread.sleep(600);
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_HALF_OPEN, transport.getCircuitState());
+		Assert.assertEquals(5, transport.list("test-resilient", 5000).entries.size());
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_CLOSED, transport.getCircuitState());
+	}
+
+	private void openCircuit() {
+		etcdStandIn.failNext(Integer.MAX_VALUE, 500);
+		for (int i=0; i<2; i++) {
+			try {
+				transport.list("test-resilient", 5000);
+				Assert.fail("expected injected error");
+			} catch(Exception expected) {}
+		}
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, transport.getCircuitState());
+	}
+
+	@Test
+	public void testFailedTrialReopensAndIsCounted() throws Exception {
+		openCircuit();
+		Assert.assertEquals(1, transport.getCircuitOpens());
+
+		Thread.sleep(600);
+		try {
+			transport.list("test-resilient", 5000);
+			Assert.fail("expected injected error");
+		} catch(EtcdCircuitOpenException e) {
+			Assert.fail("the trial was not let through");
+		} catch(Exception expected) {}
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, transport.getCircuitState());
+		Assert.assertEquals(2, transport.getCircuitOpens());
+	}
+
+	@Test
+	public void testDeletesBypassTheCircuit() throws Exception {
+		openCircuit();
+		etcdStandIn.failNext(0, 500);
+
+		transport.delete("/test-resilient/seed-10.0.0.0-5701", 5000);
+		Assert.assertEquals(4, etcdStandIn.list("test-resilient").size());
+		Assert.assertEquals(0, transport.getRejections());
+
+		// and leave it as it was
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, transport.getCircuitState());
+		try {
+			transport.list("test-resilient", 5000);
+			Assert.fail("expected open circuit");
+		} catch(EtcdCircuitOpenException expected) {}
+	}
+
+	@Test
+	public void testHeartbeatsBypassTheCircuit() throws Exception {
+		transport.put("/test-resilient/member-10.0.0.100-5701", "{}", 10, 5000);
+		openCircuit();
+		etcdStandIn.failNext(0, 500);
+
+		// the registrator's TTL heartbeat and re-registration still reach etcd
+		long requests = etcdStandIn.getRequestCount();
+		Assert.assertTrue(transport.refresh("/test-resilient/member-10.0.0.100-5701", 10, 5000));
+		transport.put("/test-resilient/member-10.0.0.101-5701", "{}", 10, 5000);
+		Assert.assertEquals(requests + 2, etcdStandIn.getRequestCount());
+		Assert.assertEquals(7, etcdStandIn.list("test-resilient").size());
+		Assert.assertEquals(0, transport.getRejections());
+
+		// reads stay refused
+		Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, transport.getCircuitState());
+		try {
+			transport.list("test-resilient", 5000);
+			Assert.fail("expected open circuit");
+		} catch(EtcdCircuitOpenException expected) {}
+	}
+
+	@Test
+	public void testHungAttemptsAreAbandoned() throws Exception {
+		HungTransport delegate = new HungTransport();
+		ResilientEtcdTransport hung = new ResilientEtcdTransport(delegate, 300, 300, 3, 10, 50, 2, 500, Logger.getLogger(getClass()));
+		try {
+			for (int i=0; i<2; i++) {
+				long start = System.currentTimeMillis();
+				try {
+					hung.list("test-resilient", 5000);
+					Assert.fail("expected a timeout");
+				} catch(TimeoutException expected) {}
+				long elapsed = System.currentTimeMillis() - start;
+				Assert.assertTrue("took " + elapsed + "ms", elapsed >= 300 && elapsed < 2000);
+			}
+
+			// failures like any other
+			Assert.assertEquals(ResilientEtcdTransport.CIRCUIT_OPEN, hung.getCircuitState());
+
+		} finally {
+			hung.release();
+		}
+	}
+
+	@Test
+	public void testParkedAttemptsAreBounded() throws Exception {
+		HungTransport delegate = new HungTransport();
+		// writes bypass the circuit, only the pool bounds them
+		ResilientEtcdTransport hung = new ResilientEtcdTransport(delegate, 300, 50, 1, 10, 50, 2, 500, Logger.getLogger(getClass()));
+		try {
+			// each heartbeat parks a thread
+			for (int i=0; i<ResilientEtcdTransport.MAX_ATTEMPT_THREADS; i++) {
+				try {
+					hung.refresh("/test-resilient/node1", 1, 5000);
+					Assert.fail("expected a timeout");
+				} catch(TimeoutException expected) {}
+			}
+
+			// then fail fast rather than park another
+			long start = System.currentTimeMillis();
+			try {
+				hung.refresh("/test-resilient/node1", 1, 5000);
+				Assert.fail("expected the attempt to be rejected");
+			} catch(RejectedExecutionException expected) {}
+			long elapsed = System.currentTimeMillis() - start;
+			Assert.assertTrue("took " + elapsed + "ms", elapsed < 50);
+
+			// and recover once the parked attempts return
+			delegate.released.countDown();
+			long deadline = System.currentTimeMillis() + 2000;
+			while (true) {
+				try {
+					Assert.assertTrue(hung.refresh("/test-resilient/node1", 1, 5000));
+					break;
+				} catch(RejectedExecutionException e) {
+					Assert.assertTrue("threads not freed", System.currentTimeMillis() < deadline);
+					Thread.sleep(20);
+				}
+			}
+
+		} finally {
+			hung.release();
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.bitsofinfo.hazelcast.discovery.etcd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+
+/**
+ * Tests for the sharded (etcd-shard-buckets) layout,
+ * always run against an in-process EtcdStandInServer
+ * 
+ * @author bitsofinfo
+ *
+ */
+public class TestShardedDiscovery {
+	
+	private static final String SERVICE_NAME = "test-sharded";
+	private static final int BUCKETS = 8;
+	private static final int MEMBERS_PER_BUCKET = 25;
+	
+	private EtcdStandInServer etcdStandIn = null;
+	
+	@Before
+	public void setUp() throws Exception {
+		etcdStandIn = new EtcdStandInServer(0);
+		etcdStandIn.start();
+		for (int i=0; i<BUCKETS; i++) {
+			etcdStandIn.seed(EtcdDiscoveryStrategy.bucketDir(SERVICE_NAME, i), MEMBERS_PER_BUCKET, 0);
+		}
+	}
+	
+	@After
+	public void tearDown() {
+		etcdStandIn.stop();
+	}
+	
+	private EtcdDiscoveryStrategy newStrategy(int readBuckets) {
+		Map<String,Comparable> properties = new HashMap<String,Comparable>();
+		properties.put("etcd-uris", etcdStandIn.getUri().toString());
+		properties.put("etcd-service-name", SERVICE_NAME);
+		properties.put("etcd-discovery-delay-ms", 0);
+		properties.put("etcd-shard-buckets", BUCKETS);
+		properties.put("etcd-shard-read-buckets", readBuckets);
+		return new EtcdDiscoveryStrategy(null, Logger.getLogger(getClass()), properties);
+	}
+	
+	private static int count(Iterable<DiscoveryNode> nodes) {
+		int count = 0;
+		for (DiscoveryNode node : nodes) {
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testReadAllBuckets() {
+		EtcdDiscoveryStrategy strategy = newStrategy(0);
+		try {
+			Assert.assertEquals(BUCKETS * MEMBERS_PER_BUCKET, count(strategy.discoverNodes()));
+		} finally {
+			strategy.destroy();
+		}
+	}
+	
+	@Test
+	public void testReadSubsetOfBuckets() {
+		EtcdDiscoveryStrategy strategy = newStrategy(2);
+		try {
+			Assert.assertEquals(2 * MEMBERS_PER_BUCKET, count(strategy.discoverNodes()));
+		} finally {
+			strategy.destroy();
+		}
+	}
+	
+	@Test
+	public void testBucketOfIsStable() {
+		// all members, in any JVM, must agree: "a".hashCode() is 97
+		Assert.assertEquals(1, EtcdDiscoveryStrategy.bucketOf("a", 16));
+		Assert.assertTrue(EtcdDiscoveryStrategy.bucketOf("svc-10.0.0.1-host-5701", 16) < 16);
+	}
+
+}